@@ -49,9 +49,9 @@ import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
-import org.jdom.xpath.XPath;
 
 import java.io.*;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.List;
@@ -86,12 +86,8 @@ public abstract class AbstractXMLConfigurator extends AbstractConfigurator {
      */
     public void insertElementAfter(Document jdomDocument, String xPathExpression, Element element) throws JDOMException {
         Element rootElement = jdomDocument.getRootElement();
-        String namespaceURI = rootElement.getNamespaceURI();
-        XPath previousElementXPath = XPath.newInstance(xPathExpression);
-        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
-            previousElementXPath.addNamespace("xp", namespaceURI);
-        }
-        Element previousElement = (Element) (previousElementXPath.selectSingleNode(jdomDocument));
+        Element previousElement = (Element) XPathCache.getInstance().selectSingleNode(jdomDocument, xPathExpression,
+                getNamespaceBindings(rootElement.getNamespaceURI()));
         int previousElementIndex = previousElement.getParent().indexOf(previousElement);
         previousElement.getParent().getContent().add(previousElementIndex + 1, element);
     }
@@ -109,12 +105,8 @@ public abstract class AbstractXMLConfigurator extends AbstractConfigurator {
      * @throws JDOMException raised if there was a problem manipulating the JDOM structure.
      */
     public void setElementAttribute(Element scopeElement, String xPathExpression, String attributeName, String attributeValue) throws JDOMException {
-        XPath xPath = XPath.newInstance(xPathExpression);
-        String namespaceURI = scopeElement.getDocument().getRootElement().getNamespaceURI();
-        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
-            xPath.addNamespace("xp", namespaceURI);
-        }
-        List<Element> elementList = (List<Element>) xPath.selectNodes(scopeElement);
+        List<Element> elementList = (List<Element>) XPathCache.getInstance().selectNodes(scopeElement, xPathExpression,
+                getNamespaceBindings(scopeElement.getDocument().getRootElement().getNamespaceURI()));
         for (Element element : elementList) {
             element.setAttribute(attributeName, attributeValue);
         }
@@ -137,21 +129,13 @@ public abstract class AbstractXMLConfigurator extends AbstractConfigurator {
     }
 
     public Element getElement(Element scopeElement, String xPathExpression, String namespaceURI) throws JDOMException {
-        XPath xPath = XPath.newInstance(xPathExpression);
-        if ((namespaceURI != null) && (namespaceURI.length() > 0)) {
-            xPath.addNamespace("xp", namespaceURI);
-        }
-        return (Element) xPath.selectSingleNode(scopeElement);
+        return (Element) XPathCache.getInstance().selectSingleNode(scopeElement, xPathExpression, getNamespaceBindings(namespaceURI));
     }
 
     public List<Element> getElements(Element scopeElement, String xPathExpression) throws JDOMException {
         List<Element> elems = new LinkedList<Element>();
-        XPath xPath = XPath.newInstance(xPathExpression);
-        String namespaceURI = scopeElement.getDocument().getRootElement().getNamespaceURI();
-        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
-            xPath.addNamespace("xp", namespaceURI);
-        }
-        for (Object obj : xPath.selectNodes(scopeElement)) {
+        for (Object obj : XPathCache.getInstance().selectNodes(scopeElement, xPathExpression,
+                getNamespaceBindings(scopeElement.getDocument().getRootElement().getNamespaceURI()))) {
             if (obj instanceof Element) {
                 elems.add((Element) obj);
             }
@@ -160,6 +144,17 @@ public abstract class AbstractXMLConfigurator extends AbstractConfigurator {
         return elems;
     }
     
+    /**
+     * Returns the namespace bindings of the XPath queries of this class : the "xp" prefix is bound to the given
+     * namespace URI if it is not empty.
+     */
+    private static Map<String, String> getNamespaceBindings(String namespaceURI) {
+        if ((namespaceURI != null) && (namespaceURI.length() > 0)) {
+            return Collections.singletonMap("xp", namespaceURI);
+        }
+        return Collections.emptyMap();
+    }
+
     /**
      * Removes matching element from the document.
      * 
@@ -46,13 +46,11 @@ package org.jahia.configuration.configurators;
 import org.codehaus.plexus.util.StringUtils;
 import org.jahia.configuration.logging.AbstractLogger;
 import org.jdom.*;
-import org.jdom.xpath.XPath;
 import org.jdom.input.SAXBuilder;
 
 import java.io.File;
 import java.io.InputStreamReader;
 import java.util.Map;
-import java.util.List;
 
 /**
  * Configurator for Jackrabbit's repository.xml file.
@@ -83,14 +81,12 @@ public class JackrabbitConfigurator extends AbstractXMLConfigurator {
             Namespace namespace = repositoryElement.getNamespace();
 
             String schema = getValue(dbProperties, "jahia.jackrabbit.schema");
-            XPath databaseTypeXPath = XPath.newInstance("//Repository/DataSources/DataSource/param[@name=\"databaseType\"]");
-            for (Element paramElement : (List<Element>) databaseTypeXPath.selectNodes(jdomDocument)) {
+            for (Element paramElement : getElements(repositoryElement, "//Repository/DataSources/DataSource/param[@name=\"databaseType\"]")) {
                 paramElement.setAttribute("value", schema);
             }
             
             // we must first check if the cluster nodes are present so that they will be configured by the next queries.
-            XPath clusterXPath = XPath.newInstance("//Cluster");
-            Element clusterElement = (Element) clusterXPath.selectSingleNode(jdomDocument);
+            Element clusterElement = getElement(repositoryElement, "//Cluster");
             Element journalElement;
             if (clusterElement != null) {
                 journalElement = clusterElement.getChild("Journal");
@@ -113,7 +109,7 @@ public class JackrabbitConfigurator extends AbstractXMLConfigurator {
             }
             
             // backward compatibility for version level FileSystem element
-            fs = (Element) XPath.newInstance("//Versioning/FileSystem").selectSingleNode(jdomDocument);
+            fs = getElement(repositoryElement, "//Versioning/FileSystem");
             if (fs != null && fs.getAttributeValue("class").equals("@FILESYSTEM_CLASS@")) {
             	fs.setAttribute("class", "org.apache.jackrabbit.core.fs.local.LocalFileSystem");
             	removeElementIfExists(repositoryElement, "//Versioning/FileSystem/param[@name=\"dataSourceName\"]");
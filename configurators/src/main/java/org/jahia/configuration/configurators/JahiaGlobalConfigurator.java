@@ -295,6 +295,10 @@ public class JahiaGlobalConfigurator {
                     new VFSConfigFile(fsManager, jeeApplicationLocation + "/META-INF/application.xml"),
                     jeeApplicationLocation + "/META-INF/application.xml");
         }
+
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug("XPath expression cache: " + XPathCache.getInstance());
+        }
     }
 
     private ConfigFile readJahiaNodeProperties(String sourceWebAppPath, FileSystemManager fsManager)
@@ -46,7 +46,6 @@ package org.jahia.configuration.configurators;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.input.SAXBuilder;
-import org.jdom.xpath.XPath;
 
 import java.io.File;
 import java.io.InputStreamReader;
@@ -73,7 +72,7 @@ public class TomcatContextXmlConfigurator extends AbstractXMLConfigurator {
 
             setElementAttribute(root, "/Context/Resource", "password", getValue(dbProperties, "jahia.database.pass"));
 
-            Element resource = (Element)XPath.newInstance("/Context/Resource").selectSingleNode(root);
+            Element resource = getElement(root, "/Context/Resource");
             if (resource.getAttributeValue("username") != null) {
             	resource.setAttribute("username", getValue(dbProperties, "jahia.database.user"));
             }
@@ -43,6 +43,8 @@
  */
 package org.jahia.utils.maven.plugin;
 
+import java.io.File;
+
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -83,9 +85,18 @@ public abstract class AetherAwareMojo extends AbstractMojo {
      */
     protected MavenProject project;
 
+    /**
+     * The directory in which the resolved dependency graphs are persisted, so that the next builds don't have to
+     * resolve them again. If not set, the graphs are only shared between the mojo executions of the current build.
+     *
+     * @parameter expression="${jahia.dependencyGraphCacheDirectory}"
+     */
+    protected File dependencyGraphCacheDirectory;
+
     protected AetherHelper getAetherHelper() throws MojoExecutionException {
         if (aetherHelper == null) {
-            aetherHelper = AetherHelperFactory.create(container, project, mavenSession, getLog());
+            aetherHelper = AetherHelperFactory.create(container, project, mavenSession,
+                    dependencyGraphCacheDirectory, getLog());
         }
         return aetherHelper;
     }
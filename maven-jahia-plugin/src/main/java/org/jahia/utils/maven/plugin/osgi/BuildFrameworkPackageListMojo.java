@@ -61,7 +61,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
@@ -186,8 +190,32 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
      */
     protected String propertyFileBootDelegationPropertyName = "org.osgi.framework.bootdelegation";
 
-    private List<Pattern> artifactExclusionPatterns = new ArrayList<Pattern>();
-    private List<Pattern> packageExclusionPatterns = new ArrayList<Pattern>();
+    /**
+     * Number of worker threads used to scan the dependency JARs and the JARs of the JAR directories. The results of
+     * the scans are merged in the same order as the serial scan, so the generated package list doesn't depend on it.
+     * A value of 1 scans the JARs one after the other.
+     *
+     * @parameter expression="${jahia.frameworkPackageList.scanThreads}"
+     */
+    protected int jarScanThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * If activated, the package versions extracted from each JAR are kept in the JAR scan cache file, and the JARs
+     * that haven't changed since the previous run are not scanned again.
+     *
+     * @parameter expression="${jahia.frameworkPackageList.incremental}" default-value="false"
+     */
+    protected boolean incrementalScan = false;
+
+    /**
+     * @parameter default-value="${project.build.directory}/framework-package-list/jar-scan-cache.json"
+     */
+    protected File jarScanCacheFile;
+
+    private JarScanCache jarScanCache;
+
+    private ExclusionMatcher artifactExclusionMatcher = new ExclusionMatcher();
+    private ExclusionMatcher packageExclusionMatcher = new ExclusionMatcher();
 
     private class VersionLocation {
         private String location;
@@ -218,11 +246,68 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
             counter++;
         }
 
+        public void incrementCounter(long increment) {
+            counter += increment;
+        }
+
         public long getCounter() {
             return counter;
         }
     }
 
+    /**
+     * The package versions found by the scan of a single JAR. The versions of each package are kept in the order they
+     * were first found, so that merging them into the package version counts gives exactly the same result as scanning
+     * the JAR directly into them.
+     */
+    private class JarScanResult {
+        private final String location;
+        private final Map<String, Map<String, VersionLocation>> packageVersions = new LinkedHashMap<String, Map<String, VersionLocation>>();
+
+        public JarScanResult(String location) {
+            this.location = location;
+        }
+
+        public void addPackageVersion(String version, String specificationVersion, String packageName) {
+            addPackageVersion(version, specificationVersion, packageName, 1);
+        }
+
+        public void addPackageVersion(String version, String specificationVersion, String packageName, long count) {
+            Map<String, VersionLocation> versionLocations = packageVersions.get(packageName);
+            if (versionLocations == null) {
+                versionLocations = new LinkedHashMap<String, VersionLocation>();
+                packageVersions.put(packageName, versionLocations);
+            }
+            VersionLocation versionLocation = versionLocations.get(version);
+            if (versionLocation == null) {
+                versionLocation = new VersionLocation(location, version, specificationVersion);
+                versionLocations.put(version, versionLocation);
+            }
+            versionLocation.incrementCounter(count);
+        }
+
+        public List<JarScanCache.PackageVersion> getPackageVersions() {
+            List<JarScanCache.PackageVersion> result = new ArrayList<JarScanCache.PackageVersion>();
+            for (Map.Entry<String, Map<String, VersionLocation>> packageVersion : packageVersions.entrySet()) {
+                for (VersionLocation versionLocation : packageVersion.getValue().values()) {
+                    result.add(new JarScanCache.PackageVersion(packageVersion.getKey(), versionLocation.getVersion(),
+                            versionLocation.getSpecificationVersion(), versionLocation.getCounter()));
+                }
+            }
+            return result;
+        }
+
+        public void mergeInto(Map<String, Map<String, Map<String, VersionLocation>>> packageVersionCounts) throws IOException {
+            for (Map.Entry<String, Map<String, VersionLocation>> packageVersion : packageVersions.entrySet()) {
+                for (VersionLocation versionLocation : packageVersion.getValue().values()) {
+                    updateVersionLocationCounts(packageVersionCounts, location, versionLocation.getVersion(),
+                            versionLocation.getSpecificationVersion(), packageVersion.getKey(),
+                            versionLocation.getCounter());
+                }
+            }
+        }
+    }
+
     public void setPackageExcludes(List<String> packageExcludes) {
         this.packageExcludes = packageExcludes;
     }
@@ -238,6 +323,10 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
         Map<String, Set<String>> packageVersions = new TreeMap<String, Set<String>>();
         String generatedPackageList = null;
 
+        if (incrementalScan && jarScanCacheFile != null) {
+            jarScanCache = new JarScanCache(jarScanCacheFile, getLog());
+        }
+
         try {
             scanExistingExports(packageVersionCounts);
 
@@ -256,6 +345,12 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
 
             }
 
+            if (jarScanCache != null) {
+                getLog().info("Incremental scan: reused the previous scan of " + jarScanCache.getReusedCount() +
+                        " JAR(s), scanned " + jarScanCache.getScannedCount() + " new or changed JAR(s).");
+                jarScanCache.save();
+            }
+
             scanExistingManifest(packageVersionCounts);
 
             excludeSystemPackages(packageVersionCounts);
@@ -370,11 +465,8 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
             } else {
                 artifactPattern = artifactExclude;
             }
-            groupPattern = groupPattern.replaceAll("\\.", "\\\\.");
-            groupPattern = groupPattern.replaceAll("\\*", ".*");
-            artifactPattern = artifactPattern.replaceAll("\\.", "\\\\.");
-            artifactPattern = artifactPattern.replaceAll("\\*", ".*");
-            artifactExclusionPatterns.add(Pattern.compile(groupPattern + ":" + artifactPattern));
+            artifactExclusionMatcher.addPattern(Pattern.compile(ExclusionMatcher.globToRegex(groupPattern) + ":"
+                    + ExclusionMatcher.globToRegex(artifactPattern)));
         }
     }
 
@@ -388,21 +480,12 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
             packageExcludes.addAll(extraPackageExcludes);
         }
         for (String packageExclude : packageExcludes) {
-            String packageExcludePattern = packageExclude;
-            packageExcludePattern = packageExcludePattern.replaceAll("\\.", "\\\\.");
-            packageExcludePattern = packageExcludePattern.replaceAll("\\*", ".*");
-            packageExclusionPatterns.add(Pattern.compile(packageExcludePattern));
+            packageExclusionMatcher.addPattern(ExclusionMatcher.globToPattern(packageExclude));
         }
     }
 
     private boolean isPackageExcluded(String packageExport) {
-        for (Pattern packageExclusionPattern : packageExclusionPatterns) {
-            Matcher packageExclusionMatcher = packageExclusionPattern.matcher(packageExport);
-            if (packageExclusionMatcher.matches()) {
-                return true;
-            }
-        }
-        return false;
+        return packageExclusionMatcher.matches(packageExport);
     }
 
     private void scanExistingExports(Map<String, Map<String, Map<String, VersionLocation>>> packageVersionCounts) {
@@ -543,17 +626,11 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
 
     private void scanDependencies(Map<String, Map<String, Map<String, VersionLocation>>> packageVersionCounts) throws IOException {
         getLog().info("Scanning project dependencies...");
+        Map<File, String> jarVersions = new LinkedHashMap<File, String>();
         for (Artifact artifact : project.getArtifacts()) {
-            String exclusionMatched = null;
-            for (Pattern exclusionPattern : artifactExclusionPatterns) {
-                Matcher exclusionMatcher = exclusionPattern.matcher(artifact.getGroupId() + ":" + artifact.getArtifactId());
-                if (exclusionMatcher.matches()) {
-                    exclusionMatched = artifact.getGroupId() + ":" + artifact.getArtifactId();
-                    break;
-                }
-            }
-            if (exclusionMatched != null) {
-                getLog().info("Matched exclusion " + exclusionMatched + ", ignoring artifact.");
+            String artifactId = artifact.getGroupId() + ":" + artifact.getArtifactId();
+            if (artifactExclusionMatcher.matches(artifactId)) {
+                getLog().info("Matched exclusion " + artifactId + ", ignoring artifact.");
                 continue;
             }
 
@@ -565,13 +642,102 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
                     continue;
                 }
                 getLog().debug("Scanning dependency " + artifact.getFile());
-                scanJar(packageVersionCounts, artifact.getFile(), artifact.getBaseVersion());
+                jarVersions.put(artifact.getFile(), artifact.getBaseVersion());
             }
         }
+        scanJars(packageVersionCounts, jarVersions);
     }
 
-    private void scanJar(Map<String, Map<String, Map<String, VersionLocation>>> packageVersionCounts, File jarFile, String defaultVersion) throws IOException {
-        JarInputStream jarInputStream = new JarInputStream(new FileInputStream(jarFile));
+    /**
+     * Scans the given JARs, concurrently if more than one scan thread is configured, and merges the results in the
+     * iteration order of the given map.
+     */
+    private void scanJars(Map<String, Map<String, Map<String, VersionLocation>>> packageVersionCounts, Map<File, String> jarVersions) throws IOException {
+        if (jarScanThreads <= 1 || jarVersions.size() <= 1) {
+            for (Map.Entry<File, String> jarVersion : jarVersions.entrySet()) {
+                scanJar(jarVersion.getKey(), jarVersion.getValue()).mergeInto(packageVersionCounts);
+            }
+            return;
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(jarScanThreads, jarVersions.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jahia-framework-package-scanner-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<JarScanResult>> jarScans = new ArrayList<Future<JarScanResult>>();
+            for (final Map.Entry<File, String> jarVersion : jarVersions.entrySet()) {
+                jarScans.add(executorService.submit(new Callable<JarScanResult>() {
+                    @Override
+                    public JarScanResult call() throws Exception {
+                        return scanJar(jarVersion.getKey(), jarVersion.getValue());
+                    }
+                }));
+            }
+            for (Future<JarScanResult> jarScan : jarScans) {
+                try {
+                    jarScan.get().mergeInto(packageVersionCounts);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while scanning JARs", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Error while scanning JARs", e.getCause());
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private JarScanResult scanJar(File jarFile, String defaultVersion) throws IOException {
+        String location = jarFile.getCanonicalPath();
+        JarScanResult jarScanResult = new JarScanResult(location);
+        if (jarScanCache == null) {
+            JarInputStream jarInputStream = new JarInputStream(new FileInputStream(jarFile));
+            try {
+                scanJar(jarScanResult, jarInputStream, jarFile, defaultVersion);
+            } finally {
+                jarInputStream.close();
+            }
+            return jarScanResult;
+        }
+
+        List<JarScanCache.PackageVersion> cachedPackageVersions = jarScanCache.get(jarFile, location, defaultVersion);
+        if (cachedPackageVersions != null) {
+            getLog().debug("Reusing previous scan of " + jarFile);
+            for (JarScanCache.PackageVersion packageVersion : cachedPackageVersions) {
+                jarScanResult.addPackageVersion(packageVersion.getVersion(), packageVersion.getSpecificationVersion(),
+                        packageVersion.getPackageName(), packageVersion.getCount());
+            }
+            return jarScanResult;
+        }
+        // the digest of the JAR is computed while it is read, so that it is only read once
+        MessageDigest digest = JarScanCache.newDigest();
+        DigestInputStream digestInputStream = new DigestInputStream(new FileInputStream(jarFile), digest);
+        JarInputStream jarInputStream = new JarInputStream(digestInputStream);
+        try {
+            scanJar(jarScanResult, jarInputStream, jarFile, defaultVersion);
+            // the central directory at the end of the JAR isn't read by the JAR input stream
+            byte[] buffer = new byte[8192];
+            while (digestInputStream.read(buffer) != -1) {
+                // only update the digest
+            }
+        } finally {
+            jarInputStream.close();
+        }
+        jarScanCache.put(jarFile, location, defaultVersion, JarScanCache.toString(digest),
+                jarScanResult.getPackageVersions());
+        return jarScanResult;
+    }
+
+    private void scanJar(JarScanResult jarScanResult, JarInputStream jarInputStream, File jarFile, String defaultVersion) throws IOException {
         Manifest jarManifest = jarInputStream.getManifest();
         String specificationVersion = null;
         if (jarManifest == null) {
@@ -601,7 +767,7 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
                         String[] packageNames = manifestElement.getValueComponents();
                         String version = manifestElement.getAttribute("version");
                         for (String packageName : packageNames) {
-                            updateVersionLocationCounts(packageVersionCounts, jarFile.getCanonicalPath(), version, version, packageName);
+                            jarScanResult.addPackageVersion(version, version, packageName);
                         }
                     }
                 }
@@ -642,7 +808,7 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
                     }
                     if (packageVersion != null) {
                         getLog().info("Found package version in " + jarFile.getName() + " MANIFEST : " + packageName + " v" + packageVersion);
-                        updateVersionLocationCounts(packageVersionCounts, jarFile.getCanonicalPath(), packageVersion, specificationVersion, packageName);
+                        jarScanResult.addPackageVersion(packageVersion, specificationVersion, packageName);
                     }
                 }
             }
@@ -663,12 +829,11 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
                             !entryPackage.startsWith("OSGI-OPT") &&
                             !entryPackage.startsWith("WEB-INF") &&
                             !entryPackage.startsWith("org.osgi")) {
-                        updateVersionLocationCounts(packageVersionCounts, jarFile.getCanonicalPath(), defaultVersion, specificationVersion, entryPackage);
+                        jarScanResult.addPackageVersion(defaultVersion, specificationVersion, entryPackage);
                     }
                 }
             }
         }
-        jarInputStream.close();
     }
 
     private void excludePackages(Map<String, Map<String, Map<String, VersionLocation>>> packageVersionCounts, String propertyFileExclusionPropertyName) throws IOException, MojoExecutionException {
@@ -686,25 +851,22 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
             }
             ManifestValueParser manifestValueParser = new ManifestValueParser(propertyFileExclusionPropertyName, packageExclusionList, true);
             List<ManifestValueClause> exclusionValueClauses = manifestValueParser.getManifestValueClauses();
-            List<String> excludedPatterns = new ArrayList<String>();
-            List<String> excludedPackages = new ArrayList<String>();
+            ExclusionMatcher exclusionMatcher = new ExclusionMatcher();
             for (ManifestValueClause exclusionValueClause : exclusionValueClauses) {
                 for (String exclusionPath : exclusionValueClause.getPaths()) {
                     if (exclusionPath.endsWith(".*")) {
-                        excludedPatterns.add(exclusionPath.substring(0, exclusionPath.length() - 2));
+                        exclusionMatcher.addPrefix(exclusionPath.substring(0, exclusionPath.length() - 2));
                     } else {
-                        excludedPackages.add(exclusionPath);
+                        exclusionMatcher.addLiteral(exclusionPath);
                     }
                 }
             }
-            for (String pack : packageVersionCounts.keySet()) {
-                for (String pattern : excludedPatterns) {
-                    if (pack.startsWith(pattern)) {
-                        excludedPackages.add(pack);
-                    }
+            Iterator<String> packageIterator = packageVersionCounts.keySet().iterator();
+            while (packageIterator.hasNext()) {
+                if (exclusionMatcher.matches(packageIterator.next())) {
+                    packageIterator.remove();
                 }
             }
-            packageVersionCounts.keySet().removeAll(excludedPackages);
         } finally {
             IOUtils.closeQuietly(fileInputStream);
         }
@@ -719,6 +881,15 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
                                              String newVersion,
                                              String specificationVersion,
                                              String packageName) throws IOException {
+        updateVersionLocationCounts(packageVersionCounts, originLocation, newVersion, specificationVersion, packageName, 1);
+    }
+
+    private void updateVersionLocationCounts(Map<String, Map<String, Map<String, VersionLocation>>> packageVersionCounts,
+                                             String originLocation,
+                                             String newVersion,
+                                             String specificationVersion,
+                                             String packageName,
+                                             long count) throws IOException {
         // first check if we've already processed this package
         Map<String, Map<String, VersionLocation>> versionLocations = packageVersionCounts.get(packageName);
         if (versionLocations == null) {
@@ -728,14 +899,14 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
         Map<String, VersionLocation> existingVersionLocations = versionLocations.get(originLocation);
         if (existingVersionLocations != null && existingVersionLocations.containsKey(newVersion)) {
             VersionLocation existingVersionLocation = existingVersionLocations.get(newVersion);
-            existingVersionLocation.incrementCounter();
+            existingVersionLocation.incrementCounter(count);
             existingVersionLocations.put(newVersion, existingVersionLocation);
         } else {
             if (existingVersionLocations == null) {
                 existingVersionLocations = new HashMap<String, VersionLocation>();
             }
             VersionLocation existingVersionLocation = new VersionLocation(originLocation, cleanupVersion(newVersion), specificationVersion);
-            existingVersionLocation.incrementCounter();
+            existingVersionLocation.incrementCounter(count);
             existingVersionLocations.put(newVersion, existingVersionLocation);
         }
         versionLocations.put(originLocation, existingVersionLocations);
@@ -761,6 +932,7 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
             ds.setCaseSensitive(true);
             ds.scan();
             String[] includedFiles = ds.getIncludedFiles();
+            Map<File, String> jarVersions = new LinkedHashMap<File, String>();
             for (String includeFile : includedFiles) {
                 String version = null;
                 File includedFileFile = new File(jarDirectoryFile, includeFile);
@@ -776,8 +948,9 @@ public class BuildFrameworkPackageListMojo extends AetherAwareMojo {
                     // @todo let's try to extract the version from the file name.
                 }
 
-                scanJar(packageVersionCounts, includedFileFile, version);
+                jarVersions.put(includedFileFile, version);
             }
+            scanJars(packageVersionCounts, jarVersions);
         }
     }
 
@@ -57,6 +57,7 @@ import org.codehaus.plexus.archiver.jar.JarArchiver;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.glassfish.jersey.client.ClientProperties;
+import org.jahia.utils.maven.plugin.support.JarManifestRewriter;
 import org.jahia.utils.maven.plugin.support.MavenAetherHelperUtils;
 import org.jahia.utils.osgi.BundleUtils;
 import org.jahia.utils.osgi.ManifestValueClause;
@@ -149,6 +150,32 @@ public class CheckDependenciesMojo extends DependenciesMojo {
      */
     private boolean searchInDependencies = false;
 
+    /**
+     * The engine used to extract the class references when searching package uses : BND for a full BND analysis of
+     * the classes, or CONSTANT_POOL to read the class files directly, which is faster.
+     *
+     * @parameter expression="${jahia.classDependencyEngine}" default-value="BND"
+     */
+    protected String classDependencyEngine = "BND";
+
+    /**
+     * If activated, the artifacts containing the missing packages are first looked up in a local index built from
+     * the JARs of the local repository and the entries of the dependency parsing cache, stored in the dependency
+     * parsing cache directory. The index is only updated when missing packages are found, with the artifacts added
+     * since its last update.
+     *
+     * @parameter expression="${jahia.packageArtifactIndex}" default-value="false"
+     */
+    protected boolean usePackageArtifactIndex = false;
+
+    /**
+     * If activated, the artifacts containing the missing packages that were not found in the local index are searched
+     * using the Maven Central search service. Should be deactivated on builds without network access.
+     *
+     * @parameter expression="${jahia.searchMavenCentral}" default-value="true"
+     */
+    protected boolean searchMavenCentral = true;
+
     /**
      * This method will use the public REST API at search.maven.org to search for Maven dependencies that contain
      * a package using an URL such as :
@@ -300,7 +327,7 @@ public class CheckDependenciesMojo extends DependenciesMojo {
         List<PackageInfo> existingPackageImports = getExistingImportPackages(projectParsingContext);
         explicitPackageImports.addAll(existingPackageImports);
 
-        parsingContextCache = new ParsingContextCache(new File(dependencyParsingCacheDirectory), null);
+        parsingContextCache = createParsingContextCache();
 
         long timer = System.currentTimeMillis();
         int scanned = 0;
@@ -321,6 +348,7 @@ public class CheckDependenciesMojo extends DependenciesMojo {
         getLog().info(
                 "Scanned " + scanned + " project dependencies in " + (System.currentTimeMillis() - timer)
                         + " ms. Currently we have " + projectParsingContext.getLocalPackages().size() + " project packages.");
+        logSharedParsingCacheStatistics();
 
         projectParsingContext.postProcess();
 
@@ -394,8 +422,8 @@ public class CheckDependenciesMojo extends DependenciesMojo {
                         }
 
 
-//                        PackageInfo importPackageInfo = new PackageInfo(importPackagePath, clauseVersion, optionalClause, artifactFile.getPath(), projectParsingContext);
-//                        if (!optionalClause) {
+                        PackageInfo importPackageInfo = new PackageInfo(importPackagePath, clauseVersion, optionalClause, artifactFile.getPath(), projectParsingContext);
+                        if (!optionalClause) {
 //                            if (PackageUtils.containsMatchingVersion(allPackageExports, importPackageInfo)
 //                                    && !importPackageInfo.isOptional()) {
 //                                // we must now check if the import is strict and if the available export is part of
@@ -414,12 +442,12 @@ public class CheckDependenciesMojo extends DependenciesMojo {
 //                                    }
 //                                }
 //                            }
-//                            if (!PackageUtils.containsIgnoreVersion(allPackageExports, importPackageInfo) &&
-//                                    !PackageUtils.containsIgnoreVersion(systemPackages, importPackageInfo) &&
-//                                    !PackageUtils.containsIgnoreVersion(projectParsingContext.getLocalPackages(), importPackageInfo)) {
-//                                missingPackageExports.add(importPackageInfo);
-//                            }
-//                        }
+                            if (!PackageUtils.containsIgnoreVersion(allPackageExports, importPackageInfo) &&
+                                    !PackageUtils.containsIgnoreVersion(systemPackages, importPackageInfo) &&
+                                    !PackageUtils.containsIgnoreVersion(projectParsingContext.getLocalPackages(), importPackageInfo)) {
+                                missingPackageExports.add(importPackageInfo);
+                            }
+                        }
                         visitedPackageImports.add(importPackagePath);
                     }
                 }
@@ -454,19 +482,40 @@ public class CheckDependenciesMojo extends DependenciesMojo {
             }
 
             getLog().info("Search for code origin of "+missingPackageExports.size()+" missing package imports, please wait...");
-            final Map<String, Map<String, Artifact>> packageResults = FindPackageUsesMojo.findPackageUses(missingPackageNames, project.getArtifacts(), project, outputDirectory, searchInDependencies, getLog());
+            final Map<String, Map<String, Artifact>> packageResults = FindPackageUsesMojo.findPackageUses(missingPackageNames, project.getArtifacts(), project, outputDirectory, searchInDependencies, FindPackageUsesMojo.getClassDependencyEngine(classDependencyEngine), getLog());
             if (packageResults.size() == 0) {
                 getLog().warn("No results found in project files, use the <searchInDependencies>true</searchInDependencies> parameter to make the plugin look in all the dependencies (which is MUCH slower !)");
             }
 
+            PackageArtifactIndex packageArtifactIndex = null;
+            if (usePackageArtifactIndex) {
+                packageArtifactIndex = updatePackageArtifactIndex();
+            }
+
             StringBuilder optionaDirectivesBuilder = new StringBuilder();
             StringBuilder errorMessageBuilder = new StringBuilder();
             String separator = "";
             for (PackageInfo missingPackageExport : missingPackageExports) {
                 optionaDirectivesBuilder.append(separator);
                 errorMessageBuilder.append(missingPackageExport);
-                List<String> artifactIDs = findPackageInMavenCentral(missingPackageExport.getName());
-                if (artifactIDs.size() > 0) {
+                List<String> localArtifactIDs = packageArtifactIndex != null ?
+                        packageArtifactIndex.findArtifacts(missingPackageExport.getName()) : Collections.<String>emptyList();
+                List<String> artifactIDs = localArtifactIDs.isEmpty() && searchMavenCentral ?
+                        findPackageInMavenCentral(missingPackageExport.getName()) : Collections.<String>emptyList();
+                if (localArtifactIDs.size() > 0) {
+                    errorMessageBuilder.append(" (available from local artifacts ");
+                    errorMessageBuilder.append(StringUtils.join(localArtifactIDs.subList(0, Math.min(localArtifactIDs.size(), 5)), ", "));
+                    if (localArtifactIDs.size() > 5) {
+                        errorMessageBuilder.append(",... " + (localArtifactIDs.size() - 5) + " more");
+                    }
+                    errorMessageBuilder.append(" )");
+                } else if (!searchMavenCentral) {
+                    if (packageArtifactIndex != null) {
+                        errorMessageBuilder.append(" (not found in local artifacts, is it part of JDK ?)");
+                    } else {
+                        errorMessageBuilder.append(" (origin not searched, activate jahia.packageArtifactIndex or jahia.searchMavenCentral to search for it)");
+                    }
+                } else if (artifactIDs.size() > 0) {
                     String artifactList = StringUtils.join(artifactIDs, ", ");
                     errorMessageBuilder.append(" (available from Maven Central artifacts ");
                     errorMessageBuilder.append(artifactList);
@@ -526,6 +575,28 @@ public class CheckDependenciesMojo extends DependenciesMojo {
         }
     }
 
+    private PackageArtifactIndex updatePackageArtifactIndex() {
+        long indexStart = System.currentTimeMillis();
+        File parsingCacheDirectory = new File(dependencyParsingCacheDirectory);
+        PackageArtifactIndex packageArtifactIndex = PackageArtifactIndex.open(
+                new File(parsingCacheDirectory, PackageArtifactIndex.INDEX_FILE_NAME), getLog());
+        if (mavenSession != null && mavenSession.getLocalRepository() != null) {
+            packageArtifactIndex.addLocalRepository(new File(mavenSession.getLocalRepository().getBasedir()));
+        }
+        packageArtifactIndex.addParsingContextCache(parsingCacheDirectory);
+        if (parsingContextCache.getContentHashStore() != null) {
+            try {
+                packageArtifactIndex.addContentHashStore(parsingContextCache.getContentHashStore());
+            } catch (IOException e) {
+                getLog().warn("Error indexing the packages of the dependency parsing cache: " + e.getMessage());
+            }
+        }
+        packageArtifactIndex.save();
+        getLog().info("Updated local package artifact index with " + packageArtifactIndex.size() + " packages in " +
+                (System.currentTimeMillis() - indexStart) + "ms");
+        return packageArtifactIndex;
+    }
+
     private boolean containsPackage(List<PackageInfo> packages, String packageName) {
         for (PackageInfo packageInfo : packages) {
             if (packageInfo.getName().equals(packageName)) {
@@ -544,11 +615,42 @@ public class CheckDependenciesMojo extends DependenciesMojo {
             separator=",";
         }
         manifest.getMainAttributes().putValue("Import-Package", sb.toString());
+        try {
+            JarManifestRewriter.rewriteManifest(artifactFile, manifest);
+            getLog().info("Replaced META-INF/MANIFEST.MF file in JAR " + artifactFile);
+        } catch (IOException e) {
+            getLog().warn("Couldn't replace META-INF/MANIFEST.MF file directly in JAR " + artifactFile +
+                    ", the JAR will be unpacked and packed again: " + e.getMessage());
+            if (!repackBundle(manifest, artifactFile)) {
+                return;
+            }
+        }
+
+        Artifact mainArtifact = project.getArtifact();
+
+        if ( "bundle".equals( mainArtifact.getType() ) )
+        {
+            // workaround for MNG-1682: force maven to install artifact using the "jar" handler
+            mainArtifact.setArtifactHandler(artifactHandlerManager.getArtifactHandler("jar"));
+        }
+
+        if ( null == classifier || classifier.trim().length() == 0 )
+        {
+            mainArtifact.setFile( artifactFile );
+        }
+        else
+        {
+            mavenProjectHelper.attachArtifact(project, artifactFile, classifier);
+        }
+
+    }
+
+    private boolean repackBundle(Manifest manifest, File artifactFile) {
         File expandedJarDirectory = unpackBundle(artifactFile);
         getLog().info("Extract JAR " + artifactFile + " contents to directory " + expandedJarDirectory);
         if (expandedJarDirectory == null) {
             getLog().error("Error unpacking artifact " + artifactFile + " aborting bundle update");
-            return;
+            return false;
         }
         File manifestFile = new File(expandedJarDirectory, "META-INF/MANIFEST.MF");
         if (manifestFile.exists()) {
@@ -562,10 +664,10 @@ public class CheckDependenciesMojo extends DependenciesMojo {
             manifest.write(manifestFileOutputStream);
         } catch (FileNotFoundException e) {
             getLog().error("Error writing new META-INF/MANIFEST.MF file", e);
-            return;
+            return false;
         } catch (IOException e) {
             getLog().error("Error writing new META-INF/MANIFEST.MF file", e);
-            return;
+            return false;
         } finally {
             IOUtils.closeQuietly(manifestFileOutputStream);
         }
@@ -577,24 +679,7 @@ public class CheckDependenciesMojo extends DependenciesMojo {
         } catch (IOException e) {
             getLog().error("Error purging temporary extracted JAR directory " + expandedJarDirectory, e);
         }
-
-        Artifact mainArtifact = project.getArtifact();
-
-        if ( "bundle".equals( mainArtifact.getType() ) )
-        {
-            // workaround for MNG-1682: force maven to install artifact using the "jar" handler
-            mainArtifact.setArtifactHandler(artifactHandlerManager.getArtifactHandler("jar"));
-        }
-
-        if ( null == classifier || classifier.trim().length() == 0 )
-        {
-            mainArtifact.setFile( artifactFile );
-        }
-        else
-        {
-            mavenProjectHelper.attachArtifact(project, artifactFile, classifier);
-        }
-
+        return true;
     }
 
     private static final String DELIM_START = "${";
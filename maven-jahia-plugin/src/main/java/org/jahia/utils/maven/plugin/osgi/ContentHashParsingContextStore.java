@@ -0,0 +1,310 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.jahia.utils.osgi.parsers.ParsingContext;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed storage for the {@link ParsingContextCache}. Parsing contexts are keyed by the SHA-1 digest of
+ * the artifact file, so that an identical JAR hits the cache whatever its location on disk or the machine the cache
+ * was built on.
+ *
+ * The storage is made of two files: a data file containing the parsing contexts encoded in the binary Smile format,
+ * appended one after the other, and an index file made of a header (magic number and cache model version) followed
+ * by fixed size records (digest, data offset, data length). The index is memory-mapped when the store is opened and
+ * new entries are appended to both files.
+ */
+class ContentHashParsingContextStore {
+
+    private static final int INDEX_MAGIC = 0x4a504349; // "JPCI"
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final int DIGEST_LENGTH = 20;
+    private static final int RECORD_LENGTH = DIGEST_LENGTH + 8 + 4;
+
+    private final File indexFile;
+    private final File dataFile;
+    private final String cacheModelVersion;
+    private final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+
+    /**
+     * Data offset and length of each stored parsing context, by hexadecimal content digest.
+     */
+    private final Map<String, long[]> entries = new HashMap<String, long[]>();
+
+    /**
+     * Content digests of the stored parsing contexts, in storage order.
+     */
+    private final List<String> recordKeys = new ArrayList<String>();
+
+    /**
+     * Already computed digests, by file path, last modification date and size.
+     */
+    private final Map<String, byte[]> fileDigests = new HashMap<String, byte[]>();
+
+    ContentHashParsingContextStore(File storeLocation, String cacheModelVersion) {
+        if (!storeLocation.exists() && !storeLocation.mkdirs()) {
+            throw new RuntimeException("Content cache location couldn't be created at " + storeLocation + ", aborting !");
+        }
+        this.indexFile = new File(storeLocation, "index.bin");
+        this.dataFile = new File(storeLocation, "data.bin");
+        this.cacheModelVersion = cacheModelVersion;
+        try {
+            if (!loadIndex()) {
+                resetStore();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening content cache index " + indexFile + ", aborting !", e);
+        }
+    }
+
+    /**
+     * Returns a new instance of the parsing context stored for the content of the given file, or null if there is none.
+     */
+    public synchronized ParsingContext get(File file) throws IOException {
+        long[] entry = entries.get(toKey(getDigest(file)));
+        if (entry == null) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(dataFile, "r");
+        try {
+            return read(randomAccessFile, entry);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns new instances of the parsing contexts stored from the given record position on, in storage order, so
+     * that a caller that remembers the {@link #getRecordCount() record count} may only read the new entries.
+     */
+    public synchronized List<ParsingContext> getParsingContexts(int fromRecord) throws IOException {
+        List<ParsingContext> parsingContexts = new ArrayList<ParsingContext>();
+        if (fromRecord >= recordKeys.size()) {
+            return parsingContexts;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(dataFile, "r");
+        try {
+            for (String recordKey : recordKeys.subList(fromRecord, recordKeys.size())) {
+                parsingContexts.add(read(randomAccessFile, entries.get(recordKey)));
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+        return parsingContexts;
+    }
+
+    /**
+     * Returns the number of records of the store, which only grows until the store is reset.
+     */
+    public synchronized int getRecordCount() {
+        return recordKeys.size();
+    }
+
+    /**
+     * Returns the hexadecimal content digest of the record at the given position, which identifies the record even
+     * if the store was reset since.
+     */
+    public synchronized String getRecordKey(int record) {
+        return recordKeys.get(record);
+    }
+
+    /**
+     * Stores the parsing context for the content of the given file, unless an entry already exists for this content.
+     */
+    public synchronized void put(File file, ParsingContext parsingContext) throws IOException {
+        byte[] digest = getDigest(file);
+        String key = toKey(digest);
+        if (entries.containsKey(key)) {
+            return;
+        }
+        byte[] data = objectMapper.writeValueAsBytes(parsingContext);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        FileOutputStream dataOutputStream = new FileOutputStream(dataFile, true);
+        FileOutputStream indexOutputStream = null;
+        try {
+            FileChannel dataChannel = dataOutputStream.getChannel();
+            // protects against concurrent builds sharing the same cache directory
+            FileLock lock = dataChannel.lock();
+            try {
+                long offset = dataChannel.size();
+                dataChannel.write(ByteBuffer.wrap(data), offset);
+                indexOutputStream = new FileOutputStream(indexFile, true);
+                record.put(digest);
+                record.putLong(offset);
+                record.putInt(data.length);
+                record.flip();
+                indexOutputStream.getChannel().write(record);
+                entries.put(key, new long[] {offset, data.length});
+                recordKeys.add(key);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            IOUtils.closeQuietly(indexOutputStream);
+            IOUtils.closeQuietly(dataOutputStream);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean loadIndex() throws IOException {
+        if (!indexFile.exists() || !dataFile.exists()) {
+            return false;
+        }
+        long dataLength = dataFile.length();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel indexChannel = randomAccessFile.getChannel();
+            MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            if (index.remaining() < 4 || index.getInt() != INDEX_MAGIC) {
+                return false;
+            }
+            String indexModelVersion;
+            try {
+                indexModelVersion = readString(index);
+            } catch (RuntimeException e) {
+                return false;
+            }
+            if (!cacheModelVersion.equals(indexModelVersion)) {
+                return false;
+            }
+            byte[] digest = new byte[DIGEST_LENGTH];
+            while (index.remaining() >= RECORD_LENGTH) {
+                index.get(digest);
+                long offset = index.getLong();
+                int length = index.getInt();
+                if (offset >= 0 && length >= 0 && offset + length <= dataLength) {
+                    // ignore records pointing to data that was not completely written
+                    String key = toKey(digest);
+                    if (entries.put(key, new long[] {offset, length}) == null) {
+                        recordKeys.add(key);
+                    }
+                }
+            }
+            return true;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void resetStore() throws IOException {
+        entries.clear();
+        recordKeys.clear();
+        DataOutputStream indexOutputStream = new DataOutputStream(new FileOutputStream(indexFile));
+        try {
+            indexOutputStream.writeInt(INDEX_MAGIC);
+            indexOutputStream.writeUTF(cacheModelVersion);
+        } finally {
+            indexOutputStream.close();
+        }
+        new FileOutputStream(dataFile).close();
+    }
+
+    private ParsingContext read(RandomAccessFile randomAccessFile, long[] entry) throws IOException {
+        byte[] data = new byte[(int) entry[1]];
+        randomAccessFile.seek(entry[0]);
+        randomAccessFile.readFully(data);
+        return objectMapper.readValue(data, ParsingContext.class);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toKey(byte[] digest) {
+        return new String(Hex.encodeHex(digest));
+    }
+
+    private byte[] getDigest(File file) throws IOException {
+        String fileKey = file.getPath() + ":" + file.lastModified() + ":" + file.length();
+        byte[] digest = fileDigests.get(fileKey);
+        if (digest != null) {
+            return digest;
+        }
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        digest = messageDigest.digest();
+        fileDigests.put(fileKey, digest);
+        return digest;
+    }
+
+}
@@ -46,6 +46,7 @@ package org.jahia.utils.maven.plugin.osgi;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.osgi.*;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.felix.bundleplugin.BundlePlugin;
@@ -73,12 +74,12 @@ import org.jahia.utils.osgi.PropertyFileUtils;
 import org.jahia.utils.osgi.parsers.PackageInfo;
 import org.jahia.utils.osgi.parsers.Parsers;
 import org.jahia.utils.osgi.parsers.ParsingContext;
+import org.jahia.utils.osgi.parsers.XPathCache;
 import org.slf4j.Logger;
 
 import java.io.*;
 import java.util.*;
 import java.util.jar.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -157,6 +158,8 @@ public class DependenciesMojo extends BundlePlugin {
 
     protected List<Pattern> excludedJarEntryPatterns;
 
+    protected ExclusionMatcher excludedJarEntryMatcher;
+
     /**
      * @parameter default-value="${project.build.outputDirectory}"
      */
@@ -200,17 +203,51 @@ public class DependenciesMojo extends BundlePlugin {
      */
     protected String dependencyParsingCacheDirectory = null;
 
+    /**
+     * The directory in which the resolved dependency graphs are persisted, so that the next builds don't have to
+     * resolve them again. If not set, the graphs are only shared between the mojo executions of the current build.
+     *
+     * @parameter expression="${jahia.dependencyGraphCacheDirectory}"
+     */
+    protected File dependencyGraphCacheDirectory;
+
+    /**
+     * If activated, the dependency parsing cache entries are keyed by the content of the artifact files instead of
+     * their path, and stored in a binary format with a single index file. Identical JARs then hit the cache even if
+     * the local Maven repository was moved or the cache was built on another machine.
+     *
+     * @parameter default-value="false" expression="${jahia.dependencies.contentHashCache}"
+     */
+    protected boolean contentHashedParsingCache = false;
+
+    /**
+     * Maximum size in megabytes of the in-memory parsing cache shared by all the modules of the build.
+     *
+     * @parameter default-value="256" expression="${jahia.dependencies.sharedCacheSize}"
+     */
+    protected int sharedParsingCacheSize = 256;
+
     /**
      * @parameter default-value="true"
      */
     protected boolean jahiaDependsCapabilitiesActivated = true;
 
+    /**
+     * Number of worker threads used to scan the dependency JARs. A value greater than 1 activates the parallel
+     * scanning mode: the JARs of independent artifacts are scanned concurrently while the results are merged back
+     * into the dependency tree in the same order as the serial scan.
+     *
+     * @parameter default-value="1" expression="${jahia.dependencies.scanThreads}"
+     */
+    protected int dependencyScanThreads = 1;
+
     /**
      * @parameter default-value=","
      */
     protected String jahiaDependsCapabilitiesPrefix = ",";
 
     protected List<Pattern> artifactExclusionPatterns = new ArrayList<Pattern>();
+    protected ExclusionMatcher artifactExclusionMatcher = new ExclusionMatcher();
     protected Logger logger = new SLF4JLoggerToMojoLogBridge(getLog());
     protected ParsingContextCache parsingContextCache;
     protected Collection<String> inlinedPaths = new LinkedHashSet<String>();
@@ -218,7 +255,8 @@ public class DependenciesMojo extends BundlePlugin {
 
     protected AetherHelper getAetherHelper() throws MojoExecutionException {
         if (aetherHelper == null) {
-            aetherHelper = AetherHelperFactory.create(container, project, mavenSession, getLog());
+            aetherHelper = AetherHelperFactory.create(container, project, mavenSession,
+                    dependencyGraphCacheDirectory, getLog());
         }
         return aetherHelper;
     }
@@ -243,7 +281,7 @@ public class DependenciesMojo extends BundlePlugin {
         long startTime = System.currentTimeMillis();
         ParsingContext projectParsingContext = new ParsingContext(MavenAetherHelperUtils.getCoords(project.getArtifact()), 0, 0, project.getArtifactId(), project.getBasedir().getPath(), project.getVersion(), null);
 
-        parsingContextCache = new ParsingContextCache(new File(dependencyParsingCacheDirectory), null);
+        parsingContextCache = createParsingContextCache();
 
         Map<String,String> originalInstructions = new LinkedHashMap<String,String>();
         if (project.getPlugin("org.apache.felix:maven-bundle-plugin") != null) {
@@ -300,6 +338,7 @@ public class DependenciesMojo extends BundlePlugin {
             getLog().info(
                     "Scanned " + scanned + " project dependencies in " + (System.currentTimeMillis() - timer)
                             + " ms. Currently we have " + projectParsingContext.getLocalPackages().size() + " project packages.");
+            logSharedParsingCacheStatistics();
         } catch (IOException e) {
             throw new MojoExecutionException("Error while scanning dependencies", e);
         } catch (DependencyResolutionRequiredException e) {
@@ -481,6 +520,28 @@ public class DependenciesMojo extends BundlePlugin {
         getLog().info("Took " + (System.currentTimeMillis() - startTime) + " ms for the dependencies analysis");
     }
 
+    protected ParsingContextCache createParsingContextCache() {
+        SharedParsingContextCache.getInstance().setMaximumSize(sharedParsingCacheSize * 1024L * 1024L);
+        return new ParsingContextCache(new File(dependencyParsingCacheDirectory), null, contentHashedParsingCache);
+    }
+
+    /**
+     * The shared cache statistics are cumulated over the whole build, so they are only logged at info level for the
+     * last module of the reactor.
+     */
+    protected void logSharedParsingCacheStatistics() {
+        String message = "Shared dependency parsing cache: " + SharedParsingContextCache.getInstance();
+        String xPathMessage = "XPath expression cache: " + XPathCache.getInstance();
+        List<MavenProject> projects = mavenSession != null ? mavenSession.getProjects() : null;
+        if (projects == null || projects.isEmpty() || projects.get(projects.size() - 1) == project) {
+            getLog().info(message);
+            getLog().info(xPathMessage);
+        } else if (getLog().isDebugEnabled()) {
+            getLog().debug(message);
+            getLog().debug(xPathMessage);
+        }
+    }
+
     public List<PackageInfo> getExistingImportPackages(ParsingContext projectParsingContext) throws MojoExecutionException {
         List<PackageInfo> existingPackageImports = new ArrayList<PackageInfo>();
         if (existingImports != null) {
@@ -562,11 +623,8 @@ public class DependenciesMojo extends BundlePlugin {
                 } else {
                     artifactPattern = artifactExclude;
                 }
-                groupPattern = groupPattern.replaceAll("\\.", "\\\\.");
-                groupPattern = groupPattern.replaceAll("\\*", ".*");
-                artifactPattern = artifactPattern.replaceAll("\\.", "\\\\.");
-                artifactPattern = artifactPattern.replaceAll("\\*", ".*");
-                artifactExclusionPatterns.add(Pattern.compile(groupPattern + ":" + artifactPattern));
+                artifactExclusionPatterns.add(Pattern.compile(ExclusionMatcher.globToRegex(groupPattern) + ":"
+                        + ExclusionMatcher.globToRegex(artifactPattern)));
             }
         }
         if (artifactExclusionPatterns.size() > 0) {
@@ -585,57 +643,82 @@ public class DependenciesMojo extends BundlePlugin {
                 excludedJarEntryPatterns.add(Pattern.compile(p.trim()));
             }
         }
+
+        // the patterns are compiled into matchers deciding in a single pass over the artifact id or entry name
+        artifactExclusionMatcher = new ExclusionMatcher(artifactExclusionPatterns);
+        excludedJarEntryMatcher = new ExclusionMatcher(excludedJarEntryPatterns);
     }
 
     protected int scanDependencies(final ParsingContext projectParsingContext) throws IOException, MojoExecutionException {
         getLog().info("Scanning project dependencies...");
         int scanned = 0;
 
-        for (Artifact artifact : project.getDependencyArtifacts()) {
-            if (artifact.isOptional()) {
-                getLog().info("Scanning optional dependency " + artifact + "...");
-            }
+        final ParallelDependencyScanner parallelScanner = dependencyScanThreads > 1 ? new ParallelDependencyScanner(this, dependencyScanThreads) : null;
+        if (parallelScanner != null) {
+            getLog().info("Using " + dependencyScanThreads + " threads to scan project dependencies");
+        }
 
-            if (!DEPENDENCIES_SCAN_PACKAGING.contains(artifact.getType())
-                    || !DEPENDENCIES_SCAN_SCOPES.contains(artifact.getScope()) || isExcludedFromScan(artifact)) {
-                continue;
-            }
+        try {
+            for (Artifact artifact : project.getDependencyArtifacts()) {
+                if (artifact.isOptional()) {
+                    getLog().info("Scanning optional dependency " + artifact + "...");
+                }
 
-            final int scannedCopy = scanned;
-            final DependenciesMojo dependenciesMojo = this;
-            getAetherHelper().processArtifactAndDependencies(artifact, artifact.isOptional(), new ArtifactProcessor() {
+                if (!DEPENDENCIES_SCAN_PACKAGING.contains(artifact.getType())
+                        || !DEPENDENCIES_SCAN_SCOPES.contains(artifact.getScope()) || isExcludedFromScan(artifact)) {
+                    continue;
+                }
+
+                final int scannedCopy = scanned;
+                final DependenciesMojo dependenciesMojo = this;
+                getAetherHelper().processArtifactAndDependencies(artifact, artifact.isOptional(), new ArtifactProcessor() {
 
-                @Override
-                public boolean isExternal(Artifact artifact) {
-                    for (String inlinedPath : inlinedPaths) {
-                        if (inlinedPath.startsWith(artifact.getFile().getPath())) {
-                            return false;
+                    @Override
+                    public boolean isExternal(Artifact artifact) {
+                        for (String inlinedPath : inlinedPaths) {
+                            if (inlinedPath.startsWith(artifact.getFile().getPath())) {
+                                return false;
+                            }
+                        }
+                        for (Artifact embeddedArtifact : embeddedArtifacts) {
+                            if (artifact.equals(embeddedArtifact)) {
+                                return false;
+                            }
                         }
+                        return true;
                     }
-                    for (Artifact embeddedArtifact : embeddedArtifacts) {
-                        if (artifact.equals(embeddedArtifact)) {
-                            return false;
+
+                    @Override
+                    public ParsingContext enterArtifact(Artifact artifact, boolean optional, boolean external, ParsingContext parentParsingContext, String logPrefix, int depth) throws MojoExecutionException {
+                        if (parallelScanner != null) {
+                            return parallelScanner.enterArtifact(scannedCopy, artifact, external, optional, parentParsingContext, logPrefix);
+                        }
+                        try {
+                            return dependenciesMojo.startProcessingArtifact(projectParsingContext, scannedCopy, artifact, external, optional, parentParsingContext, logPrefix, depth);
+                        } catch (IOException e) {
+                            throw new MojoExecutionException("Error processing artifact " + artifact, e);
                         }
                     }
-                    return true;
-                }
 
-                @Override
-                public ParsingContext enterArtifact(Artifact artifact, boolean optional, boolean external, ParsingContext parentParsingContext, String logPrefix, int depth) throws MojoExecutionException {
-                    try {
-                        return dependenciesMojo.startProcessingArtifact(projectParsingContext, scannedCopy, artifact, external, optional, parentParsingContext, logPrefix, depth);
-                    } catch (IOException e) {
-                        throw new MojoExecutionException("Error processing artifact " + artifact, e);
+                    @Override
+                    public boolean exitArtifact(Artifact artifact, boolean optional, boolean external, String logPrefix, ParsingContext parsingContext, int depth) throws MojoExecutionException {
+                        if (parallelScanner != null) {
+                            return parallelScanner.exitArtifact(artifact, logPrefix, parsingContext);
+                        }
+                        return dependenciesMojo.endProcessingArtifact(projectParsingContext, artifact, external, logPrefix, parsingContext, depth);
                     }
-                }
+                }, artifact.getArtifactHandler(), projectParsingContext);
 
-                @Override
-                public boolean exitArtifact(Artifact artifact, boolean optional, boolean external, String logPrefix, ParsingContext parsingContext, int depth) throws MojoExecutionException {
-                    return dependenciesMojo.endProcessingArtifact(projectParsingContext, artifact, external, logPrefix, parsingContext, depth);
-                }
-            }, artifact.getArtifactHandler(), projectParsingContext);
+                scanned++;
+            }
 
-            scanned++;
+            if (parallelScanner != null) {
+                parallelScanner.complete();
+            }
+        } finally {
+            if (parallelScanner != null) {
+                parallelScanner.shutdown();
+            }
         }
 
         projectParsingContext.removeLocalPackagesFromImports();
@@ -646,22 +729,38 @@ public class DependenciesMojo extends BundlePlugin {
     protected ParsingContext startProcessingArtifact(ParsingContext projectParsingContext, int scanned, Artifact artifact, boolean externalDependency, boolean optional, ParsingContext parentParsingContext, String logPrefix, int depth) throws MojoExecutionException, IOException {
         ParsingContext parsingContext = parsingContextCache.get(artifact);
         if (parsingContext == null) {
-            parsingContext = new ParsingContext(MavenAetherHelperUtils.getCoords(artifact),
-                    artifact.getFile().lastModified(), artifact.getFile().length(), artifact.getFile().getName(), artifact.getFile().getPath(), artifact.getVersion(), parentParsingContext);
+            parsingContext = createParsingContext(artifact, parentParsingContext);
+            scanArtifact(scanned, artifact, externalDependency, parsingContext, logPrefix);
+        }
+        attachParsingContext(parsingContext, parentParsingContext, optional, externalDependency);
+        return parsingContext;
+    }
+
+    protected ParsingContext createParsingContext(Artifact artifact, ParsingContext parentParsingContext) {
+        return new ParsingContext(MavenAetherHelperUtils.getCoords(artifact),
+                artifact.getFile().lastModified(), artifact.getFile().length(), artifact.getFile().getName(), artifact.getFile().getPath(), artifact.getVersion(), parentParsingContext);
+    }
 
-            long timer = System.currentTimeMillis();
+    /**
+     * Scans the artifact file and fills the parsing context with the results. This method only modifies the passed
+     * parsing context, so it may be called concurrently for different artifacts.
+     */
+    protected void scanArtifact(int scanned, Artifact artifact, boolean externalDependency, ParsingContext parsingContext, String logPrefix) throws IOException {
+        long timer = System.currentTimeMillis();
 
-            int scannedInJar = scanJar(artifact.getFile(), externalDependency,
-                    "war".equals(artifact.getType()) ? "WEB-INF/classes/" : "", artifact.getVersion(), artifact.isOptional(), parsingContext, logPrefix);
+        int scannedInJar = scanJar(artifact.getFile(), externalDependency,
+                "war".equals(artifact.getType()) ? "WEB-INF/classes/" : "", artifact.getVersion(), artifact.isOptional(), parsingContext, logPrefix);
 
-            long took = System.currentTimeMillis() - timer;
-            if (getLog().isInfoEnabled() && (scannedInJar > 0)) {
-                getLog().info(logPrefix +
-                        "Processed " + scannedInJar + ((scanned == 1) ? " entry" : " entries") + " in "
-                                + (externalDependency ? "external" : "") + "dependency " + artifact + " in " + took
-                                + " ms");
-            }
+        long took = System.currentTimeMillis() - timer;
+        if (getLog().isInfoEnabled() && (scannedInJar > 0)) {
+            getLog().info(logPrefix +
+                    "Processed " + scannedInJar + ((scanned == 1) ? " entry" : " entries") + " in "
+                            + (externalDependency ? "external" : "") + "dependency " + artifact + " in " + took
+                            + " ms");
         }
+    }
+
+    protected void attachParsingContext(ParsingContext parsingContext, ParsingContext parentParsingContext, boolean optional, boolean externalDependency) {
         if (parentParsingContext != null) {
             parentParsingContext.addChildJarParsingContext(parsingContext);
         }
@@ -675,10 +774,22 @@ public class DependenciesMojo extends BundlePlugin {
         } else {
             parsingContext.setExternal(false);
         }
-        return parsingContext;
     }
 
     protected boolean endProcessingArtifact(ParsingContext projectParsingContext, Artifact artifact, boolean externalDependency, String logPrefix, ParsingContext parsingContext, int depth) {
+        if (!isCacheableParsingContext(artifact, logPrefix, parsingContext)) {
+            return false;
+        }
+        /*
+        if (artifact.isOptional() && !externalDependency) {
+            projectParsingContext.addAllPackageImports(parsingContext.getLocalPackages(), true);
+        }
+        */
+        completeParsingContext(artifact, parsingContext);
+        return true;
+    }
+
+    protected boolean isCacheableParsingContext(Artifact artifact, String logPrefix, ParsingContext parsingContext) {
         if (artifact == null) {
             getLog().warn(logPrefix + ": Artifact is null, will not put parsed JAR context "+ parsingContext +" in cache !");
             return false;
@@ -687,27 +798,21 @@ public class DependenciesMojo extends BundlePlugin {
             getLog().warn(logPrefix + ": Artifact file path ("+artifact.getFile().getPath()+") and jarParsingContext file path ("+ parsingContext.getFilePath()+") do not match, will not put parsed JAR context "+ parsingContext +" in cache !");
             return false;
         }
-        /*
-        if (artifact.isOptional() && !externalDependency) {
-            projectParsingContext.addAllPackageImports(parsingContext.getLocalPackages(), true);
-        }
-        */
+        return true;
+    }
+
+    protected void completeParsingContext(Artifact artifact, ParsingContext parsingContext) {
         parsingContext.postProcess();
         if (!parsingContext.isInCache()) {
             parsingContextCache.put(artifact, parsingContext);
         }
-        return true;
     }
 
     protected boolean isExcludedFromScan(Artifact artifact) {
-        String id = StringUtils.substringBeforeLast(artifact.toString(), ":");
-        for (Pattern exclusionPattern : artifactExclusionPatterns) {
-            id = artifact.getGroupId() + ":" + artifact.getArtifactId();
-            Matcher exclusionMatcher = exclusionPattern.matcher(id);
-            if (exclusionMatcher.matches()) {
-                getLog().info("Ignoring artifact as the exclusion matched for " + id);
-                return true;
-            }
+        String id = artifact.getGroupId() + ":" + artifact.getArtifactId();
+        if (artifactExclusionMatcher.matches(id)) {
+            getLog().info("Ignoring artifact as the exclusion matched for " + id);
+            return true;
         }
         return false;
     }
@@ -722,103 +827,178 @@ public class DependenciesMojo extends BundlePlugin {
             return scanned;
         }
 
-        JarInputStream jarInputStream = new JarInputStream(new FileInputStream(jarFile));
+        // a single random access handle is used for the entries, the embedded JARs and the additional files, so that
+        // only the entries that are actually parsed get decompressed.
+        JarFile jar = new JarFile(jarFile);
         try {
-            JarEntry jarEntry = null;
             getLog().debug(logPrefix + "Processing JAR file " + jarFile + "...");
-            if (processJarManifest(jarFile, parsingContext, jarInputStream)) {
+            if (processJarManifest(jarFile, parsingContext, jar.getManifest())) {
                 getLog().debug(logPrefix + "Used OSGi bundle manifest information, but scanning for additional resources (taglibs, CNDs, etc)... ");
             }
-            scanned = processJarInputStream(jarFile.getPath(), externalDependency, packageDirectory, version, optional, parsingContext, logPrefix, scanned, jarInputStream);
-        } finally {
-            jarInputStream.close();
-        }
+            scanned = processJarFile(jarFile.getPath(), externalDependency, packageDirectory, version, optional, parsingContext, logPrefix, scanned, jar);
 
-        if (parsingContext.getBundleClassPath().size() > 0) {
-            getLog().debug(logPrefix + "Processing embedded dependencies...");
-            JarFile jar = new JarFile(jarFile);
-            for (String embeddedJar : parsingContext.getBundleClassPath()) {
-                if (".".equals(embeddedJar)) {
-                    continue;
-                }
-                JarEntry jarEntry = jar.getJarEntry(embeddedJar);
-                if (jarEntry != null) {
-                    getLog().debug(logPrefix + "Processing embedded JAR..." + jarEntry);
-                    InputStream jarEntryInputStream = jar.getInputStream(jarEntry);
-                    ByteArrayOutputStream entryOutputStream = new ByteArrayOutputStream();
-                    IOUtils.copy(jarEntryInputStream, entryOutputStream);
-                    JarInputStream entryJarInputStream = new JarInputStream(new ByteArrayInputStream(entryOutputStream.toByteArray()));
-                    processJarInputStream(jarFile.getPath() + "!" + jarEntry, externalDependency, packageDirectory, version, optional, parsingContext, logPrefix, scanned, entryJarInputStream);
-                    IOUtils.closeQuietly(jarEntryInputStream);
-                    IOUtils.closeQuietly(entryJarInputStream);
-                } else {
-                    getLog().warn(logPrefix + "Couldn't find embedded JAR to parse " + embeddedJar + " in JAR " + jarFile);
+            if (parsingContext.getBundleClassPath().size() > 0) {
+                getLog().debug(logPrefix + "Processing embedded dependencies...");
+                for (String embeddedJar : parsingContext.getBundleClassPath()) {
+                    if (".".equals(embeddedJar)) {
+                        continue;
+                    }
+                    JarEntry jarEntry = jar.getJarEntry(embeddedJar);
+                    if (jarEntry != null) {
+                        getLog().debug(logPrefix + "Processing embedded JAR..." + jarEntry);
+                        InputStream jarEntryInputStream = jar.getInputStream(jarEntry);
+                        try {
+                            processEmbeddedJar(jarFile.getPath() + "!" + jarEntry, jarEntryInputStream, externalDependency, packageDirectory, version, optional, parsingContext, logPrefix, scanned);
+                        } finally {
+                            IOUtils.closeQuietly(jarEntryInputStream);
+                        }
+                    } else {
+                        getLog().warn(logPrefix + "Couldn't find embedded JAR to parse " + embeddedJar + " in JAR " + jarFile);
+                    }
                 }
             }
-        }
 
-        if (parsingContext.getAdditionalFilesToParse().size() > 0) {
-            getLog().debug(logPrefix + "Processing additional files to parse...");
-            JarFile jar = new JarFile(jarFile);
-            for (String fileToParse : parsingContext.getAdditionalFilesToParse()) {
-                JarEntry jarEntry = jar.getJarEntry(fileToParse);
-                if (jarEntry != null) {
-                    InputStream jarEntryInputStream = jar.getInputStream(jarEntry);
-                    ByteArrayOutputStream entryOutputStream = new ByteArrayOutputStream();
-                    IOUtils.copy(jarEntryInputStream, entryOutputStream);
-                    if (processNonTldFile(jarEntry.getName(), new ByteArrayInputStream(entryOutputStream.toByteArray()), jarFile.getPath(), optional, version, parsingContext)) {
-                        scanned++;
+            if (parsingContext.getAdditionalFilesToParse().size() > 0) {
+                getLog().debug(logPrefix + "Processing additional files to parse...");
+                for (String fileToParse : parsingContext.getAdditionalFilesToParse()) {
+                    JarEntry jarEntry = jar.getJarEntry(fileToParse);
+                    if (jarEntry != null) {
+                        InputStream jarEntryInputStream = jar.getInputStream(jarEntry);
+                        try {
+                            if (processNonTldFile(jarEntry.getName(), new ByteArrayInputStream(IOUtils.toByteArray(jarEntryInputStream)), jarFile.getPath(), optional, version, parsingContext)) {
+                                scanned++;
+                            }
+                        } finally {
+                            IOUtils.closeQuietly(jarEntryInputStream);
+                        }
+                    } else {
+                        getLog().warn(logPrefix + "Couldn't find additional file to parse " + fileToParse + " in JAR " + jarFile);
                     }
-                    IOUtils.closeQuietly(jarEntryInputStream);
-                } else {
-                    getLog().warn(logPrefix + "Couldn't find additional file to parse " + fileToParse + " in JAR " + jarFile);
                 }
+                parsingContext.clearAdditionalFilesToParse();
             }
-            parsingContext.clearAdditionalFilesToParse();
+        } finally {
+            jar.close();
         }
-        
+
         return scanned;
     }
 
+    protected int processJarFile(String jarFilePath, boolean externalDependency, String packageDirectory, String version, boolean optional, ParsingContext parsingContext, String logPrefix, int scanned, JarFile jarFile) throws IOException {
+        Enumeration<JarEntry> jarEntries = jarFile.entries();
+        while (jarEntries.hasMoreElements()) {
+            JarEntry jarEntry = jarEntries.nextElement();
+            if (jarEntry.isDirectory()) {
+                continue;
+            }
+            String entryName = jarEntry.getName();
+            processJarEntryPackage(entryName, jarFilePath, packageDirectory, version, optional, parsingContext);
+            if (!isJarEntryToParse(entryName)) {
+                continue;
+            }
+            InputStream entryInputStream = jarFile.getInputStream(jarEntry);
+            try {
+                scanned += parseJarEntry(entryName, entryInputStream, jarFilePath, externalDependency, version, optional, parsingContext, logPrefix);
+            } finally {
+                IOUtils.closeQuietly(entryInputStream);
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * Scans a JAR embedded in another one by streaming it from the outer entry, so that the embedded JAR is never
+     * fully loaded in memory.
+     */
+    private void processEmbeddedJar(String embeddedJarPath, InputStream embeddedJarInputStream, boolean externalDependency, String packageDirectory, String version, boolean optional, ParsingContext parsingContext, String logPrefix, int scanned) throws IOException {
+        // the outer stream is closed by the caller
+        JarInputStream entryJarInputStream = new JarInputStream(new CloseShieldInputStream(embeddedJarInputStream));
+        try {
+            processJarInputStream(embeddedJarPath, externalDependency, packageDirectory, version, optional, parsingContext, logPrefix, scanned, entryJarInputStream);
+        } finally {
+            IOUtils.closeQuietly(entryJarInputStream);
+        }
+    }
+
     protected int processJarInputStream(String jarFilePath, boolean externalDependency, String packageDirectory, String version, boolean optional, ParsingContext parsingContext, String logPrefix, int scanned, JarInputStream jarInputStream) throws IOException {
+        Set<String> nestedBundleClassPath = getBundleClassPath(jarInputStream.getManifest());
         JarEntry jarEntry;
         while ((jarEntry = jarInputStream.getNextJarEntry()) != null) {
             if (jarEntry.isDirectory()) {
                 continue;
             }
             String entryName = jarEntry.getName();
+            processJarEntryPackage(entryName, jarFilePath, packageDirectory, version, optional, parsingContext);
+            if (nestedBundleClassPath.contains(entryName)) {
+                getLog().debug(logPrefix + "Processing nested embedded JAR..." + entryName);
+                processEmbeddedJar(jarFilePath + "!" + entryName, jarInputStream, externalDependency, packageDirectory, version, optional, parsingContext, logPrefix, scanned);
+                continue;
+            }
+            if (!isJarEntryToParse(entryName)) {
+                continue;
+            }
+            scanned += parseJarEntry(entryName, jarInputStream, jarFilePath, externalDependency, version, optional, parsingContext, logPrefix);
+        }
+        return scanned;
+    }
 
-            if (entryName.startsWith(packageDirectory)) {
-                String packageName = entryName.substring(packageDirectory.length());
-                if (!packageName.contains("/.")) {
-                    processLocalPackageEntry(packageName, "/", jarFilePath, version, optional, parsingContext);
+    private Set<String> getBundleClassPath(Manifest jarManifest) {
+        Set<String> bundleClassPath = new HashSet<String>();
+        if (jarManifest == null || jarManifest.getMainAttributes() == null) {
+            return bundleClassPath;
+        }
+        String bundleClassPathHeaderValue = jarManifest.getMainAttributes().getValue("Bundle-ClassPath");
+        if (bundleClassPathHeaderValue != null) {
+            for (String bundleClassPathEntry : bundleClassPathHeaderValue.split(",")) {
+                bundleClassPathEntry = bundleClassPathEntry.trim();
+                if (bundleClassPathEntry.length() > 0 && !".".equals(bundleClassPathEntry)) {
+                    bundleClassPath.add(bundleClassPathEntry);
                 }
             }
+        }
+        return bundleClassPath;
+    }
 
-            if (excludeJarEntry(entryName)) {
-                continue;
+    private void processJarEntryPackage(String entryName, String jarFilePath, String packageDirectory, String version, boolean optional, ParsingContext parsingContext) {
+        if (entryName.startsWith(packageDirectory)) {
+            String packageName = entryName.substring(packageDirectory.length());
+            if (!packageName.contains("/.")) {
+                processLocalPackageEntry(packageName, "/", jarFilePath, version, optional, parsingContext);
             }
-            ByteArrayOutputStream entryOutputStream = new ByteArrayOutputStream();
-            IOUtils.copy(jarInputStream, entryOutputStream);
-            if (Parsers.getInstance().canParseForPhase(0, jarEntry.getName())) {
-                getLog().debug(logPrefix + "  scanning JAR entry: " + jarEntry.getName());
-                Parsers.getInstance().parse(0, jarEntry.getName(), new ByteArrayInputStream(entryOutputStream.toByteArray()), jarFilePath,
-                        externalDependency, optional, version, getLogger(), parsingContext);
+        }
+    }
+
+    private boolean isJarEntryToParse(String entryName) {
+        if (excludeJarEntry(entryName)) {
+            return false;
+        }
+        return Parsers.getInstance().canParseForPhase(0, entryName) || Parsers.getInstance().canParseForPhase(1, entryName);
+    }
+
+    /**
+     * Parses a JAR entry that was claimed by at least one parser. The entry is read into memory once since it may be
+     * parsed in both phases and since the parsers must not close the underlying stream.
+     */
+    private int parseJarEntry(String entryName, InputStream entryInputStream, String jarFilePath, boolean externalDependency, String version, boolean optional, ParsingContext parsingContext, String logPrefix) throws IOException {
+        int scanned = 0;
+        byte[] entryBytes = IOUtils.toByteArray(entryInputStream);
+        if (Parsers.getInstance().canParseForPhase(0, entryName)) {
+            getLog().debug(logPrefix + "  scanning JAR entry: " + entryName);
+            Parsers.getInstance().parse(0, entryName, new ByteArrayInputStream(entryBytes), jarFilePath,
+                    externalDependency, optional, version, getLogger(), parsingContext);
+            scanned++;
+        }
+        if (Parsers.getInstance().canParseForPhase(1, entryName)) {
+            getLog().debug(logPrefix + "  scanning JAR entry: " + entryName);
+            if (processNonTldFile(entryName, new ByteArrayInputStream(entryBytes), jarFilePath, optional, version, parsingContext)) {
                 scanned++;
             }
-            if (Parsers.getInstance().canParseForPhase(1, jarEntry.getName())) {
-                getLog().debug(logPrefix + "  scanning JAR entry: " + jarEntry.getName());
-                if (processNonTldFile(jarEntry.getName(), new ByteArrayInputStream(entryOutputStream.toByteArray()), jarFilePath, optional, version, parsingContext)) {
-                    scanned++;
-                }
-            }
         }
         return scanned;
     }
 
-    private boolean processJarManifest(File jarFile, ParsingContext parsingContext, JarInputStream jarInputStream) throws IOException {
+    private boolean processJarManifest(File jarFile, ParsingContext parsingContext, Manifest jarManifest) throws IOException {
         boolean processedBundleHeadersSuccessfully = false;
-        Manifest jarManifest = jarInputStream.getManifest();
         if (jarManifest != null && jarManifest.getMainAttributes() != null) {
             Attributes mainAttributes = jarManifest.getMainAttributes();
             String bundleSymbolicName = mainAttributes.getValue("Bundle-SymbolicName");
@@ -897,13 +1077,9 @@ public class DependenciesMojo extends BundlePlugin {
     }
 
     private boolean excludeJarEntry(String entryName) {
-        if (excludedJarEntryPatterns != null) {
-            for (Pattern p : excludedJarEntryPatterns) {
-                if (p.matcher(entryName).matches()) {
-                    getLog().debug("Matched JAR entry exclusion pattern for entry " + entryName);
-                    return true;
-                }
-            }
+        if (excludedJarEntryMatcher != null && excludedJarEntryMatcher.matches(entryName)) {
+            getLog().debug("Matched JAR entry exclusion pattern for entry " + entryName);
+            return true;
         }
         return false;
     }
@@ -0,0 +1,275 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches names (packages, artifact ids, JAR entries) against a set of exclusion patterns in a single pass over the
+ * name, instead of trying each regular expression in turn.
+ *
+ * The patterns that only contain literal characters, escaped dots and ".*" wildcards, which is the case of all the
+ * patterns built from the exclusion globs, are compiled into a character trie indexed by their leading literal part:
+ * exact names and prefixes are decided by the trie walk itself, while the remaining wildcards of the other patterns
+ * are only checked for the names going through their trie node. Any other regular expression is matched as is.
+ *
+ * Patterns must be added before the matcher is used, it can then be shared by several threads.
+ */
+public class ExclusionMatcher {
+
+    private static class Node {
+        private Map<Character, Node> children;
+        private boolean exact;
+        private boolean prefix;
+        private List<String[]> wildcardTails;
+
+        private Node getOrCreateChild(char c) {
+            if (children == null) {
+                children = new HashMap<Character, Node>();
+            }
+            Node child = children.get(c);
+            if (child == null) {
+                child = new Node();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        private Node getChild(char c) {
+            return children != null ? children.get(c) : null;
+        }
+    }
+
+    private final Node root = new Node();
+    private final List<Pattern> regexPatterns = new ArrayList<Pattern>();
+    private int size = 0;
+
+    public ExclusionMatcher() {
+    }
+
+    public ExclusionMatcher(Collection<Pattern> patterns) {
+        for (Pattern pattern : patterns) {
+            addPattern(pattern);
+        }
+    }
+
+    /**
+     * Converts an exclusion glob, in which "*" matches any sequence of characters and "?" any single character, to
+     * the equivalent regular expression. Dots are literal, the other characters keep their regular expression meaning.
+     */
+    public static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '.') {
+                regex.append("\\.");
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Compiles an exclusion glob, see {@link #globToRegex(String)}.
+     */
+    public static Pattern globToPattern(String glob) {
+        return Pattern.compile(globToRegex(glob));
+    }
+
+    /**
+     * Adds a pattern that must match the whole name.
+     */
+    public void addPattern(Pattern pattern) {
+        List<String> segments = pattern.flags() == 0 ? parseSegments(pattern.pattern()) : null;
+        if (segments == null) {
+            regexPatterns.add(pattern);
+        } else {
+            addSegments(segments);
+        }
+        size++;
+    }
+
+    /**
+     * Adds a name prefix, matching all the names that start with it.
+     */
+    public void addPrefix(String prefix) {
+        getOrCreateNode(prefix).prefix = true;
+        size++;
+    }
+
+    /**
+     * Adds an exact name.
+     */
+    public void addLiteral(String literal) {
+        getOrCreateNode(literal).exact = true;
+        size++;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean matches(String name) {
+        Node node = root;
+        int length = name.length();
+        for (int i = 0; ; i++) {
+            if (node.prefix) {
+                return true;
+            }
+            if (node.wildcardTails != null) {
+                for (String[] wildcardTail : node.wildcardTails) {
+                    if (matchesWildcardTail(name, i, wildcardTail)) {
+                        return true;
+                    }
+                }
+            }
+            if (i == length) {
+                if (node.exact) {
+                    return true;
+                }
+                break;
+            }
+            node = node.getChild(name.charAt(i));
+            if (node == null) {
+                break;
+            }
+        }
+        for (Pattern regexPattern : regexPatterns) {
+            if (regexPattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Node getOrCreateNode(String literal) {
+        Node node = root;
+        for (int i = 0; i < literal.length(); i++) {
+            node = node.getOrCreateChild(literal.charAt(i));
+        }
+        return node;
+    }
+
+    private void addSegments(List<String> segments) {
+        // segments are the literal parts of the pattern, a ".*" wildcard being implied between each of them
+        Node node = getOrCreateNode(segments.get(0));
+        if (segments.size() == 1) {
+            node.exact = true;
+        } else if (segments.size() == 2 && segments.get(1).length() == 0) {
+            node.prefix = true;
+        } else {
+            if (node.wildcardTails == null) {
+                node.wildcardTails = new ArrayList<String[]>();
+            }
+            node.wildcardTails.add(segments.subList(1, segments.size()).toArray(new String[segments.size() - 1]));
+        }
+    }
+
+    /**
+     * Tests whether the name, from the given offset, matches a sequence of literal segments each preceded by a
+     * wildcard.
+     */
+    private static boolean matchesWildcardTail(String name, int offset, String[] segments) {
+        int position = offset;
+        int last = segments.length - 1;
+        for (int i = 0; i < last; i++) {
+            int segmentPosition = name.indexOf(segments[i], position);
+            if (segmentPosition < 0) {
+                return false;
+            }
+            position = segmentPosition + segments[i].length();
+        }
+        // the last segment must end the name, unless it is empty (the pattern ends with a wildcard)
+        return name.length() - segments[last].length() >= position && name.endsWith(segments[last]);
+    }
+
+    /**
+     * Splits a regular expression made of literal characters, escaped dots and ".*" wildcards into its literal
+     * segments, or returns null if it uses any other regular expression construct.
+     */
+    private static List<String> parseSegments(String regex) {
+        List<String> segments = new ArrayList<String>();
+        StringBuilder segment = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '.') {
+                    segment.append('.');
+                    i++;
+                } else {
+                    return null;
+                }
+            } else if (c == '.') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '*') {
+                    segments.add(segment.toString());
+                    segment.setLength(0);
+                    i++;
+                } else {
+                    return null;
+                }
+            } else if ("*+?[](){}|^$".indexOf(c) >= 0) {
+                return null;
+            } else {
+                segment.append(c);
+            }
+        }
+        segments.add(segment.toString());
+        return segments;
+    }
+
+}
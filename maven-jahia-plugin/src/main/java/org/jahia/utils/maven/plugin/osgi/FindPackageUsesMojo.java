@@ -43,7 +43,6 @@
  */
 package org.jahia.utils.maven.plugin.osgi;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
@@ -51,12 +50,11 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-import org.jahia.utils.osgi.ClassDependencyTracker;
+import org.jahia.utils.osgi.ClassDependencyIndex;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.jar.JarInputStream;
 
 /**
  * A little utility goal to locate a package usage inside the project's dependencies, using BND to make sure we
@@ -92,13 +90,21 @@ public class FindPackageUsesMojo extends AbstractMojo {
      */
     private boolean searchInDependencies = true;
 
+    /**
+     * The engine used to extract the class references when searching package uses : BND for a full BND analysis of
+     * the classes, or CONSTANT_POOL to read the class files directly, which is faster.
+     *
+     * @parameter expression="${jahia.classDependencyEngine}" default-value="BND"
+     */
+    protected String classDependencyEngine = "BND";
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         if (packageNames == null || packageNames.size() == 0) {
             getLog().warn("No package names specified, will abort now !");
             return;
         }
-        final Map<String, Map<String, Artifact>> packageResults = findPackageUses(packageNames, project.getArtifacts(), project, outputDirectory, searchInDependencies, getLog());
+        final Map<String, Map<String, Artifact>> packageResults = findPackageUses(packageNames, project.getArtifacts(), project, outputDirectory, searchInDependencies, getClassDependencyEngine(classDependencyEngine), getLog());
         getLog().info("=================================================================================");
         getLog().info("SEARCH RESULTS SUMMARY");
         getLog().info("---------------------------------------------------------------------------------");
@@ -115,38 +121,66 @@ public class FindPackageUsesMojo extends AbstractMojo {
         }
     }
 
-    public static Map<String, Map<String, Artifact>> findPackageUses(List<String> packageNames, Set<Artifact> artifacts, MavenProject project, File buildOutputDirectory, boolean searchInDependencies, Log log) {
-        final Map<String, Map<String, Artifact>> packageResults = new TreeMap<String, Map<String, Artifact>>();
-
-        log.info("Scanning project build directory...");
-
-        if (buildOutputDirectory.exists()) {
-            findPackageUsesInDirectory(packageNames, project, log, packageResults, buildOutputDirectory);
+    public static ClassDependencyIndex.Engine getClassDependencyEngine(String classDependencyEngine) throws MojoExecutionException {
+        try {
+            return ClassDependencyIndex.Engine.valueOf(classDependencyEngine.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid class dependency engine " + classDependencyEngine + ", valid values are " + Arrays.asList(ClassDependencyIndex.Engine.values()));
         }
+    }
 
-        if (!searchInDependencies) {
+    public static Map<String, Map<String, Artifact>> findPackageUses(List<String> packageNames, Set<Artifact> artifacts, MavenProject project, File buildOutputDirectory, boolean searchInDependencies, ClassDependencyIndex.Engine classDependencyEngine, Log log) {
+        final Map<String, Map<String, Artifact>> packageResults = new TreeMap<String, Map<String, Artifact>>();
+
+        // the class path is only used to look up super classes, it is shared by all the scanned files
+        ClassDependencyIndex.ClassPath classPath;
+        try {
+            classPath = new ClassDependencyIndex.ClassPath(project.getTestClasspathElements(), classDependencyEngine);
+        } catch (IOException e) {
+            log.error("Error setting up class path for project " + project, e);
+            return packageResults;
+        } catch (DependencyResolutionRequiredException e) {
+            log.error("Error setting up class path for project " + project, e);
             return packageResults;
         }
 
-        log.info("Scanning project dependencies...");
+        try {
+            log.info("Scanning project build directory...");
 
-        for (Artifact artifact : artifacts) {
-            if (artifact.isOptional()) {
-                log.debug("Processing optional dependency " + artifact + "...");
+            if (buildOutputDirectory.exists()) {
+                findPackageUsesInDirectory(packageNames, project, classPath, classDependencyEngine, log, packageResults, buildOutputDirectory);
             }
-            if (artifact.getType().equals("pom")) {
-                log.warn("Skipping POM artifact " + artifact);
-                continue;
+
+            if (!searchInDependencies) {
+                return packageResults;
             }
-            if (!artifact.getType().equals("jar")) {
-                log.warn("Found non JAR artifact " + artifact);
+
+            log.info("Scanning project dependencies...");
+
+            for (Artifact artifact : artifacts) {
+                if (artifact.isOptional()) {
+                    log.debug("Processing optional dependency " + artifact + "...");
+                }
+                if (artifact.getType().equals("pom")) {
+                    log.warn("Skipping POM artifact " + artifact);
+                    continue;
+                }
+                if (!artifact.getType().equals("jar")) {
+                    log.warn("Found non JAR artifact " + artifact);
+                }
+                findPackageUsesInArtifact(packageNames, project, classPath, classDependencyEngine, log, packageResults, artifact);
             }
-            findPackageUsesInArtifact(packageNames, project, log, packageResults, artifact);
+        } finally {
+            classPath.close();
         }
         return packageResults;
     }
 
-    public static void findPackageUsesInArtifact(List<String> packageNames, MavenProject project, Log log, Map<String, Map<String, Artifact>> packageResults, Artifact artifact) {
+    public static void findPackageUsesInArtifact(List<String> packageNames, MavenProject project, ClassDependencyIndex.ClassPath classPath, ClassDependencyIndex.Engine classDependencyEngine, Log log, Map<String, Map<String, Artifact>> packageResults, Artifact artifact) {
+        ClassDependencyIndex classDependencyIndex = getClassDependencyIndex(artifact.getFile(), classDependencyEngine, log);
+        if (classDependencyIndex == null) {
+            return;
+        }
         boolean currentTrailWasDisplayed = false;
         int trailDepth = artifact.getDependencyTrail().size();
         for (String packageName : packageNames) {
@@ -154,8 +188,8 @@ public class FindPackageUsesMojo extends AbstractMojo {
             if (foundClasses == null) {
                 foundClasses = new TreeMap<String, Artifact>();
             }
-            Set<String> classesThatHaveDependency = findClassesThatUsePackage(artifact.getFile(), packageName, project, log);
-            if (classesThatHaveDependency != null & classesThatHaveDependency.size() > 0) {
+            Set<String> classesThatHaveDependency = classDependencyIndex.findClassesUsingPackage(packageName, classPath);
+            if (classesThatHaveDependency.size() > 0) {
                 List<String> trail = new ArrayList<String>(artifact.getDependencyTrail());
                 if (artifact.isOptional()) {
                     trail.add("[optional]");
@@ -173,14 +207,18 @@ public class FindPackageUsesMojo extends AbstractMojo {
         }
     }
 
-    public static void findPackageUsesInDirectory(List<String> packageNames, MavenProject project, Log log, Map<String, Map<String, Artifact>> packageResults, File directory) {
+    public static void findPackageUsesInDirectory(List<String> packageNames, MavenProject project, ClassDependencyIndex.ClassPath classPath, ClassDependencyIndex.Engine classDependencyEngine, Log log, Map<String, Map<String, Artifact>> packageResults, File directory) {
+        ClassDependencyIndex classDependencyIndex = getClassDependencyIndex(directory, classDependencyEngine, log);
+        if (classDependencyIndex == null) {
+            return;
+        }
         for (String packageName : packageNames) {
             Map<String, Artifact> foundClasses = packageResults.get(packageName);
             if (foundClasses == null) {
                 foundClasses = new TreeMap<String, Artifact>();
             }
-            Set<String> classesThatHaveDependency = findClassesThatUsePackage(directory, packageName, project, log);
-            if (classesThatHaveDependency != null & classesThatHaveDependency.size() > 0) {
+            Set<String> classesThatHaveDependency = classDependencyIndex.findClassesUsingPackage(packageName, classPath);
+            if (classesThatHaveDependency.size() > 0) {
                 for (String classThatHasDependency : classesThatHaveDependency) {
                     log.info( "+--> Found class " + classThatHasDependency + " that uses package " + packageName);
                     foundClasses.put(classThatHasDependency, project.getArtifact());
@@ -190,28 +228,26 @@ public class FindPackageUsesMojo extends AbstractMojo {
         }
     }
 
-    private static Set<String> findClassesThatUsePackage(File jarFile, String packageName, MavenProject project, Log log) {
-        Set<String> classesThatHaveDependency = new TreeSet<String>();
-        JarInputStream jarInputStream = null;
+    /**
+     * Returns the bytecode index of a JAR file or class directory, analyzed once and then queried for all the
+     * searched packages.
+     */
+    private static ClassDependencyIndex getClassDependencyIndex(File jarFile, ClassDependencyIndex.Engine classDependencyEngine, Log log) {
         if (jarFile == null) {
             log.warn("File is null !");
-            return classesThatHaveDependency;
+            return null;
         }
         if (!jarFile.exists()) {
             log.warn("File " + jarFile + " does not exist !");
-            return classesThatHaveDependency;
+            return null;
         }
         log.debug("Scanning JAR " + jarFile + "...");
         try {
-            classesThatHaveDependency = ClassDependencyTracker.findDependencyInJar(jarFile, packageName, project.getTestClasspathElements());
+            return ClassDependencyIndex.getIndex(jarFile, classDependencyEngine);
         } catch (IOException e) {
-            e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-        } catch (DependencyResolutionRequiredException e) {
-            e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-        } finally {
-            IOUtils.closeQuietly(jarInputStream);
+            log.error("Error scanning " + jarFile, e);
+            return null;
         }
-        return classesThatHaveDependency;
     }
 
     private static void displayTrailTree(MavenProject project, Artifact artifact, Log log) {
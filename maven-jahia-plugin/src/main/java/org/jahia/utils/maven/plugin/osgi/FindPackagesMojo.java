@@ -43,6 +43,8 @@
  */
 package org.jahia.utils.maven.plugin.osgi;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +53,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.jahia.utils.maven.plugin.AetherAwareMojo;
+import org.jahia.utils.maven.plugin.support.JarPackageIndex;
 
 /**
  * A little utility goal to locate a package inside the project's dependencies, including optional or provided ones.
@@ -66,6 +69,14 @@ public class FindPackagesMojo extends AetherAwareMojo {
      */
     protected List<String> packageNames = new ArrayList<String>();
 
+    /**
+     * The directory in which the index of the packages contained in the dependencies is stored, so that they don't
+     * have to be scanned again by the next searches. If empty, the index is only kept in memory.
+     *
+     * @parameter expression="${user.home}/.m2/dependency-cache";
+     */
+    protected String dependencyParsingCacheDirectory = null;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         if (packageNames == null || packageNames.size() == 0) {
@@ -73,7 +84,23 @@ public class FindPackagesMojo extends AetherAwareMojo {
             return;
         }
         getLog().info("Scanning project dependencies...");
-        final Map<String, List<String>> foundPackages = getAetherHelper().findPackages(project, packageNames);
+        JarPackageIndex jarPackageIndex;
+        if (StringUtils.isNotEmpty(dependencyParsingCacheDirectory)) {
+            jarPackageIndex = new JarPackageIndex(new File(dependencyParsingCacheDirectory,
+                    JarPackageIndex.INDEX_FILE_NAME), getLog());
+        } else {
+            jarPackageIndex = new JarPackageIndex();
+        }
+        final Map<String, List<String>> foundPackages;
+        try {
+            foundPackages = getAetherHelper().findPackages(project, packageNames, jarPackageIndex);
+        } finally {
+            try {
+                jarPackageIndex.save();
+            } catch (IOException e) {
+                getLog().warn("Error saving JAR package index: " + e.getMessage());
+            }
+        }
         getLog().info("=================================================================================");
         getLog().info("SEARCH RESULTS");
         getLog().info("---------------------------------------------------------------------------------");
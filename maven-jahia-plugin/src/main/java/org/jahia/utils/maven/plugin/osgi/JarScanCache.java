@@ -0,0 +1,323 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Keeps the package versions extracted from each scanned JAR by a previous run of the framework package list
+ * generation, so that only the new or changed JARs need to be scanned again.
+ *
+ * A cached scan is reused if the JAR has the same location and default version as when it was scanned, and either
+ * the same last modification date and size or, when these differ (for example because the JAR was copied again into
+ * the WEB-INF/lib directory), the same SHA-1 digest. Only the entries used by the current run are written back, so
+ * the cache doesn't keep the JARs that are no longer part of the build.
+ */
+public class JarScanCache {
+
+    private static final String CACHE_MODEL_VERSION = "0.1";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * A version of a package found in a JAR, with the number of times it was found.
+     */
+    public static class PackageVersion {
+        private String packageName;
+        private String version;
+        private String specificationVersion;
+        private long count;
+
+        public PackageVersion() {
+        }
+
+        public PackageVersion(String packageName, String version, String specificationVersion, long count) {
+            this.packageName = packageName;
+            this.version = version;
+            this.specificationVersion = specificationVersion;
+            this.count = count;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        public void setPackageName(String packageName) {
+            this.packageName = packageName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public void setVersion(String version) {
+            this.version = version;
+        }
+
+        public String getSpecificationVersion() {
+            return specificationVersion;
+        }
+
+        public void setSpecificationVersion(String specificationVersion) {
+            this.specificationVersion = specificationVersion;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * The cached scan of a JAR.
+     */
+    public static class Entry {
+        private String defaultVersion;
+        private long lastModified;
+        private long fileSize;
+        private String digest;
+        private List<PackageVersion> packageVersions = new ArrayList<PackageVersion>();
+
+        public String getDefaultVersion() {
+            return defaultVersion;
+        }
+
+        public void setDefaultVersion(String defaultVersion) {
+            this.defaultVersion = defaultVersion;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public void setFileSize(long fileSize) {
+            this.fileSize = fileSize;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        public void setDigest(String digest) {
+            this.digest = digest;
+        }
+
+        public List<PackageVersion> getPackageVersions() {
+            return packageVersions;
+        }
+
+        public void setPackageVersions(List<PackageVersion> packageVersions) {
+            this.packageVersions = packageVersions;
+        }
+    }
+
+    private final File cacheFile;
+    private final Log log;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Entry> previousEntries = new HashMap<String, Entry>();
+    private final Map<String, Entry> currentEntries = new TreeMap<String, Entry>();
+    private int reusedCount = 0;
+    private int scannedCount = 0;
+
+    /**
+     * Creates a cache persisted in the given file, loading the entries of the previous run if it exists.
+     */
+    public JarScanCache(File cacheFile, Log log) {
+        this.cacheFile = cacheFile;
+        this.log = log;
+        if (cacheFile.exists()) {
+            try {
+                Map<String, Object> cache = objectMapper.readValue(cacheFile, new TypeReference<Map<String, Object>>() {});
+                if (CACHE_MODEL_VERSION.equals(cache.get("version"))) {
+                    Map<String, Entry> entries = objectMapper.convertValue(cache.get("entries"),
+                            new TypeReference<Map<String, Entry>>() {});
+                    if (entries != null) {
+                        previousEntries.putAll(entries);
+                    }
+                }
+            } catch (IOException e) {
+                // This can happen if the cache file is somehow corrupted, in this case we simply scan all the JARs.
+                log.warn("Error reading JAR scan cache " + cacheFile + ", all JARs will be scanned: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                log.warn("Error reading JAR scan cache " + cacheFile + ", all JARs will be scanned: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the package versions found by the previous scan of the given JAR, or null if it must be scanned again.
+     */
+    public List<PackageVersion> get(File jarFile, String location, String defaultVersion) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = previousEntries.get(location);
+        }
+        if (entry == null || !equals(entry.getDefaultVersion(), defaultVersion)) {
+            return null;
+        }
+        long lastModified = jarFile.lastModified();
+        long fileSize = jarFile.length();
+        if (entry.getLastModified() != lastModified || entry.getFileSize() != fileSize) {
+            if (entry.getFileSize() != fileSize || entry.getDigest() == null ||
+                    !entry.getDigest().equals(digest(jarFile))) {
+                return null;
+            }
+            log.debug("JAR " + jarFile + " was modified but has the same content as when it was scanned");
+            entry.setLastModified(lastModified);
+        }
+        synchronized (this) {
+            currentEntries.put(location, entry);
+            reusedCount++;
+        }
+        return entry.getPackageVersions();
+    }
+
+    /**
+     * Records the package versions found by the scan of the given JAR.
+     *
+     * @param digest the SHA-1 digest of the JAR, as returned by {@link #newDigest()} and {@link #toString(MessageDigest)}
+     */
+    public synchronized void put(File jarFile, String location, String defaultVersion, String digest,
+                                 List<PackageVersion> packageVersions) {
+        Entry entry = new Entry();
+        entry.setDefaultVersion(defaultVersion);
+        entry.setLastModified(jarFile.lastModified());
+        entry.setFileSize(jarFile.length());
+        entry.setDigest(digest);
+        entry.setPackageVersions(packageVersions);
+        currentEntries.put(location, entry);
+        scannedCount++;
+    }
+
+    public synchronized int getReusedCount() {
+        return reusedCount;
+    }
+
+    public synchronized int getScannedCount() {
+        return scannedCount;
+    }
+
+    /**
+     * Writes the entries used by the current run to the cache file.
+     */
+    public synchronized void save() throws IOException {
+        Map<String, Object> cache = new LinkedHashMap<String, Object>();
+        cache.put("version", CACHE_MODEL_VERSION);
+        cache.put("entries", currentEntries);
+        File parentDirectory = cacheFile.getAbsoluteFile().getParentFile();
+        if (!parentDirectory.exists() && !parentDirectory.mkdirs()) {
+            throw new IOException("Couldn't create directory " + parentDirectory);
+        }
+        // write to a temporary file first so that an interrupted build never leaves a partially written cache
+        File temporaryFile = File.createTempFile(cacheFile.getName(), ".tmp", parentDirectory);
+        try {
+            objectMapper.writeValue(temporaryFile, cache);
+            if (!temporaryFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!temporaryFile.renameTo(cacheFile)) {
+                    throw new IOException("Couldn't rename " + temporaryFile + " to " + cacheFile);
+                }
+            }
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Creates a new digest, to be updated with the content of a JAR while it is scanned.
+     */
+    public static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Digest algorithm " + DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+
+    public static String toString(MessageDigest digest) {
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    private static String digest(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return toString(digest);
+    }
+
+    private static boolean equals(String value1, String value2) {
+        return value1 == null ? value2 == null : value1.equals(value2);
+    }
+
+}
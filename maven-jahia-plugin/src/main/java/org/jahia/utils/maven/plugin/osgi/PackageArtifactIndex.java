@@ -0,0 +1,588 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.jahia.utils.osgi.parsers.PackageInfo;
+import org.jahia.utils.osgi.parsers.ParsingContext;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A local index of the artifacts containing each package, so that the origin of a missing package can be looked up
+ * without querying the Maven Central search service.
+ *
+ * The index is built from the JARs of the local Maven repository, in which a package is any directory containing
+ * class files, and from the entries of the dependency parsing cache, whose local packages and package exports are
+ * indexed. It is stored as a text file with one line per package, sorted by package name, each line containing the
+ * package name followed by the coordinates of the artifacts containing it. Packages are never removed from the
+ * index, which is only meant as a hint.
+ *
+ * The index is updated incrementally. The directories of the local repository and of the JSON parsing cache are
+ * walked once, and their modification dates are then stored next to the index, so that later updates only list the
+ * directories modified since, in which files were added, removed or replaced. Files rewritten in place are not
+ * noticed. The content hashed store of the parsing cache is read from the first record added since the last update.
+ */
+public class PackageArtifactIndex {
+
+    public static final String INDEX_FILE_NAME = "package-artifact-index.txt";
+    public static final String DIRECTORIES_FILE_NAME = "package-artifact-index-directories.txt";
+
+    private static final String INDEX_HEADER = "#package-artifact-index";
+    private static final String INDEX_MODEL_VERSION = "0.2";
+    private static final String DIRECTORIES_HEADER = "#package-artifact-index-directories";
+    private static final String DIRECTORIES_MODEL_VERSION = "0.1";
+    private static final String NO_RECORD_KEY = "-";
+
+    private final File indexFile;
+    private final File directoriesFile;
+    private final Log log;
+    private final SortedMap<String, SortedSet<String>> packageArtifactMap = new TreeMap<String, SortedSet<String>>();
+
+    /**
+     * Modification dates of the directories already walked, by absolute path of the walked tree, then by path relative
+     * to it.
+     */
+    private final SortedMap<String, SortedMap<String, Long>> walkedDirectories = new TreeMap<String, SortedMap<String, Long>>();
+    private boolean directoriesModified;
+    private ObjectMapper objectMapper;
+
+    /**
+     * Number of records of the content hashed store already indexed, and content digest of the last one.
+     */
+    private int contentHashStoreRecords;
+    private String contentHashStoreRecordKey = NO_RECORD_KEY;
+
+    private boolean modified;
+
+    private PackageArtifactIndex(File indexFile, Log log) {
+        this.indexFile = indexFile;
+        this.directoriesFile = new File(indexFile.getAbsoluteFile().getParentFile(), DIRECTORIES_FILE_NAME);
+        this.log = log;
+    }
+
+    /**
+     * Loads the index stored in the given file, along with the directories already walked to build it, or returns an
+     * empty index if there is none yet.
+     *
+     * @param indexFile the file in which the index is stored
+     */
+    public static PackageArtifactIndex open(File indexFile, Log log) {
+        PackageArtifactIndex packageArtifactIndex = new PackageArtifactIndex(indexFile, log);
+        if (!packageArtifactIndex.read()) {
+            packageArtifactIndex.packageArtifactMap.clear();
+            packageArtifactIndex.contentHashStoreRecords = 0;
+            packageArtifactIndex.contentHashStoreRecordKey = NO_RECORD_KEY;
+            packageArtifactIndex.modified = true;
+        } else if (!packageArtifactIndex.readDirectories()) {
+            // the directories will all be walked again
+            packageArtifactIndex.walkedDirectories.clear();
+        }
+        return packageArtifactIndex;
+    }
+
+    /**
+     * Indexes the local packages and package exports of the given parsing context and of all its children.
+     */
+    public void addParsingContexts(ParsingContext parsingContext) {
+        addParsingContexts(parsingContext, new HashSet<String>());
+    }
+
+    private void addParsingContexts(ParsingContext parsingContext, Set<String> alreadyVisitedContexts) {
+        if (parsingContext.getMavenCoords() != null && !alreadyVisitedContexts.add(parsingContext.getMavenCoords())) {
+            return;
+        }
+        addParsingContext(parsingContext);
+        if (parsingContext.getChildren() != null) {
+            for (ParsingContext childParsingContext : parsingContext.getChildren()) {
+                addParsingContexts(childParsingContext, alreadyVisitedContexts);
+            }
+        }
+    }
+
+    /**
+     * Indexes the parsing contexts added to the given content hashed store since the last update. The whole store is
+     * read again if it was reset since then.
+     */
+    void addContentHashStore(ContentHashParsingContextStore contentHashStore) throws IOException {
+        int fromRecord = contentHashStoreRecords;
+        if (fromRecord > contentHashStore.getRecordCount() ||
+                (fromRecord > 0 && !contentHashStore.getRecordKey(fromRecord - 1).equals(contentHashStoreRecordKey))) {
+            fromRecord = 0;
+        }
+        List<ParsingContext> parsingContexts = contentHashStore.getParsingContexts(fromRecord);
+        if (parsingContexts.size() > 0) {
+            log.info("Indexing the packages of " + parsingContexts.size() + " new entries of the dependency parsing cache...");
+        }
+        for (ParsingContext parsingContext : parsingContexts) {
+            addParsingContext(parsingContext);
+        }
+        int recordCount = fromRecord + parsingContexts.size();
+        String recordKey = recordCount > 0 ? contentHashStore.getRecordKey(recordCount - 1) : NO_RECORD_KEY;
+        if (recordCount != contentHashStoreRecords || !recordKey.equals(contentHashStoreRecordKey)) {
+            contentHashStoreRecords = recordCount;
+            contentHashStoreRecordKey = recordKey;
+            modified = true;
+        }
+    }
+
+    /**
+     * Indexes the packages of the JARs added to the given local Maven repository since the last update, or of all its
+     * JARs the first time.
+     */
+    public void addLocalRepository(File localRepository) {
+        if (!localRepository.isDirectory()) {
+            return;
+        }
+        List<File> jarFiles = collectModifiedFiles(localRepository, ".jar");
+        if (jarFiles.size() > 0) {
+            log.info("Indexing the packages of " + jarFiles.size() + " JAR(s) of the local repository " + localRepository + "...");
+        }
+        String basePath = localRepository.getAbsolutePath();
+        for (File jarFile : jarFiles) {
+            String coords = getRepositoryCoords(basePath, jarFile);
+            if (coords != null) {
+                indexJar(jarFile, coords);
+            }
+        }
+    }
+
+    /**
+     * Indexes the JSON entries added to the given dependency parsing cache directory since the last update, or all
+     * of them the first time.
+     */
+    public void addParsingContextCache(File cacheDirectory) {
+        if (!cacheDirectory.isDirectory()) {
+            return;
+        }
+        List<File> parsingContextFiles = collectModifiedFiles(cacheDirectory, ".json");
+        if (parsingContextFiles.size() > 0) {
+            log.info("Indexing the packages of " + parsingContextFiles.size() + " entries of the dependency parsing cache " + cacheDirectory + "...");
+        }
+        for (File parsingContextFile : parsingContextFiles) {
+            indexParsingContext(parsingContextFile);
+        }
+    }
+
+    /**
+     * Writes the index back to its file if anything was added since it was loaded.
+     *
+     * @return true if the index was written
+     */
+    public boolean save() {
+        if (!modified && !directoriesModified) {
+            return false;
+        }
+        try {
+            // the index is written first, so that the directories it contains are walked again if the directories
+            // file can't be written
+            if (modified) {
+                write();
+                modified = false;
+            }
+            if (directoriesModified) {
+                writeDirectories();
+                directoriesModified = false;
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Error writing package artifact index " + indexFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the coordinates of the artifacts containing the given package, in alphabetical order.
+     */
+    public List<String> findArtifacts(String packageName) {
+        SortedSet<String> artifacts = packageArtifactMap.get(packageName);
+        if (artifacts == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<String>(artifacts));
+    }
+
+    public int size() {
+        return packageArtifactMap.size();
+    }
+
+    private boolean read() {
+        if (!indexFile.exists()) {
+            return false;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+            String[] header = StringUtils.split(reader.readLine(), ' ');
+            if (header == null || header.length != 4 || !INDEX_HEADER.equals(header[0]) || !INDEX_MODEL_VERSION.equals(header[1])) {
+                log.info("Package artifact index " + indexFile + " has an unknown format, it will be rebuilt.");
+                return false;
+            }
+            contentHashStoreRecords = Integer.parseInt(header[2]);
+            contentHashStoreRecordKey = header[3];
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = StringUtils.split(line, ' ');
+                if (tokens.length < 2) {
+                    continue;
+                }
+                SortedSet<String> artifacts = new TreeSet<String>();
+                artifacts.addAll(Arrays.asList(tokens).subList(1, tokens.length));
+                packageArtifactMap.put(tokens[0], artifacts);
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Error reading package artifact index " + indexFile + ", it will be rebuilt: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            log.warn("Error reading package artifact index " + indexFile + ", it will be rebuilt: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean readDirectories() {
+        if (!directoriesFile.exists()) {
+            return false;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(directoriesFile), "UTF-8"));
+            String[] header = StringUtils.split(reader.readLine(), ' ');
+            if (header == null || header.length != 2 || !DIRECTORIES_HEADER.equals(header[0]) || !DIRECTORIES_MODEL_VERSION.equals(header[1])) {
+                return false;
+            }
+            SortedMap<String, Long> directories = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("@")) {
+                    directories = new TreeMap<String, Long>();
+                    walkedDirectories.put(line.substring(1), directories);
+                    continue;
+                }
+                int lastSpacePos = line.lastIndexOf(' ');
+                if (directories == null || !line.startsWith("/") || lastSpacePos < 1) {
+                    continue;
+                }
+                directories.put(line.substring(1, lastSpacePos), Long.parseLong(line.substring(lastSpacePos + 1)));
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Error reading package artifact index directories " + directoriesFile + ", they will be walked again: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            log.warn("Error reading package artifact index directories " + directoriesFile + ", they will be walked again: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return false;
+    }
+
+    private void write() throws IOException {
+        File temporaryFile = createTemporaryFile(indexFile);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), "UTF-8"));
+            try {
+                writer.write(INDEX_HEADER + " " + INDEX_MODEL_VERSION + " " + contentHashStoreRecords + " " + contentHashStoreRecordKey + "\n");
+                for (Map.Entry<String, SortedSet<String>> packageArtifactEntry : packageArtifactMap.entrySet()) {
+                    writer.write(packageArtifactEntry.getKey());
+                    for (String artifact : packageArtifactEntry.getValue()) {
+                        writer.write(' ');
+                        writer.write(artifact);
+                    }
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            replaceFile(temporaryFile, indexFile);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    private void writeDirectories() throws IOException {
+        File temporaryFile = createTemporaryFile(directoriesFile);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), "UTF-8"));
+            try {
+                writer.write(DIRECTORIES_HEADER + " " + DIRECTORIES_MODEL_VERSION + "\n");
+                for (Map.Entry<String, SortedMap<String, Long>> walkedTree : walkedDirectories.entrySet()) {
+                    writer.write('@');
+                    writer.write(walkedTree.getKey());
+                    writer.write('\n');
+                    for (Map.Entry<String, Long> directory : walkedTree.getValue().entrySet()) {
+                        writer.write('/');
+                        writer.write(directory.getKey());
+                        writer.write(' ');
+                        writer.write(directory.getValue().toString());
+                        writer.write('\n');
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            replaceFile(temporaryFile, directoriesFile);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Creates the temporary file to which the given file is written, so that a concurrent build never reads a
+     * partially written file.
+     */
+    private static File createTemporaryFile(File file) throws IOException {
+        File parentDirectory = file.getAbsoluteFile().getParentFile();
+        if (!parentDirectory.exists() && !parentDirectory.mkdirs()) {
+            throw new IOException("Couldn't create directory " + parentDirectory);
+        }
+        return File.createTempFile(file.getName(), ".tmp", parentDirectory);
+    }
+
+    private static void replaceFile(File temporaryFile, File file) throws IOException {
+        if (!temporaryFile.renameTo(file)) {
+            file.delete();
+            if (!temporaryFile.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temporaryFile + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Collects the files with the given extension in the directories of the given tree modified since the last walk,
+     * and in the directories added since. Only the walked directories are checked, the files of a directory are only
+     * listed if it was modified, which is the case when a file is added to it, removed from it or replaced.
+     */
+    private List<File> collectModifiedFiles(File root, String extension) {
+        List<File> files = new ArrayList<File>();
+        String rootPath = root.getAbsolutePath();
+        SortedMap<String, Long> directories = walkedDirectories.get(rootPath);
+        if (directories == null || directories.isEmpty()) {
+            log.info("Walking " + root + " to build the package artifact index, this may take a while...");
+            directories = new TreeMap<String, Long>();
+            walkedDirectories.put(rootPath, directories);
+            collectNewFiles(root, "", extension, directories, files);
+            directoriesModified = true;
+            return files;
+        }
+        for (String relativePath : new ArrayList<String>(directories.keySet())) {
+            File directory = relativePath.length() == 0 ? root : new File(root, relativePath);
+            long lastModified = directory.lastModified();
+            if (lastModified == directories.get(relativePath).longValue()) {
+                continue;
+            }
+            directoriesModified = true;
+            if (!directory.isDirectory()) {
+                directories.remove(relativePath);
+                continue;
+            }
+            directories.put(relativePath, lastModified);
+            File[] children = directory.listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (File child : children) {
+                String childPath = getChildPath(relativePath, child);
+                if (child.isDirectory()) {
+                    if (!directories.containsKey(childPath)) {
+                        collectNewFiles(child, childPath, extension, directories, files);
+                    }
+                } else if (child.getName().endsWith(extension)) {
+                    files.add(child);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void collectNewFiles(File directory, String relativePath, String extension, Map<String, Long> directories, List<File> files) {
+        // the modification date is read before listing, so that a file added meanwhile is found by the next walk
+        directories.put(relativePath, directory.lastModified());
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectNewFiles(child, getChildPath(relativePath, child), extension, directories, files);
+            } else if (child.getName().endsWith(extension)) {
+                files.add(child);
+            }
+        }
+    }
+
+    private static String getChildPath(String relativePath, File child) {
+        return relativePath.length() == 0 ? child.getName() : relativePath + "/" + child.getName();
+    }
+
+    /**
+     * Builds the coordinates of a JAR of the local repository from its path, which has the form
+     * groupId/artifactId/version/artifactId-version[-classifier].jar
+     */
+    private static String getRepositoryCoords(String basePath, File jarFile) {
+        String relativePath = jarFile.getAbsolutePath().substring(basePath.length() + 1).replace(File.separatorChar, '/');
+        String[] pathElements = StringUtils.split(relativePath, '/');
+        if (pathElements.length < 4) {
+            return null;
+        }
+        String artifactId = pathElements[pathElements.length - 3];
+        String version = pathElements[pathElements.length - 2];
+        String fileName = pathElements[pathElements.length - 1];
+        String baseName = fileName.substring(0, fileName.length() - ".jar".length());
+        if (!baseName.startsWith(artifactId + "-")) {
+            return null;
+        }
+        String groupId = StringUtils.join(pathElements, '.', 0, pathElements.length - 3);
+        String classifier = null;
+        if (baseName.startsWith(artifactId + "-" + version + "-")) {
+            classifier = baseName.substring(artifactId.length() + version.length() + 2);
+        }
+        return groupId + ":" + artifactId + ":jar" + (classifier != null ? ":" + classifier : "") + ":" + version;
+    }
+
+    private void indexJar(File jarFile, String coords) {
+        ZipFile zipFile = null;
+        try {
+            zipFile = new ZipFile(jarFile);
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            String lastPackageName = null;
+            while (entries.hasMoreElements()) {
+                String entryName = entries.nextElement().getName();
+                int lastSlashPos = entryName.lastIndexOf('/');
+                if (lastSlashPos <= 0 || !entryName.endsWith(".class") || entryName.startsWith("META-INF/")) {
+                    continue;
+                }
+                String packageName = entryName.substring(0, lastSlashPos).replace('/', '.');
+                if (!packageName.equals(lastPackageName)) {
+                    modified |= addArtifact(packageName, coords);
+                    lastPackageName = packageName;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Couldn't index JAR " + jarFile + ": " + e.getMessage());
+        } finally {
+            if (zipFile != null) {
+                try {
+                    zipFile.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void indexParsingContext(File parsingContextFile) {
+        if (objectMapper == null) {
+            objectMapper = new ObjectMapper();
+        }
+        try {
+            JsonNode parsingContext = objectMapper.readTree(parsingContextFile);
+            if (parsingContext == null || !parsingContext.hasNonNull("mavenCoords")) {
+                return;
+            }
+            String coords = parsingContext.get("mavenCoords").asText();
+            for (String packagesField : new String[]{"localPackages", "packageExports"}) {
+                JsonNode packages = parsingContext.get(packagesField);
+                if (packages == null) {
+                    continue;
+                }
+                for (JsonNode packageInfo : packages) {
+                    if (packageInfo.hasNonNull("name")) {
+                        modified |= addArtifact(packageInfo.get("name").asText(), coords);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Couldn't index parsing context " + parsingContextFile + ": " + e.getMessage());
+        }
+    }
+
+    private void addParsingContext(ParsingContext parsingContext) {
+        String coords = parsingContext.getMavenCoords();
+        if (coords == null) {
+            return;
+        }
+        for (Set<PackageInfo> packageInfos : Arrays.asList(parsingContext.getLocalPackages(), parsingContext.getPackageExports())) {
+            if (packageInfos == null) {
+                continue;
+            }
+            for (PackageInfo packageInfo : packageInfos) {
+                if (packageInfo.getName() != null) {
+                    modified |= addArtifact(packageInfo.getName(), coords);
+                }
+            }
+        }
+    }
+
+    private boolean addArtifact(String packageName, String coords) {
+        if (packageName.length() == 0 || packageName.indexOf(' ') >= 0 || coords.indexOf(' ') >= 0) {
+            return false;
+        }
+        SortedSet<String> artifacts = packageArtifactMap.get(packageName);
+        if (artifacts == null) {
+            artifacts = new TreeSet<String>();
+            packageArtifactMap.put(packageName, artifacts);
+        }
+        return artifacts.add(coords);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.jahia.utils.maven.plugin.support.MavenAetherHelperUtils;
+import org.jahia.utils.osgi.parsers.ParsingContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel scanning engine for the {@link DependenciesMojo}. The dependency tree is still walked by a single thread,
+ * but the JAR scans of the artifacts that are not found in the {@link ParsingContextCache} are handed over to a bounded
+ * pool of worker threads. All the operations that link the parsing contexts together (attaching to the parent context,
+ * optional/external flags, post-processing and caching) are recorded in walk order and only replayed once all the
+ * scans are finished, so that the result is exactly the same as with the serial scan.
+ */
+class ParallelDependencyScanner {
+
+    private final DependenciesMojo dependenciesMojo;
+    private final ExecutorService executorService;
+    private final List<ArtifactScan> artifactScans = new ArrayList<ArtifactScan>();
+    private final List<Runnable> pendingOperations = new ArrayList<Runnable>();
+
+    /**
+     * The parsing contexts that the serial scan would find in the cache at the current point of the walk.
+     */
+    private final Map<String, ParsingContext> visibleParsingContexts = new HashMap<String, ParsingContext>();
+
+    ParallelDependencyScanner(DependenciesMojo dependenciesMojo, int threads) {
+        this.dependenciesMojo = dependenciesMojo;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jahia-dependency-scanner-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public ParsingContext enterArtifact(final int scanned, final Artifact artifact, final boolean external, final boolean optional, final ParsingContext parentParsingContext, final String logPrefix) {
+        String coords = MavenAetherHelperUtils.getCoords(artifact);
+        ParsingContext parsingContext = visibleParsingContexts.get(coords);
+        if (parsingContext != null) {
+            final ParsingContext cachedParsingContext = parsingContext;
+            pendingOperations.add(new Runnable() {
+                @Override
+                public void run() {
+                    cachedParsingContext.reconnectPackageInfos();
+                }
+            });
+        } else {
+            parsingContext = dependenciesMojo.parsingContextCache.get(artifact);
+            if (parsingContext != null) {
+                visibleParsingContexts.put(coords, parsingContext);
+            } else {
+                final ParsingContext newParsingContext = dependenciesMojo.createParsingContext(artifact, parentParsingContext);
+                Future<?> future = executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        dependenciesMojo.scanArtifact(scanned, artifact, external, newParsingContext, logPrefix);
+                        return null;
+                    }
+                });
+                artifactScans.add(new ArtifactScan(artifact, future));
+                parsingContext = newParsingContext;
+            }
+        }
+        final ParsingContext enteredParsingContext = parsingContext;
+        pendingOperations.add(new Runnable() {
+            @Override
+            public void run() {
+                dependenciesMojo.attachParsingContext(enteredParsingContext, parentParsingContext, optional, external);
+            }
+        });
+        return parsingContext;
+    }
+
+    public boolean exitArtifact(final Artifact artifact, String logPrefix, final ParsingContext parsingContext) {
+        if (!dependenciesMojo.isCacheableParsingContext(artifact, logPrefix, parsingContext)) {
+            return false;
+        }
+        pendingOperations.add(new Runnable() {
+            @Override
+            public void run() {
+                dependenciesMojo.completeParsingContext(artifact, parsingContext);
+            }
+        });
+        visibleParsingContexts.put(MavenAetherHelperUtils.getCoords(artifact), parsingContext);
+        return true;
+    }
+
+    /**
+     * Waits for all the submitted scans and then replays the recorded operations in walk order.
+     */
+    public void complete() throws MojoExecutionException {
+        for (ArtifactScan artifactScan : artifactScans) {
+            try {
+                artifactScan.future.get();
+            } catch (ExecutionException e) {
+                throw new MojoExecutionException("Error processing artifact " + artifactScan.artifact, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while processing artifact " + artifactScan.artifact, e);
+            }
+        }
+        for (Runnable pendingOperation : pendingOperations) {
+            pendingOperation.run();
+        }
+        pendingOperations.clear();
+        artifactScans.clear();
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private static class ArtifactScan {
+        private final Artifact artifact;
+        private final Future<?> future;
+
+        ArtifactScan(Artifact artifact, Future<?> future) {
+            this.artifact = artifact;
+            this.future = future;
+        }
+    }
+}
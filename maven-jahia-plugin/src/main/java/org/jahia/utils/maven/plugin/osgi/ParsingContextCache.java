@@ -60,6 +60,13 @@ import java.util.TreeMap;
  * A disk cache for ParsingContext instances, so that we don't have to calculate them on each build.
  * Also, this cache can load up pre-built instances from the class loader, to provide prepopulated cache entries
  * for JARs that contain errors or missing information (such as missing dependencies).
+ *
+ * By default the entries are stored as one JSON file per artifact and are only valid for the exact same file path.
+ * In content hashed mode, the entries are stored in a {@link ContentHashParsingContextStore} and are keyed by the
+ * content of the artifact file, so that they can be reused whatever the location of the Maven repository.
+ *
+ * Whatever the mode, the entries loaded from disk are also kept in the process-wide {@link SharedParsingContextCache},
+ * so that the other modules of the same build don't have to load them again.
  */
 public class ParsingContextCache {
 
@@ -68,9 +75,15 @@ public class ParsingContextCache {
     private File cacheLocation;
     private Map<String,ParsingContext> parsingContextCache = new TreeMap<String,ParsingContext>();
     private ObjectMapper objectMapper;
+    private ContentHashParsingContextStore contentHashStore;
+    private SharedParsingContextCache sharedCache = SharedParsingContextCache.getInstance();
     ClassLoader resourceClassLoader = this.getClass().getClassLoader();
 
     public ParsingContextCache(File cacheLocation, ClassLoader classLoader) {
+        this(cacheLocation, classLoader, false);
+    }
+
+    public ParsingContextCache(File cacheLocation, ClassLoader classLoader, boolean contentHashed) {
         if (cacheLocation == null) {
             throw new RuntimeException("Cache location is null, aborting!");
         }
@@ -78,6 +91,7 @@ public class ParsingContextCache {
             if (!cacheLocation.mkdirs()) {
                 throw new RuntimeException("Cache location couldn't be created at " + cacheLocation + ", aborting !");
             }
+            writeCacheInfo(new File(cacheLocation, "cache-info.json"));
         } else {
             File cacheInfoFile = new File(cacheLocation, "cache-info.json");
             if (!cacheInfoFile.exists()) {
@@ -101,6 +115,16 @@ public class ParsingContextCache {
         if (classLoader != null) {
             resourceClassLoader = classLoader;
         }
+        if (contentHashed) {
+            contentHashStore = new ContentHashParsingContextStore(new File(cacheLocation, "content"), CACHE_MODEL_VERSION);
+        }
+    }
+
+    /**
+     * Returns the content-addressed storage of the cache, or null if the cache is not in content hashed mode.
+     */
+    ContentHashParsingContextStore getContentHashStore() {
+        return contentHashStore;
     }
 
     public void writeCacheInfo(File cacheInfoFile) {
@@ -125,11 +149,36 @@ public class ParsingContextCache {
     }
 
     public ParsingContext get(Artifact artifact) {
-        ParsingContext parsingContext = parsingContextCache.get(MavenAetherHelperUtils.getCoords(artifact));
+        String mavenCoords = MavenAetherHelperUtils.getCoords(artifact);
+        ParsingContext parsingContext = parsingContextCache.get(mavenCoords);
+        if (parsingContext != null) {
+            parsingContext.reconnectPackageInfos();
+            return parsingContext;
+        }
+        parsingContext = sharedCache.get(mavenCoords, artifact.getFile());
         if (parsingContext != null) {
             parsingContext.reconnectPackageInfos();
+            parsingContextCache.put(mavenCoords, parsingContext);
             return parsingContext;
         }
+        long loadStart = System.nanoTime();
+        parsingContext = load(artifact);
+        sharedCache.recordLoad(System.nanoTime() - loadStart);
+        if (parsingContext != null) {
+            sharedCache.put(mavenCoords, artifact.getFile(), parsingContext);
+            parsingContextCache.put(mavenCoords, parsingContext);
+        }
+        return parsingContext;
+    }
+
+    private ParsingContext load(Artifact artifact) {
+        ParsingContext parsingContext = null;
+        if (isContentHashed(artifact)) {
+            parsingContext = getFromContentHashStore(artifact);
+            if (parsingContext != null) {
+                return parsingContext;
+            }
+        }
         File artifactJSONFile = new File(cacheLocation, MavenAetherHelperUtils.getDiskPath(artifact) + ".json");
         if (!artifactJSONFile.exists()) {
             // we didn't find a cache entry, let's check if there is a prepopulated one in the class loader
@@ -164,14 +213,50 @@ public class ParsingContextCache {
                     return null;
                 }
             }
-
-            parsingContextCache.put(MavenAetherHelperUtils.getCoords(artifact), parsingContext);
             return parsingContext;
         }
         return null;
     }
 
+    /**
+     * Directory artifacts, such as reactor modules resolved to their output directory, have no content to hash, so
+     * they are always stored as JSON files.
+     */
+    private boolean isContentHashed(Artifact artifact) {
+        return contentHashStore != null && artifact.getFile() != null && !artifact.getFile().isDirectory();
+    }
+
+    private ParsingContext getFromContentHashStore(Artifact artifact) {
+        File artifactFile = artifact.getFile();
+        ParsingContext parsingContext;
+        try {
+            parsingContext = contentHashStore.get(artifactFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (parsingContext == null) {
+            return null;
+        }
+        // the entry may have been computed for an identical file with another location or another artifact
+        parsingContext.updateFileInfo(MavenAetherHelperUtils.getCoords(artifact), artifactFile.lastModified(),
+                artifactFile.length(), artifactFile.getName(), artifactFile.getPath(), artifact.getVersion());
+        parsingContext.reconnectPackageInfos();
+        return parsingContext;
+    }
+
     public ParsingContext put(Artifact artifact, ParsingContext parsingContext) {
+        if (isContentHashed(artifact)) {
+            try {
+                parsingContext.setInCache(true);
+                contentHashStore.put(artifact.getFile(), parsingContext);
+                sharedCache.put(MavenAetherHelperUtils.getCoords(artifact), artifact.getFile(), parsingContext);
+                return parsingContextCache.put(MavenAetherHelperUtils.getCoords(artifact), parsingContext);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
         File artifactJSONFile = new File(cacheLocation, MavenAetherHelperUtils.getDiskPath(artifact) + ".json");
         if (!artifactJSONFile.getParentFile().exists()) {
             if (!artifactJSONFile.getParentFile().mkdirs()) {
@@ -181,6 +266,7 @@ public class ParsingContextCache {
         try {
             parsingContext.setInCache(true);
             getObjectMapper().writeValue(artifactJSONFile, parsingContext);
+            sharedCache.put(MavenAetherHelperUtils.getCoords(artifact), artifact.getFile(), parsingContext);
             ParsingContext previousParsingContext = parsingContextCache.put(MavenAetherHelperUtils.getCoords(artifact), parsingContext);
             return previousParsingContext;
         } catch (IOException e) {
@@ -0,0 +1,206 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.jahia.utils.osgi.parsers.ParsingContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide memory cache of parsing contexts, keyed by Maven coordinates and shared by all the
+ * {@link ParsingContextCache} instances, so that the mojo executions of all the modules of a reactor build (including
+ * parallel builds) don't have to load the same entries from disk again.
+ *
+ * As the parsing contexts are modified while they are linked in the dependency tree of a project, the entries are
+ * kept in the binary Smile format and each lookup returns a new instance. The memory used by the entries is bounded,
+ * the least recently used entries being evicted first.
+ */
+class SharedParsingContextCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 256L * 1024 * 1024;
+
+    private static final SharedParsingContextCache INSTANCE = new SharedParsingContextCache();
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+    private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private long size = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong();
+
+    private static class Entry {
+        private final byte[] data;
+        private final String filePath;
+        private final long lastModified;
+        private final long fileSize;
+
+        private Entry(byte[] data, File file) {
+            this.data = data;
+            this.filePath = file != null ? file.getPath() : null;
+            this.lastModified = file != null ? file.lastModified() : 0;
+            this.fileSize = file != null ? file.length() : 0;
+        }
+
+        private boolean matches(File file) {
+            return file == null || filePath == null ||
+                    (file.getPath().equals(filePath) && file.lastModified() == lastModified && file.length() == fileSize);
+        }
+    }
+
+    static SharedParsingContextCache getInstance() {
+        return INSTANCE;
+    }
+
+    SharedParsingContextCache() {
+    }
+
+    /**
+     * Returns a new instance of the parsing context cached for the given coordinates, or null if there is none or if
+     * it was computed for another version of the artifact file.
+     */
+    public ParsingContext get(String mavenCoords, File artifactFile) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(mavenCoords);
+        }
+        if (entry == null || !entry.matches(artifactFile)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            ParsingContext parsingContext = objectMapper.readValue(entry.data, ParsingContext.class);
+            hits.incrementAndGet();
+            return parsingContext;
+        } catch (IOException e) {
+            e.printStackTrace();
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String mavenCoords, File artifactFile, ParsingContext parsingContext) {
+        byte[] data;
+        try {
+            data = objectMapper.writeValueAsBytes(parsingContext);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        synchronized (this) {
+            Entry previousEntry = entries.put(mavenCoords, new Entry(data, artifactFile));
+            if (previousEntry != null) {
+                size -= previousEntry.data.length;
+            }
+            size += data.length;
+            evict();
+        }
+    }
+
+    /**
+     * Records the time spent loading a parsing context that was not found in this cache.
+     */
+    public void recordLoad(long nanos) {
+        loads.incrementAndGet();
+        loadTime.addAndGet(nanos);
+    }
+
+    public synchronized void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getLoadTimeMillis() {
+        return loadTime.get() / 1000000L;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return getEntryCount() + " entries (" + (getSize() / 1024) + " KB), " + getHits() + " hits, " + getMisses() +
+                " misses, " + getLoads() + " disk lookups in " + getLoadTimeMillis() + " ms";
+    }
+
+    private void evict() {
+        Iterator<Entry> entryIterator = entries.values().iterator();
+        while (size > maximumSize && entryIterator.hasNext()) {
+            size -= entryIterator.next().data.length;
+            entryIterator.remove();
+        }
+    }
+
+}
@@ -60,7 +60,7 @@ import java.util.Map;
  */
 public interface AetherHelper {
 
-    Map<String,List<String>> findPackages(MavenProject project, List<String> packageNames) throws MojoExecutionException;
+    Map<String,List<String>> findPackages(MavenProject project, List<String> packageNames, JarPackageIndex jarPackageIndex) throws MojoExecutionException;
     
     List<String> getDependencyVersion(MavenProject project, String artifactFileName) throws MojoExecutionException;
 
@@ -43,6 +43,7 @@
  */
 package org.jahia.utils.maven.plugin.support;
 
+import java.io.File;
 import java.util.List;
 
 import org.apache.maven.execution.MavenSession;
@@ -71,9 +72,27 @@ public final class AetherHelperFactory {
      * @return an instance of the proper artifact and dependency resolver
      * @throws MojoExecutionException
      */
-    @SuppressWarnings("unchecked")
     public static AetherHelper create(PlexusContainer container, MavenProject project, MavenSession session, Log log)
             throws MojoExecutionException {
+        return create(container, project, session, null, log);
+    }
+
+    /**
+     * Obtains an instance of the proper artifact and dependency resolver, depending on the Maven execution environment,
+     * persisting the resolved dependency graphs in the specified directory
+     * 
+     * @param container
+     * @param project
+     * @param session
+     * @param dependencyGraphCacheDirectory the directory to persist the resolved dependency graphs in, or null to only
+     *            share them between the mojo executions of the current build session
+     * @param log
+     * @return an instance of the proper artifact and dependency resolver
+     * @throws MojoExecutionException
+     */
+    @SuppressWarnings("unchecked")
+    public static AetherHelper create(PlexusContainer container, MavenProject project, MavenSession session,
+            File dependencyGraphCacheDirectory, Log log) throws MojoExecutionException {
         try {
             if (container.hasComponent("org.sonatype.aether.RepositorySystem")) {
                 log.info("Using Aether helper for Maven 3.0.x");
@@ -81,7 +100,8 @@ public final class AetherHelperFactory {
                 warnMavenVersion(log);
                 
                 return new Maven30AetherHelper(container.lookup(RepositorySystem.class),
-                        session.getRepositorySession(), project.getRemoteProjectRepositories(), log);
+                        session.getRepositorySession(), project.getRemoteProjectRepositories(),
+                        dependencyGraphCacheDirectory, log);
             } else if (container.hasComponent(org.eclipse.aether.RepositorySystem.class)) {
                 Object repoSession;
                 try {
@@ -93,7 +113,8 @@ public final class AetherHelperFactory {
                 log.info("Using Aether helper for Maven 3.1+");
                 return new Maven31AetherHelper(container.lookup(org.eclipse.aether.RepositorySystem.class),
                         (RepositorySystemSession) repoSession,
-                        (List<org.eclipse.aether.repository.RemoteRepository>) remoteRepos, log);
+                        (List<org.eclipse.aether.repository.RemoteRepository>) remoteRepos,
+                        dependencyGraphCacheDirectory, log);
             }
         } catch (ComponentLookupException e) {
             throw new MojoExecutionException(e.getMessage(), e);
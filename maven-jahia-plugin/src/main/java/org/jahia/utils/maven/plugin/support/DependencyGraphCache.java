@@ -0,0 +1,421 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A cache of the resolved dependency graphs, so that the dependencies of the same artifact are not collected and
+ * resolved again by each mojo execution. The graphs are kept in memory for the whole build session, one instance of
+ * this cache being shared by all the Aether helpers created for the same repository session, which makes it usable
+ * with both the Maven 3.0.x and Maven 3.1+ Aether implementations.
+ *
+ * The graphs may also be persisted in a directory, as a neutral {@link GraphNode} description, so that the next
+ * builds don't have to collect them again. A persisted graph is keyed by the whole collect request, that is the root
+ * dependency with its exclusions, the managed dependencies, the repositories and the dependency manager, selector and
+ * traverser of the session, and is only reused if all its artifact files are unchanged. Graphs of snapshot artifacts
+ * and graphs containing version ranges are never persisted, as they may resolve differently without any change to
+ * the request.
+ *
+ * A persisted node keeps the coordinates, properties and file of its artifact, the scope, optional flag and exclusions
+ * of its dependency, its relocations and its premanaged version and scope. The aliases, repositories, version
+ * constraint, request context and other custom data of the nodes are not kept : they are only used while collecting
+ * the graph, and the dependency visitors of the helpers don't read them.
+ */
+public class DependencyGraphCache {
+
+    private static final String GRAPH_MODEL_VERSION = "0.2";
+
+    private static final Map<Object, DependencyGraphCache> SESSION_CACHES = new WeakHashMap<Object, DependencyGraphCache>();
+
+    /**
+     * The persisted description of a dependency node and of its children.
+     */
+    public static class GraphNode {
+        private String groupId;
+        private String artifactId;
+        private String classifier = "";
+        private String extension = "jar";
+        private String version;
+        private String scope = "";
+        private boolean optional;
+        private String file;
+        private long lastModified;
+        private long fileSize;
+        private List<String> exclusions = new ArrayList<String>();
+        private Map<String, String> properties = new TreeMap<String, String>();
+        private List<String> relocations = new ArrayList<String>();
+        private String premanagedVersion;
+        private String premanagedScope;
+        private int managedBits;
+        private List<GraphNode> children = new ArrayList<GraphNode>();
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public void setGroupId(String groupId) {
+            this.groupId = groupId;
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public void setArtifactId(String artifactId) {
+            this.artifactId = artifactId;
+        }
+
+        public String getClassifier() {
+            return classifier;
+        }
+
+        public void setClassifier(String classifier) {
+            this.classifier = classifier;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public void setExtension(String extension) {
+            this.extension = extension;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public void setVersion(String version) {
+            this.version = version;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+
+        public void setScope(String scope) {
+            this.scope = scope;
+        }
+
+        public boolean isOptional() {
+            return optional;
+        }
+
+        public void setOptional(boolean optional) {
+            this.optional = optional;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public void setFileSize(long fileSize) {
+            this.fileSize = fileSize;
+        }
+
+        /**
+         * The exclusions of the dependency, as groupId:artifactId:classifier:extension strings.
+         */
+        public List<String> getExclusions() {
+            return exclusions;
+        }
+
+        public void setExclusions(List<String> exclusions) {
+            this.exclusions = exclusions;
+        }
+
+        /**
+         * The properties of the artifact, such as its type or whether it is part of the build path.
+         */
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        public void setProperties(Map<String, String> properties) {
+            this.properties = properties;
+        }
+
+        /**
+         * The artifacts the node was relocated from, as groupId:artifactId:extension[:classifier]:version strings.
+         */
+        public List<String> getRelocations() {
+            return relocations;
+        }
+
+        public void setRelocations(List<String> relocations) {
+            this.relocations = relocations;
+        }
+
+        public String getPremanagedVersion() {
+            return premanagedVersion;
+        }
+
+        public void setPremanagedVersion(String premanagedVersion) {
+            this.premanagedVersion = premanagedVersion;
+        }
+
+        public String getPremanagedScope() {
+            return premanagedScope;
+        }
+
+        public void setPremanagedScope(String premanagedScope) {
+            this.premanagedScope = premanagedScope;
+        }
+
+        /**
+         * The managed bits of the node, only used with the Maven 3.1+ Aether implementation.
+         */
+        public int getManagedBits() {
+            return managedBits;
+        }
+
+        public void setManagedBits(int managedBits) {
+            this.managedBits = managedBits;
+        }
+
+        public List<GraphNode> getChildren() {
+            return children;
+        }
+
+        public void setChildren(List<GraphNode> children) {
+            this.children = children;
+        }
+
+        /**
+         * Sets the artifact file and remembers its last modification date and size. This is not a JSON property,
+         * otherwise reading a persisted graph would replace the persisted date and size by the current ones.
+         */
+        @JsonIgnore
+        public void setArtifactFile(File artifactFile) {
+            if (artifactFile != null) {
+                this.file = artifactFile.getPath();
+                this.lastModified = artifactFile.lastModified();
+                this.fileSize = artifactFile.length();
+            } else {
+                this.file = null;
+                this.lastModified = 0;
+                this.fileSize = 0;
+            }
+        }
+
+        /**
+         * Returns the artifact file, or null if there is none.
+         */
+        @JsonIgnore
+        public File getArtifactFile() {
+            return file != null ? new File(file) : null;
+        }
+
+        private boolean isUpToDate() {
+            if (file != null) {
+                File artifactFile = new File(file);
+                if (artifactFile.lastModified() != lastModified || artifactFile.length() != fileSize) {
+                    return false;
+                }
+            }
+            for (GraphNode child : children) {
+                if (!child.isUpToDate()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The content of a persisted graph file.
+     */
+    public static class PersistedGraph {
+        private String version;
+        private String key;
+        private GraphNode root;
+
+        public String getVersion() {
+            return version;
+        }
+
+        public void setVersion(String version) {
+            this.version = version;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public GraphNode getRoot() {
+            return root;
+        }
+
+        public void setRoot(GraphNode root) {
+            this.root = root;
+        }
+    }
+
+    private final Map<String, Object> graphs = new HashMap<String, Object>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Returns the cache shared by all the helpers using the given repository session.
+     */
+    public static DependencyGraphCache getInstance(Object repositorySession) {
+        synchronized (SESSION_CACHES) {
+            DependencyGraphCache dependencyGraphCache = SESSION_CACHES.get(repositorySession);
+            if (dependencyGraphCache == null) {
+                dependencyGraphCache = new DependencyGraphCache();
+                SESSION_CACHES.put(repositorySession, dependencyGraphCache);
+            }
+            return dependencyGraphCache;
+        }
+    }
+
+    DependencyGraphCache() {
+    }
+
+    /**
+     * Returns the root node of the graph resolved in this session for the given key, or null if there is none.
+     */
+    public synchronized <N> N get(String key, Class<N> nodeClass) {
+        Object graph = graphs.get(key);
+        return nodeClass.isInstance(graph) ? nodeClass.cast(graph) : null;
+    }
+
+    public synchronized void put(String key, Object rootNode) {
+        graphs.put(key, rootNode);
+    }
+
+    /**
+     * Loads the graph persisted in the given directory for the given key.
+     *
+     * @return the root of the persisted graph, or null if there is none or if some of its artifact files changed
+     */
+    public GraphNode load(File directory, String key, Log log) {
+        if (directory == null) {
+            return null;
+        }
+        File graphFile = getGraphFile(directory, key);
+        if (!graphFile.exists()) {
+            return null;
+        }
+        try {
+            PersistedGraph persistedGraph = objectMapper.readValue(graphFile, PersistedGraph.class);
+            if (GRAPH_MODEL_VERSION.equals(persistedGraph.getVersion()) && key.equals(persistedGraph.getKey())
+                    && persistedGraph.getRoot() != null && persistedGraph.getRoot().isUpToDate()) {
+                return persistedGraph.getRoot();
+            }
+        } catch (IOException e) {
+            // This can happen if the graph file is somehow corrupted, in this case the graph is simply resolved again.
+            log.debug("Error reading dependency graph " + graphFile + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Persists the graph in the given directory for the given key.
+     */
+    public void store(File directory, String key, GraphNode root, Log log) {
+        if (directory == null) {
+            return;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            log.warn("Couldn't create dependency graph cache directory " + directory);
+            return;
+        }
+        PersistedGraph persistedGraph = new PersistedGraph();
+        persistedGraph.setVersion(GRAPH_MODEL_VERSION);
+        persistedGraph.setKey(key);
+        persistedGraph.setRoot(root);
+        File graphFile = getGraphFile(directory, key);
+        File temporaryFile = null;
+        try {
+            // write to a temporary file first so that a concurrent build never reads a partially written graph
+            temporaryFile = File.createTempFile(graphFile.getName(), ".tmp", directory);
+            objectMapper.writeValue(temporaryFile, persistedGraph);
+            if (!temporaryFile.renameTo(graphFile)) {
+                graphFile.delete();
+                if (!temporaryFile.renameTo(graphFile)) {
+                    log.warn("Couldn't rename " + temporaryFile + " to " + graphFile);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error writing dependency graph " + graphFile + ": " + e.getMessage());
+        } finally {
+            if (temporaryFile != null) {
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    private File getGraphFile(File directory, String key) {
+        return new File(directory, DigestUtils.shaHex(key) + ".json");
+    }
+
+}
@@ -0,0 +1,402 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Replaces the manifest of a JAR file without extracting and compressing its other entries again: the local headers
+ * and compressed data of all the other entries are copied as is from the original archive, only the
+ * META-INF/MANIFEST.MF entry is compressed again, and the central directory is rewritten with the new entry offsets.
+ *
+ * Only single disk archives without ZIP64 extensions are supported, a {@link ZipException} is thrown for the others
+ * so that the caller may fall back to a complete extraction and re-archiving of the JAR.
+ */
+public class JarManifestRewriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH = 20;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final int DEFLATED = 8;
+    private static final int VERSION_NEEDED_TO_EXTRACT = 20;
+
+    private static class CentralEntry {
+        private String name;
+        private byte[] header;
+        private long localHeaderOffset;
+        private long localEntryLength;
+    }
+
+    private JarManifestRewriter() {
+    }
+
+    /**
+     * Replaces the manifest of the given JAR by the given one. The new archive is written next to the JAR and then
+     * moved in place, so that the JAR is left untouched if the rewrite fails.
+     */
+    public static void rewriteManifest(File jarFile, Manifest manifest) throws IOException {
+        File rewrittenJarFile = new File(jarFile.getPath() + ".rewrite");
+        RandomAccessFile source = new RandomAccessFile(jarFile, "r");
+        try {
+            FileOutputStream outputStream = new FileOutputStream(rewrittenJarFile);
+            try {
+                rewriteManifest(source, outputStream.getChannel(), manifest);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            rewrittenJarFile.delete();
+            throw e;
+        } finally {
+            source.close();
+        }
+        replaceJar(jarFile, rewrittenJarFile);
+    }
+
+    /**
+     * Replaces the given JAR by the rewritten one. The original JAR is first moved (or copied, if it is still opened
+     * by someone else) to a backup file, which is restored if the rewritten JAR cannot be put in place.
+     */
+    static void replaceJar(File jarFile, File rewrittenJarFile) throws IOException {
+        File backupJarFile = new File(jarFile.getPath() + ".backup");
+        if (!backupJarFile.delete() && backupJarFile.exists()) {
+            rewrittenJarFile.delete();
+            throw new IOException("Couldn't delete previous backup file " + backupJarFile);
+        }
+        try {
+            boolean movedToBackup = jarFile.renameTo(backupJarFile);
+            if (!movedToBackup) {
+                FileUtils.copyFile(jarFile, backupJarFile);
+            }
+            try {
+                if (!movedToBackup || !rewrittenJarFile.renameTo(jarFile)) {
+                    // the JAR may still be opened by someone else, copying the content works in that case
+                    FileUtils.copyFile(rewrittenJarFile, jarFile);
+                }
+            } catch (IOException e) {
+                restoreJar(jarFile, backupJarFile);
+                throw e;
+            }
+        } finally {
+            rewrittenJarFile.delete();
+        }
+        backupJarFile.delete();
+    }
+
+    private static void restoreJar(File jarFile, File backupJarFile) throws IOException {
+        jarFile.delete();
+        if (!backupJarFile.renameTo(jarFile)) {
+            try {
+                FileUtils.copyFile(backupJarFile, jarFile);
+            } catch (IOException e) {
+                throw new IOException("Couldn't restore " + jarFile + ", the original JAR is kept in " + backupJarFile, e);
+            }
+            backupJarFile.delete();
+        }
+    }
+
+    private static void rewriteManifest(RandomAccessFile source, FileChannel target, Manifest manifest) throws IOException {
+        FileChannel sourceChannel = source.getChannel();
+        long endOfCentralDirectoryOffset = findEndOfCentralDirectory(source);
+        ByteBuffer endOfCentralDirectory = read(sourceChannel, endOfCentralDirectoryOffset, END_OF_CENTRAL_DIRECTORY_LENGTH);
+        int entryCount = endOfCentralDirectory.getShort(10) & 0xFFFF;
+        long centralDirectorySize = endOfCentralDirectory.getInt(12) & 0xFFFFFFFFL;
+        long centralDirectoryOffset = endOfCentralDirectory.getInt(16) & 0xFFFFFFFFL;
+        int commentLength = endOfCentralDirectory.getShort(20) & 0xFFFF;
+        if (endOfCentralDirectory.getShort(4) != 0 || endOfCentralDirectory.getShort(6) != 0 ||
+                (endOfCentralDirectory.getShort(8) & 0xFFFF) != entryCount) {
+            throw new ZipException("Multi-disk archives are not supported");
+        }
+        if (entryCount == 0xFFFF || centralDirectorySize == 0xFFFFFFFFL || centralDirectoryOffset == 0xFFFFFFFFL ||
+                (endOfCentralDirectoryOffset >= ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH &&
+                        read(sourceChannel, endOfCentralDirectoryOffset - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH, 4).getInt(0) ==
+                                ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE)) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+        List<CentralEntry> entries = readCentralDirectory(sourceChannel, centralDirectoryOffset, centralDirectorySize, entryCount);
+
+        ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+        manifest.write(manifestBytes);
+        CentralEntry manifestEntry = null;
+        for (CentralEntry entry : entries) {
+            if (JarFile.MANIFEST_NAME.equalsIgnoreCase(entry.name)) {
+                manifestEntry = entry;
+                break;
+            }
+        }
+
+        List<byte[]> centralHeaders = new ArrayList<byte[]>();
+        long position = 0;
+        if (manifestEntry == null) {
+            // a missing manifest is added as the first entry, where JarInputStream expects it
+            position += writeManifestEntry(target, manifestBytes.toByteArray(), null, position, centralHeaders);
+        }
+        for (CentralEntry entry : entries) {
+            if (entry == manifestEntry) {
+                position += writeManifestEntry(target, manifestBytes.toByteArray(), entry, position, centralHeaders);
+                continue;
+            }
+            transfer(sourceChannel, entry.localHeaderOffset, entry.localEntryLength, target);
+            ByteBuffer centralHeader = ByteBuffer.wrap(entry.header.clone()).order(ByteOrder.LITTLE_ENDIAN);
+            centralHeader.putInt(42, (int) position);
+            centralHeaders.add(centralHeader.array());
+            position += entry.localEntryLength;
+        }
+
+        long newCentralDirectoryOffset = position;
+        for (byte[] centralHeader : centralHeaders) {
+            write(target, ByteBuffer.wrap(centralHeader));
+            position += centralHeader.length;
+        }
+        if (position > 0xFFFFFFFFL || centralHeaders.size() >= 0xFFFF) {
+            throw new ZipException("The rewritten archive would need ZIP64 extensions");
+        }
+        ByteBuffer newEndOfCentralDirectory = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        newEndOfCentralDirectory.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        newEndOfCentralDirectory.putShort((short) 0);
+        newEndOfCentralDirectory.putShort((short) 0);
+        newEndOfCentralDirectory.putShort((short) centralHeaders.size());
+        newEndOfCentralDirectory.putShort((short) centralHeaders.size());
+        newEndOfCentralDirectory.putInt((int) (position - newCentralDirectoryOffset));
+        newEndOfCentralDirectory.putInt((int) newCentralDirectoryOffset);
+        newEndOfCentralDirectory.putShort((short) commentLength);
+        newEndOfCentralDirectory.flip();
+        write(target, newEndOfCentralDirectory);
+        transfer(sourceChannel, endOfCentralDirectoryOffset + END_OF_CENTRAL_DIRECTORY_LENGTH, commentLength, target);
+    }
+
+    private static long findEndOfCentralDirectory(RandomAccessFile source) throws IOException {
+        long length = source.length();
+        int searchLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = read(source.getChannel(), length - searchLength, searchLength);
+        for (int i = searchLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE &&
+                    i + END_OF_CENTRAL_DIRECTORY_LENGTH + (tail.getShort(i + 20) & 0xFFFF) == searchLength) {
+                return length - searchLength + i;
+            }
+        }
+        throw new ZipException("End of central directory not found, not a ZIP archive");
+    }
+
+    private static List<CentralEntry> readCentralDirectory(FileChannel source, long offset, long size, int entryCount) throws IOException {
+        ByteBuffer centralDirectory = read(source, offset, (int) size);
+        List<CentralEntry> entries = new ArrayList<CentralEntry>(entryCount);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_HEADER_LENGTH > size || centralDirectory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            int flags = centralDirectory.getShort(position + 8) & 0xFFFF;
+            long compressedSize = centralDirectory.getInt(position + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = centralDirectory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = centralDirectory.getShort(position + 28) & 0xFFFF;
+            int extraLength = centralDirectory.getShort(position + 30) & 0xFFFF;
+            int commentLength = centralDirectory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = centralDirectory.getInt(position + 42) & 0xFFFFFFFFL;
+            if (compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                throw new ZipException("ZIP64 entries are not supported");
+            }
+            int headerLength = CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+            CentralEntry entry = new CentralEntry();
+            entry.header = new byte[headerLength];
+            centralDirectory.position(position);
+            centralDirectory.get(entry.header);
+            entry.name = new String(entry.header, CENTRAL_HEADER_LENGTH, nameLength, "UTF-8");
+            entry.localHeaderOffset = localHeaderOffset;
+
+            ByteBuffer localHeader = read(source, localHeaderOffset, LOCAL_HEADER_LENGTH);
+            if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for entry " + entry.name);
+            }
+            long dataEnd = localHeaderOffset + LOCAL_HEADER_LENGTH + (localHeader.getShort(26) & 0xFFFF) +
+                    (localHeader.getShort(28) & 0xFFFF) + compressedSize;
+            long localEntryEnd = dataEnd;
+            if ((flags & DATA_DESCRIPTOR_FLAG) != 0) {
+                // the data descriptor may or may not start with its signature
+                localEntryEnd += read(source, dataEnd, 4).getInt(0) == DATA_DESCRIPTOR_SIGNATURE ? 16 : 12;
+            }
+            entry.localEntryLength = localEntryEnd - localHeaderOffset;
+            entries.add(entry);
+            position += headerLength;
+        }
+        return entries;
+    }
+
+    private static long writeManifestEntry(FileChannel target, byte[] manifestBytes, CentralEntry originalEntry,
+                                           long offset, List<byte[]> centralHeaders) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(manifestBytes);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+        try {
+            deflater.setInput(manifestBytes);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                compressedBytes.write(buffer, 0, length);
+            }
+        } finally {
+            deflater.end();
+        }
+        byte[] name = JarFile.MANIFEST_NAME.getBytes("UTF-8");
+        int dosTime;
+        int externalAttributes = 0;
+        int versionMadeBy = VERSION_NEEDED_TO_EXTRACT;
+        if (originalEntry != null) {
+            ByteBuffer originalHeader = ByteBuffer.wrap(originalEntry.header).order(ByteOrder.LITTLE_ENDIAN);
+            versionMadeBy = originalHeader.getShort(4) & 0xFFFF;
+            dosTime = originalHeader.getInt(12);
+            externalAttributes = originalHeader.getInt(38);
+        } else {
+            dosTime = toDosTime(System.currentTimeMillis());
+        }
+
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_LENGTH + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        localHeader.putInt(LOCAL_HEADER_SIGNATURE);
+        localHeader.putShort((short) VERSION_NEEDED_TO_EXTRACT);
+        localHeader.putShort((short) 0);
+        localHeader.putShort((short) DEFLATED);
+        localHeader.putInt(dosTime);
+        localHeader.putInt((int) crc.getValue());
+        localHeader.putInt(compressedBytes.size());
+        localHeader.putInt(manifestBytes.length);
+        localHeader.putShort((short) name.length);
+        localHeader.putShort((short) 0);
+        localHeader.put(name);
+        localHeader.flip();
+        write(target, localHeader);
+        write(target, ByteBuffer.wrap(compressedBytes.toByteArray()));
+
+        ByteBuffer centralHeader = ByteBuffer.allocate(CENTRAL_HEADER_LENGTH + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        centralHeader.putInt(CENTRAL_HEADER_SIGNATURE);
+        centralHeader.putShort((short) versionMadeBy);
+        centralHeader.putShort((short) VERSION_NEEDED_TO_EXTRACT);
+        centralHeader.putShort((short) 0);
+        centralHeader.putShort((short) DEFLATED);
+        centralHeader.putInt(dosTime);
+        centralHeader.putInt((int) crc.getValue());
+        centralHeader.putInt(compressedBytes.size());
+        centralHeader.putInt(manifestBytes.length);
+        centralHeader.putShort((short) name.length);
+        centralHeader.putShort((short) 0);
+        centralHeader.putShort((short) 0);
+        centralHeader.putShort((short) 0);
+        centralHeader.putShort((short) 0);
+        centralHeader.putInt(externalAttributes);
+        centralHeader.putInt((int) offset);
+        centralHeader.put(name);
+        centralHeaders.add(centralHeader.array());
+
+        return LOCAL_HEADER_LENGTH + name.length + compressedBytes.size();
+    }
+
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 |
+                calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11 |
+                calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static ByteBuffer read(FileChannel source, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void write(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static void transfer(FileChannel source, long position, long length, FileChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            long count = source.transferTo(position + transferred, length - transferred, target);
+            if (count <= 0) {
+                throw new ZipException("Unexpected end of archive");
+            }
+            transferred += count;
+        }
+    }
+
+}
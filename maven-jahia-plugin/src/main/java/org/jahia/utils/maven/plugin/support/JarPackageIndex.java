@@ -0,0 +1,303 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the packages contained in JAR files, so that looking up whether a JAR contains a package doesn't
+ * require reading it again. Package names are mapped to numeric identifiers shared by all the indexed JARs, and the
+ * packages of each JAR are stored as a bit set of these identifiers.
+ *
+ * A JAR is considered as containing a package if it has at least one entry in the corresponding directory or in one
+ * of its sub-directories. The entries of the index are only valid for the same file path, last modification date and
+ * size, and may be persisted in a JSON file, usually stored next to the parsing context cache entries, so that they
+ * can be reused by later builds.
+ */
+public class JarPackageIndex {
+
+    public static final String INDEX_FILE_NAME = "jar-package-index.json";
+
+    private static final String INDEX_MODEL_VERSION = "0.1";
+
+    private static class IndexEntry {
+        private final long lastModified;
+        private final long fileSize;
+        private final BitSet packages;
+
+        IndexEntry(long lastModified, long fileSize, BitSet packages) {
+            this.lastModified = lastModified;
+            this.fileSize = fileSize;
+            this.packages = packages;
+        }
+    }
+
+    /**
+     * The JSON representation of an index entry.
+     */
+    public static class PersistedEntry {
+        private long lastModified;
+        private long fileSize;
+        private List<String> packages = new ArrayList<String>();
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public void setFileSize(long fileSize) {
+            this.fileSize = fileSize;
+        }
+
+        public List<String> getPackages() {
+            return packages;
+        }
+
+        public void setPackages(List<String> packages) {
+            this.packages = packages;
+        }
+    }
+
+    private final File indexFile;
+    private final Map<String, Integer> packageIds = new HashMap<String, Integer>();
+    private final List<String> packageNames = new ArrayList<String>();
+    private final Map<String, IndexEntry> entries = new HashMap<String, IndexEntry>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private boolean modified = false;
+
+    /**
+     * Creates an index that is only kept in memory.
+     */
+    public JarPackageIndex() {
+        this.indexFile = null;
+    }
+
+    /**
+     * Creates an index persisted in the given file, loading the entries it already contains if it exists.
+     */
+    public JarPackageIndex(File indexFile, Log log) {
+        this.indexFile = indexFile;
+        if (indexFile.exists()) {
+            try {
+                Map<String, Object> index = objectMapper.readValue(indexFile, new TypeReference<Map<String, Object>>() {});
+                if (INDEX_MODEL_VERSION.equals(index.get("version"))) {
+                    Map<String, PersistedEntry> persistedEntries = objectMapper.convertValue(index.get("entries"),
+                            new TypeReference<Map<String, PersistedEntry>>() {});
+                    if (persistedEntries != null) {
+                        for (Map.Entry<String, PersistedEntry> persistedEntry : persistedEntries.entrySet()) {
+                            PersistedEntry value = persistedEntry.getValue();
+                            entries.put(persistedEntry.getKey(), new IndexEntry(value.getLastModified(),
+                                    value.getFileSize(), toBitSet(value.getPackages())));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // This can happen if the index file is somehow corrupted, in this case we simply rebuild the index.
+                log.warn("Error reading JAR package index " + indexFile + ", it will be rebuilt: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                log.warn("Error reading JAR package index " + indexFile + ", it will be rebuilt: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests whether the given JAR contains the given package.
+     */
+    public synchronized boolean containsPackage(File jarFile, String packageName, Log log) {
+        BitSet packages = getPackageBits(jarFile, log);
+        Integer packageId = packageIds.get(packageName);
+        return packageId != null && packages.get(packageId);
+    }
+
+    /**
+     * Returns the names of all the packages contained in the given JAR.
+     */
+    public synchronized Set<String> getPackages(File jarFile, Log log) {
+        BitSet packages = getPackageBits(jarFile, log);
+        Set<String> result = new TreeSet<String>();
+        for (int i = packages.nextSetBit(0); i >= 0; i = packages.nextSetBit(i + 1)) {
+            result.add(packageNames.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the index to its file, if it has been modified since it was loaded.
+     */
+    public synchronized void save() throws IOException {
+        if (indexFile == null || !modified) {
+            return;
+        }
+        Map<String, PersistedEntry> persistedEntries = new TreeMap<String, PersistedEntry>();
+        for (Map.Entry<String, IndexEntry> entry : entries.entrySet()) {
+            PersistedEntry persistedEntry = new PersistedEntry();
+            persistedEntry.setLastModified(entry.getValue().lastModified);
+            persistedEntry.setFileSize(entry.getValue().fileSize);
+            BitSet packages = entry.getValue().packages;
+            for (int i = packages.nextSetBit(0); i >= 0; i = packages.nextSetBit(i + 1)) {
+                persistedEntry.getPackages().add(packageNames.get(i));
+            }
+            persistedEntries.put(entry.getKey(), persistedEntry);
+        }
+        Map<String, Object> index = new LinkedHashMap<String, Object>();
+        index.put("version", INDEX_MODEL_VERSION);
+        index.put("entries", persistedEntries);
+        File parentDirectory = indexFile.getAbsoluteFile().getParentFile();
+        if (!parentDirectory.exists() && !parentDirectory.mkdirs()) {
+            throw new IOException("Couldn't create directory " + parentDirectory);
+        }
+        // write to a temporary file first so that a concurrent build never reads a partially written index
+        File temporaryFile = File.createTempFile(INDEX_FILE_NAME, ".tmp", parentDirectory);
+        try {
+            objectMapper.writeValue(temporaryFile, index);
+            if (!temporaryFile.renameTo(indexFile)) {
+                indexFile.delete();
+                if (!temporaryFile.renameTo(indexFile)) {
+                    throw new IOException("Couldn't rename " + temporaryFile + " to " + indexFile);
+                }
+            }
+            modified = false;
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    private BitSet getPackageBits(File jarFile, Log log) {
+        if (jarFile == null) {
+            log.warn("File is null !");
+            return new BitSet();
+        }
+        if (!jarFile.exists()) {
+            log.warn("File " + jarFile + " does not exist !");
+            return new BitSet();
+        }
+        String path = jarFile.getAbsolutePath();
+        long lastModified = jarFile.lastModified();
+        long fileSize = jarFile.length();
+        IndexEntry entry = entries.get(path);
+        if (entry != null && entry.lastModified == lastModified && entry.fileSize == fileSize) {
+            return entry.packages;
+        }
+        log.debug("Scanning JAR " + jarFile + "...");
+        BitSet packages = new BitSet();
+        ZipFile zipFile = null;
+        try {
+            zipFile = new ZipFile(jarFile);
+            Set<String> directories = new HashSet<String>();
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                String entryName = zipEntries.nextElement().getName();
+                int lastSlashPos = entryName.lastIndexOf('/', entryName.length() - 2);
+                // the directory of a file entry as well as all its parent directories are packages of the JAR
+                addDirectory(entryName.endsWith("/") ? entryName.substring(0, entryName.length() - 1) : null,
+                        directories, packages);
+                while (lastSlashPos > 0) {
+                    if (!addDirectory(entryName.substring(0, lastSlashPos), directories, packages)) {
+                        break;
+                    }
+                    lastSlashPos = entryName.lastIndexOf('/', lastSlashPos - 1);
+                }
+            }
+        } catch (IOException e) {
+            log.error(e);
+            // don't remember the failure, so that the JAR will be scanned again next time
+            return packages;
+        } finally {
+            if (zipFile != null) {
+                try {
+                    zipFile.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        entries.put(path, new IndexEntry(lastModified, fileSize, packages));
+        modified = true;
+        return packages;
+    }
+
+    private boolean addDirectory(String directory, Set<String> directories, BitSet packages) {
+        if (directory == null || directory.length() == 0 || !directories.add(directory)) {
+            return false;
+        }
+        packages.set(getPackageId(directory.replace('/', '.')));
+        return true;
+    }
+
+    private BitSet toBitSet(List<String> packages) {
+        BitSet bitSet = new BitSet();
+        if (packages != null) {
+            for (String packageName : packages) {
+                bitSet.set(getPackageId(packageName));
+            }
+        }
+        return bitSet;
+    }
+
+    private int getPackageId(String packageName) {
+        Integer packageId = packageIds.get(packageName);
+        if (packageId == null) {
+            packageId = packageNames.size();
+            packageIds.put(packageName, packageId);
+            packageNames.add(packageName);
+        }
+        return packageId;
+    }
+
+}
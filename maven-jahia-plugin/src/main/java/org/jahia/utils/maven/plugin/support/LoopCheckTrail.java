@@ -0,0 +1,93 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The trail of the dependency nodes currently being visited, used by the dependency visitors to detect dependency
+ * loops. Next to the stack of the nodes, the set of the distinct nodes on the trail is maintained, so that checking
+ * whether a node is already on the trail doesn't require scanning it, which matters on deep dependency graphs.
+ */
+class LoopCheckTrail {
+
+    private final Deque<String> trail = new ArrayDeque<String>();
+    private final Deque<Boolean> firstOccurrences = new ArrayDeque<Boolean>();
+    private final Set<String> nodes = new HashSet<String>();
+
+    /**
+     * Pushes the given node on the trail.
+     *
+     * @return false if the node was already on the trail, meaning that a dependency loop was found
+     */
+    public boolean push(String node) {
+        boolean firstOccurrence = nodes.add(node);
+        trail.push(node);
+        firstOccurrences.push(firstOccurrence);
+        return firstOccurrence;
+    }
+
+    /**
+     * Removes the last pushed node from the trail.
+     */
+    public String pop() {
+        String node = trail.pop();
+        if (firstOccurrences.pop()) {
+            nodes.remove(node);
+        }
+        return node;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    public int size() {
+        return trail.size();
+    }
+
+}
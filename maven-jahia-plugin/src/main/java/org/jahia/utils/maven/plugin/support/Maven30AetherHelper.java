@@ -62,10 +62,12 @@ import org.sonatype.aether.repository.RemoteRepository;
 import org.sonatype.aether.resolution.*;
 import org.sonatype.aether.util.DefaultRepositorySystemSession;
 import org.sonatype.aether.util.artifact.DefaultArtifact;
+import org.sonatype.aether.util.graph.DefaultDependencyNode;
 import org.sonatype.aether.util.graph.selector.AndDependencySelector;
 import org.sonatype.aether.util.graph.selector.ExclusionDependencySelector;
 import org.sonatype.aether.util.graph.selector.OptionalDependencySelector;
 import org.sonatype.aether.util.graph.selector.ScopeDependencySelector;
+import org.sonatype.aether.version.VersionConstraint;
 
 import java.io.File;
 import java.util.*;
@@ -84,17 +86,20 @@ public class Maven30AetherHelper implements AetherHelper {
         private List<String> dependencyTrail = null;
         private boolean excludedDependency = false;
         private Map<String, List<String>> foundPackages;
-        private String packageName;
-        private Deque<String> loopCheckTrail = null;
-
-        public PackagerFinderDependencyVisitor(String packageName, Map<String, List<String>> foundPackages,
-                boolean excludedDependency, List<String> dependencyTrail, Deque<String> loopCheckTrail) {
-            this.packageName = packageName;
+        private Collection<String> packageNames;
+        private JarPackageIndex jarPackageIndex;
+        private LoopCheckTrail loopCheckTrail = null;
+
+        public PackagerFinderDependencyVisitor(Collection<String> packageNames, JarPackageIndex jarPackageIndex,
+                Map<String, List<String>> foundPackages, boolean excludedDependency, List<String> dependencyTrail,
+                LoopCheckTrail loopCheckTrail) {
+            this.packageNames = packageNames;
+            this.jarPackageIndex = jarPackageIndex;
             this.foundPackages = foundPackages;
             this.excludedDependency = excludedDependency;
             this.dependencyTrail = new LinkedList<String>(dependencyTrail);
             if (loopCheckTrail == null) {
-                this.loopCheckTrail = new ArrayDeque<String>();
+                this.loopCheckTrail = new LoopCheckTrail();
             } else {
                 this.loopCheckTrail = loopCheckTrail;
             }
@@ -102,11 +107,9 @@ public class Maven30AetherHelper implements AetherHelper {
 
         @Override
         public boolean visitEnter(DependencyNode node) {
-            if (!loopCheckTrail.contains(node.toString())) {
-                loopCheckTrail.push(node.toString());
-            } else {
-                log.warn("Already visited dependency " + node.toString() + "!!!");
-                loopCheckTrail.push(node.toString());
+            String nodeName = node.toString();
+            if (!loopCheckTrail.push(nodeName)) {
+                log.warn("Already visited dependency " + nodeName + "!!!");
                 return false;
             }
             if (node.getDependency().getArtifact().getFile() == null) {
@@ -129,9 +132,14 @@ public class Maven30AetherHelper implements AetherHelper {
                     trailSuffix = "[excluded]";
                 }
             }
-            curTrail.add(node.toString() + trailSuffix);
+            curTrail.add(nodeName + trailSuffix);
             String trail = getTrail(dependencyTrail);
-            if (doesJarHavePackageName(node.getDependency().getArtifact().getFile(), packageName, log)) {
+            List<String> missingPackages = new ArrayList<String>();
+            for (String packageName : packageNames) {
+                if (!jarPackageIndex.containsPackage(node.getDependency().getArtifact().getFile(), packageName, log)) {
+                    missingPackages.add(packageName);
+                    continue;
+                }
                 if (!excludedDependency) {
                     if (node.getDependency().isOptional()) {
                         log.info(trail + ": Found package " + packageName + " in optional artifact "
@@ -150,14 +158,16 @@ public class Maven30AetherHelper implements AetherHelper {
                     }
                 }
                 foundPackages.put(packageName, curTrail);
-            } else {
+            }
+            if (!missingPackages.isEmpty()) {
+                // the exclusions are resolved once for all the packages that are not in this artifact
                 for (Exclusion exclusion : node.getDependency().getExclusions()) {
                     log.debug(trail + ": Processing exclusion " + exclusion + " of artifact "
                             + node.getDependency().getArtifact());
                     DependencyNode exclusionNode = resolveExclusion(node, exclusion);
                     if (exclusionNode != null) {
-                        exclusionNode.accept(new PackagerFinderDependencyVisitor(packageName, foundPackages, true,
-                                new LinkedList<String>(curTrail), loopCheckTrail));
+                        exclusionNode.accept(new PackagerFinderDependencyVisitor(missingPackages, jarPackageIndex,
+                                foundPackages, true, new LinkedList<String>(curTrail), loopCheckTrail));
                     }
                 }
             }
@@ -178,7 +188,7 @@ public class Maven30AetherHelper implements AetherHelper {
         private Deque<String> curTrail = null;
         private Deque<Artifact> artifactStack = new ArrayDeque<Artifact>();
         private Deque<ParsingContext> parsingContextStack = new ArrayDeque<ParsingContext>();
-        private Deque<String> loopCheckTrail = new ArrayDeque<String>();
+        private LoopCheckTrail loopCheckTrail = new LoopCheckTrail();
         private int depth = 0;
 
         public PackageCollectorDependencyVisitor(ArtifactProcessor artifactProcessor, ArtifactHandler artifactHandler, List<String> dependencyTrail, ParsingContext rootParsingContext) {
@@ -203,12 +213,11 @@ public class Maven30AetherHelper implements AetherHelper {
             if (node.getDependency().isOptional()) {
                 trailSuffix = "[optional]";
             }
-            curTrail.push(node.toString() + trailSuffix);
+            String nodeName = node.toString();
+            curTrail.push(nodeName + trailSuffix);
             String trail = getTrailPadding(curTrail);
-            if (!loopCheckTrail.contains(node.toString())) {
-                loopCheckTrail.push(node.toString());
-            } else {
-                log.warn("Already visited dependency " + node.toString() + "!!!");
+            if (!loopCheckTrail.push(nodeName)) {
+                log.warn("Already visited dependency " + nodeName + "!!!");
                 visitChildren = false;
             }
             // log.debug(trail + "Starting visit of artifact " + node.getDependency().getArtifact() + "...");
@@ -285,12 +294,21 @@ public class Maven30AetherHelper implements AetherHelper {
 
     private RepositorySystem repoSystem;
 
-    private Map<String, DependencyNode> resolvedDependencyNodes = new HashMap<String, DependencyNode>();
+    private DependencyGraphCache dependencyGraphCache;
+
+    private String repositoryKey;
+
+    private File dependencyGraphCacheDirectory;
 
     DefaultRepositorySystemSession moreDependenciesSession;
 
     public Maven30AetherHelper(RepositorySystem repoSystem, RepositorySystemSession repoSession,
             List<RemoteRepository> remoteRepos, Log log) {
+        this(repoSystem, repoSession, remoteRepos, null, log);
+    }
+
+    public Maven30AetherHelper(RepositorySystem repoSystem, RepositorySystemSession repoSession,
+            List<RemoteRepository> remoteRepos, File dependencyGraphCacheDirectory, Log log) {
         this.repoSystem = repoSystem;
         // this.repoSession = repoSession;
         // we build our own custom session to re-introduce the collection of "provided" dependencies that are excluded by the default Maven session.
@@ -299,45 +317,30 @@ public class Maven30AetherHelper implements AetherHelper {
         this.moreDependenciesSession.setDependencySelector(andDependencySelector);
         this.remoteRepos = remoteRepos;
         this.log = log;
+        // the resolved dependency graphs are shared by all the helpers of the build session
+        this.dependencyGraphCache = DependencyGraphCache.getInstance(repoSession);
+        this.dependencyGraphCacheDirectory = dependencyGraphCacheDirectory;
+        this.repositoryKey = getRepositoryKey(repoSession, remoteRepos);
+    }
+
+    private static String getRepositoryKey(RepositorySystemSession repoSession, List<RemoteRepository> remoteRepos) {
+        StringBuilder repositoryKey = new StringBuilder();
+        if (repoSession.getLocalRepository() != null) {
+            repositoryKey.append(repoSession.getLocalRepository().getBasedir());
+        }
+        if (remoteRepos != null) {
+            for (RemoteRepository remoteRepo : remoteRepos) {
+                repositoryKey.append(',').append(remoteRepo.getId()).append('=').append(remoteRepo.getUrl());
+            }
+        }
+        return repositoryKey.toString();
     }
 
     private Set<String> findInWarDependencies(Artifact warArtifact, final String artifactId) {
         final Set<String> versions = new LinkedHashSet<String>();
         String artifactCoords = warArtifact.getGroupId() + ":" + warArtifact.getArtifactId() + ":"
                 + warArtifact.getType() + ":" + warArtifact.getBaseVersion();
-        DependencyNode node = null;
-        if (resolvedDependencyNodes.containsKey(artifactCoords)) {
-            node = resolvedDependencyNodes.get(artifactCoords);
-        }
-
-        if (node == null) {
-            try {
-
-                log.info("Resolving artifact " + artifactCoords + "...");
-                ArtifactRequest request = new ArtifactRequest();
-                request.setArtifact(new DefaultArtifact(artifactCoords));
-                request.setRepositories(remoteRepos);
-
-                Dependency dependency = new Dependency(new DefaultArtifact(artifactCoords), "compile");
-
-                CollectRequest collectRequest = new CollectRequest();
-                collectRequest.setRoot(dependency);
-                collectRequest.setRepositories(remoteRepos);
-
-                node = repoSystem.collectDependencies(moreDependenciesSession, collectRequest).getRoot();
-
-                DependencyRequest dependencyRequest = new DependencyRequest(node, null);
-
-                repoSystem.resolveDependencies(moreDependenciesSession, dependencyRequest);
-
-                resolvedDependencyNodes.put(artifactCoords, node);
-
-            } catch (DependencyCollectionException e) {
-                log.error(e);
-            } catch (DependencyResolutionException e) {
-                log.error(e);
-            }
-        }
+        DependencyNode node = getDependencyNode(artifactCoords);
 
         if (node != null) {
             node.accept(new DependencyVisitor() {
@@ -361,8 +364,8 @@ public class Maven30AetherHelper implements AetherHelper {
     }
 
     @Override
-    public Map<String, List<String>> findPackages(MavenProject project, List<String> packageNames)
-            throws MojoExecutionException {
+    public Map<String, List<String>> findPackages(MavenProject project, List<String> packageNames,
+            JarPackageIndex jarPackageIndex) throws MojoExecutionException {
         final Map<String, List<String>> foundPackages = new HashMap<String, List<String>>();
         for (Artifact artifact : project.getArtifacts()) {
             if (artifact.isOptional()) {
@@ -372,7 +375,7 @@ public class Maven30AetherHelper implements AetherHelper {
                 log.warn("Found non JAR artifact " + artifact);
             }
             for (String packageName : packageNames) {
-                if (doesJarHavePackageName(artifact.getFile(), packageName, log)) {
+                if (jarPackageIndex.containsPackage(artifact.getFile(), packageName, log)) {
                     List<String> trail = new LinkedList<String>(artifact.getDependencyTrail());
                     if (artifact.isOptional()) {
                         trail.add("[optional]");
@@ -382,20 +385,25 @@ public class Maven30AetherHelper implements AetherHelper {
                 }
             }
         }
+        List<String> missingPackages = new ArrayList<String>();
         for (String packageName : packageNames) {
             if (!foundPackages.containsKey(packageName)) {
                 log.warn("Couldn't find " + packageName
                         + " in normal project dependencies, will now search optional (and excluded) dependencies");
-                for (Artifact artifact : project.getArtifacts()) {
-                    if (artifact.isOptional()) {
-                        log.debug("Processing optional artifact " + artifact + "...");
-                    }
-                    DependencyNode dependencyNode = getDependencyNode(getCoords(artifact));
-                    if (dependencyNode != null) {
-                        List<String> trail = new LinkedList<String>(artifact.getDependencyTrail());
-                        dependencyNode.accept(new PackagerFinderDependencyVisitor(packageName, foundPackages, false,
-                                trail, null));
-                    }
+                missingPackages.add(packageName);
+            }
+        }
+        if (!missingPackages.isEmpty()) {
+            // all the missing packages are searched in a single walk of the dependency graph of each artifact
+            for (Artifact artifact : project.getArtifacts()) {
+                if (artifact.isOptional()) {
+                    log.debug("Processing optional artifact " + artifact + "...");
+                }
+                DependencyNode dependencyNode = getDependencyNode(getCoords(artifact));
+                if (dependencyNode != null) {
+                    List<String> trail = new LinkedList<String>(artifact.getDependencyTrail());
+                    dependencyNode.accept(new PackagerFinderDependencyVisitor(missingPackages, jarPackageIndex,
+                            foundPackages, false, trail, null));
                 }
             }
         }
@@ -403,17 +411,27 @@ public class Maven30AetherHelper implements AetherHelper {
     }
 
     private DependencyNode getDependencyNode(String artifactCoords) {
-        ArtifactRequest request = new ArtifactRequest();
         DefaultArtifact aetherArtifact = new DefaultArtifact(artifactCoords);
-        request.setArtifact(aetherArtifact);
-        request.setRepositories(remoteRepos);
-
         Dependency dependency = new Dependency(aetherArtifact, "compile");
 
         CollectRequest collectRequest = new CollectRequest();
         collectRequest.setRoot(dependency);
         collectRequest.setRepositories(remoteRepos);
 
+        String graphKey = getGraphKey(collectRequest);
+        DependencyNode cachedDependencyNode = dependencyGraphCache.get(graphKey, DependencyNode.class);
+        if (cachedDependencyNode != null) {
+            return cachedDependencyNode;
+        }
+        DependencyGraphCache.GraphNode persistedRoot = dependencyGraphCache.load(dependencyGraphCacheDirectory,
+                graphKey, log);
+        if (persistedRoot != null) {
+            cachedDependencyNode = toDependencyNode(persistedRoot);
+            dependencyGraphCache.put(graphKey, cachedDependencyNode);
+            return cachedDependencyNode;
+        }
+
+        log.debug("Resolving dependencies of " + artifactCoords + "...");
         DependencyNode dependencyNode = null;
         try {
             dependencyNode = repoSystem.collectDependencies(moreDependenciesSession, collectRequest).getRoot();
@@ -421,6 +439,14 @@ public class Maven30AetherHelper implements AetherHelper {
 
             DependencyResult dependencyResult = repoSystem.resolveDependencies(moreDependenciesSession, dependencyRequest);
 
+            dependencyGraphCache.put(graphKey, dependencyNode);
+            if (dependencyGraphCacheDirectory != null && !dependencyNode.getDependency().getArtifact().isSnapshot()) {
+                DependencyGraphCache.GraphNode graphRoot = toGraphNode(dependencyNode,
+                        Collections.newSetFromMap(new IdentityHashMap<DependencyNode, Boolean>()));
+                if (graphRoot != null) {
+                    dependencyGraphCache.store(dependencyGraphCacheDirectory, graphKey, graphRoot, log);
+                }
+            }
         } catch (DependencyCollectionException e) {
             log.error("Error collecting dependencies for " + artifactCoords + ": " + e.getMessage());
         } catch (DependencyResolutionException e) {
@@ -429,6 +455,107 @@ public class Maven30AetherHelper implements AetherHelper {
         return dependencyNode;
     }
 
+    /**
+     * Returns the key of the graph collected for the given request. Besides the POMs and files of the artifacts, the
+     * collected graph only depends on the request and on the repositories and dependency handling of the session.
+     */
+    private String getGraphKey(CollectRequest collectRequest) {
+        StringBuilder graphKey = new StringBuilder();
+        appendDependency(graphKey, collectRequest.getRoot());
+        for (Dependency managedDependency : collectRequest.getManagedDependencies()) {
+            appendDependency(graphKey.append(",managed="), managedDependency);
+        }
+        graphKey.append('@').append(repositoryKey);
+        graphKey.append(",manager=").append(getClassName(moreDependenciesSession.getDependencyManager()));
+        graphKey.append(",selector=").append(getClassName(moreDependenciesSession.getDependencySelector()));
+        graphKey.append(",traverser=").append(getClassName(moreDependenciesSession.getDependencyTraverser()));
+        return graphKey.toString();
+    }
+
+    private static void appendDependency(StringBuilder graphKey, Dependency dependency) {
+        graphKey.append(dependency.getArtifact()).append(" (").append(dependency.getScope());
+        if (dependency.isOptional()) {
+            graphKey.append("?");
+        }
+        graphKey.append(")");
+        for (Exclusion exclusion : dependency.getExclusions()) {
+            graphKey.append("!").append(exclusion.getGroupId()).append(":").append(exclusion.getArtifactId())
+                    .append(":").append(exclusion.getClassifier()).append(":").append(exclusion.getExtension());
+        }
+    }
+
+    private static String getClassName(Object object) {
+        return object != null ? object.getClass().getName() : "none";
+    }
+
+    DependencyGraphCache.GraphNode toGraphNode(DependencyNode node, Set<DependencyNode> trail) {
+        if (!trail.add(node)) {
+            // graphs containing loops are not persisted
+            return null;
+        }
+        VersionConstraint versionConstraint = node.getVersionConstraint();
+        if (versionConstraint != null && versionConstraint.getRanges() != null && !versionConstraint.getRanges().isEmpty()) {
+            // graphs containing version ranges are not persisted, as the ranges may match newer versions later
+            return null;
+        }
+        Dependency dependency = node.getDependency();
+        org.sonatype.aether.artifact.Artifact artifact = dependency.getArtifact();
+        DependencyGraphCache.GraphNode graphNode = new DependencyGraphCache.GraphNode();
+        graphNode.setGroupId(artifact.getGroupId());
+        graphNode.setArtifactId(artifact.getArtifactId());
+        graphNode.setClassifier(artifact.getClassifier());
+        graphNode.setExtension(artifact.getExtension());
+        graphNode.setVersion(artifact.getVersion());
+        graphNode.setScope(dependency.getScope());
+        graphNode.setOptional(dependency.isOptional());
+        graphNode.setArtifactFile(artifact.getFile());
+        graphNode.setProperties(new TreeMap<String, String>(artifact.getProperties()));
+        for (org.sonatype.aether.artifact.Artifact relocation : node.getRelocations()) {
+            graphNode.getRelocations().add(relocation.toString());
+        }
+        graphNode.setPremanagedVersion(node.getPremanagedVersion());
+        graphNode.setPremanagedScope(node.getPremanagedScope());
+        for (Exclusion exclusion : dependency.getExclusions()) {
+            graphNode.getExclusions().add(exclusion.getGroupId() + ":" + exclusion.getArtifactId() + ":"
+                    + exclusion.getClassifier() + ":" + exclusion.getExtension());
+        }
+        for (DependencyNode childNode : node.getChildren()) {
+            DependencyGraphCache.GraphNode childGraphNode = toGraphNode(childNode, trail);
+            if (childGraphNode == null) {
+                return null;
+            }
+            graphNode.getChildren().add(childGraphNode);
+        }
+        trail.remove(node);
+        return graphNode;
+    }
+
+    DependencyNode toDependencyNode(DependencyGraphCache.GraphNode graphNode) {
+        List<Exclusion> exclusions = new ArrayList<Exclusion>();
+        for (String exclusion : graphNode.getExclusions()) {
+            String[] exclusionParts = exclusion.split(":", -1);
+            exclusions.add(new Exclusion(exclusionParts[0], exclusionParts[1], exclusionParts[2], exclusionParts[3]));
+        }
+        org.sonatype.aether.artifact.Artifact artifact = new DefaultArtifact(graphNode.getGroupId(),
+                graphNode.getArtifactId(), graphNode.getClassifier(), graphNode.getExtension(),
+                graphNode.getVersion(), graphNode.getProperties(), graphNode.getArtifactFile());
+        DefaultDependencyNode node = new DefaultDependencyNode(new Dependency(artifact, graphNode.getScope(),
+                graphNode.isOptional(), exclusions));
+        List<org.sonatype.aether.artifact.Artifact> relocations = new ArrayList<org.sonatype.aether.artifact.Artifact>();
+        for (String relocation : graphNode.getRelocations()) {
+            relocations.add(new DefaultArtifact(relocation));
+        }
+        node.setRelocations(relocations);
+        node.setPremanagedVersion(graphNode.getPremanagedVersion());
+        node.setPremanagedScope(graphNode.getPremanagedScope());
+        List<DependencyNode> children = new ArrayList<DependencyNode>();
+        for (DependencyGraphCache.GraphNode childGraphNode : graphNode.getChildren()) {
+            children.add(toDependencyNode(childGraphNode));
+        }
+        node.getChildren().addAll(children);
+        return node;
+    }
+
     @Override
     public List<String> getDependencyVersion(MavenProject project, String artifactFileName)
             throws MojoExecutionException {
@@ -472,8 +599,11 @@ public class Maven30AetherHelper implements AetherHelper {
         DependencyNode dependencyNode = getDependencyNode(getCoords(artifact));
         if (dependencyNode != null) {
             List<String> trail = new LinkedList<String>(artifact.getDependencyTrail());
-            dependencyNode.setScope(artifact.getScope()); // copy the scope from the artifact for the root node.
-            dependencyNode.accept(new PackageCollectorDependencyVisitor(artifactProcessor, artifactHandler, trail, rootParsingContext));
+            // the graph is shared by the build session, so the scope is set on a copy of its root node
+            DefaultDependencyNode rootNode = new DefaultDependencyNode(dependencyNode);
+            rootNode.getChildren().addAll(dependencyNode.getChildren());
+            rootNode.setScope(artifact.getScope()); // copy the scope from the artifact for the root node.
+            rootNode.accept(new PackageCollectorDependencyVisitor(artifactProcessor, artifactHandler, trail, rootParsingContext));
         }
     }
 
@@ -0,0 +1,131 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Test unit for the ExclusionMatcher
+ */
+public class ExclusionMatcherTest {
+
+    private static final List<String> NAMES = Arrays.asList("org.jahia", "org.jahia.services", "org.jahia.v1",
+            "org.jahia.v12", "org.jahiax", "org.apache.api", "org.apache.commons.api", "com.example.impl",
+            "com.example.implementation", "javax.servlet", "javax.servlet.http", "javaxservlet", "abc", "");
+
+    @Test
+    public void testGlobs() {
+        ExclusionMatcher exclusionMatcher = new ExclusionMatcher();
+        for (String glob : Arrays.asList("org.jahia.*", "*.impl", "org.*.api", "org.jahia.v?", "javax.servlet")) {
+            exclusionMatcher.addPattern(ExclusionMatcher.globToPattern(glob));
+        }
+        Assert.assertEquals(5, exclusionMatcher.size());
+
+        // prefix wildcard
+        Assert.assertTrue(exclusionMatcher.matches("org.jahia.services"));
+        Assert.assertFalse("The dot before the wildcard is required", exclusionMatcher.matches("org.jahia"));
+        Assert.assertFalse("Dots are not wildcards", exclusionMatcher.matches("org.jahiax"));
+        // suffix wildcard
+        Assert.assertTrue(exclusionMatcher.matches("com.example.impl"));
+        Assert.assertFalse(exclusionMatcher.matches("com.example.implementation"));
+        // wildcard in the middle
+        Assert.assertTrue(exclusionMatcher.matches("org.apache.api"));
+        Assert.assertTrue(exclusionMatcher.matches("org.apache.commons.api"));
+        // single character wildcard
+        Assert.assertTrue(exclusionMatcher.matches("org.jahia.v1"));
+        Assert.assertTrue("Also matched by the prefix wildcard", exclusionMatcher.matches("org.jahia.v12"));
+        Assert.assertFalse(ExclusionMatcher.globToPattern("org.jahia.v?").matcher("org.jahia.v12").matches());
+        // exact name
+        Assert.assertTrue(exclusionMatcher.matches("javax.servlet"));
+        Assert.assertFalse(exclusionMatcher.matches("javax.servlet.http"));
+        Assert.assertFalse(exclusionMatcher.matches("javaxservlet"));
+        Assert.assertFalse(exclusionMatcher.matches("abc"));
+        Assert.assertFalse(exclusionMatcher.matches(""));
+
+        assertSameAsPatterns(Arrays.asList("org.jahia.*", "*.impl", "org.*.api", "org.jahia.v?", "javax.servlet", "*"));
+    }
+
+    @Test
+    public void testGlobToRegex() {
+        Assert.assertEquals("org\\.jahia\\..*", ExclusionMatcher.globToRegex("org.jahia.*"));
+        Assert.assertEquals("org\\.jahia\\.v.", ExclusionMatcher.globToRegex("org.jahia.v?"));
+        Assert.assertEquals("javax\\.servlet", ExclusionMatcher.globToRegex("javax.servlet"));
+        Assert.assertEquals(".*:jahia-.*", ExclusionMatcher.globToRegex("*") + ":" + ExclusionMatcher.globToRegex("jahia-*"));
+    }
+
+    @Test
+    public void testPrefixesAndLiterals() {
+        ExclusionMatcher exclusionMatcher = new ExclusionMatcher();
+        Assert.assertTrue(exclusionMatcher.isEmpty());
+        exclusionMatcher.addPrefix("org.jahia");
+        exclusionMatcher.addLiteral("abc");
+        Assert.assertTrue(exclusionMatcher.matches("org.jahia"));
+        Assert.assertTrue(exclusionMatcher.matches("org.jahiax"));
+        Assert.assertTrue(exclusionMatcher.matches("abc"));
+        Assert.assertFalse(exclusionMatcher.matches("abcd"));
+        Assert.assertFalse(exclusionMatcher.matches("org.apache.api"));
+    }
+
+    @Test
+    public void testRegularExpressions() {
+        assertSameAsPatterns(Arrays.asList("[a-c]+", ".*/legacyDefinitions/.*\\.cnd", "org\\.jahia\\.v\\d+"));
+    }
+
+    private void assertSameAsPatterns(List<String> globsOrRegexes) {
+        for (String globOrRegex : globsOrRegexes) {
+            Pattern pattern = globOrRegex.contains("\\") || globOrRegex.contains("[")
+                    ? Pattern.compile(globOrRegex) : ExclusionMatcher.globToPattern(globOrRegex);
+            ExclusionMatcher exclusionMatcher = new ExclusionMatcher(Arrays.asList(pattern));
+            for (String name : NAMES) {
+                Assert.assertEquals(pattern + " on " + name, pattern.matcher(name).matches(), exclusionMatcher.matches(name));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.jahia.utils.maven.plugin.AetherAwareMojo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Test unit for the JarScanCache, used by the BuildFrameworkPackageListMojo when incremental scanning is enabled.
+ */
+public class JarScanCacheTest {
+
+    private File tmpDir;
+    private File jarFile;
+    private String lastScanSummary;
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = File.createTempFile("jar-scan-cache-test", "");
+        tmpDir.delete();
+        tmpDir.mkdirs();
+        jarFile = new File(tmpDir, "test-library.jar");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testCacheHitMatchesFreshScan() throws Exception {
+        createJar(jarFile, "org/test/a/A.class", "org/test/b/B.class");
+        String freshPackageList = buildPackageList("1.0", false);
+        Assert.assertTrue("Package org.test.a not found in " + freshPackageList, freshPackageList.contains("org.test.a;version=\"1.0.0\""));
+
+        Assert.assertEquals(freshPackageList, buildPackageList("1.0", true));
+        Assert.assertTrue("Unexpected scan summary: " + lastScanSummary, lastScanSummary.contains("reused the previous scan of 0 JAR(s), scanned 1 "));
+
+        Assert.assertEquals(freshPackageList, buildPackageList("1.0", true));
+        Assert.assertTrue("Unexpected scan summary: " + lastScanSummary, lastScanSummary.contains("reused the previous scan of 1 JAR(s), scanned 0 "));
+
+        // a new timestamp alone is not a change, the digest of the content is still the same
+        jarFile.setLastModified(jarFile.lastModified() - 10000L);
+        Assert.assertEquals(freshPackageList, buildPackageList("1.0", true));
+        Assert.assertTrue("Unexpected scan summary: " + lastScanSummary, lastScanSummary.contains("reused the previous scan of 1 JAR(s), scanned 0 "));
+    }
+
+    @Test
+    public void testChangedDefaultVersionMissesCache() throws Exception {
+        createJar(jarFile, "org/test/a/A.class", "org/test/b/B.class");
+        buildPackageList("1.0", true);
+
+        String cachedPackageList = buildPackageList("2.0", true);
+        Assert.assertTrue("Unexpected scan summary: " + lastScanSummary, lastScanSummary.contains("reused the previous scan of 0 JAR(s), scanned 1 "));
+        Assert.assertEquals(buildPackageList("2.0", false), cachedPackageList);
+        Assert.assertTrue("Package org.test.a not found in " + cachedPackageList, cachedPackageList.contains("org.test.a;version=\"2.0.0\""));
+    }
+
+    @Test
+    public void testChangedJarMissesCache() throws Exception {
+        createJar(jarFile, "org/test/a/A.class", "org/test/b/B.class");
+        buildPackageList("1.0", true);
+        long lastModified = jarFile.lastModified();
+
+        // keep the timestamp, the cache must notice the new size
+        createJar(jarFile, "org/test/a/A.class", "org/test/c/C.class", "org/test/c/D.class");
+        jarFile.setLastModified(lastModified);
+        String cachedPackageList = buildPackageList("1.0", true);
+        Assert.assertTrue("Unexpected scan summary: " + lastScanSummary, lastScanSummary.contains("reused the previous scan of 0 JAR(s), scanned 1 "));
+        Assert.assertEquals(buildPackageList("1.0", false), cachedPackageList);
+        Assert.assertTrue("Package org.test.c not found in " + cachedPackageList, cachedPackageList.contains("org.test.c;"));
+        Assert.assertFalse("Package org.test.b should be gone from " + cachedPackageList, cachedPackageList.contains("org.test.b;"));
+    }
+
+    private String buildPackageList(String artifactVersion, boolean incrementalScan) throws Exception {
+        File outputDirectory = new File(tmpDir, "classes");
+        outputDirectory.mkdirs();
+        MavenProject project = new MavenProject();
+        project.getBuild().setOutputDirectory(outputDirectory.getPath());
+        project.getBuild().setFinalName("test");
+        Artifact artifact = new DefaultArtifact("org.jahia.test.libraries", "test-library",
+                VersionRange.createFromVersion(artifactVersion), Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(jarFile);
+        project.setArtifacts(Collections.singleton(artifact));
+
+        BuildFrameworkPackageListMojo mojo = new BuildFrameworkPackageListMojo();
+        // the project field is declared in another package, inject it the way Maven would
+        Field projectField = AetherAwareMojo.class.getDeclaredField("project");
+        projectField.setAccessible(true);
+        projectField.set(mojo, project);
+        mojo.inputManifestFile = new File(tmpDir, "MANIFEST.MF");
+        mojo.propertiesInputFile = new File(tmpDir, "felix-framework.properties");
+        mojo.propertiesOutputFile = new File(tmpDir, "felix-framework-generated.properties");
+        mojo.artifactExcludes = new ArrayList<String>();
+        mojo.packageExcludes = new ArrayList<String>();
+        mojo.incrementalScan = incrementalScan;
+        mojo.jarScanCacheFile = new File(tmpDir, "jar-scan-cache.json");
+        mojo.jarScanThreads = 1;
+        lastScanSummary = null;
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                if (content.toString().startsWith("Incremental scan:")) {
+                    lastScanSummary = content.toString();
+                }
+                super.info(content);
+            }
+        });
+        mojo.execute();
+        if (incrementalScan) {
+            Assert.assertNotNull("No incremental scan summary was logged", lastScanSummary);
+        }
+        String packageList = project.getProperties().getProperty("jahiaGeneratedFrameworkPackageList");
+        Assert.assertNotNull("No package list generated", packageList);
+        return packageList;
+    }
+
+    private static void createJar(File file, String... entryNames) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(file), manifest);
+        try {
+            for (String entryName : entryNames) {
+                JarEntry jarEntry = new JarEntry(entryName);
+                jarEntry.setTime(0);
+                jarOutputStream.putNextEntry(jarEntry);
+                jarOutputStream.write(entryName.getBytes("UTF-8"));
+                jarOutputStream.closeEntry();
+            }
+        } finally {
+            IOUtils.closeQuietly(jarOutputStream);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.jahia.utils.osgi.parsers.PackageInfo;
+import org.jahia.utils.osgi.parsers.ParsingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Unit test for the package artifact index
+ */
+public class PackageArtifactIndexTest {
+
+    private File directory;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("package-artifact-index", "");
+        directory.delete();
+        directory.mkdirs();
+        indexFile = new File(directory, PackageArtifactIndex.INDEX_FILE_NAME);
+        SharedParsingContextCache.getInstance().clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        SharedParsingContextCache.getInstance().clear();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testBuildAndLookup() {
+        ParsingContext projectParsingContext = createParsingContext("org.test:project:jar:1.0", "org.test.project");
+        ParsingContext libraryParsingContext = createParsingContext("org.test:library:jar:1.0", "org.test.library");
+        libraryParsingContext.addPackageExport(new PackageInfo("org.test.exported", "1.0", false, "library", libraryParsingContext));
+        projectParsingContext.addChildJarParsingContext(libraryParsingContext);
+        ParsingContext otherLibraryParsingContext = createParsingContext("org.test:other-library:jar:2.0", "org.test.library");
+        libraryParsingContext.addChildJarParsingContext(otherLibraryParsingContext);
+
+        PackageArtifactIndex packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        Assert.assertEquals(0, packageArtifactIndex.size());
+        packageArtifactIndex.addParsingContexts(projectParsingContext);
+        assertIndexContents(packageArtifactIndex);
+        Assert.assertTrue(packageArtifactIndex.save());
+
+        PackageArtifactIndex reloadedPackageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        assertIndexContents(reloadedPackageArtifactIndex);
+        reloadedPackageArtifactIndex.addParsingContexts(projectParsingContext);
+        Assert.assertFalse("Nothing new was indexed, the index shouldn't be written", reloadedPackageArtifactIndex.save());
+    }
+
+    @Test
+    public void testUpdate() {
+        PackageArtifactIndex packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addParsingContexts(createParsingContext("org.test:library:jar:1.0", "org.test.library"));
+        packageArtifactIndex.save();
+
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addParsingContexts(createParsingContext("org.test:library:jar:1.1", "org.test.library", "org.test.library.extra"));
+        Assert.assertTrue(packageArtifactIndex.save());
+
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        Assert.assertEquals(2, packageArtifactIndex.size());
+        Assert.assertEquals(Arrays.asList("org.test:library:jar:1.0", "org.test:library:jar:1.1"),
+                packageArtifactIndex.findArtifacts("org.test.library"));
+        Assert.assertEquals(Collections.singletonList("org.test:library:jar:1.1"),
+                packageArtifactIndex.findArtifacts("org.test.library.extra"));
+    }
+
+    @Test
+    public void testContentHashStore() throws Exception {
+        File cacheDirectory = new File(directory, "cache");
+        ParsingContextCache cache = new ParsingContextCache(cacheDirectory, null, true);
+        putArtifact(cache, "library", "org.test.library");
+
+        PackageArtifactIndex packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addContentHashStore(cache.getContentHashStore());
+        Assert.assertTrue(packageArtifactIndex.save());
+        Assert.assertEquals(Collections.singletonList("org.test:library:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.library"));
+
+        // a new build only reads the entries added since the last update
+        putArtifact(cache, "other-library", "org.test.other");
+        SharedParsingContextCache.getInstance().clear();
+        cache = new ParsingContextCache(cacheDirectory, null, true);
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addContentHashStore(cache.getContentHashStore());
+        Assert.assertTrue(packageArtifactIndex.save());
+        Assert.assertEquals(2, packageArtifactIndex.size());
+        Assert.assertEquals(Collections.singletonList("org.test:other-library:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.other"));
+
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addContentHashStore(cache.getContentHashStore());
+        Assert.assertFalse("The store didn't change, the index shouldn't be written", packageArtifactIndex.save());
+
+        // a reset store is indexed again from the start
+        FileUtils.deleteDirectory(cacheDirectory);
+        SharedParsingContextCache.getInstance().clear();
+        cache = new ParsingContextCache(cacheDirectory, null, true);
+        putArtifact(cache, "third-library", "org.test.third");
+        putArtifact(cache, "fourth-library", "org.test.fourth");
+        putArtifact(cache, "fifth-library", "org.test.fifth");
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addContentHashStore(cache.getContentHashStore());
+        Assert.assertEquals(5, packageArtifactIndex.size());
+        Assert.assertEquals(Collections.singletonList("org.test:third-library:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.third"));
+    }
+
+    @Test
+    public void testLocalRepository() throws Exception {
+        File localRepository = new File(directory, "repository");
+        File libraryDirectory = new File(localRepository, "org/test/library");
+        createJar(new File(libraryDirectory, "1.0/library-1.0.jar"), "org/test/library/Library.class");
+        createJar(new File(libraryDirectory, "1.0/library-1.0-tests.jar"), "org/test/library/LibraryTest.class");
+        createJar(new File(libraryDirectory, "1.0/library-1.0-sources.jar"), "org/test/library/Library.java");
+
+        PackageArtifactIndex packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addLocalRepository(localRepository);
+        Assert.assertTrue(packageArtifactIndex.save());
+        Assert.assertTrue(new File(directory, PackageArtifactIndex.DIRECTORIES_FILE_NAME).exists());
+        Assert.assertEquals(1, packageArtifactIndex.size());
+        Assert.assertEquals(Arrays.asList("org.test:library:jar:1.0", "org.test:library:jar:tests:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.library"));
+
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addLocalRepository(localRepository);
+        Assert.assertFalse("The repository didn't change, the index shouldn't be written", packageArtifactIndex.save());
+
+        // a new version is found through the modification date of its parent directory
+        createJar(new File(libraryDirectory, "1.1/library-1.1.jar"), "org/test/library/extra/Extra.class");
+        libraryDirectory.setLastModified(libraryDirectory.lastModified() + 10000);
+        // the files of the unmodified directories are not checked again
+        File versionDirectory = new File(libraryDirectory, "1.0");
+        long versionLastModified = versionDirectory.lastModified();
+        createJar(new File(versionDirectory, "library-1.0.jar"), "org/test/library/ignored/Ignored.class");
+        versionDirectory.setLastModified(versionLastModified);
+
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addLocalRepository(localRepository);
+        Assert.assertTrue(packageArtifactIndex.save());
+        Assert.assertEquals(2, packageArtifactIndex.size());
+        Assert.assertEquals(Collections.singletonList("org.test:library:jar:1.1"),
+                packageArtifactIndex.findArtifacts("org.test.library.extra"));
+        Assert.assertTrue(packageArtifactIndex.findArtifacts("org.test.library.ignored").isEmpty());
+
+        // the whole repository is walked again if the directories are lost
+        new File(directory, PackageArtifactIndex.DIRECTORIES_FILE_NAME).delete();
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addLocalRepository(localRepository);
+        Assert.assertEquals(Collections.singletonList("org.test:library:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.library.ignored"));
+    }
+
+    @Test
+    public void testParsingContextCache() throws Exception {
+        File cacheDirectory = new File(directory, "cache");
+        ParsingContextCache cache = new ParsingContextCache(cacheDirectory, null);
+        putArtifact(cache, "library", "org.test.library");
+
+        PackageArtifactIndex packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addParsingContextCache(cacheDirectory);
+        Assert.assertTrue(packageArtifactIndex.save());
+        Assert.assertEquals(Collections.singletonList("org.test:library:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.library"));
+
+        putArtifact(cache, "other-library", "org.test.other");
+        File groupDirectory = new File(cacheDirectory, "org/test");
+        groupDirectory.setLastModified(groupDirectory.lastModified() + 10000);
+        packageArtifactIndex = PackageArtifactIndex.open(indexFile, new SystemStreamLog());
+        packageArtifactIndex.addParsingContextCache(cacheDirectory);
+        Assert.assertTrue(packageArtifactIndex.save());
+        Assert.assertEquals(2, packageArtifactIndex.size());
+        Assert.assertEquals(Collections.singletonList("org.test:other-library:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.other"));
+    }
+
+    private void assertIndexContents(PackageArtifactIndex packageArtifactIndex) {
+        Assert.assertEquals(3, packageArtifactIndex.size());
+        Assert.assertEquals(Collections.singletonList("org.test:project:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.project"));
+        Assert.assertEquals(Arrays.asList("org.test:library:jar:1.0", "org.test:other-library:jar:2.0"),
+                packageArtifactIndex.findArtifacts("org.test.library"));
+        Assert.assertEquals(Collections.singletonList("org.test:library:jar:1.0"),
+                packageArtifactIndex.findArtifacts("org.test.exported"));
+        Assert.assertTrue(packageArtifactIndex.findArtifacts("org.test.missing").isEmpty());
+    }
+
+    private void putArtifact(ParsingContextCache cache, String artifactId, String packageName) throws IOException {
+        File jarFile = new File(directory, artifactId + "-1.0.jar");
+        FileUtils.writeStringToFile(jarFile, artifactId);
+        Artifact artifact = new DefaultArtifact("org.test", artifactId, "1.0", Artifact.SCOPE_COMPILE, "jar", null,
+                new DefaultArtifactHandler("jar"));
+        artifact.setFile(jarFile);
+        cache.put(artifact, createParsingContext("org.test:" + artifactId + ":jar:1.0", packageName));
+    }
+
+    private void createJar(File jarFile, String entryName) throws IOException {
+        jarFile.getParentFile().mkdirs();
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            zipOutputStream.putNextEntry(new ZipEntry(entryName));
+            zipOutputStream.closeEntry();
+        } finally {
+            zipOutputStream.close();
+        }
+    }
+
+    private ParsingContext createParsingContext(String mavenCoords, String... localPackageNames) {
+        ParsingContext parsingContext = new ParsingContext(mavenCoords, 0, 0, mavenCoords, mavenCoords, null, null);
+        for (String localPackageName : localPackageNames) {
+            parsingContext.addLocalPackage(new PackageInfo(localPackageName, null, false, mavenCoords, parsingContext));
+        }
+        return parsingContext;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.project.MavenProject;
+import org.jahia.utils.osgi.parsers.ParsingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that the parallel dependency scan gives exactly the same results as the serial scan
+ */
+public class ParallelDependencyScannerTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("parallel-dependency-scanner", "");
+        directory.delete();
+        directory.mkdirs();
+        SharedParsingContextCache.getInstance().clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        SharedParsingContextCache.getInstance().clear();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testParallelScanMatchesSerialScan() throws Exception {
+        // the same artifact appears several times in the tree, as when dependencies are shared
+        Node commonsIo = new Node(artifact("commons-io", "commons-io", FileUtils.class), false);
+        Node tree = new Node(null, false,
+                new Node(artifact("junit", "junit", Assert.class), false,
+                        commonsIo,
+                        new Node(artifact("commons-lang", "commons-lang", StringUtils.class), true)),
+                new Node(artifact("org.apache.maven", "maven-core", MavenProject.class), false,
+                        new Node(artifact("org.apache.maven", "maven-plugin-api", AbstractMojo.class), false,
+                                commonsIo)),
+                new Node(artifact("com.fasterxml.jackson.core", "jackson-databind", ObjectMapper.class), true,
+                        commonsIo));
+
+        String serialResult = scan(tree, 1);
+        SharedParsingContextCache.getInstance().clear();
+        String parallelResult = scan(tree, 4);
+
+        Assert.assertTrue(serialResult.contains("org.apache.commons.io"));
+        Assert.assertEquals(serialResult, parallelResult);
+    }
+
+    private String scan(Node tree, int threads) throws Exception {
+        DependenciesMojo mojo = new DependenciesMojo();
+        mojo.buildExclusionPatterns();
+        mojo.parsingContextCache = new ParsingContextCache(new File(directory, "cache-" + threads), null);
+        ParsingContext projectParsingContext = new ParsingContext("test:project:1.0", 0, 0, "project",
+                directory.getPath(), "1.0", null);
+        if (threads > 1) {
+            ParallelDependencyScanner scanner = new ParallelDependencyScanner(mojo, threads);
+            try {
+                for (Node node : tree.children) {
+                    walkParallel(scanner, node, projectParsingContext);
+                }
+                scanner.complete();
+            } finally {
+                scanner.shutdown();
+            }
+        } else {
+            for (Node node : tree.children) {
+                walkSerial(mojo, projectParsingContext, node, projectParsingContext, 1);
+            }
+        }
+        projectParsingContext.removeLocalPackagesFromImports();
+        projectParsingContext.postProcess();
+
+        StringBuilder result = new StringBuilder();
+        describe(new ObjectMapper(), projectParsingContext, "", result);
+        return result.toString();
+    }
+
+    private void walkSerial(DependenciesMojo mojo, ParsingContext projectParsingContext, Node node, ParsingContext parentParsingContext, int depth) throws Exception {
+        ParsingContext parsingContext = mojo.startProcessingArtifact(projectParsingContext, 0, node.artifact, false,
+                node.optional, parentParsingContext, "", depth);
+        for (Node child : node.children) {
+            walkSerial(mojo, projectParsingContext, child, parsingContext, depth + 1);
+        }
+        mojo.endProcessingArtifact(projectParsingContext, node.artifact, false, "", parsingContext, depth);
+    }
+
+    private void walkParallel(ParallelDependencyScanner scanner, Node node, ParsingContext parentParsingContext) throws Exception {
+        ParsingContext parsingContext = scanner.enterArtifact(0, node.artifact, false, node.optional,
+                parentParsingContext, "");
+        for (Node child : node.children) {
+            walkParallel(scanner, child, parsingContext);
+        }
+        scanner.exitArtifact(node.artifact, "", parsingContext);
+    }
+
+    private void describe(ObjectMapper objectMapper, ParsingContext parsingContext, String indent, StringBuilder result) throws IOException {
+        result.append(indent).append(parsingContext.getMavenCoords())
+                .append(" optional=").append(parsingContext.isOptional())
+                .append(" external=").append(parsingContext.isExternal()).append('\n');
+        result.append(indent).append(objectMapper.writeValueAsString(parsingContext)).append('\n');
+        for (ParsingContext child : parsingContext.getChildren()) {
+            describe(objectMapper, child, indent + "  ", result);
+        }
+    }
+
+    private Artifact artifact(String groupId, String artifactId, Class<?> containedClass) throws Exception {
+        File file = new File(containedClass.getProtectionDomain().getCodeSource().getLocation().toURI());
+        DefaultArtifact artifact = new DefaultArtifact(groupId, artifactId, "1.0", Artifact.SCOPE_COMPILE, "jar",
+                null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(file);
+        return artifact;
+    }
+
+    private static class Node {
+        private final Artifact artifact;
+        private final boolean optional;
+        private final List<Node> children;
+
+        Node(Artifact artifact, boolean optional, Node... children) {
+            this.artifact = artifact;
+            this.optional = optional;
+            this.children = new ArrayList<Node>(Arrays.asList(children));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.osgi;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.jahia.utils.osgi.parsers.PackageInfo;
+import org.jahia.utils.osgi.parsers.ParsingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Unit test for the parsing context cache
+ */
+public class ParsingContextCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("parsing-context-cache", "");
+        directory.delete();
+        directory.mkdirs();
+        SharedParsingContextCache.getInstance().clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        SharedParsingContextCache.getInstance().clear();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testContentHashedCacheWithDirectoryArtifact() throws Exception {
+        // a reactor module resolved to its output directory
+        File classesDirectory = new File(directory, "module/target/classes");
+        FileUtils.writeStringToFile(new File(classesDirectory, "org/test/Test.class"), "test");
+        Artifact artifact = new DefaultArtifact("org.test", "module", "1.0", Artifact.SCOPE_COMPILE, "jar", null,
+                new DefaultArtifactHandler("jar"));
+        artifact.setFile(classesDirectory);
+
+        File cacheDirectory = new File(directory, "cache");
+        ParsingContextCache cache = new ParsingContextCache(cacheDirectory, null, true);
+        ParsingContext parsingContext = new ParsingContext("org.test:module:jar:1.0", classesDirectory.lastModified(),
+                classesDirectory.length(), classesDirectory.getName(), classesDirectory.getPath(), "1.0", null);
+        parsingContext.addLocalPackage(new PackageInfo("org.test", "1.0", false, classesDirectory.getPath(), parsingContext));
+        cache.put(artifact, parsingContext);
+        Assert.assertTrue(parsingContext.isInCache());
+
+        // a new build loads the entry from disk
+        SharedParsingContextCache.getInstance().clear();
+        ParsingContext cachedParsingContext = new ParsingContextCache(cacheDirectory, null, true).get(artifact);
+        Assert.assertNotNull(cachedParsingContext);
+        Assert.assertEquals(classesDirectory.getPath(), cachedParsingContext.getFilePath());
+        Assert.assertEquals(1, cachedParsingContext.getLocalPackages().size());
+        Assert.assertEquals("org.test", cachedParsingContext.getLocalPackages().iterator().next().getName());
+    }
+}
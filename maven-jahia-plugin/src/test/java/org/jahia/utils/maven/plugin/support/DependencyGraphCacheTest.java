@@ -0,0 +1,181 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.Exclusion;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.util.graph.manager.DependencyManagerUtils;
+import org.eclipse.aether.util.version.GenericVersionScheme;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Test unit for the persistence of the dependency graphs
+ */
+public class DependencyGraphCacheTest {
+
+    private final Log log = new SystemStreamLog();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("dependency-graph-cache", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        File rootFile = createFile("root.jar");
+        File childFile = createFile("child.jar");
+        DependencyGraphCache.GraphNode root = createGraphNode("root", rootFile);
+        DependencyGraphCache.GraphNode child = createGraphNode("child", childFile);
+        child.getProperties().put("type", "test-jar");
+        child.getRelocations().add("org.test:old-child:jar:1.0");
+        child.setPremanagedVersion("0.9");
+        child.setPremanagedScope("runtime");
+        root.getChildren().add(child);
+
+        DependencyGraphCache dependencyGraphCache = new DependencyGraphCache();
+        File cacheDirectory = new File(directory, "graphs");
+        dependencyGraphCache.store(cacheDirectory, "org.test:root:jar:1.0 (compile)@repositories", root, log);
+
+        DependencyGraphCache.GraphNode loadedRoot = dependencyGraphCache.load(cacheDirectory,
+                "org.test:root:jar:1.0 (compile)@repositories", log);
+        Assert.assertNotNull(loadedRoot);
+        Assert.assertEquals(1, loadedRoot.getChildren().size());
+        DependencyGraphCache.GraphNode loadedChild = loadedRoot.getChildren().get(0);
+        Assert.assertEquals("child", loadedChild.getArtifactId());
+        Assert.assertEquals(childFile, loadedChild.getArtifactFile());
+        Assert.assertEquals(Collections.singletonMap("type", "test-jar"), loadedChild.getProperties());
+        Assert.assertEquals(Arrays.asList("org.test:old-child:jar:1.0"), loadedChild.getRelocations());
+        Assert.assertEquals("0.9", loadedChild.getPremanagedVersion());
+        Assert.assertEquals("runtime", loadedChild.getPremanagedScope());
+
+        // another request, for instance with other exclusions, doesn't use the graph
+        Assert.assertNull(dependencyGraphCache.load(cacheDirectory,
+                "org.test:root:jar:1.0 (compile)!org.test:child::jar@repositories", log));
+
+        // the graph is not used anymore once one of its files changes
+        childFile.setLastModified(childFile.lastModified() - 10000);
+        Assert.assertNull(dependencyGraphCache.load(cacheDirectory, "org.test:root:jar:1.0 (compile)@repositories", log));
+    }
+
+    @Test
+    public void testGraphConversion() throws Exception {
+        Maven31AetherHelper aetherHelper = new Maven31AetherHelper(null, new DefaultRepositorySystemSession(),
+                new ArrayList<RemoteRepository>(), log);
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("type", "test-jar");
+        properties.put("includesDependencies", "false");
+        File childFile = createFile("child.jar");
+        DefaultDependencyNode child = new DefaultDependencyNode(new Dependency(new DefaultArtifact("org.test", "child",
+                "tests", "jar", "1.0", properties, childFile), "test", true,
+                Arrays.asList(new Exclusion("org.excluded", "excluded", "", "jar"))));
+        child.setRelocations(Arrays.asList(new DefaultArtifact("org.test:old-child:jar:1.0")));
+        child.setData(DependencyManagerUtils.NODE_DATA_PREMANAGED_VERSION, "0.9");
+        child.setData(DependencyManagerUtils.NODE_DATA_PREMANAGED_SCOPE, "compile");
+        child.setManagedBits(DependencyNode.MANAGED_VERSION | DependencyNode.MANAGED_SCOPE);
+        child.setChildren(new ArrayList<DependencyNode>());
+        DefaultDependencyNode root = new DefaultDependencyNode(new Dependency(new DefaultArtifact("org.test", "root",
+                "jar", "1.0").setFile(createFile("root.jar")), "compile"));
+        root.setChildren(new ArrayList<DependencyNode>(Arrays.asList(child)));
+
+        DependencyGraphCache.GraphNode graphRoot = aetherHelper.toGraphNode(root,
+                Collections.newSetFromMap(new IdentityHashMap<DependencyNode, Boolean>()));
+        Assert.assertNotNull(graphRoot);
+        DependencyNode convertedRoot = aetherHelper.toDependencyNode(graphRoot);
+        Assert.assertEquals(root.getArtifact(), convertedRoot.getArtifact());
+        DependencyNode convertedChild = convertedRoot.getChildren().get(0);
+        Assert.assertEquals(child.getDependency(), convertedChild.getDependency());
+        Assert.assertEquals(properties, convertedChild.getArtifact().getProperties());
+        Assert.assertEquals(childFile, convertedChild.getArtifact().getFile());
+        Assert.assertEquals(new ArrayList<Artifact>(child.getRelocations()), new ArrayList<Artifact>(convertedChild.getRelocations()));
+        Assert.assertEquals("0.9", DependencyManagerUtils.getPremanagedVersion(convertedChild));
+        Assert.assertEquals("compile", DependencyManagerUtils.getPremanagedScope(convertedChild));
+        Assert.assertEquals(child.getManagedBits(), convertedChild.getManagedBits());
+
+        // a version range may match another version later, such graphs are not persisted
+        child.setVersionConstraint(new GenericVersionScheme().parseVersionConstraint("[1.0,2.0)"));
+        Assert.assertNull(aetherHelper.toGraphNode(root, Collections.newSetFromMap(new IdentityHashMap<DependencyNode, Boolean>())));
+    }
+
+    private DependencyGraphCache.GraphNode createGraphNode(String artifactId, File file) {
+        DependencyGraphCache.GraphNode graphNode = new DependencyGraphCache.GraphNode();
+        graphNode.setGroupId("org.test");
+        graphNode.setArtifactId(artifactId);
+        graphNode.setVersion("1.0");
+        graphNode.setScope("compile");
+        graphNode.setArtifactFile(file);
+        return graphNode;
+    }
+
+    private File createFile(String name) throws IOException {
+        File file = new File(directory, name);
+        FileUtils.writeStringToFile(file, name);
+        return file;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Test unit for the JarManifestRewriter
+ */
+public class JarManifestRewriterTest {
+
+    @Test
+    public void testRewriteManifest() throws IOException {
+        File jarFile = File.createTempFile("jar-manifest-rewriter", ".jar");
+        try {
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+            manifest.getMainAttributes().putValue("Import-Package", "org.old");
+            JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jarFile), manifest);
+            try {
+                jarOutputStream.putNextEntry(new JarEntry("org/"));
+                jarOutputStream.closeEntry();
+                jarOutputStream.putNextEntry(new JarEntry("org/test/Deflated.class"));
+                for (int i = 0; i < 1000; i++) {
+                    jarOutputStream.write(("line " + i + "\n").getBytes("UTF-8"));
+                }
+                jarOutputStream.closeEntry();
+                byte[] storedContent = "stored".getBytes("UTF-8");
+                CRC32 crc = new CRC32();
+                crc.update(storedContent);
+                JarEntry storedEntry = new JarEntry("org/test/stored.txt");
+                storedEntry.setMethod(ZipEntry.STORED);
+                storedEntry.setSize(storedContent.length);
+                storedEntry.setCrc(crc.getValue());
+                jarOutputStream.putNextEntry(storedEntry);
+                jarOutputStream.write(storedContent);
+                jarOutputStream.closeEntry();
+            } finally {
+                jarOutputStream.close();
+            }
+
+            byte[] deflatedContent = readEntry(jarFile, "org/test/Deflated.class");
+            int entryCount = countEntries(jarFile);
+            manifest.getMainAttributes().putValue("Import-Package", "org.new;version=\"[1.0,2)\"");
+            JarManifestRewriter.rewriteManifest(jarFile, manifest);
+
+            JarInputStream jarInputStream = new JarInputStream(new FileInputStream(jarFile));
+            try {
+                Assert.assertEquals("org.new;version=\"[1.0,2)\"",
+                        jarInputStream.getManifest().getMainAttributes().getValue("Import-Package"));
+            } finally {
+                jarInputStream.close();
+            }
+            Assert.assertTrue(Arrays.equals(deflatedContent, readEntry(jarFile, "org/test/Deflated.class")));
+            Assert.assertEquals("stored", new String(readEntry(jarFile, "org/test/stored.txt"), "UTF-8"));
+            Assert.assertEquals("All the entries should be kept", entryCount, countEntries(jarFile));
+        } finally {
+            jarFile.delete();
+        }
+    }
+
+    @Test
+    public void testFailedReplacementRestoresOriginal() throws IOException {
+        File jarFile = File.createTempFile("jar-manifest-rewriter", ".jar");
+        File missingRewrittenJarFile = new File(jarFile.getPath() + ".rewrite");
+        File backupJarFile = new File(jarFile.getPath() + ".backup");
+        try {
+            byte[] originalContent = "original JAR content".getBytes("UTF-8");
+            FileOutputStream outputStream = new FileOutputStream(jarFile);
+            try {
+                outputStream.write(originalContent);
+            } finally {
+                outputStream.close();
+            }
+            // the rewritten JAR can be neither renamed nor copied, the replacement fails after the original was moved
+            try {
+                JarManifestRewriter.replaceJar(jarFile, missingRewrittenJarFile);
+                Assert.fail("Replacing the JAR by a missing file should have failed");
+            } catch (IOException e) {
+                // expected
+            }
+            Assert.assertTrue("The original JAR should have been restored", jarFile.exists());
+            Assert.assertTrue(Arrays.equals(originalContent, readFile(jarFile)));
+            Assert.assertFalse("The backup should have been removed once restored", backupJarFile.exists());
+        } finally {
+            jarFile.delete();
+            backupJarFile.delete();
+        }
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            return readFully(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return content.toByteArray();
+    }
+
+    private int countEntries(File jarFile) throws IOException {
+        JarFile jar = new JarFile(jarFile);
+        try {
+            int entryCount = 0;
+            for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); entries.nextElement()) {
+                entryCount++;
+            }
+            return entryCount;
+        } finally {
+            jar.close();
+        }
+    }
+
+    private byte[] readEntry(File jarFile, String entryName) throws IOException {
+        JarFile jar = new JarFile(jarFile);
+        try {
+            InputStream inputStream = jar.getInputStream(jar.getEntry(entryName));
+            try {
+                return readFully(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Test unit for the JarPackageIndex
+ */
+public class JarPackageIndexTest {
+
+    private final Log log = new SystemStreamLog();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("jar-package-index", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testPackages() throws IOException {
+        File jarFile = new File(directory, "test.jar");
+        createJar(jarFile, "META-INF/MANIFEST.MF", "org/jahia/test/A.class", "com/empty/");
+
+        JarPackageIndex jarPackageIndex = new JarPackageIndex();
+        // the parent directories of the entries are packages too, even without entries of their own
+        Assert.assertEquals(new TreeSet<String>(Arrays.asList("META-INF", "com", "com.empty", "org", "org.jahia", "org.jahia.test")),
+                jarPackageIndex.getPackages(jarFile, log));
+        Assert.assertTrue(jarPackageIndex.containsPackage(jarFile, "org.jahia", log));
+        Assert.assertTrue(jarPackageIndex.containsPackage(jarFile, "org.jahia.test", log));
+        Assert.assertFalse(jarPackageIndex.containsPackage(jarFile, "org.jahia.test.missing", log));
+        Assert.assertFalse(jarPackageIndex.containsPackage(jarFile, "jahia", log));
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        File jarFile = new File(directory, "test.jar");
+        createJar(jarFile, "org/jahia/test/A.class");
+        long lastModified = jarFile.lastModified();
+        File indexFile = new File(directory, JarPackageIndex.INDEX_FILE_NAME);
+
+        JarPackageIndex jarPackageIndex = new JarPackageIndex(indexFile, log);
+        Assert.assertTrue(jarPackageIndex.containsPackage(jarFile, "org.jahia.test", log));
+        jarPackageIndex.save();
+        Assert.assertTrue(indexFile.exists());
+        Map<?, ?> index = new ObjectMapper().readValue(indexFile, Map.class);
+        Assert.assertTrue(((Map<?, ?>) index.get("entries")).containsKey(jarFile.getAbsolutePath()));
+
+        // same size and modification date, the persisted entry is used without reading the JAR again
+        createJar(jarFile, "org/jahia/tset/A.class");
+        jarFile.setLastModified(lastModified);
+        jarPackageIndex = new JarPackageIndex(indexFile, log);
+        Assert.assertTrue(jarPackageIndex.containsPackage(jarFile, "org.jahia.test", log));
+        Assert.assertFalse(jarPackageIndex.containsPackage(jarFile, "org.jahia.tset", log));
+
+        // a modified JAR is scanned again
+        jarFile.setLastModified(lastModified - 10000);
+        jarPackageIndex = new JarPackageIndex(indexFile, log);
+        Assert.assertFalse(jarPackageIndex.containsPackage(jarFile, "org.jahia.test", log));
+        Assert.assertTrue(jarPackageIndex.containsPackage(jarFile, "org.jahia.tset", log));
+    }
+
+    private void createJar(File jarFile, String... entryNames) throws IOException {
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            for (String entryName : entryNames) {
+                ZipEntry zipEntry = new ZipEntry(entryName);
+                // a fixed time so that JARs with entries of the same length have the same size
+                zipEntry.setTime(0L);
+                zipOutputStream.putNextEntry(zipEntry);
+                zipOutputStream.closeEntry();
+            }
+        } finally {
+            zipOutputStream.close();
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.maven.plugin.support;
+
+import junit.framework.Assert;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.DependencyVisitor;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Test unit for the LoopCheckTrail and the loop check of the dependency visitors on a synthetic dependency graph.
+ */
+public class LoopCheckTrailTest {
+
+    private static final int CHAIN_LENGTH = 1000;
+    private static final int LEAVES_PER_NODE = 4;
+
+    @Test
+    public void testPushAndPop() {
+        LoopCheckTrail loopCheckTrail = new LoopCheckTrail();
+        Assert.assertTrue(loopCheckTrail.push("a"));
+        Assert.assertTrue(loopCheckTrail.push("b"));
+        Assert.assertFalse("Node already on the trail should be detected", loopCheckTrail.push("a"));
+        Assert.assertEquals(3, loopCheckTrail.size());
+        Assert.assertEquals("a", loopCheckTrail.pop());
+        Assert.assertTrue("Popping a repeated node shouldn't remove it from the trail", loopCheckTrail.contains("a"));
+        Assert.assertEquals("b", loopCheckTrail.pop());
+        Assert.assertFalse(loopCheckTrail.contains("b"));
+        Assert.assertTrue(loopCheckTrail.push("b"));
+        loopCheckTrail.pop();
+        loopCheckTrail.pop();
+        Assert.assertEquals(0, loopCheckTrail.size());
+        Assert.assertFalse(loopCheckTrail.contains("a"));
+    }
+
+    @Test
+    public void testPackageFinderOnSyntheticGraph() throws IOException {
+        File tmpDirTestLocation = new File(System.getProperty("java.io.tmpdir"), "test-" + System.currentTimeMillis());
+        tmpDirTestLocation.mkdirs();
+        try {
+            File commonJar = createJar(new File(tmpDirTestLocation, "common.jar"), "org/test/common/Common.class");
+            File foundJar = createJar(new File(tmpDirTestLocation, "found.jar"), "org/test/found/Found.class");
+            DependencyNode rootNode = createSyntheticGraph(commonJar, foundJar);
+
+            Maven31AetherHelper aetherHelper = new Maven31AetherHelper(null, new DefaultRepositorySystemSession(),
+                    new ArrayList<RemoteRepository>(), new SystemStreamLog());
+            Map<String, List<String>> foundPackages = new HashMap<String, List<String>>();
+            rootNode.accept(aetherHelper.new PackagerFinderDependencyVisitor(
+                    Arrays.asList("org.test.found", "org.test.missing"), new JarPackageIndex(), foundPackages, false,
+                    new ArrayList<String>(), null));
+            Assert.assertEquals(1, foundPackages.size());
+            List<String> trail = foundPackages.get("org.test.found");
+            Assert.assertNotNull("Package should have been found in the deepest leaf", trail);
+            Assert.assertTrue(trail.get(trail.size() - 1).contains("leaf-" + (CHAIN_LENGTH - 1) + "-0"));
+        } finally {
+            for (File file : tmpDirTestLocation.listFiles()) {
+                file.delete();
+            }
+            tmpDirTestLocation.delete();
+        }
+    }
+
+    @Test
+    public void testLoopCheckMatchesTrailScan() {
+        DependencyNode rootNode = createSyntheticGraph(null, null);
+
+        // the former loop check, scanning the trail and rebuilding the node names on each visit
+        DependencyVisitor scanningVisitor = new CountingVisitor() {
+            private Deque<String> loopCheckTrail = new ArrayDeque<String>();
+
+            @Override
+            public boolean visitEnter(DependencyNode node) {
+                visitedNodes++;
+                if (!loopCheckTrail.contains(node.toString())) {
+                    loopCheckTrail.push(node.toString());
+                } else {
+                    loops++;
+                    loopCheckTrail.push(node.toString());
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean visitLeave(DependencyNode node) {
+                loopCheckTrail.pop();
+                return true;
+            }
+        };
+        DependencyVisitor hashingVisitor = new CountingVisitor() {
+            private LoopCheckTrail loopCheckTrail = new LoopCheckTrail();
+
+            @Override
+            public boolean visitEnter(DependencyNode node) {
+                visitedNodes++;
+                if (!loopCheckTrail.push(node.toString())) {
+                    loops++;
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean visitLeave(DependencyNode node) {
+                loopCheckTrail.pop();
+                return true;
+            }
+        };
+
+        rootNode.accept(scanningVisitor);
+        rootNode.accept(hashingVisitor);
+        Assert.assertEquals(((CountingVisitor) scanningVisitor).visitedNodes,
+                ((CountingVisitor) hashingVisitor).visitedNodes);
+        Assert.assertEquals(CHAIN_LENGTH * (LEAVES_PER_NODE + 1) + 1, ((CountingVisitor) hashingVisitor).visitedNodes);
+        Assert.assertEquals(1, ((CountingVisitor) hashingVisitor).loops);
+        Assert.assertEquals(((CountingVisitor) scanningVisitor).loops, ((CountingVisitor) hashingVisitor).loops);
+    }
+
+    private abstract static class CountingVisitor implements DependencyVisitor {
+        int visitedNodes = 0;
+        int loops = 0;
+    }
+
+    /**
+     * Creates a chain of dependencies, each one having a few leaf dependencies, and the last one depending on the
+     * root of the chain to form a loop.
+     */
+    private DependencyNode createSyntheticGraph(File commonJar, File foundJar) {
+        DependencyNode rootNode = null;
+        DependencyNode parentNode = null;
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            DependencyNode node = createNode("node-" + i, commonJar);
+            for (int j = 0; j < LEAVES_PER_NODE; j++) {
+                boolean deepestLeaf = i == CHAIN_LENGTH - 1 && j == 0;
+                node.getChildren().add(createNode("leaf-" + i + "-" + j, deepestLeaf ? foundJar : commonJar));
+            }
+            if (parentNode == null) {
+                rootNode = node;
+            } else {
+                parentNode.getChildren().add(node);
+            }
+            parentNode = node;
+        }
+        parentNode.getChildren().add(rootNode);
+        return rootNode;
+    }
+
+    private DependencyNode createNode(String artifactId, File file) {
+        DefaultArtifact artifact = new DefaultArtifact("org.test", artifactId, "jar", "1.0");
+        DefaultDependencyNode node = new DefaultDependencyNode(new Dependency(artifact.setFile(file), "compile"));
+        node.setChildren(new ArrayList<DependencyNode>());
+        return node;
+    }
+
+    private File createJar(File jarFile, String entryName) throws IOException {
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            zipOutputStream.putNextEntry(new ZipEntry(entryName));
+            zipOutputStream.closeEntry();
+        } finally {
+            zipOutputStream.close();
+        }
+        return jarFile;
+    }
+
+}
@@ -0,0 +1,541 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi;
+
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.Descriptors;
+import aQute.bnd.osgi.Instruction;
+import aQute.bnd.osgi.Jar;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Bytecode index of a JAR file or class directory, mapping each class to the packages it references and to its super
+ * class. The index is built with a single analysis and can then be queried for any number of packages, instead of
+ * running a full BND analysis for each package like
+ * {@link ClassDependencyTracker#findDependencyInJarUsingBND(File, String, List)}. The class references are extracted
+ * either by BND or by reading the class files directly, see {@link Engine}.
+ *
+ * Queries give the same results as the BND "classes;IMPORTING" macro : a class uses a package if it references it
+ * directly or if one of its super classes does. Super classes that are not part of the indexed file are looked up in a
+ * {@link ClassPath}.
+ *
+ * Indexes are cached for the whole process, keyed by file path, so that all the goals of a build share them. An entry
+ * is rebuilt when the last modification date or the size of the file changes or, for a class directory, when a file
+ * is added, removed or modified anywhere in the directory.
+ */
+public class ClassDependencyIndex {
+
+    private static final int MAXIMUM_CACHED_INDEXES = 512;
+
+    private static final Map<String, ClassDependencyIndex> cachedIndexes = new LinkedHashMap<String, ClassDependencyIndex>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ClassDependencyIndex> eldest) {
+            return size() > MAXIMUM_CACHED_INDEXES;
+        }
+    };
+
+    private final byte[] fingerprint;
+    private final Map<String, ClassEntry> classEntries;
+
+    private static class ClassEntry {
+        private final Set<String> referencedPackages;
+        private final String superClassName;
+
+        private ClassEntry(Set<String> referencedPackages, String superClassName) {
+            this.referencedPackages = referencedPackages;
+            this.superClassName = superClassName;
+        }
+    }
+
+    /**
+     * The engines that can extract the references of the indexed classes
+     */
+    public enum Engine {
+        /**
+         * Full BND analysis of the classes
+         */
+        BND,
+        /**
+         * Direct reading of the class files with a {@link ClassReferenceExtractor}, without building a BND analyzer
+         */
+        CONSTANT_POOL
+    }
+
+    /**
+     * Class path used to look up the super classes that are not part of an indexed file, in the same order as BND :
+     * the class path elements first, then the system class loader. Classes are only parsed when they are looked up.
+     */
+    public static class ClassPath implements Closeable {
+
+        private final Engine engine;
+        private final List<File> classPathElementFiles = new ArrayList<File>();
+        private final Map<String, ClassEntry> foundClassEntries = new HashMap<String, ClassEntry>();
+        private final Map<File, ZipFile> openedZipFiles = new HashMap<File, ZipFile>();
+        private Analyzer analyzer;
+        private ClassReferenceExtractor classReferenceExtractor;
+
+        public ClassPath(List<String> classPathElements) throws IOException {
+            this(classPathElements, Engine.BND);
+        }
+
+        public ClassPath(List<String> classPathElements, Engine engine) throws IOException {
+            this.engine = engine;
+            if (engine == Engine.BND) {
+                analyzer = new Analyzer();
+            } else {
+                classReferenceExtractor = new ClassReferenceExtractor();
+            }
+            if (classPathElements != null) {
+                for (String classPathElement : classPathElements) {
+                    File classPathElementFile = new File(classPathElement);
+                    if (classPathElementFile.exists()) {
+                        classPathElementFiles.add(classPathElementFile);
+                        if (analyzer != null) {
+                            analyzer.addClasspath(classPathElementFile);
+                        }
+                    }
+                }
+            }
+        }
+
+        private synchronized ClassEntry findClass(String className) {
+            if (foundClassEntries.containsKey(className)) {
+                return foundClassEntries.get(className);
+            }
+            ClassEntry classEntry = engine == Engine.BND ? findClassUsingBND(className) : findClassFile(className);
+            foundClassEntries.put(className, classEntry);
+            return classEntry;
+        }
+
+        private ClassEntry findClassUsingBND(String className) {
+            try {
+                Clazz clazz = analyzer.findClass(analyzer.getTypeRefFromFQN(className));
+                if (clazz == null) {
+                    return null;
+                }
+                return new ClassEntry(getReferencedPackages(clazz, new HashMap<String, String>()),
+                        clazz.getSuper() != null ? clazz.getSuper().getFQN() : null);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private ClassEntry findClassFile(String className) {
+            InputStream classFileInputStream = null;
+            try {
+                classFileInputStream = openClassFile(className.replace('.', '/') + ".class");
+                if (classFileInputStream == null) {
+                    return null;
+                }
+                ClassReferenceExtractor.ClassReferences classReferences = classReferenceExtractor.extract(classFileInputStream);
+                return new ClassEntry(classReferences.getReferencedPackages(), classReferences.getSuperClassName());
+            } catch (IOException e) {
+                return null;
+            } finally {
+                IOUtils.closeQuietly(classFileInputStream);
+            }
+        }
+
+        private InputStream openClassFile(String classFilePath) throws IOException {
+            for (File classPathElementFile : classPathElementFiles) {
+                if (classPathElementFile.isDirectory()) {
+                    File classFile = new File(classPathElementFile, classFilePath);
+                    if (classFile.isFile()) {
+                        return new BufferedInputStream(new FileInputStream(classFile));
+                    }
+                    continue;
+                }
+                ZipFile zipFile;
+                if (openedZipFiles.containsKey(classPathElementFile)) {
+                    zipFile = openedZipFiles.get(classPathElementFile);
+                } else {
+                    try {
+                        zipFile = new ZipFile(classPathElementFile);
+                    } catch (IOException e) {
+                        // not an archive, BND ignores it too
+                        zipFile = null;
+                    }
+                    openedZipFiles.put(classPathElementFile, zipFile);
+                }
+                if (zipFile != null) {
+                    ZipEntry classFileEntry = zipFile.getEntry(classFilePath);
+                    if (classFileEntry != null) {
+                        return zipFile.getInputStream(classFileEntry);
+                    }
+                }
+            }
+            URL classFileURL = ClassLoader.getSystemResource(classFilePath);
+            return classFileURL != null ? classFileURL.openStream() : null;
+        }
+
+        public synchronized void close() {
+            if (analyzer != null) {
+                analyzer.close();
+            }
+            for (ZipFile zipFile : openedZipFiles.values()) {
+                if (zipFile != null) {
+                    try {
+                        zipFile.close();
+                    } catch (IOException e) {
+                        // ignore, the file was only read
+                    }
+                }
+            }
+            openedZipFiles.clear();
+        }
+    }
+
+    private ClassDependencyIndex(byte[] fingerprint, Map<String, ClassEntry> classEntries) {
+        this.fingerprint = fingerprint;
+        this.classEntries = classEntries;
+    }
+
+    /**
+     * Returns the index of a JAR file or class directory built with the BND engine, building it if it is not cached
+     * yet or if the file has changed since it was indexed.
+     *
+     * @param jarFile the JAR file or class directory to index
+     * @return the index of the classes of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static ClassDependencyIndex getIndex(File jarFile) throws IOException {
+        return getIndex(jarFile, Engine.BND);
+    }
+
+    /**
+     * Returns the index of a JAR file or class directory, building it if it is not cached yet or if the file has
+     * changed since it was indexed.
+     *
+     * @param jarFile the JAR file or class directory to index
+     * @param engine  the engine used to extract the class references
+     * @return the index of the classes of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static ClassDependencyIndex getIndex(File jarFile, Engine engine) throws IOException {
+        String key = engine + ":" + jarFile.getAbsolutePath();
+        synchronized (cachedIndexes) {
+            ClassDependencyIndex index = cachedIndexes.get(key);
+            if (index != null && Arrays.equals(index.fingerprint, getFingerprint(jarFile))) {
+                return index;
+            }
+        }
+        ClassDependencyIndex index = build(jarFile, engine);
+        synchronized (cachedIndexes) {
+            cachedIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index of a JAR file or class directory with the BND engine, without using the cache.
+     */
+    public static ClassDependencyIndex build(File jarFile) throws IOException {
+        return build(jarFile, Engine.BND);
+    }
+
+    /**
+     * Builds the index of a JAR file or class directory, without using the cache.
+     */
+    public static ClassDependencyIndex build(File jarFile, Engine engine) throws IOException {
+        // taken before reading the classes, so that a file modified while it is indexed is indexed again next time
+        byte[] fingerprint = getFingerprint(jarFile);
+        if (engine == Engine.CONSTANT_POOL) {
+            return new ClassDependencyIndex(fingerprint, extractClassEntries(jarFile));
+        }
+        Map<String, ClassEntry> classEntries = new TreeMap<String, ClassEntry>();
+        // the same package names are referenced by many classes, share the instances
+        Map<String, String> packageNames = new HashMap<String, String>();
+        Analyzer analyzer = new Analyzer();
+        try {
+            analyzer.setJar(new Jar(jarFile));
+            // we just set dummy properties here for BND, like ClassDependencyTracker does
+            analyzer.setProperty("Bundle-SymbolicName", "org.osgi.core");
+            analyzer.setProperty("Bundle-Version", "1.0");
+            analyzer.setProperty("Import-Package", "*");
+            analyzer.analyze();
+            for (Map.Entry<Descriptors.TypeRef, Clazz> classEntry : analyzer.getClassspace().entrySet()) {
+                Clazz clazz = classEntry.getValue();
+                classEntries.put(classEntry.getKey().getFQN(), new ClassEntry(getReferencedPackages(clazz, packageNames),
+                        clazz.getSuper() != null ? clazz.getSuper().getFQN() : null));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error analyzing classes of " + jarFile, e);
+        } finally {
+            analyzer.close();
+        }
+        return new ClassDependencyIndex(fingerprint, classEntries);
+    }
+
+    /**
+     * Computes a digest of the last modification date and size of a file or, for a directory, of the path, last
+     * modification date and size of all the files it contains. The modification date of a directory only changes
+     * when its direct children are added or removed, so it cannot be used to detect changes in its sub-directories.
+     */
+    private static byte[] getFingerprint(File jarFile) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Cannot compute the fingerprint of " + jarFile, e);
+        }
+        if (jarFile.isDirectory()) {
+            updateDirectoryFingerprint(jarFile, "", messageDigest);
+        } else {
+            updateFingerprint("", jarFile, messageDigest);
+        }
+        return messageDigest.digest();
+    }
+
+    private static void updateDirectoryFingerprint(File directory, String relativePath, MessageDigest messageDigest) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        // the listing order is not specified
+        Arrays.sort(children);
+        for (File child : children) {
+            String childRelativePath = relativePath + "/" + child.getName();
+            if (child.isDirectory()) {
+                updateDirectoryFingerprint(child, childRelativePath, messageDigest);
+            } else {
+                updateFingerprint(childRelativePath, child, messageDigest);
+            }
+        }
+    }
+
+    private static void updateFingerprint(String relativePath, File file, MessageDigest messageDigest) {
+        byte[] pathBytes = relativePath.getBytes(Charset.forName("UTF-8"));
+        ByteBuffer entryBuffer = ByteBuffer.allocate(pathBytes.length + 20);
+        entryBuffer.putInt(pathBytes.length).put(pathBytes).putLong(file.lastModified()).putLong(file.length());
+        messageDigest.update(entryBuffer.array());
+    }
+
+    /**
+     * Reads the class files of a JAR file, streaming its entries, or of a class directory.
+     */
+    private static Map<String, ClassEntry> extractClassEntries(File jarFile) throws IOException {
+        Map<String, ClassEntry> classEntries = new TreeMap<String, ClassEntry>();
+        ClassReferenceExtractor classReferenceExtractor = new ClassReferenceExtractor();
+        if (jarFile.isDirectory()) {
+            extractDirectoryClassEntries(jarFile, classReferenceExtractor, classEntries);
+            return classEntries;
+        }
+        ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(new FileInputStream(jarFile)));
+        try {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                if (!zipEntry.isDirectory() && isClassFile(zipEntry.getName())) {
+                    extractClassEntry(zipInputStream, classReferenceExtractor, classEntries);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(zipInputStream);
+        }
+        return classEntries;
+    }
+
+    private static void extractDirectoryClassEntries(File directory, ClassReferenceExtractor classReferenceExtractor,
+                                                     Map<String, ClassEntry> classEntries) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                extractDirectoryClassEntries(child, classReferenceExtractor, classEntries);
+            } else if (isClassFile(child.getName())) {
+                InputStream classFileInputStream = new BufferedInputStream(new FileInputStream(child));
+                try {
+                    extractClassEntry(classFileInputStream, classReferenceExtractor, classEntries);
+                } finally {
+                    IOUtils.closeQuietly(classFileInputStream);
+                }
+            }
+        }
+    }
+
+    private static boolean isClassFile(String path) {
+        // module descriptors are not classes
+        return path.endsWith(".class") && !path.endsWith("module-info.class");
+    }
+
+    private static void extractClassEntry(InputStream classFileInputStream, ClassReferenceExtractor classReferenceExtractor,
+                                          Map<String, ClassEntry> classEntries) {
+        try {
+            ClassReferenceExtractor.ClassReferences classReferences = classReferenceExtractor.extract(classFileInputStream);
+            classEntries.put(classReferences.getClassName(),
+                    new ClassEntry(classReferences.getReferencedPackages(), classReferences.getSuperClassName()));
+        } catch (IOException e) {
+            // invalid class files are skipped, like BND does
+        }
+    }
+
+    private static Set<String> getReferencedPackages(Clazz clazz, Map<String, String> packageNames) {
+        Set<String> referencedPackages = new HashSet<String>();
+        if (clazz.getReferred() == null) {
+            return referencedPackages;
+        }
+        for (Descriptors.PackageRef packageRef : clazz.getReferred()) {
+            String packageName = packageRef.getFQN();
+            String sharedPackageName = packageNames.get(packageName);
+            if (sharedPackageName == null) {
+                packageNames.put(packageName, packageName);
+                sharedPackageName = packageName;
+            }
+            referencedPackages.add(sharedPackageName);
+        }
+        return referencedPackages;
+    }
+
+    /**
+     * Returns the names of the classes that use a package.
+     *
+     * @param packageToFind the package to look for. As with the BND "classes;IMPORTING" macro, this is a BND
+     *                      instruction, so wildcards may be used.
+     * @param classPath     the class path used to look up the super classes that are not part of the indexed file
+     * @return the sorted names of the classes using the package
+     */
+    public Set<String> findClassesUsingPackage(String packageToFind, ClassPath classPath) {
+        Set<String> classesThatHaveDependency = new TreeSet<String>();
+        Instruction instruction = new Instruction(packageToFind);
+        Map<String, Boolean> packageMatches = new HashMap<String, Boolean>();
+        Map<String, Boolean> classMatches = new HashMap<String, Boolean>();
+        for (String className : classEntries.keySet()) {
+            if (usesPackage(className, instruction, classPath, packageMatches, classMatches)) {
+                classesThatHaveDependency.add(className);
+            }
+        }
+        return classesThatHaveDependency;
+    }
+
+    private boolean usesPackage(String className, Instruction instruction, ClassPath classPath,
+                                Map<String, Boolean> packageMatches, Map<String, Boolean> classMatches) {
+        // walk up the class hierarchy until a class references the package, all the walked classes share the result
+        List<String> hierarchy = new ArrayList<String>();
+        Boolean result = null;
+        String currentClassName = className;
+        while (currentClassName != null && result == null) {
+            result = classMatches.get(currentClassName);
+            if (result != null) {
+                break;
+            }
+            if (hierarchy.contains(currentClassName)) {
+                result = false;
+                break;
+            }
+            hierarchy.add(currentClassName);
+            ClassEntry classEntry = classEntries.get(currentClassName);
+            if (classEntry == null) {
+                classEntry = classPath.findClass(currentClassName);
+                if (classEntry == null) {
+                    result = false;
+                    break;
+                }
+            }
+            for (String referencedPackage : classEntry.referencedPackages) {
+                Boolean matches = packageMatches.get(referencedPackage);
+                if (matches == null) {
+                    matches = instruction.matches(referencedPackage);
+                    packageMatches.put(referencedPackage, matches);
+                }
+                if (matches) {
+                    result = !instruction.isNegated();
+                    break;
+                }
+            }
+            currentClassName = classEntry.superClassName;
+        }
+        if (result == null) {
+            result = false;
+        }
+        for (String hierarchyClassName : hierarchy) {
+            classMatches.put(hierarchyClassName, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the names of the classes of the indexed file
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(classEntries.keySet());
+    }
+
+    /**
+     * @return the packages directly referenced by a class of the indexed file, or null if the class is not part of it
+     */
+    public Set<String> getReferencedPackages(String className) {
+        ClassEntry classEntry = classEntries.get(className);
+        return classEntry != null ? Collections.unmodifiableSet(classEntry.referencedPackages) : null;
+    }
+
+    /**
+     * @return the super class of a class of the indexed file, or null if the class has none or is not part of it
+     */
+    public String getSuperClassName(String className) {
+        ClassEntry classEntry = classEntries.get(className);
+        return classEntry != null ? classEntry.superClassName : null;
+    }
+
+}
@@ -54,14 +54,39 @@ import java.util.*;
 import java.util.jar.Manifest;
 
 /**
- * This dependency tracker utility uses BND to track the package dependencies inside a JAR.
- * So this will only extract the dependencies from Java code, unless BND plugins are added
+ * This dependency tracker utility uses BND to track the package dependencies inside a JAR, or reads the class files
+ * directly with a {@link ClassReferenceExtractor} when the {@link ClassDependencyIndex.Engine#CONSTANT_POOL} engine is
+ * used. So this will only extract the dependencies from Java code, unless BND plugins are added
  * (not possible through the API yet).
  */
 public class ClassDependencyTracker {
 
+    /**
+     * Finds the classes of a JAR file or class directory that use a package, using the shared
+     * {@link ClassDependencyIndex} of the file so that looking up several packages only analyzes it once.
+     *
+     * @param jarFile           the JAR file or class directory to search
+     * @param packageToFind     the package to look for
+     * @param classPathElements the class path used to look up the super classes of the searched classes
+     * @return the names of the classes using the package
+     * @throws IOException if the file cannot be read
+     */
     public static Set<String> findDependencyInJar(final File jarFile, final String packageToFind, List<String> classPathElements) throws IOException {
-        return findDependencyInJarUsingBND(jarFile, packageToFind, classPathElements);
+        return findDependencyInJar(jarFile, packageToFind, classPathElements, ClassDependencyIndex.Engine.BND);
+    }
+
+    /**
+     * Same as {@link #findDependencyInJar(File, String, List)}, using the specified engine to extract the class
+     * references.
+     */
+    public static Set<String> findDependencyInJar(final File jarFile, final String packageToFind, List<String> classPathElements,
+                                                  ClassDependencyIndex.Engine engine) throws IOException {
+        ClassDependencyIndex.ClassPath classPath = new ClassDependencyIndex.ClassPath(classPathElements, engine);
+        try {
+            return ClassDependencyIndex.getIndex(jarFile, engine).findClassesUsingPackage(packageToFind, classPath);
+        } finally {
+            classPath.close();
+        }
     }
 
     public static Set<String> findDependencyInJarUsingBND(final File jarFile, final String packageToFind, List<String> classPathElements) throws IOException {
@@ -0,0 +1,731 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the packages referenced by a class file by reading its constant pool, descriptors, signatures and
+ * annotations directly, without going through a BND analysis. The extracted packages are the ones BND references for
+ * a class : its super class and interfaces, the owners of the fields and methods it uses, all the descriptors and
+ * generic signatures, the exceptions, the run time annotations and, when the constant pool contains class constants
+ * that are not used by member references, the classes used by the byte code instructions.
+ *
+ * An extractor shares the package name instances between the classes it reads, it is not thread safe.
+ */
+public class ClassReferenceExtractor {
+
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int OPCODE_LDC = 0x12;
+    private static final int OPCODE_LDC_W = 0x13;
+    private static final int OPCODE_IINC = 0x84;
+    private static final int OPCODE_TABLESWITCH = 0xaa;
+    private static final int OPCODE_LOOKUPSWITCH = 0xab;
+    private static final int OPCODE_INVOKESTATIC = 0xb8;
+    private static final int OPCODE_INVOKEINTERFACE = 0xb9;
+    private static final int OPCODE_NEW = 0xbb;
+    private static final int OPCODE_ANEWARRAY = 0xbd;
+    private static final int OPCODE_CHECKCAST = 0xc0;
+    private static final int OPCODE_INSTANCEOF = 0xc1;
+    private static final int OPCODE_WIDE = 0xc4;
+    private static final int OPCODE_MULTIANEWARRAY = 0xc5;
+
+    /**
+     * Operand lengths of the instructions that don't need any special handling when crawling the byte code
+     */
+    private static final int[] OPERAND_LENGTHS = new int[256];
+
+    static {
+        setOperandLength(1, 0x10, 0x10); // bipush
+        setOperandLength(2, 0x11, 0x11); // sipush
+        setOperandLength(1, 0x12, 0x12); // ldc
+        setOperandLength(2, 0x13, 0x14); // ldc_w, ldc2_w
+        setOperandLength(1, 0x15, 0x19); // loads
+        setOperandLength(1, 0x36, 0x3a); // stores
+        setOperandLength(2, 0x84, 0x84); // iinc
+        setOperandLength(2, 0x99, 0xa8); // conditional branches, goto, jsr
+        setOperandLength(1, 0xa9, 0xa9); // ret
+        setOperandLength(2, 0xb2, 0xb8); // field accesses and invocations
+        setOperandLength(4, 0xb9, 0xba); // invokeinterface, invokedynamic
+        setOperandLength(2, 0xbb, 0xbb); // new
+        setOperandLength(1, 0xbc, 0xbc); // newarray
+        setOperandLength(2, 0xbd, 0xbd); // anewarray
+        setOperandLength(2, 0xc0, 0xc1); // checkcast, instanceof
+        setOperandLength(3, 0xc5, 0xc5); // multianewarray
+        setOperandLength(2, 0xc6, 0xc7); // ifnull, ifnonnull
+        setOperandLength(4, 0xc8, 0xc9); // goto_w, jsr_w
+    }
+
+    private static void setOperandLength(int length, int firstOpcode, int lastOpcode) {
+        for (int opcode = firstOpcode; opcode <= lastOpcode; opcode++) {
+            OPERAND_LENGTHS[opcode] = length;
+        }
+    }
+
+    private static final String CLASS_FOR_NAME_DESCRIPTOR = "(Ljava/lang/String;)Ljava/lang/Class;";
+    private static final int JAVA_1_4_MAJOR_VERSION = 48;
+
+    private final Map<String, String> packageNames = new HashMap<String, String>();
+
+    /**
+     * The references of a class file
+     */
+    public static class ClassReferences {
+
+        private final String className;
+        private final String superClassName;
+        private final Set<String> referencedPackages;
+
+        public ClassReferences(String className, String superClassName, Set<String> referencedPackages) {
+            this.className = className;
+            this.superClassName = superClassName;
+            this.referencedPackages = referencedPackages;
+        }
+
+        /**
+         * @return the fully qualified name of the class, using '$' for nested classes
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return the fully qualified name of the super class, or null for java.lang.Object and modules
+         */
+        public String getSuperClassName() {
+            return superClassName;
+        }
+
+        /**
+         * @return the packages referenced by the class, the default package being named "."
+         */
+        public Set<String> getReferencedPackages() {
+            return referencedPackages;
+        }
+    }
+
+    /**
+     * Reads a class file and extracts its references. The stream is not closed.
+     *
+     * @param classFileInputStream the class file content
+     * @return the references of the class
+     * @throws IOException if the stream cannot be read or if it doesn't contain a valid class file
+     */
+    public ClassReferences extract(InputStream classFileInputStream) throws IOException {
+        // class files are small, reading them at once avoids many small reads on inflating streams
+        byte[] classFileContent = IOUtils.toByteArray(classFileInputStream);
+        try {
+            return new ClassFileReader().read(new DataInputStream(new ByteArrayInputStream(classFileContent)));
+        } catch (RuntimeException e) {
+            // out of range constant pool indexes or truncated descriptors
+            throw new IOException("Invalid class file", e);
+        }
+    }
+
+    private String getPackageName(String internalClassName) {
+        int lastSlashPos = internalClassName.lastIndexOf('/');
+        String packageName = lastSlashPos < 0 ? "." : internalClassName.substring(0, lastSlashPos).replace('/', '.');
+        String sharedPackageName = packageNames.get(packageName);
+        if (sharedPackageName == null) {
+            packageNames.put(packageName, packageName);
+            sharedPackageName = packageName;
+        }
+        return sharedPackageName;
+    }
+
+    /**
+     * State of a single class file being read
+     */
+    private class ClassFileReader {
+
+        private String[] utf8Constants;
+        private int[] constantTags;
+        private int[] firstConstantIndexes;
+        private int[] secondConstantIndexes;
+        private boolean[] referredClassConstants;
+        private final Set<String> referencedPackages = new HashSet<String>();
+        private int forNameReference = -1;
+        private int classLiteralReference = -1;
+
+        private ClassReferences read(DataInputStream in) throws IOException {
+            if (in.readInt() != CLASS_FILE_MAGIC) {
+                throw new IOException("Not a valid class file (no CAFEBABE header)");
+            }
+            in.readUnsignedShort(); // minor version
+            int majorVersion = in.readUnsignedShort();
+            readConstantPool(in);
+
+            for (int i = 1; i < constantTags.length; i++) {
+                switch (constantTags[i]) {
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                        referToClassConstant(firstConstantIndexes[i]);
+                        break;
+                    case CONSTANT_NAME_AND_TYPE:
+                        referToDescriptor(utf8Constants[secondConstantIndexes[i]]);
+                        break;
+                }
+            }
+            // class constants that are not the owner of a member reference can only be used by instructions
+            boolean crawlCode = false;
+            for (int i = 1; i < constantTags.length; i++) {
+                if (constantTags[i] == CONSTANT_CLASS && !referredClassConstants[i]) {
+                    crawlCode = true;
+                    break;
+                }
+            }
+
+            in.readUnsignedShort(); // access flags
+            String internalClassName = getClassConstantName(in.readUnsignedShort());
+            referToClass(internalClassName);
+            int superClassIndex = in.readUnsignedShort();
+            String internalSuperClassName = null;
+            if (superClassIndex != 0) {
+                internalSuperClassName = getClassConstantName(superClassIndex);
+                referToClass(internalSuperClassName);
+            }
+            int interfaceCount = in.readUnsignedShort();
+            for (int i = 0; i < interfaceCount; i++) {
+                referToClass(getClassConstantName(in.readUnsignedShort()));
+            }
+
+            // class literals compiled for Java 1.4 and older use synthetic fields and a Class.forName call
+            boolean usesClassLiterals = false;
+            int fieldCount = in.readUnsignedShort();
+            for (int i = 0; i < fieldCount; i++) {
+                in.readUnsignedShort(); // access flags
+                String fieldName = utf8Constants[in.readUnsignedShort()];
+                if (fieldName.startsWith("class$") || fieldName.startsWith("$class$")) {
+                    usesClassLiterals = true;
+                }
+                referToDescriptor(utf8Constants[in.readUnsignedShort()]);
+                readAttributes(in, false);
+            }
+            if (usesClassLiterals) {
+                forNameReference = findMethodReference("java/lang/Class", "forName", CLASS_FOR_NAME_DESCRIPTOR);
+                classLiteralReference = findMethodReference(internalClassName, "class$", CLASS_FOR_NAME_DESCRIPTOR);
+            } else if (majorVersion == JAVA_1_4_MAJOR_VERSION) {
+                forNameReference = findMethodReference("java/lang/Class", "forName", CLASS_FOR_NAME_DESCRIPTOR);
+                if (forNameReference > 0) {
+                    usesClassLiterals = true;
+                    classLiteralReference = findMethodReference(internalClassName, "class$", CLASS_FOR_NAME_DESCRIPTOR);
+                }
+            }
+            crawlCode |= usesClassLiterals;
+
+            int methodCount = in.readUnsignedShort();
+            for (int i = 0; i < methodCount; i++) {
+                in.readUnsignedShort(); // access flags
+                in.readUnsignedShort(); // name
+                referToDescriptor(utf8Constants[in.readUnsignedShort()]);
+                readAttributes(in, crawlCode);
+            }
+            readAttributes(in, false);
+
+            return new ClassReferences(internalClassName.replace('/', '.'),
+                    internalSuperClassName != null ? internalSuperClassName.replace('/', '.') : null,
+                    Collections.unmodifiableSet(referencedPackages));
+        }
+
+        private void readConstantPool(DataInputStream in) throws IOException {
+            int constantPoolCount = in.readUnsignedShort();
+            utf8Constants = new String[constantPoolCount];
+            constantTags = new int[constantPoolCount];
+            firstConstantIndexes = new int[constantPoolCount];
+            secondConstantIndexes = new int[constantPoolCount];
+            referredClassConstants = new boolean[constantPoolCount];
+            for (int i = 1; i < constantPoolCount; i++) {
+                int tag = in.readUnsignedByte();
+                constantTags[i] = tag;
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        utf8Constants[i] = in.readUTF();
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        firstConstantIndexes[i] = in.readUnsignedShort();
+                        break;
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        firstConstantIndexes[i] = in.readUnsignedShort();
+                        secondConstantIndexes[i] = in.readUnsignedShort();
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                        in.readInt();
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        in.readLong();
+                        // 8 bytes constants take two entries
+                        i++;
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        in.readUnsignedByte();
+                        firstConstantIndexes[i] = in.readUnsignedShort();
+                        break;
+                    default:
+                        throw new IOException("Invalid constant pool tag " + tag + " at index " + i);
+                }
+            }
+        }
+
+        private String getClassConstantName(int classConstantIndex) {
+            return utf8Constants[firstConstantIndexes[classConstantIndex]];
+        }
+
+        private int findMethodReference(String internalClassName, String methodName, String descriptor) {
+            for (int i = 1; i < constantTags.length; i++) {
+                if (constantTags[i] == CONSTANT_METHODREF) {
+                    int nameAndTypeIndex = secondConstantIndexes[i];
+                    if (internalClassName.equals(getClassConstantName(firstConstantIndexes[i]))
+                            && methodName.equals(utf8Constants[firstConstantIndexes[nameAndTypeIndex]])
+                            && descriptor.equals(utf8Constants[secondConstantIndexes[nameAndTypeIndex]])) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private void readAttributes(DataInputStream in, boolean crawlCode) throws IOException {
+            int attributeCount = in.readUnsignedShort();
+            for (int i = 0; i < attributeCount; i++) {
+                String attributeName = utf8Constants[in.readUnsignedShort()];
+                long attributeLength = in.readInt() & 0xFFFFFFFFL;
+                if ("RuntimeVisibleAnnotations".equals(attributeName)) {
+                    readAnnotations(in, true);
+                } else if ("RuntimeInvisibleAnnotations".equals(attributeName)) {
+                    readAnnotations(in, false);
+                } else if ("RuntimeVisibleParameterAnnotations".equals(attributeName)) {
+                    readParameterAnnotations(in, true);
+                } else if ("RuntimeInvisibleParameterAnnotations".equals(attributeName)) {
+                    readParameterAnnotations(in, false);
+                } else if ("RuntimeVisibleTypeAnnotations".equals(attributeName)) {
+                    readTypeAnnotations(in, true);
+                } else if ("RuntimeInvisibleTypeAnnotations".equals(attributeName)) {
+                    readTypeAnnotations(in, false);
+                } else if ("EnclosingMethod".equals(attributeName)) {
+                    referToClassConstant(in.readUnsignedShort());
+                    in.readUnsignedShort(); // method
+                } else if ("Code".equals(attributeName) && crawlCode) {
+                    readCode(in);
+                } else if ("Signature".equals(attributeName)) {
+                    referToDescriptor(utf8Constants[in.readUnsignedShort()]);
+                } else if ("AnnotationDefault".equals(attributeName)) {
+                    readElementValue(in, true);
+                } else if ("Exceptions".equals(attributeName)) {
+                    int exceptionCount = in.readUnsignedShort();
+                    for (int j = 0; j < exceptionCount; j++) {
+                        referToClass(getClassConstantName(in.readUnsignedShort()));
+                    }
+                } else {
+                    skipFully(in, attributeLength);
+                }
+            }
+        }
+
+        private void readCode(DataInputStream in) throws IOException {
+            in.readUnsignedShort(); // max stack
+            in.readUnsignedShort(); // max locals
+            byte[] code = new byte[in.readInt()];
+            in.readFully(code);
+            crawl(code);
+            int exceptionTableLength = in.readUnsignedShort();
+            for (int i = 0; i < exceptionTableLength; i++) {
+                in.readUnsignedShort(); // start
+                in.readUnsignedShort(); // end
+                in.readUnsignedShort(); // handler
+                referToClassConstant(in.readUnsignedShort());
+            }
+            readAttributes(in, false);
+        }
+
+        private void crawl(byte[] code) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(code);
+            int lastReference = -1;
+            while (byteBuffer.remaining() > 0) {
+                int opcode = 0xFF & byteBuffer.get();
+                switch (opcode) {
+                    case OPCODE_LDC:
+                        lastReference = 0xFF & byteBuffer.get();
+                        referToClassConstant(lastReference);
+                        break;
+                    case OPCODE_LDC_W:
+                        lastReference = 0xFFFF & byteBuffer.getShort();
+                        referToClassConstant(lastReference);
+                        break;
+                    case OPCODE_NEW:
+                    case OPCODE_ANEWARRAY:
+                    case OPCODE_CHECKCAST:
+                    case OPCODE_INSTANCEOF:
+                        referToClassConstant(0xFFFF & byteBuffer.getShort());
+                        lastReference = -1;
+                        break;
+                    case OPCODE_MULTIANEWARRAY:
+                        referToClassConstant(0xFFFF & byteBuffer.getShort());
+                        byteBuffer.get();
+                        lastReference = -1;
+                        break;
+                    case OPCODE_INVOKESTATIC:
+                        int methodReference = 0xFFFF & byteBuffer.getShort();
+                        if ((methodReference == forNameReference || methodReference == classLiteralReference)
+                                && lastReference != -1) {
+                            // Class.forName("...") with a constant class name
+                            String loadedClassName = getLoadableConstant(lastReference);
+                            if (loadedClassName != null && !"class".equals(loadedClassName) && loadedClassName.indexOf('.') > 0) {
+                                referToClass(loadedClassName.replace('.', '/'));
+                            }
+                        }
+                        lastReference = -1;
+                        break;
+                    case OPCODE_INVOKEINTERFACE:
+                        // doesn't reset the last reference, like the other invocations
+                        byteBuffer.position(byteBuffer.position() + 4);
+                        break;
+                    case OPCODE_WIDE:
+                        int widenedOpcode = 0xFF & byteBuffer.get();
+                        byteBuffer.getShort();
+                        if (widenedOpcode == OPCODE_IINC) {
+                            byteBuffer.getShort();
+                        }
+                        break;
+                    case OPCODE_TABLESWITCH:
+                        skipPadding(byteBuffer);
+                        byteBuffer.getInt(); // default
+                        int low = byteBuffer.getInt();
+                        int high = byteBuffer.getInt();
+                        byteBuffer.position(byteBuffer.position() + (high - low + 1) * 4);
+                        lastReference = -1;
+                        break;
+                    case OPCODE_LOOKUPSWITCH:
+                        skipPadding(byteBuffer);
+                        byteBuffer.getInt(); // default
+                        int pairCount = byteBuffer.getInt();
+                        byteBuffer.position(byteBuffer.position() + pairCount * 8);
+                        lastReference = -1;
+                        break;
+                    default:
+                        if (opcode < 0xb6 || opcode > 0xb7) {
+                            // invokevirtual and invokespecial keep the last reference
+                            lastReference = -1;
+                        }
+                        byteBuffer.position(byteBuffer.position() + OPERAND_LENGTHS[opcode]);
+                }
+            }
+        }
+
+        private void skipPadding(ByteBuffer byteBuffer) {
+            while ((byteBuffer.position() & 3) != 0) {
+                byteBuffer.get();
+            }
+        }
+
+        private String getLoadableConstant(int constantIndex) {
+            if (constantIndex <= 0 || constantIndex >= constantTags.length) {
+                return null;
+            }
+            if (constantTags[constantIndex] == CONSTANT_STRING || constantTags[constantIndex] == CONSTANT_CLASS) {
+                return utf8Constants[firstConstantIndexes[constantIndex]];
+            }
+            return null;
+        }
+
+        private void readAnnotations(DataInputStream in, boolean runtimeRetention) throws IOException {
+            int annotationCount = in.readUnsignedShort();
+            for (int i = 0; i < annotationCount; i++) {
+                readAnnotation(in, runtimeRetention);
+            }
+        }
+
+        private void readParameterAnnotations(DataInputStream in, boolean runtimeRetention) throws IOException {
+            int parameterCount = in.readUnsignedByte();
+            for (int i = 0; i < parameterCount; i++) {
+                readAnnotations(in, runtimeRetention);
+            }
+        }
+
+        private void readTypeAnnotations(DataInputStream in, boolean runtimeRetention) throws IOException {
+            int annotationCount = in.readUnsignedShort();
+            for (int i = 0; i < annotationCount; i++) {
+                int targetType = in.readUnsignedByte();
+                switch (targetType) {
+                    case 0x00: // type parameter
+                    case 0x01:
+                    case 0x16: // formal parameter
+                        in.readUnsignedByte();
+                        break;
+                    case 0x10: // super type
+                    case 0x11: // type parameter bound
+                    case 0x12:
+                    case 0x17: // throws
+                    case 0x42: // catch
+                    case 0x43: // offsets
+                    case 0x44:
+                    case 0x45:
+                    case 0x46:
+                        in.readUnsignedShort();
+                        break;
+                    case 0x40: // local variables
+                    case 0x41:
+                        int tableLength = in.readUnsignedShort();
+                        skipFully(in, tableLength * 6L);
+                        break;
+                    case 0x47: // type arguments
+                    case 0x48:
+                    case 0x49:
+                    case 0x4A:
+                    case 0x4B:
+                        skipFully(in, 3);
+                        break;
+                    default:
+                        // 0x13 to 0x15, empty target
+                        break;
+                }
+                int typePathLength = in.readUnsignedByte();
+                skipFully(in, typePathLength * 2L);
+                readAnnotation(in, runtimeRetention);
+            }
+        }
+
+        private void readAnnotation(DataInputStream in, boolean runtimeRetention) throws IOException {
+            int typeIndex = in.readUnsignedShort();
+            // annotations that are not retained at run time don't need to be resolved
+            if (runtimeRetention) {
+                referToDescriptor(utf8Constants[typeIndex]);
+            }
+            int elementValuePairCount = in.readUnsignedShort();
+            for (int i = 0; i < elementValuePairCount; i++) {
+                in.readUnsignedShort(); // element name
+                readElementValue(in, runtimeRetention);
+            }
+        }
+
+        private void readElementValue(DataInputStream in, boolean runtimeRetention) throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 'B':
+                case 'C':
+                case 'D':
+                case 'F':
+                case 'I':
+                case 'J':
+                case 'S':
+                case 'Z':
+                case 's':
+                    in.readUnsignedShort();
+                    break;
+                case 'e':
+                    int enumTypeIndex = in.readUnsignedShort();
+                    if (runtimeRetention) {
+                        referToDescriptor(utf8Constants[enumTypeIndex]);
+                    }
+                    in.readUnsignedShort(); // constant name
+                    break;
+                case 'c':
+                    int classInfoIndex = in.readUnsignedShort();
+                    if (runtimeRetention) {
+                        referToDescriptor(utf8Constants[classInfoIndex]);
+                    }
+                    break;
+                case '@':
+                    readAnnotation(in, runtimeRetention);
+                    break;
+                case '[':
+                    int valueCount = in.readUnsignedShort();
+                    for (int i = 0; i < valueCount; i++) {
+                        readElementValue(in, runtimeRetention);
+                    }
+                    break;
+                default:
+                    throw new IOException("Invalid value for annotation element value tag " + (char) tag);
+            }
+        }
+
+        private void skipFully(DataInputStream in, long length) throws IOException {
+            while (length > 0) {
+                int skipped = in.skipBytes((int) Math.min(length, Integer.MAX_VALUE));
+                if (skipped <= 0) {
+                    // skipBytes may stop early without being at the end of the stream
+                    in.readByte();
+                    skipped = 1;
+                }
+                length -= skipped;
+            }
+        }
+
+        private void referToClassConstant(int classConstantIndex) {
+            if (classConstantIndex <= 0 || classConstantIndex >= constantTags.length
+                    || constantTags[classConstantIndex] != CONSTANT_CLASS || referredClassConstants[classConstantIndex]) {
+                return;
+            }
+            referredClassConstants[classConstantIndex] = true;
+            referToClass(getClassConstantName(classConstantIndex));
+        }
+
+        /**
+         * Refers to an internal class name, which may be an array descriptor for array classes
+         */
+        private void referToClass(String internalClassName) {
+            if (internalClassName.charAt(0) == '[') {
+                int componentTypePos = 0;
+                while (internalClassName.charAt(componentTypePos) == '[') {
+                    componentTypePos++;
+                }
+                if (internalClassName.charAt(componentTypePos) != 'L') {
+                    // array of primitives
+                    return;
+                }
+                internalClassName = internalClassName.substring(componentTypePos + 1, internalClassName.length() - 1);
+            }
+            referencedPackages.add(getPackageName(internalClassName));
+        }
+
+        /**
+         * Refers to all the classes of a field or method descriptor, or of a generic signature
+         */
+        private void referToDescriptor(String descriptor) {
+            int pos = 0;
+            if (descriptor.charAt(0) == '<') {
+                pos = parseFormalTypeParameters(descriptor, pos);
+            }
+            if (descriptor.charAt(pos) == '(') {
+                pos = parseReferences(descriptor, pos + 1, ')');
+                pos++;
+            }
+            parseReferences(descriptor, pos, (char) 0);
+        }
+
+        private int parseFormalTypeParameters(String signature, int pos) {
+            pos++;
+            while (signature.charAt(pos) != '>') {
+                // identifier, then an optional class bound and any number of interface bounds
+                pos = signature.indexOf(':', pos);
+                if (pos < 0) {
+                    throw new IllegalArgumentException("Expected identifier in " + signature);
+                }
+                while (signature.charAt(pos) == ':') {
+                    pos++;
+                    if (signature.charAt(pos) != ':') {
+                        pos = parseReference(signature, pos);
+                    }
+                }
+            }
+            return pos + 1;
+        }
+
+        private int parseReferences(String descriptor, int pos, char endChar) {
+            while (pos < descriptor.length() && descriptor.charAt(pos) != endChar) {
+                pos = parseReference(descriptor, pos);
+            }
+            return pos;
+        }
+
+        private int parseReference(String descriptor, int pos) {
+            char c = descriptor.charAt(pos);
+            while (c == '[') {
+                c = descriptor.charAt(++pos);
+            }
+            if (c == '<') {
+                pos = parseReferences(descriptor, pos + 1, '>');
+            } else if (c == 'T') {
+                // type variable
+                pos = descriptor.indexOf(';', pos);
+            } else if (c == 'L') {
+                StringBuilder internalClassName = new StringBuilder();
+                pos++;
+                while ((c = descriptor.charAt(pos)) != ';') {
+                    if (c == '<') {
+                        pos = parseReferences(descriptor, pos + 1, '>');
+                    } else {
+                        internalClassName.append(c);
+                    }
+                    pos++;
+                }
+                referToClass(internalClassName.toString());
+            }
+            // primitive types and wildcards don't reference anything
+            return pos + 1;
+        }
+    }
+
+}
@@ -119,7 +119,7 @@ public class PackageUtils {
         return packages;
     }
 
-    public static boolean containsIgnoreVersion(Collection<PackageInfo> packages, PackageInfo targetPackage) {
+    public static boolean containsIgnoreVersion(Collection<? extends PackageInfo> packages, PackageInfo targetPackage) {
         for (PackageInfo packageInfo : packages) {
             if (packageInfo.getName().equals(targetPackage.getName())) {
                 return true;
@@ -128,7 +128,7 @@ public class PackageUtils {
         return false;
     }
 
-    public static boolean containsMatchingVersion(Collection<PackageInfo> packages, PackageInfo targetPackage) {
+    public static boolean containsMatchingVersion(Collection<? extends PackageInfo> packages, PackageInfo targetPackage) {
         for (PackageInfo packageInfo : packages) {
             if (packageInfo.matches(targetPackage)) {
                 return true;
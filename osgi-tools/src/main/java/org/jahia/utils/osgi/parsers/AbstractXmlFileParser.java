@@ -44,15 +44,19 @@
 package org.jahia.utils.osgi.parsers;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.lang.StringUtils;
 import org.jahia.utils.osgi.PackageUtils;
 import org.jdom2.Attribute;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.Namespace;
 import org.jdom2.input.SAXBuilder;
-import org.jdom2.xpath.XPath;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -65,6 +69,20 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
 
     public static final Pattern XPATH_PREFIX_PATTERN = Pattern.compile("(\\w+):[\\w-]+");
 
+    protected static final Set<String> XML_FILE_EXTENSIONS = Collections.singleton("xml");
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        // like the JDOM path, external DTDs are never loaded
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return xmlInputFactory;
+    }
+
     public abstract boolean canParse(String fileName, Element rootElement);
 
     public abstract void parse(String fileName, Element rootElement, String fileParent, boolean externalDependency, boolean optionalDependency, String version, ParsingContext parsingContext)
@@ -75,19 +93,47 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
         return "xml".equals(ext);
     }
 
+    /**
+     * Returns the reference queries this parser can evaluate in a single streaming pass over the XML file, without
+     * building a JDOM document. Parsers that need arbitrary XPath expressions keep the default implementation,
+     * which returns null, and are only called through {@link #parse(String, Element, String, boolean, boolean, String, ParsingContext)}.
+     *
+     * @return the streaming reference queries of this parser, or null if it needs a JDOM document
+     */
+    public XmlReferenceQueries getStreamingReferenceQueries() {
+        return null;
+    }
+
     public boolean parse(String fileName, InputStream inputStream, String fileParent, boolean externalDependency, boolean optionalDependency, String version, ParsingContext parsingContext) {
         boolean processed = true;
-        SAXBuilder saxBuilder = new SAXBuilder();
-        saxBuilder.setValidation(false);
-        saxBuilder.setFeature("http://xml.org/sax/features/validation", false);
-        saxBuilder.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
-        saxBuilder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        InputStream inputStreamCopy = null;
         try {
-            ByteArrayOutputStream entryOutputStream = new ByteArrayOutputStream();
-            IOUtils.copy(inputStream, entryOutputStream);
-            inputStreamCopy = new ByteArrayInputStream(entryOutputStream.toByteArray());
-            InputStreamReader fileReader = new InputStreamReader(inputStreamCopy);
+            InputStream xmlInputStream = inputStream;
+            XmlReferenceQueries streamingReferenceQueries = getStreamingReferenceQueries();
+            if (streamingReferenceQueries != null) {
+                // the JDOM path may have to read the file again, so we mark its start, which is where the stream
+                // already is when it was marked by the caller
+                if (!xmlInputStream.markSupported()) {
+                    xmlInputStream = new BufferedInputStream(xmlInputStream);
+                }
+                xmlInputStream.mark(Integer.MAX_VALUE);
+                try {
+                    Boolean streamed = parseStreaming(fileName, xmlInputStream, streamingReferenceQueries, fileParent, optionalDependency, version, parsingContext);
+                    if (streamed != null) {
+                        return streamed;
+                    }
+                } catch (XMLStreamException e) {
+                    getLogger().debug("Streaming parsing of XML file " + fileName + " failed, falling back to JDOM parsing", e);
+                }
+                xmlInputStream.reset();
+            }
+
+            SAXBuilder saxBuilder = new SAXBuilder();
+            saxBuilder.setValidation(false);
+            saxBuilder.setFeature("http://xml.org/sax/features/validation", false);
+            saxBuilder.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
+            saxBuilder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            // the XML parser closes its input once done, the caller's stream must stay open
+            InputStreamReader fileReader = new InputStreamReader(new CloseShieldInputStream(xmlInputStream));
             org.jdom2.Document jdomDocument = saxBuilder.build(fileReader);
             Element rootElement = jdomDocument.getRootElement();
             // getLog().debug("Parsed XML file" + fileName + " successfully.");
@@ -103,12 +149,193 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
         } catch (IOException e) {
             getLogger().warn("Error parsing XML file " + fileName + ": " + e.getMessage() + " enable debug mode (-X) for more detailed exception");
             getLogger().debug("Detailed exception", e);
-        } finally {
-            IOUtils.closeQuietly(inputStreamCopy);
         }
         return processed;
     }
 
+    /**
+     * Evaluates the streaming reference queries in a single StAX pass. The matches are collected per query and only
+     * added to the parsing context once the whole document has been read, in query order, so that the result is
+     * the same as running the queries one after the other with
+     * {@link #getRefsUsingXPathQueries(String, Element, boolean, boolean, String[], String, String, String, boolean, ParsingContext)}.
+     *
+     * @return true if the file was processed, false if its root element doesn't match the required namespace, or
+     * null if a query uses a prefix that cannot be resolved, in which case the JDOM path must be used to report
+     * the error the same way
+     * @throws XMLStreamException if the document is not well-formed or uses constructs the streaming reader does
+     * not support, in which case the JDOM path is used instead
+     */
+    private Boolean parseStreaming(String fileName, InputStream inputStream, XmlReferenceQueries referenceQueries,
+                                   String fileParent, boolean optionalDependency, String version,
+                                   ParsingContext parsingContext) throws XMLStreamException {
+        // use the same character decoding as the JDOM path
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new InputStreamReader(new CloseShieldInputStream(inputStream)));
+        try {
+            while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                if (!reader.hasNext()) {
+                    return null;
+                }
+                reader.next();
+            }
+
+            // namespace declarations of the root element, except the one of the element itself, like JDOM's
+            // additional namespaces
+            String rootNamespaceURI = StringUtils.defaultString(reader.getNamespaceURI());
+            String rootPrefix = StringUtils.defaultString(reader.getPrefix());
+            Map<String, String> additionalNamespaces = new LinkedHashMap<String, String>();
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = StringUtils.defaultString(reader.getNamespacePrefix(i));
+                String namespaceURI = StringUtils.defaultString(reader.getNamespaceURI(i));
+                if (!prefix.equals(rootPrefix) || !namespaceURI.equals(rootNamespaceURI)) {
+                    additionalNamespaces.put(prefix, namespaceURI);
+                }
+            }
+            String requiredNamespaceURI = referenceQueries.getRequiredNamespaceURI();
+            if (requiredNamespaceURI != null && !requiredNamespaceURI.equals(rootNamespaceURI)
+                    && !additionalNamespaces.containsValue(requiredNamespaceURI)) {
+                return false;
+            }
+
+            getLogger().debug("Processing " + fileParent + " / " + fileName + " using streaming reference extraction...");
+
+            Map<String, String> prefixBindings = new HashMap<String, String>();
+            if (rootNamespaceURI.length() > 0) {
+                prefixBindings.put(referenceQueries.getDefaultNamespacePrefix(), rootNamespaceURI);
+            }
+            prefixBindings.putAll(additionalNamespaces);
+
+            List<XmlReferenceQueries.Query> queries = referenceQueries.getQueries();
+            String[][] stepNamespaceURIs = new String[queries.size()][];
+            String[] attributeNamespaceURIs = new String[queries.size()];
+            List<List<String>> queryResults = new ArrayList<List<String>>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                XmlReferenceQueries.Query query = queries.get(i);
+                queryResults.add(new ArrayList<String>());
+                Set<String> missingPrefixes = getMissingQueryPrefixes(additionalNamespaces.keySet(), query.getXPathQuery());
+                if (missingPrefixes.size() > 0) {
+                    getLogger().debug(fileParent + " / " + fileName + ": xPath query " + query.getXPathQuery() + " cannot be executed on this file since it has prefixes not declared in the file: " + missingPrefixes);
+                    continue;
+                }
+                String[] namespaceURIs = new String[query.getStepCount()];
+                for (int step = 0; step < namespaceURIs.length; step++) {
+                    namespaceURIs[step] = resolvePrefix(prefixBindings, query.getStepPrefix(step));
+                    if (namespaceURIs[step] == null) {
+                        return null;
+                    }
+                }
+                if (query.isAttributeQuery()) {
+                    attributeNamespaceURIs[i] = resolvePrefix(prefixBindings, query.getAttributePrefix());
+                    if (attributeNamespaceURIs[i] == null) {
+                        return null;
+                    }
+                }
+                stepNamespaceURIs[i] = namespaceURIs;
+            }
+
+            List<String> elementNamespaceURIs = new ArrayList<String>();
+            List<String> elementLocalNames = new ArrayList<String>();
+            // open element text captures : query index, result index, element depth
+            List<int[]> textCaptures = new ArrayList<int[]>();
+            List<StringBuilder> capturedTexts = new ArrayList<StringBuilder>();
+            int event = reader.getEventType();
+            while (true) {
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        elementNamespaceURIs.add(StringUtils.defaultString(reader.getNamespaceURI()));
+                        elementLocalNames.add(reader.getLocalName());
+                        for (int i = 0; i < queries.size(); i++) {
+                            if (stepNamespaceURIs[i] == null || !matchesPath(queries.get(i), stepNamespaceURIs[i], elementNamespaceURIs, elementLocalNames)) {
+                                continue;
+                            }
+                            if (queries.get(i).isAttributeQuery()) {
+                                String attributeValue = getAttributeValue(reader, attributeNamespaceURIs[i], queries.get(i).getAttributeLocalName());
+                                if (attributeValue != null) {
+                                    queryResults.get(i).add(attributeValue);
+                                }
+                            } else {
+                                textCaptures.add(new int[]{i, queryResults.get(i).size(), elementLocalNames.size()});
+                                capturedTexts.add(new StringBuilder());
+                                // reserve the slot so that results stay in document order
+                                queryResults.get(i).add(null);
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        for (int i = 0; i < textCaptures.size(); i++) {
+                            if (textCaptures.get(i)[2] == elementLocalNames.size()) {
+                                capturedTexts.get(i).append(reader.getText());
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        for (int i = textCaptures.size() - 1; i >= 0; i--) {
+                            int[] textCapture = textCaptures.get(i);
+                            if (textCapture[2] == elementLocalNames.size()) {
+                                queryResults.get(textCapture[0]).set(textCapture[1], capturedTexts.get(i).toString().trim());
+                                textCaptures.remove(i);
+                                capturedTexts.remove(i);
+                            }
+                        }
+                        elementNamespaceURIs.remove(elementNamespaceURIs.size() - 1);
+                        elementLocalNames.remove(elementLocalNames.size() - 1);
+                        break;
+                    default:
+                        break;
+                }
+                // read until the end of the document so that malformed trailing content is detected like the
+                // JDOM path does
+                if (!reader.hasNext()) {
+                    break;
+                }
+                event = reader.next();
+            }
+
+            for (int i = 0; i < queries.size(); i++) {
+                XmlReferenceQueries.ReferenceType referenceType = queries.get(i).getReferenceType();
+                for (String referenceValue : queryResults.get(i)) {
+                    addReference(fileName, referenceValue,
+                            referenceType == XmlReferenceQueries.ReferenceType.CLASS_NAME,
+                            referenceType == XmlReferenceQueries.ReferenceType.PACKAGE,
+                            fileParent, version, optionalDependency, parsingContext);
+                }
+            }
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String resolvePrefix(Map<String, String> prefixBindings, String prefix) {
+        return prefix == null ? "" : prefixBindings.get(prefix);
+    }
+
+    private static boolean matchesPath(XmlReferenceQueries.Query query, String[] stepNamespaceURIs,
+                                       List<String> elementNamespaceURIs, List<String> elementLocalNames) {
+        int offset = elementLocalNames.size() - query.getStepCount();
+        if (offset < 0) {
+            return false;
+        }
+        for (int step = 0; step < query.getStepCount(); step++) {
+            if (!query.getStepLocalName(step).equals(elementLocalNames.get(offset + step))
+                    || !stepNamespaceURIs[step].equals(elementNamespaceURIs.get(offset + step))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getAttributeValue(XMLStreamReader reader, String namespaceURI, String localName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (localName.equals(reader.getAttributeLocalName(i))
+                    && namespaceURI.equals(StringUtils.defaultString(reader.getAttributeNamespace(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
     public boolean hasNamespaceURI(Element element, String namespaceURI) {
         //getLog().debug("Main namespace URI=" + element.getNamespace().getURI());
         if (element.getNamespace().getURI().equals(namespaceURI)) {
@@ -138,15 +365,7 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
      * @throws JDOMException raised if there was a problem navigating the JDOM structure.
      */
     public static Element getElement(Element scopeElement, String xPathExpression) throws JDOMException {
-        XPath xPath = XPath.newInstance(xPathExpression);
-        String namespaceURI = scopeElement.getDocument().getRootElement().getNamespaceURI();
-        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
-            xPath.addNamespace("xp", namespaceURI);
-        }
-        for (Namespace additionalNamespace : (List<Namespace>) scopeElement.getDocument().getRootElement().getAdditionalNamespaces()) {
-            xPath.addNamespace(additionalNamespace);
-        }
-        return (Element) xPath.selectSingleNode(scopeElement);
+        return (Element) XPathCache.getInstance().selectSingleNode(scopeElement, xPathExpression, getNamespaceBindings(scopeElement, "xp"));
     }
 
     public List<Element> getElements(Element scopeElement, String xPathExpression) throws JDOMException {
@@ -161,30 +380,13 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
     }
 
     public List<?> selectNodes(Element scopeElement, String xPathExpression) throws JDOMException {
-        XPath xPath = XPath.newInstance(xPathExpression);
-        String namespaceURI = scopeElement.getDocument().getRootElement().getNamespaceURI();
-        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
-            xPath.addNamespace("xp", namespaceURI);
-        }
-        for (Namespace additionalNamespace : (List<Namespace>) scopeElement.getDocument().getRootElement().getAdditionalNamespaces()) {
-            xPath.addNamespace(additionalNamespace);
-        }
-
-        return xPath.selectNodes(scopeElement);
+        return XPathCache.getInstance().selectNodes(scopeElement, xPathExpression, getNamespaceBindings(scopeElement, "xp"));
     }
 
     @SuppressWarnings("unchecked")
     public List<Attribute> getAttributes(Element scopeElement, String xPathExpression) throws JDOMException {
         List<Attribute> elems = new LinkedList<Attribute>();
-        XPath xPath = XPath.newInstance(xPathExpression);
-        String namespaceURI = scopeElement.getDocument().getRootElement().getNamespaceURI();
-        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
-            xPath.addNamespace("xp", namespaceURI);
-        }
-        for (Namespace additionalNamespace : (List<Namespace>) scopeElement.getDocument().getRootElement().getAdditionalNamespaces()) {
-            xPath.addNamespace(additionalNamespace);
-        }
-        for (Object obj : xPath.selectNodes(scopeElement)) {
+        for (Object obj : selectNodes(scopeElement, xPathExpression)) {
             if (obj instanceof Attribute) {
                 elems.add((Attribute) obj);
             }
@@ -203,11 +405,16 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
     }
 
     public Set<String> getMissingQueryPrefixes(Element root, String xPathQuery) {
-        Set<String> xPathQueryPrefixes = getPrefixesInXPath(xPathQuery);
-        Set<String> elementPrefixes = new HashSet<String>();
+        Set<String> rootPrefixes = new HashSet<String>();
         for (Namespace additionalNamespaces : (List<Namespace>) root.getAdditionalNamespaces()) {
-            elementPrefixes.add(additionalNamespaces.getPrefix());
+            rootPrefixes.add(additionalNamespaces.getPrefix());
         }
+        return getMissingQueryPrefixes(rootPrefixes, xPathQuery);
+    }
+
+    private Set<String> getMissingQueryPrefixes(Set<String> rootPrefixes, String xPathQuery) {
+        Set<String> xPathQueryPrefixes = getPrefixesInXPath(xPathQuery);
+        Set<String> elementPrefixes = new HashSet<String>(rootPrefixes);
         elementPrefixes.add("beans");
         Set<String> missingPrefixes = new TreeSet<String>();
         for (String xPathQueryPrefix : xPathQueryPrefixes) {
@@ -220,20 +427,30 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
 
     public List<Object> getNodes(Element scopeElement, String xPathExpression, String defaultPrefix) throws JDOMException {
         List<Object> nodes = new LinkedList<Object>();
-        XPath xPath = XPath.newInstance(xPathExpression);
-        String namespaceURI = scopeElement.getDocument().getRootElement().getNamespaceURI();
-        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
-            xPath.addNamespace(defaultPrefix, namespaceURI);
-        }
-        for (Namespace additionalNamespace : (List<Namespace>) scopeElement.getDocument().getRootElement().getAdditionalNamespaces()) {
-            xPath.addNamespace(additionalNamespace);
-        }
-        for (Object obj : xPath.selectNodes(scopeElement)) {
+        for (Object obj : XPathCache.getInstance().selectNodes(scopeElement, xPathExpression, getNamespaceBindings(scopeElement, defaultPrefix))) {
             nodes.add(obj);
         }
         return nodes;
     }
 
+    /**
+     * Returns the namespace bindings used to evaluate XPath expressions on a document : the default prefix is bound to
+     * the namespace of the root element, if it has one, and the other prefixes to the namespaces declared on the root
+     * element.
+     */
+    private static Map<String, String> getNamespaceBindings(Element scopeElement, String defaultPrefix) {
+        Element rootElement = scopeElement.getDocument().getRootElement();
+        Map<String, String> namespaceBindings = new HashMap<String, String>();
+        String namespaceURI = rootElement.getNamespaceURI();
+        if ((namespaceURI != null) && (!"".equals(namespaceURI))) {
+            namespaceBindings.put(defaultPrefix, namespaceURI);
+        }
+        for (Namespace additionalNamespace : (List<Namespace>) rootElement.getAdditionalNamespaces()) {
+            namespaceBindings.put(additionalNamespace.getPrefix(), additionalNamespace.getURI());
+        }
+        return namespaceBindings;
+    }
+
     /**
      * Use an array of XPath queries to extract class name, package or content type references from
      * a JDOM document.
@@ -276,33 +493,42 @@ public abstract class AbstractXmlFileParser extends AbstractFileParser {
                     getLogger().warn(fileParent + " / " + fileName + ": xPath query" + xPathQuery + " return unknown XML node type " + referenceObject + "...");
                 }
                 if (referenceValue != null) {
-                    if (classNameReferences) {
-                        getLogger().debug(fileName + " Found class " + referenceValue + " package=" + PackageUtils.getPackagesFromClass(referenceValue, optionalDependency, version, fileName, parsingContext).toString());
-                        parsingContext.addAllPackageImports(PackageUtils.getPackagesFromClass(referenceValue, optionalDependency, version , fileParent + "/" + fileName, parsingContext));
-                    } else if (packageReferences) {
-                        getLogger().debug(fileName + " Found package=" + referenceValue);
-                        parsingContext.addPackageImport(new PackageInfo(referenceValue, version, optionalDependency, fileParent + "/" + fileName, parsingContext));
-                    } else {
-                        if (referenceValue.contains(" ")) {
-                            getLogger().debug(fileName + "Found multi-valued reference: " + referenceValue);
-                            String[] referenceValueArray = referenceValue.split(" ");
-                            for (String reference : referenceValueArray) {
-                                getLogger().debug(fileName + " Found content type " + referenceValue + " reference");
-                                parsingContext.addContentTypeReference(reference);
-                            }
-                        } else if (referenceValue.contains(",")) {
-                            getLogger().debug(fileName + "Found multi-valued reference: " + referenceValue);
-                            String[] referenceValueArray = referenceValue.split(",");
-                            for (String reference : referenceValueArray) {
-                                getLogger().debug(fileName + " Found content type " + referenceValue + " reference");
-                                parsingContext.addContentTypeReference(reference);
-                            }
-                        } else {
-                            getLogger().debug(fileName + " Found content type " + referenceValue + " reference");
-                            parsingContext.addContentTypeReference(referenceValue);
-                        }
-                    }
+                    addReference(fileName, referenceValue, classNameReferences, packageReferences, fileParent, version, optionalDependency, parsingContext);
+                }
+            }
+        }
+    }
+
+    private void addReference(String fileName, String referenceValue,
+                              boolean classNameReferences,
+                              boolean packageReferences,
+                              String fileParent,
+                              String version,
+                              boolean optionalDependency, ParsingContext parsingContext) {
+        if (classNameReferences) {
+            getLogger().debug(fileName + " Found class " + referenceValue + " package=" + PackageUtils.getPackagesFromClass(referenceValue, optionalDependency, version, fileName, parsingContext).toString());
+            parsingContext.addAllPackageImports(PackageUtils.getPackagesFromClass(referenceValue, optionalDependency, version , fileParent + "/" + fileName, parsingContext));
+        } else if (packageReferences) {
+            getLogger().debug(fileName + " Found package=" + referenceValue);
+            parsingContext.addPackageImport(new PackageInfo(referenceValue, version, optionalDependency, fileParent + "/" + fileName, parsingContext));
+        } else {
+            if (referenceValue.contains(" ")) {
+                getLogger().debug(fileName + "Found multi-valued reference: " + referenceValue);
+                String[] referenceValueArray = referenceValue.split(" ");
+                for (String reference : referenceValueArray) {
+                    getLogger().debug(fileName + " Found content type " + referenceValue + " reference");
+                    parsingContext.addContentTypeReference(reference);
+                }
+            } else if (referenceValue.contains(",")) {
+                getLogger().debug(fileName + "Found multi-valued reference: " + referenceValue);
+                String[] referenceValueArray = referenceValue.split(",");
+                for (String reference : referenceValueArray) {
+                    getLogger().debug(fileName + " Found content type " + referenceValue + " reference");
+                    parsingContext.addContentTypeReference(reference);
                 }
+            } else {
+                getLogger().debug(fileName + " Found content type " + referenceValue + " reference");
+                parsingContext.addContentTypeReference(referenceValue);
             }
         }
     }
@@ -44,6 +44,8 @@
 package org.jahia.utils.osgi.parsers;
 
 import org.apache.commons.io.FilenameUtils;
+import org.jahia.utils.osgi.parsers.cnd.CndBulkLoader;
+import org.jahia.utils.osgi.parsers.cnd.ExtendedNodeType;
 import org.jahia.utils.osgi.parsers.cnd.JahiaCndReader;
 import org.jahia.utils.osgi.parsers.cnd.NodeTypeRegistry;
 import org.jahia.utils.osgi.parsers.cnd.ParseException;
@@ -53,13 +55,21 @@ import javax.jcr.ValueFormatException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
 /**
  * A CND (JCR content definition) file parser
  */
-public class CndFileParser extends AbstractFileParser {
+public class CndFileParser extends AbstractFileParser implements ExtensionAwareFileParser {
+
+    private static final Set<String> FILE_EXTENSIONS = Collections.singleton("cnd");
+
+    public Set<String> getFileExtensions() {
+        return FILE_EXTENSIONS;
+    }
 
     public boolean canParse(String fileName) {
         String ext = FilenameUtils.getExtension(fileName).toLowerCase();
@@ -69,14 +79,15 @@ public class CndFileParser extends AbstractFileParser {
     public boolean parse(String fileName, InputStream inputStream, String fileParent, boolean externalDependency, boolean optionalDependency, String version, ParsingContext parsingContext) throws IOException {
         getLogger().debug("Processing CND " + fileName + "...");
 
+        NodeTypeRegistry nodeTypeRegistry = NodeTypeRegistry.getInstance();
         try {
-            JahiaCndReader jahiaCndReader = new JahiaCndReader(new InputStreamReader(inputStream), fileName, fileName, NodeTypeRegistry.getInstance());
-            jahiaCndReader.setDoRegister(false);
-            jahiaCndReader.parse();
-
             Set<String> contentTypeDefinitions = new TreeSet<String>();
             Set<String> contentTypeReferences = new TreeSet<String>();
-            jahiaCndReader.getDefinitionsAndReferences(contentTypeDefinitions, contentTypeReferences);
+            // the registry is shared but thread safe, so the CND files of dependencies scanned by several threads
+            // are parsed concurrently; the namespaces of a file that fails to parse are not kept in the registry
+            List<ExtendedNodeType> nodeTypes = new CndBulkLoader(nodeTypeRegistry, 1).setRegister(false)
+                    .load(fileName, new InputStreamReader(inputStream), fileName);
+            JahiaCndReader.getDefinitionsAndReferences(fileName, nodeTypes, contentTypeDefinitions, contentTypeReferences);
             parsingContext.addAllContentTypeDefinitions(contentTypeDefinitions);
             parsingContext.addAllContentTypeReferences(contentTypeReferences);
         } catch (ParseException e) {
@@ -50,16 +50,24 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Drools rule definition file parser
  */
-public class DrlFileParser extends AbstractFileParser {
+public class DrlFileParser extends AbstractFileParser implements ExtensionAwareFileParser {
 
     public static final Pattern RULE_IMPORT_PATTERN = Pattern.compile("^\\s*import\\s*([\\w.\\*]*)\\s*$");
 
+    private static final Set<String> FILE_EXTENSIONS = Collections.singleton("drl");
+
+    public Set<String> getFileExtensions() {
+        return FILE_EXTENSIONS;
+    }
+
     public boolean canParse(String fileName) {
         String ext = FilenameUtils.getExtension(fileName).toLowerCase();
         return "drl".equals(ext);
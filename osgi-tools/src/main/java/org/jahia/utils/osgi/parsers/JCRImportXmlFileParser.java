@@ -46,19 +46,35 @@ package org.jahia.utils.osgi.parsers;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 
+import java.util.Set;
+
 /**
  * JCR Import file parser
  */
-public class JCRImportXmlFileParser extends AbstractXmlFileParser {
+public class JCRImportXmlFileParser extends AbstractXmlFileParser implements ExtensionAwareFileParser {
 
     private final static String[] JCR_IMPORT_XPATH_QUERIES = {
             "//@jcr:primaryType",
             "//@jcr:mixinTypes"
     };
 
+    private final static String JCR_NAMESPACE_URI = "http://www.jcp.org/jcr/1.0";
+
+    private final static XmlReferenceQueries JCR_IMPORT_STREAMING_QUERIES = new XmlReferenceQueries("xp", JCR_NAMESPACE_URI)
+            .add(XmlReferenceQueries.ReferenceType.CONTENT_TYPE, JCR_IMPORT_XPATH_QUERIES);
+
+    public Set<String> getFileExtensions() {
+        return XML_FILE_EXTENSIONS;
+    }
+
+    @Override
+    public XmlReferenceQueries getStreamingReferenceQueries() {
+        return JCR_IMPORT_STREAMING_QUERIES;
+    }
+
     @Override
     public boolean canParse(String fileName, Element rootElement) {
-        return hasNamespaceURI(rootElement, "http://www.jcp.org/jcr/1.0");
+        return hasNamespaceURI(rootElement, JCR_NAMESPACE_URI);
     }
 
     @Override
@@ -49,11 +49,24 @@ import org.jdom2.Element;
 import org.jdom2.JDOMException;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * XML file parser for JPDL file types
  */
-public class JpdlXmlFileParser extends AbstractXmlFileParser {
+public class JpdlXmlFileParser extends AbstractXmlFileParser implements ExtensionAwareFileParser {
+
+    private final static XmlReferenceQueries JPDL_STREAMING_QUERIES = new XmlReferenceQueries("xp", null)
+            .add(XmlReferenceQueries.ReferenceType.CLASS_NAME, "//@class");
+
+    public Set<String> getFileExtensions() {
+        return XML_FILE_EXTENSIONS;
+    }
+
+    @Override
+    public XmlReferenceQueries getStreamingReferenceQueries() {
+        return JPDL_STREAMING_QUERIES;
+    }
 
     public boolean canParse(String fileName) {
         return fileName.toLowerCase().endsWith(".jpdl.xml");
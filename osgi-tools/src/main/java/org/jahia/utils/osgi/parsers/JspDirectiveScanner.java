@@ -0,0 +1,338 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass scanner for the JSP directives that reference classes or tag libraries. It recognizes, in one sweep
+ * over the characters of the JSP, the same constructs as the {@link JspFileParser} regular expressions:
+ * <ul>
+ * <li><code>&lt;%@ page import="..." %&gt;</code> ({@link JspFileParser#JSP_PAGE_IMPORT_PATTERN})</li>
+ * <li><code>&lt;%--@elvariable ... type="..." --%&gt;</code> ({@link JspFileParser#IDEA_TYPE_HINT_PATTERN})</li>
+ * <li><code>&lt;jsp:useBean ... /&gt;</code> class and type attributes ({@link JspFileParser#JSP_USEBEAN_TAG_PATTERN}
+ * and {@link JspFileParser#TAG_ATTRIBUTES_PATTERN})</li>
+ * <li><code>&lt;%@ taglib uri="..." %&gt;</code> ({@link JspFileParser#JSP_TAGLIB_PATTERN})</li>
+ * </ul>
+ * Each kind of construct is matched independently, exactly as if each regular expression was searched separately
+ * over the whole content, and only the extracted values are turned into strings.
+ */
+public class JspDirectiveScanner {
+
+    private static final char[] PAGE = "page".toCharArray();
+    private static final char[] IMPORT_ATTRIBUTE = "import=\"".toCharArray();
+    private static final char[] TAGLIB = "taglib".toCharArray();
+    private static final char[] URI_ATTRIBUTE = "uri=\"".toCharArray();
+    private static final char[] ELVARIABLE = "--@elvariable".toCharArray();
+    private static final char[] TYPE_ATTRIBUTE = "type=\"".toCharArray();
+    private static final char[] USEBEAN = "<jsp:useBean".toCharArray();
+    private static final char[] CLASS_NAME = "class".toCharArray();
+    private static final char[] TYPE_NAME = "type".toCharArray();
+
+    private final List<String> pageImports = new ArrayList<String>();
+    private final List<String> typeHints = new ArrayList<String>();
+    private final List<String> useBeanClasses = new ArrayList<String>();
+    private final List<String> taglibUris = new ArrayList<String>();
+
+    private char[] content;
+    private int length;
+
+    /**
+     * Scans the given characters, the results are available through the getters of this scanner.
+     */
+    public void scan(char[] content, int length) {
+        this.content = content;
+        this.length = length;
+        pageImports.clear();
+        typeHints.clear();
+        useBeanClasses.clear();
+        taglibUris.clear();
+
+        // position from which the next match of each kind of construct may start
+        int pageImportStart = 0;
+        int typeHintStart = 0;
+        int useBeanStart = 0;
+        int taglibStart = 0;
+        for (int pos = 0; pos < length; pos++) {
+            if (content[pos] != '<') {
+                continue;
+            }
+            if (pos + 1 < length && content[pos + 1] == '%') {
+                if (pos + 2 < length && content[pos + 2] == '@') {
+                    int directiveStart = skipWhitespace(pos + 3);
+                    if (pos >= pageImportStart && regionMatches(directiveStart, PAGE)) {
+                        int end = matchDirectiveAttribute(directiveStart + PAGE.length, IMPORT_ATTRIBUTE, pageImports);
+                        if (end > 0) {
+                            pageImportStart = end;
+                        }
+                    }
+                    if (pos >= taglibStart && regionMatches(directiveStart, TAGLIB)) {
+                        int end = matchDirectiveAttribute(directiveStart + TAGLIB.length, URI_ATTRIBUTE, taglibUris);
+                        if (end > 0) {
+                            taglibStart = end;
+                        }
+                    }
+                }
+                if (pos >= typeHintStart) {
+                    int end = matchTypeHint(pos + 2);
+                    if (end > 0) {
+                        typeHintStart = end;
+                    }
+                }
+            } else if (pos >= useBeanStart && regionMatches(pos, USEBEAN)) {
+                int end = matchUseBean(pos + USEBEAN.length);
+                if (end > 0) {
+                    useBeanStart = end;
+                }
+            }
+        }
+        this.content = null;
+    }
+
+    public List<String> getPageImports() {
+        return pageImports;
+    }
+
+    public List<String> getTypeHints() {
+        return typeHints;
+    }
+
+    public List<String> getUseBeanClasses() {
+        return useBeanClasses;
+    }
+
+    public List<String> getTaglibUris() {
+        return taglibUris;
+    }
+
+    /**
+     * Matches the end of a <code>&lt;%@ directive ... attribute="value" ... %&gt;</code> construct. As in the regular
+     * expressions, the directive ends at the first '%' character, and the last occurrence of the attribute is used.
+     *
+     * @return the end of the match, or -1 if there is no match
+     */
+    private int matchDirectiveAttribute(int start, char[] attribute, List<String> values) {
+        int directiveEnd = start;
+        while (directiveEnd < length && content[directiveEnd] != '%') {
+            directiveEnd++;
+        }
+        if (directiveEnd + 1 >= length || content[directiveEnd + 1] != '>') {
+            return -1;
+        }
+        for (int attributeStart = directiveEnd - attribute.length - 1; attributeStart >= start; attributeStart--) {
+            if (!isWhitespace(content[attributeStart]) || !regionMatches(attributeStart + 1, attribute)) {
+                continue;
+            }
+            int valueStart = attributeStart + 1 + attribute.length;
+            int valueEnd = indexOf('"', valueStart, directiveEnd);
+            if (valueEnd >= 0) {
+                values.add(new String(content, valueStart, valueEnd - valueStart));
+                return directiveEnd + 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Matches a <code>&lt;%--@elvariable ... type="..." --%&gt;</code> IntelliJ IDEA type hint, starting after the
+     * <code>&lt;%</code> characters.
+     */
+    private int matchTypeHint(int start) {
+        int hintStart = skipWhitespace(start);
+        if (!regionMatches(hintStart, ELVARIABLE)) {
+            return -1;
+        }
+        hintStart += ELVARIABLE.length;
+        int lineEnd = lineEnd(hintStart);
+        for (int typeStart = lineEnd - TYPE_ATTRIBUTE.length; typeStart >= hintStart; typeStart--) {
+            if (!regionMatches(typeStart, TYPE_ATTRIBUTE)) {
+                continue;
+            }
+            int valueStart = typeStart + TYPE_ATTRIBUTE.length;
+            for (int valueEnd = lineEnd - 1; valueEnd >= valueStart; valueEnd--) {
+                if (content[valueEnd] != '"') {
+                    continue;
+                }
+                int end = matchTypeHintEnd(valueEnd + 1);
+                if (end > 0) {
+                    typeHints.add(new String(content, valueStart, valueEnd - valueStart));
+                    return end;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int matchTypeHintEnd(int start) {
+        int pos = skipWhitespace(start);
+        if (pos + 1 >= length || content[pos] != '-' || content[pos + 1] != '-') {
+            return -1;
+        }
+        pos = skipWhitespace(pos + 2);
+        if (pos + 1 >= length || content[pos] != '%' || content[pos + 1] != '>') {
+            return -1;
+        }
+        return pos + 2;
+    }
+
+    /**
+     * Matches a <code>&lt;jsp:useBean ... /&gt;</code> tag on a single line, starting after the tag name, and extracts
+     * its class and type attributes.
+     */
+    private int matchUseBean(int start) {
+        int lineEnd = lineEnd(start);
+        for (int tagEnd = lineEnd - 2; tagEnd >= start; tagEnd--) {
+            if (content[tagEnd] == '/' && content[tagEnd + 1] == '>') {
+                scanTagAttributes(start, tagEnd);
+                return tagEnd + 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the attributes in the given region in the same way as {@link JspFileParser#TAG_ATTRIBUTES_PATTERN}: the
+     * attribute name is the longest run of non whitespace characters that is followed by an equal sign and a quoted
+     * value.
+     */
+    private void scanTagAttributes(int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            int nameEnd = pos;
+            while (nameEnd < end && !isWhitespace(content[nameEnd])) {
+                nameEnd++;
+            }
+            int matchEnd = -1;
+            for (int candidateNameEnd = nameEnd; candidateNameEnd >= pos && matchEnd < 0; candidateNameEnd--) {
+                int equalsPos = candidateNameEnd;
+                if (candidateNameEnd == nameEnd) {
+                    equalsPos = skipWhitespace(candidateNameEnd, end);
+                }
+                if (equalsPos >= end || content[equalsPos] != '=') {
+                    continue;
+                }
+                int valueStart = skipWhitespace(equalsPos + 1, end);
+                if (valueStart >= end || !isQuote(content[valueStart])) {
+                    continue;
+                }
+                valueStart++;
+                int valueEnd = valueStart;
+                while (valueEnd < end && !isQuote(content[valueEnd])) {
+                    valueEnd++;
+                }
+                if (valueEnd >= end) {
+                    continue;
+                }
+                if (regionEquals(pos, candidateNameEnd, CLASS_NAME) || regionEquals(pos, candidateNameEnd, TYPE_NAME)) {
+                    useBeanClasses.add(new String(content, valueStart, valueEnd - valueStart));
+                }
+                matchEnd = valueEnd + 1;
+            }
+            pos = matchEnd > 0 ? matchEnd : pos + 1;
+        }
+    }
+
+    private int skipWhitespace(int pos) {
+        return skipWhitespace(pos, length);
+    }
+
+    private int skipWhitespace(int pos, int end) {
+        while (pos < end && isWhitespace(content[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int lineEnd(int pos) {
+        while (pos < length && !isLineTerminator(content[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int pos = start; pos < end; pos++) {
+            if (content[pos] == c) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int pos, char[] chars) {
+        if (pos < 0 || pos + chars.length > length) {
+            return false;
+        }
+        for (int i = 0; i < chars.length; i++) {
+            if (content[pos + i] != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionEquals(int start, int end, char[] chars) {
+        return end - start == chars.length && regionMatches(start, chars);
+    }
+
+    /**
+     * Same characters as the \s regular expression class.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Same characters as the ones not matched by the . regular expression character.
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '"' || c == '\'';
+    }
+
+}
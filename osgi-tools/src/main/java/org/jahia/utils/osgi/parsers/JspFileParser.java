@@ -50,15 +50,19 @@ import org.jahia.utils.osgi.PackageUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * JSP file parser
+ * JSP file parser. The directives are extracted in a single pass by the {@link JspDirectiveScanner}, the patterns
+ * below describe the constructs it recognizes.
  */
-public class JspFileParser extends AbstractFileParser {
+public class JspFileParser extends AbstractFileParser implements ExtensionAwareFileParser {
 
     public static final Pattern JSP_PAGE_IMPORT_PATTERN = Pattern.compile("<%@\\s*page[^%]*\\simport=\"([^%\"]*)\"[^%]*%>");
     public static final Pattern JSP_TAGLIB_PATTERN = Pattern.compile("<%@\\s*taglib[^%]*\\suri=\"([^%\"]*)\"[^%]*%>");
@@ -66,6 +70,12 @@ public class JspFileParser extends AbstractFileParser {
     public static final Pattern JSP_USEBEAN_TAG_PATTERN = Pattern.compile("<jsp:useBean(.*)\\/>");
     public static final Pattern TAG_ATTRIBUTES_PATTERN = Pattern.compile("((?:\\S:)?\\S*)\\s*=\\s*(?:\\\"|\\')([^\\\"\\']*)(?:\\\"|\\')");
 
+    private static final Set<String> FILE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("jsp", "jspf", "tag", "tagf")));
+
+    public Set<String> getFileExtensions() {
+        return FILE_EXTENSIONS;
+    }
+
     public boolean canParse(String fileName) {
         String ext = FilenameUtils.getExtension(fileName).toLowerCase();
         return "jsp".equals(ext) || "jspf".equals(ext) || "tag".equals(ext) || "tagf".equals(ext);
@@ -73,34 +83,27 @@ public class JspFileParser extends AbstractFileParser {
 
     public boolean parse(String fileName, InputStream inputStream, String fileParent, boolean externalDependency, boolean optionalDependency, String version, ParsingContext parsingContext) throws IOException {
         getLogger().debug("Processing JSP " + fileParent + " / " + fileName + "...");
-        String jspFileContent = IOUtils.toString(inputStream);
+        char[] jspFileContent = IOUtils.toCharArray(inputStream);
 
-        parsePageImport(parsingContext, jspFileContent, fileParent + " / " + fileName, optionalDependency, version);
-        parseIdeaTypeHint(parsingContext, jspFileContent, fileParent + " / " + fileName, optionalDependency, version);
-        parseJspUseBean(parsingContext, jspFileContent, fileParent + " / " + fileName, optionalDependency, version);
-        parseTaglib(fileName, parsingContext, jspFileContent);
+        JspDirectiveScanner jspDirectiveScanner = new JspDirectiveScanner();
+        jspDirectiveScanner.scan(jspFileContent, jspFileContent.length);
+
+        String sourceLocation = fileParent + " / " + fileName;
+        parsePageImports(parsingContext, jspDirectiveScanner.getPageImports(), sourceLocation, optionalDependency, version);
+        parseClassNames(parsingContext, jspDirectiveScanner.getTypeHints(), sourceLocation, optionalDependency, version);
+        parseClassNames(parsingContext, jspDirectiveScanner.getUseBeanClasses(), sourceLocation, optionalDependency, version);
+        parseTaglibs(fileName, parsingContext, jspDirectiveScanner.getTaglibUris());
         return true;
     }
 
-    private void parseJspUseBean(ParsingContext parsingContext, String jspFileContent, String sourceLocation, boolean optionalDependency, String version) {
-        Matcher jspUseBeanTagMatcher = JSP_USEBEAN_TAG_PATTERN.matcher(jspFileContent);
-        while (jspUseBeanTagMatcher.find()) {
-            String useBeanAttributes = jspUseBeanTagMatcher.group(1);
-            Matcher tagAttributesMatcher = TAG_ATTRIBUTES_PATTERN.matcher(useBeanAttributes);
-            while (tagAttributesMatcher.find()) {
-                String attributeName = tagAttributesMatcher.group(1);
-                String attributeValue = tagAttributesMatcher.group(2);
-                if ("class".equals(attributeName) || "type".equals(attributeName)) {
-                    parsingContext.addAllPackageImports(PackageUtils.getPackagesFromClass(attributeValue, optionalDependency, version, sourceLocation, parsingContext));
-                }
-            }
+    private void parseClassNames(ParsingContext parsingContext, List<String> classNames, String sourceLocation, boolean optionalDependency, String version) {
+        for (String className : classNames) {
+            parsingContext.addAllPackageImports(PackageUtils.getPackagesFromClass(className, optionalDependency, version, sourceLocation, parsingContext));
         }
     }
 
-    private void parseTaglib(String fileName, ParsingContext parsingContext, String jspFileContent) {
-        Matcher taglibUriMatcher = JSP_TAGLIB_PATTERN.matcher(jspFileContent);
-        while (taglibUriMatcher.find()) {
-            String taglibUri = taglibUriMatcher.group(1);
+    private void parseTaglibs(String fileName, ParsingContext parsingContext, List<String> taglibUris) {
+        for (String taglibUri : taglibUris) {
             parsingContext.addTaglibUri(taglibUri);
             if (!parsingContext.getTaglibPackages().containsKey(taglibUri)) {
                 Set<String> unresolvedUrisForJsp = parsingContext.getUnresolvedTaglibUris().get(fileName);
@@ -119,18 +122,8 @@ public class JspFileParser extends AbstractFileParser {
         }
     }
 
-    private void parseIdeaTypeHint(ParsingContext parsingContext, String jspFileContent, String sourceLocation, boolean optionalDependency, String version) {
-        Matcher ideaTypeHintMatcher = IDEA_TYPE_HINT_PATTERN.matcher(jspFileContent);
-        while (ideaTypeHintMatcher.find()) {
-            String classImportString = ideaTypeHintMatcher.group(1);
-            parsingContext.addAllPackageImports(PackageUtils.getPackagesFromClass(classImportString, optionalDependency, version, sourceLocation, parsingContext));
-        }
-    }
-
-    private void parsePageImport(ParsingContext parsingContext, String jspFileContent, String sourceLocation, boolean optionalDependency, String version) {
-        Matcher pageImportMatcher = JSP_PAGE_IMPORT_PATTERN.matcher(jspFileContent);
-        while (pageImportMatcher.find()) {
-            String classImportString = pageImportMatcher.group(1);
+    private void parsePageImports(ParsingContext parsingContext, List<String> pageImports, String sourceLocation, boolean optionalDependency, String version) {
+        for (String classImportString : pageImports) {
             if (classImportString.contains(",")) {
                 getLogger().debug("Multiple imports in a single JSP page import statement detected: " + classImportString);
                 String[] classImports = StringUtils.split(classImportString, ",");
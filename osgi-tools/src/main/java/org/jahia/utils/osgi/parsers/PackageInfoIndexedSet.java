@@ -0,0 +1,211 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A sorted set of PackageInfo instances that also indexes its elements by package name and version, so that the
+ * entry matching a package can be found without walking the whole set. The iteration order and the lookup rules are
+ * the same as for a TreeSet of PackageInfo instances: two packages match when their compareTo method returns 0, so a
+ * package without a version matches any version of the same package.
+ *
+ * The set also keeps track of the entries it created itself when merging packages, as these are not shared with
+ * any other collection and may be updated in place.
+ */
+public class PackageInfoIndexedSet extends AbstractSet<PackageInfo> implements Serializable {
+
+    private static final long serialVersionUID = -3577520386386521794L;
+
+    private final TreeSet<PackageInfo> packageInfos = new TreeSet<PackageInfo>();
+    private final Map<String, Map<String, PackageInfo>> packageInfosByName = new HashMap<String, Map<String, PackageInfo>>();
+    private final Set<PackageInfo> ownedPackageInfos = Collections.newSetFromMap(new IdentityHashMap<PackageInfo, Boolean>());
+
+    public PackageInfoIndexedSet() {
+    }
+
+    public PackageInfoIndexedSet(Collection<PackageInfo> packageInfos) {
+        addAll(packageInfos);
+    }
+
+    /**
+     * Returns the entry of this set that matches the given package, or null if there is none. This is the entry
+     * for which {@link #contains(Object)} returns true.
+     */
+    public PackageInfo getEqual(PackageInfo packageInfo) {
+        Map<String, PackageInfo> versionedPackageInfos = packageInfosByName.get(packageInfo.getName());
+        if (versionedPackageInfos == null) {
+            return null;
+        }
+        if (versionedPackageInfos.size() == 1) {
+            PackageInfo namedPackageInfo = versionedPackageInfos.values().iterator().next();
+            return packageInfo.compareTo(namedPackageInfo) == 0 ? namedPackageInfo : null;
+        }
+        PackageInfo versionedPackageInfo = versionedPackageInfos.get(packageInfo.getVersion());
+        if (versionedPackageInfo != null) {
+            return versionedPackageInfo;
+        }
+        // the ceiling is the entry the tree set itself would match, if there is one
+        PackageInfo ceilingPackageInfo = packageInfos.ceiling(packageInfo);
+        if (ceilingPackageInfo != null && packageInfo.compareTo(ceilingPackageInfo) == 0) {
+            return ceilingPackageInfo;
+        }
+        return null;
+    }
+
+    /**
+     * Returns all the entries with the given package name, whatever their version.
+     */
+    public List<PackageInfo> getByName(String packageName) {
+        Map<String, PackageInfo> versionedPackageInfos = packageInfosByName.get(packageName);
+        if (versionedPackageInfos == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<PackageInfo>(versionedPackageInfos.values()));
+    }
+
+    /**
+     * Returns an entry equivalent to the given existing entry that may be modified in place. If the existing entry
+     * wasn't created by this set, it is replaced by a copy with the given optional flag and origin.
+     */
+    public PackageInfo getMutable(PackageInfo existingPackageInfo, boolean optional, ParsingContext origin) {
+        if (ownedPackageInfos.contains(existingPackageInfo)) {
+            existingPackageInfo.setOptional(optional);
+            return existingPackageInfo;
+        }
+        PackageInfo newPackageInfo = new PackageInfo(existingPackageInfo.getName(), existingPackageInfo.getVersion(),
+                optional, new TreeSet<String>(existingPackageInfo.getSourceLocations()), origin);
+        remove(existingPackageInfo);
+        add(newPackageInfo);
+        ownedPackageInfos.add(newPackageInfo);
+        return newPackageInfo;
+    }
+
+    @Override
+    public boolean add(PackageInfo packageInfo) {
+        if (!packageInfos.add(packageInfo)) {
+            return false;
+        }
+        Map<String, PackageInfo> versionedPackageInfos = packageInfosByName.get(packageInfo.getName());
+        if (versionedPackageInfos == null) {
+            versionedPackageInfos = new LinkedHashMap<String, PackageInfo>(2);
+            packageInfosByName.put(packageInfo.getName(), versionedPackageInfos);
+        }
+        // the tree set never holds two entries with the same name and version, nor an entry without a version
+        // next to another version of the same package
+        versionedPackageInfos.put(packageInfo.getVersion(), packageInfo);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof PackageInfo)) {
+            return false;
+        }
+        PackageInfo existingPackageInfo = getEqual((PackageInfo) o);
+        if (existingPackageInfo == null || !packageInfos.remove(existingPackageInfo)) {
+            return false;
+        }
+        unindex(existingPackageInfo);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof PackageInfo)) {
+            return false;
+        }
+        return getEqual((PackageInfo) o) != null;
+    }
+
+    @Override
+    public void clear() {
+        packageInfos.clear();
+        packageInfosByName.clear();
+        ownedPackageInfos.clear();
+    }
+
+    @Override
+    public int size() {
+        return packageInfos.size();
+    }
+
+    @Override
+    public Iterator<PackageInfo> iterator() {
+        final Iterator<PackageInfo> iterator = packageInfos.iterator();
+        return new Iterator<PackageInfo>() {
+            private PackageInfo current;
+
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public PackageInfo next() {
+                current = iterator.next();
+                return current;
+            }
+
+            public void remove() {
+                iterator.remove();
+                unindex(current);
+            }
+        };
+    }
+
+    private void unindex(PackageInfo packageInfo) {
+        ownedPackageInfos.remove(packageInfo);
+        Map<String, PackageInfo> versionedPackageInfos = packageInfosByName.get(packageInfo.getName());
+        if (versionedPackageInfos == null) {
+            return;
+        }
+        if (versionedPackageInfos.get(packageInfo.getVersion()) == packageInfo) {
+            versionedPackageInfos.remove(packageInfo.getVersion());
+        }
+        if (versionedPackageInfos.isEmpty()) {
+            packageInfosByName.remove(packageInfo.getName());
+        }
+    }
+
+}
@@ -43,58 +43,127 @@
  */
 package org.jahia.utils.osgi.parsers;
 
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.*;
 
 /**
- * Collection of parsers, organized by phases
+ * Collection of parsers, organized by phases.
+ *
+ * Besides the default parsers, additional parsers are registered by the
+ * {@value #ADDITIONAL_PARSERS_PROPERTY_FILE_PATH} resources found on the class path, which use the same format as the
+ * default parsers file. For each phase, an immutable dispatch table maps the file extensions declared by the
+ * {@link ExtensionAwareFileParser}s to the parsers to try, so that files no parser is interested in are rejected with
+ * a single lookup.
  */
 public class Parsers {
 
     public static final String DEFAULT_PARSERS_PROPERTY_FILE_PATH = "org/jahia/utils/osgi/default-parsers.properties";
+    public static final String ADDITIONAL_PARSERS_PROPERTY_FILE_PATH = "META-INF/jahia-file-parsers.properties";
     List<SortedSet<FileParser>> parsersByPhase;
+    private volatile List<DispatchTable> dispatchTablesByPhase = Collections.emptyList();
 
     private final static Parsers instance = new Parsers();
 
+    /**
+     * The parsers of a phase, indexed by the file extensions they declare. The lists keep the order of the phase.
+     */
+    private static class DispatchTable {
+        private final Map<String, List<FileParser>> parsersByExtension = new HashMap<String, List<FileParser>>();
+        private final List<FileParser> anyExtensionParsers;
+
+        private DispatchTable(SortedSet<FileParser> phaseParsers) {
+            Set<String> extensions = new HashSet<String>();
+            List<FileParser> anyExtensionParsers = new ArrayList<FileParser>();
+            for (FileParser fileParser : phaseParsers) {
+                Set<String> parserExtensions = getFileExtensions(fileParser);
+                if (parserExtensions == null) {
+                    anyExtensionParsers.add(fileParser);
+                } else {
+                    extensions.addAll(parserExtensions);
+                }
+            }
+            for (String extension : extensions) {
+                List<FileParser> extensionParsers = new ArrayList<FileParser>();
+                for (FileParser fileParser : phaseParsers) {
+                    Set<String> parserExtensions = getFileExtensions(fileParser);
+                    if (parserExtensions == null || parserExtensions.contains(extension)) {
+                        extensionParsers.add(fileParser);
+                    }
+                }
+                parsersByExtension.put(extension, Collections.unmodifiableList(extensionParsers));
+            }
+            this.anyExtensionParsers = Collections.unmodifiableList(anyExtensionParsers);
+        }
+
+        private static Set<String> getFileExtensions(FileParser fileParser) {
+            return fileParser instanceof ExtensionAwareFileParser ? ((ExtensionAwareFileParser) fileParser).getFileExtensions() : null;
+        }
+
+        private List<FileParser> getParsers(String fileName) {
+            List<FileParser> extensionParsers = parsersByExtension.get(FilenameUtils.getExtension(fileName).toLowerCase());
+            return extensionParsers != null ? extensionParsers : anyExtensionParsers;
+        }
+    }
+
     public Parsers() {
         InputStream defaultParsersStream = this.getClass().getClassLoader().getResourceAsStream(DEFAULT_PARSERS_PROPERTY_FILE_PATH);
         if (defaultParsersStream != null) {
-            Properties defaultParsersProperties = new Properties();
-            try {
-                defaultParsersProperties.load(defaultParsersStream);
-                int i=0;
-                String defaultParsersStr = defaultParsersProperties.getProperty("phase." + Integer.toString(i) + ".parsers");
-                while (defaultParsersStr != null) {
-                    String[] defaultParsers = defaultParsersStr.split(",");
-                    for (String defaultParser : defaultParsers) {
-                        try {
-                            Class defaultParserClass = Class.forName(defaultParser);
-                            FileParser defaultFileParser = (FileParser) defaultParserClass.newInstance();
-                            addParserToPhase(i, defaultFileParser);
-                        } catch (ClassNotFoundException e) {
-                            System.out.println("Error instantiating default parser " + defaultParser);
-                            e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-                        } catch (InstantiationException e) {
-                            System.out.println("Error instantiating default parser " + defaultParser);
-                            e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-                        } catch (IllegalAccessException e) {
-                            System.out.println("Error instantiating default parser " + defaultParser);
-                            e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-                        }
+            loadParsers(defaultParsersStream, DEFAULT_PARSERS_PROPERTY_FILE_PATH);
+        } else {
+            System.err.println("Warning : default parsers configuration file " + DEFAULT_PARSERS_PROPERTY_FILE_PATH + " not found, parsers are not initialized !");
+        }
+        try {
+            Enumeration<URL> additionalParsersURLs = this.getClass().getClassLoader().getResources(ADDITIONAL_PARSERS_PROPERTY_FILE_PATH);
+            while (additionalParsersURLs.hasMoreElements()) {
+                URL additionalParsersURL = additionalParsersURLs.nextElement();
+                loadParsers(additionalParsersURL.openStream(), additionalParsersURL.toExternalForm());
+            }
+        } catch (IOException e) {
+            System.out.println("Error looking up additional parsers property files " + ADDITIONAL_PARSERS_PROPERTY_FILE_PATH);
+            e.printStackTrace();
+        }
+    }
+
+    private void loadParsers(InputStream parsersStream, String parsersLocation) {
+        Properties parsersProperties = new Properties();
+        try {
+            parsersProperties.load(parsersStream);
+            int i=0;
+            String parsersStr = parsersProperties.getProperty("phase." + Integer.toString(i) + ".parsers");
+            while (parsersStr != null) {
+                String[] parsers = parsersStr.split(",");
+                for (String parser : parsers) {
+                    parser = parser.trim();
+                    try {
+                        Class parserClass = Class.forName(parser);
+                        FileParser fileParser = (FileParser) parserClass.newInstance();
+                        addParserToPhase(i, fileParser);
+                    } catch (ClassNotFoundException e) {
+                        System.out.println("Error instantiating parser " + parser + " declared in " + parsersLocation);
+                        e.printStackTrace();
+                    } catch (InstantiationException e) {
+                        System.out.println("Error instantiating parser " + parser + " declared in " + parsersLocation);
+                        e.printStackTrace();
+                    } catch (IllegalAccessException e) {
+                        System.out.println("Error instantiating parser " + parser + " declared in " + parsersLocation);
+                        e.printStackTrace();
                     }
-                    i++;
-                    defaultParsersStr = defaultParsersProperties.getProperty("phase." + Integer.toString(i) + ".parsers");
                 }
-            } catch (IOException e) {
-                System.out.println("Error loading default parsers property file from " + DEFAULT_PARSERS_PROPERTY_FILE_PATH);
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+                i++;
+                parsersStr = parsersProperties.getProperty("phase." + Integer.toString(i) + ".parsers");
             }
-        } else {
-            System.err.println("Warning : default parsers configuration file " + DEFAULT_PARSERS_PROPERTY_FILE_PATH + " not found, parsers are not initialized !");
+        } catch (IOException e) {
+            System.out.println("Error loading parsers property file from " + parsersLocation);
+            e.printStackTrace();
+        } finally {
+            IOUtils.closeQuietly(parsersStream);
         }
     }
 
@@ -102,11 +171,20 @@ public class Parsers {
         return instance;
     }
 
-    public boolean addParserToPhase(int phaseID, FileParser fileParser) {
+    /**
+     * Registers a parser for a phase. Parsers implementing {@link ExtensionAwareFileParser} are only called for the
+     * files with one of the extensions they declare, the others for all the files.
+     */
+    public synchronized boolean addParserToPhase(int phaseID, FileParser fileParser) {
         SortedSet<FileParser> phaseParsers = getPhaseParsers(phaseID);
         if (!phaseParsers.contains(fileParser)) {
             phaseParsers.add(fileParser);
         }
+        List<DispatchTable> dispatchTables = new ArrayList<DispatchTable>(parsersByPhase.size());
+        for (SortedSet<FileParser> parsers : parsersByPhase) {
+            dispatchTables.add(new DispatchTable(parsers));
+        }
+        dispatchTablesByPhase = Collections.unmodifiableList(dispatchTables);
         return true;
     }
 
@@ -120,12 +198,16 @@ public class Parsers {
         return parsersByPhase.get(phaseID);
     }
 
-    public boolean canParseForPhase(int phaseID, String fileName) {
-        SortedSet<FileParser> phaseParsers = getPhaseParsers(phaseID);
-        if (phaseParsers == null || phaseParsers.size() == 0) {
-            return false;
+    private List<FileParser> getParsers(int phaseID, String fileName) {
+        List<DispatchTable> dispatchTables = dispatchTablesByPhase;
+        if (phaseID < 0 || phaseID >= dispatchTables.size()) {
+            return Collections.emptyList();
         }
-        for (FileParser fileParser : phaseParsers) {
+        return dispatchTables.get(phaseID).getParsers(fileName);
+    }
+
+    public boolean canParseForPhase(int phaseID, String fileName) {
+        for (FileParser fileParser : getParsers(phaseID, fileName)) {
             if (fileParser.canParse(fileName)) {
                 return true;
             }
@@ -138,13 +220,13 @@ public class Parsers {
                          InputStream inputStream,
                          String fileParent,
                          boolean externalDependency, boolean optionalDependency, String version, Logger logger, ParsingContext parsingContext) throws IOException {
-        SortedSet<FileParser> phaseParsers = getPhaseParsers(phaseID);
-        if (phaseParsers == null || phaseParsers.size() == 0) {
+        List<FileParser> fileParsers = getParsers(phaseID, fileName);
+        if (fileParsers.isEmpty()) {
             return false;
         }
         BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
         bufferedInputStream.mark(4*1024*1024);
-        for (FileParser fileParser : phaseParsers) {
+        for (FileParser fileParser : fileParsers) {
             fileParser.setLogger(logger);
             if (fileParser.canParse(fileName)) {
                 if (fileParser.parse(fileName, bufferedInputStream, fileParent, externalDependency, optionalDependency , version, parsingContext)) {
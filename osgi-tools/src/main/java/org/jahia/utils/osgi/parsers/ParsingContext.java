@@ -73,7 +73,7 @@ public class ParsingContext implements Serializable {
     private boolean osgiBundle = false;
     private List<String> bundleClassPath = new ArrayList<String>();
     private Set<PackageInfo> localPackages = new TreeSet<PackageInfo>();
-    private Set<PackageInfo> packageImports = new TreeSet<PackageInfo>();
+    private PackageInfoIndexedSet packageImports = new PackageInfoIndexedSet();
     private Set<PackageInfo> packageExports = new TreeSet<PackageInfo>();
     private Set<PackageInfo> packageIgnores = new TreeSet<PackageInfo>();
 
@@ -105,26 +105,15 @@ public class ParsingContext implements Serializable {
                 if (!packageImports.contains(packageInfo)) {
                     packageImports.add(packageInfo);
                 } else {
-                    PackageInfo existingPackageInfo = null;
                     // we must add the new source locations to the existing entry
-                    for (PackageInfo packageImport : packageImports) {
-                        if (packageImport.equals(packageImport)) {
-                            existingPackageInfo = packageImport;
-                            break;
-                        }
-                    }
+                    PackageInfo existingPackageInfo = packageImports.getEqual(packageInfo);
                     if (existingPackageInfo != null) {
-                        Set<String> existingSourceLocations = existingPackageInfo.getSourceLocations();
-                        Set<String> newSourceLocations = new TreeSet<String>(existingSourceLocations);
-                        newSourceLocations.addAll(packageInfo.getSourceLocations());
                         boolean optional = packageInfo.isOptional();
                         if (forceOptional != null && forceOptional) {
                             optional = true;
                         }
-                        PackageInfo newPackageInfo = new PackageInfo(existingPackageInfo.getName(),
-                                existingPackageInfo.getVersion(), optional, newSourceLocations, this);
-                        packageImports.remove(existingPackageInfo);
-                        packageImports.add(newPackageInfo);
+                        PackageInfo mergedPackageInfo = packageImports.getMutable(existingPackageInfo, optional, this);
+                        mergedPackageInfo.getSourceLocations().addAll(packageInfo.getSourceLocations());
                     }
                 }
             }
@@ -262,6 +251,19 @@ public class ParsingContext implements Serializable {
         return filePath;
     }
 
+    /**
+     * Updates the artifact and file information, used when a parsing context was computed for an identical file
+     * located elsewhere.
+     */
+    public void updateFileInfo(String mavenCoords, long lastModified, long fileSize, String fileName, String filePath, String version) {
+        this.mavenCoords = mavenCoords;
+        this.lastModified = lastModified;
+        this.fileSize = fileSize;
+        this.fileName = fileName;
+        this.filePath = filePath;
+        this.version = version;
+    }
+
     public boolean addLocalPackage(PackageInfo packageInfo) {
         return localPackages.add(packageInfo);
     }
@@ -445,16 +447,15 @@ public class ParsingContext implements Serializable {
 
         // first let's detect split packages between the imports and the local packages.
         for (PackageInfo localPackage : localPackages) {
-            if (PackageUtils.containsIgnoreVersion(packageImports, localPackage)) {
+            List<PackageInfo> splitPackageImports = packageImports.getByName(localPackage.getName());
+            if (!splitPackageImports.isEmpty()) {
                 PackageInfo splitPackageInfo = new PackageInfo(localPackage);
-                for (PackageInfo packageImport : packageImports) {
-                    if (packageImport.equalsIgnoreVersion(localPackage)) {
-                        if (packageImport.getSourceLocations() != null &&
-                                packageImport.getSourceLocations().size() > 0) {
-                            splitPackageInfo.getSourceLocations().addAll(packageImport.getSourceLocations());
-                        } else {
-                            splitPackageInfo.getSourceLocations().add(packageImport.getOrigin().getFilePath());
-                        }
+                for (PackageInfo packageImport : splitPackageImports) {
+                    if (packageImport.getSourceLocations() != null &&
+                            packageImport.getSourceLocations().size() > 0) {
+                        splitPackageInfo.getSourceLocations().addAll(packageImport.getSourceLocations());
+                    } else {
+                        splitPackageInfo.getSourceLocations().add(packageImport.getOrigin().getFilePath());
                     }
                 }
                 splitPackages.add(splitPackageInfo);
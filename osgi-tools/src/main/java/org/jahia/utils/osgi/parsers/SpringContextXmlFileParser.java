@@ -46,10 +46,12 @@ package org.jahia.utils.osgi.parsers;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 
+import java.util.Set;
+
 /**
  * Spring application context file parser
  */
-public class SpringContextXmlFileParser extends AbstractXmlFileParser {
+public class SpringContextXmlFileParser extends AbstractXmlFileParser implements ExtensionAwareFileParser {
 
     private final static String[] SPRING_XPATH_CLASSNAME_QUERIES = {
             "//beans:bean/@class",
@@ -83,9 +85,24 @@ public class SpringContextXmlFileParser extends AbstractXmlFileParser {
             "//context:component-scan/@base-package",
     };
 
+    private final static String SPRING_BEANS_NAMESPACE_URI = "http://www.springframework.org/schema/beans";
+
+    private final static XmlReferenceQueries SPRING_STREAMING_QUERIES = new XmlReferenceQueries("beans", SPRING_BEANS_NAMESPACE_URI)
+            .add(XmlReferenceQueries.ReferenceType.CLASS_NAME, SPRING_XPATH_CLASSNAME_QUERIES)
+            .add(XmlReferenceQueries.ReferenceType.PACKAGE, SPRING_XPATH_PACKAGE_QUERIES);
+
+    public Set<String> getFileExtensions() {
+        return XML_FILE_EXTENSIONS;
+    }
+
+    @Override
+    public XmlReferenceQueries getStreamingReferenceQueries() {
+        return SPRING_STREAMING_QUERIES;
+    }
+
     @Override
     public boolean canParse(String fileName, Element rootElement) {
-        return hasNamespaceURI(rootElement, "http://www.springframework.org/schema/beans");
+        return hasNamespaceURI(rootElement, SPRING_BEANS_NAMESPACE_URI);
     }
 
     @Override
@@ -57,8 +57,10 @@ import java.util.*;
  * @todo This parser doesn't support tag files for the moment, but we really should as we are missing
  * dependencies because of this.
  */
-public class TldXmlFileParser extends AbstractXmlFileParser {
+public class TldXmlFileParser extends AbstractXmlFileParser implements ExtensionAwareFileParser {
     
+    private static final Set<String> FILE_EXTENSIONS = Collections.singleton("tld");
+
     private static Map<String, List<PackageInfo>> knownTransitiveImportPackages;
     
     static {
@@ -81,6 +83,10 @@ public class TldXmlFileParser extends AbstractXmlFileParser {
         return uriElement != null ? uriElement.getTextTrim() : null;
     }
     
+    public Set<String> getFileExtensions() {
+        return FILE_EXTENSIONS;
+    }
+
     @Override
     public boolean canParse(String fileName) {
         String ext = FilenameUtils.getExtension(fileName).toLowerCase();
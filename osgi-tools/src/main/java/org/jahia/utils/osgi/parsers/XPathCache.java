@@ -0,0 +1,181 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import org.jdom2.JDOMException;
+import org.jdom2.xpath.XPath;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of compiled XPath expressions, keyed by the expression and its namespace bindings, so that the
+ * constant queries of the XML file parsers are only compiled once per namespace context instead of once per call.
+ *
+ * Compiled JDOM XPath instances keep the evaluation context in instance fields, so they cannot be shared between
+ * threads : each thread has its own compiled expressions, which lets parsers running in parallel evaluate the same
+ * expression without waiting for each other. Namespace bindings are part of the key : an expression using a prefix
+ * that is not bound fails at evaluation time exactly like an expression compiled for the call would.
+ */
+public class XPathCache {
+
+    public static final int DEFAULT_MAXIMUM_ENTRIES = 1000;
+
+    private static final XPathCache INSTANCE = new XPathCache(DEFAULT_MAXIMUM_ENTRIES);
+
+    private final ThreadLocal<Map<Key, XPath>> entries;
+
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong avoidedCompilations = new AtomicLong();
+
+    private static class Key {
+        private final String xPathExpression;
+        private final Map<String, String> namespaceBindings;
+
+        private Key(String xPathExpression, Map<String, String> namespaceBindings) {
+            this.xPathExpression = xPathExpression;
+            this.namespaceBindings = namespaceBindings;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return xPathExpression.equals(key.xPathExpression) && namespaceBindings.equals(key.namespaceBindings);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * xPathExpression.hashCode() + namespaceBindings.hashCode();
+        }
+    }
+
+    public static XPathCache getInstance() {
+        return INSTANCE;
+    }
+
+    public XPathCache(final int maximumEntries) {
+        entries = new ThreadLocal<Map<Key, XPath>>() {
+            @Override
+            protected Map<Key, XPath> initialValue() {
+                return new LinkedHashMap<Key, XPath>(64, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Key, XPath> eldest) {
+                        return size() > maximumEntries;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Evaluates an XPath expression and returns all the matching nodes.
+     *
+     * @param context           the node to use as the evaluation context
+     * @param xPathExpression   the XPath expression
+     * @param namespaceBindings the prefix to namespace URI bindings used by the expression
+     * @return the list of the matching nodes
+     * @throws JDOMException if the expression cannot be compiled or evaluated
+     */
+    public List<?> selectNodes(Object context, String xPathExpression, Map<String, String> namespaceBindings) throws JDOMException {
+        return getXPath(xPathExpression, namespaceBindings).selectNodes(context);
+    }
+
+    /**
+     * Evaluates an XPath expression and returns the first matching node.
+     *
+     * @param context           the node to use as the evaluation context
+     * @param xPathExpression   the XPath expression
+     * @param namespaceBindings the prefix to namespace URI bindings used by the expression
+     * @return the first matching node, or null if no node matches
+     * @throws JDOMException if the expression cannot be compiled or evaluated
+     */
+    public Object selectSingleNode(Object context, String xPathExpression, Map<String, String> namespaceBindings) throws JDOMException {
+        return getXPath(xPathExpression, namespaceBindings).selectSingleNode(context);
+    }
+
+    private XPath getXPath(String xPathExpression, Map<String, String> namespaceBindings) throws JDOMException {
+        Map<Key, XPath> threadEntries = entries.get();
+        XPath xPath = threadEntries.get(new Key(xPathExpression, namespaceBindings));
+        if (xPath != null) {
+            avoidedCompilations.incrementAndGet();
+            return xPath;
+        }
+        xPath = XPath.newInstance(xPathExpression);
+        for (Map.Entry<String, String> namespaceBinding : namespaceBindings.entrySet()) {
+            xPath.addNamespace(namespaceBinding.getKey(), namespaceBinding.getValue());
+        }
+        compilations.incrementAndGet();
+        threadEntries.put(new Key(xPathExpression, new HashMap<String, String>(namespaceBindings)), xPath);
+        return xPath;
+    }
+
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    public long getAvoidedCompilations() {
+        return avoidedCompilations.get();
+    }
+
+    /**
+     * @return the number of expressions cached for the calling thread
+     */
+    public int getEntryCount() {
+        return entries.get().size();
+    }
+
+    @Override
+    public String toString() {
+        return getCompilations() + " compilations, " + getAvoidedCompilations() + " compilations avoided";
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Declarative list of the element and attribute paths an XML file parser extracts references from. The paths
+ * use the subset of XPath that can be evaluated in a single streaming pass over the document :
+ * //prefix:element/prefix:child/@attribute, //prefix:element/prefix:child (trimmed text of the last element) or
+ * //@attribute. Prefixes are resolved like the JDOM XPath queries are : the default namespace prefix is bound to
+ * the namespace of the root element, the other prefixes to the namespace declarations of the root element.
+ */
+public class XmlReferenceQueries {
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("(\\w+:)?[\\w.-]+");
+
+    public enum ReferenceType {
+        CLASS_NAME,
+        PACKAGE,
+        CONTENT_TYPE
+    }
+
+    /**
+     * A single path, pre-parsed into its element steps and optional trailing attribute.
+     */
+    public static class Query {
+        private final String xPathQuery;
+        private final ReferenceType referenceType;
+        private final String[] stepPrefixes;
+        private final String[] stepLocalNames;
+        private final String attributePrefix;
+        private final String attributeLocalName;
+
+        Query(String xPathQuery, ReferenceType referenceType) {
+            if (!xPathQuery.startsWith("//") || xPathQuery.length() == 2) {
+                throw new IllegalArgumentException("Unsupported streaming reference query " + xPathQuery);
+            }
+            this.xPathQuery = xPathQuery;
+            this.referenceType = referenceType;
+            String[] steps = xPathQuery.substring(2).split("/", -1);
+            String attributeName = null;
+            int elementSteps = steps.length;
+            if (steps[steps.length - 1].startsWith("@")) {
+                attributeName = steps[steps.length - 1].substring(1);
+                elementSteps--;
+            }
+            stepPrefixes = new String[elementSteps];
+            stepLocalNames = new String[elementSteps];
+            for (int i = 0; i < elementSteps; i++) {
+                checkName(steps[i]);
+                stepPrefixes[i] = getPrefix(steps[i]);
+                stepLocalNames[i] = getLocalName(steps[i]);
+            }
+            if (attributeName != null) {
+                checkName(attributeName);
+                attributePrefix = getPrefix(attributeName);
+                attributeLocalName = getLocalName(attributeName);
+            } else {
+                attributePrefix = null;
+                attributeLocalName = null;
+            }
+        }
+
+        private void checkName(String name) {
+            if (!NAME_PATTERN.matcher(name).matches()) {
+                throw new IllegalArgumentException("Unsupported streaming reference query " + xPathQuery);
+            }
+        }
+
+        private static String getPrefix(String name) {
+            int colonPos = name.indexOf(':');
+            return colonPos < 0 ? null : name.substring(0, colonPos);
+        }
+
+        private static String getLocalName(String name) {
+            return name.substring(name.indexOf(':') + 1);
+        }
+
+        public String getXPathQuery() {
+            return xPathQuery;
+        }
+
+        public ReferenceType getReferenceType() {
+            return referenceType;
+        }
+
+        /**
+         * @return the number of element steps in the path, 0 for a //@attribute query
+         */
+        public int getStepCount() {
+            return stepLocalNames.length;
+        }
+
+        public String getStepPrefix(int step) {
+            return stepPrefixes[step];
+        }
+
+        public String getStepLocalName(int step) {
+            return stepLocalNames[step];
+        }
+
+        /**
+         * @return true if the query selects an attribute value, false if it selects the text of an element
+         */
+        public boolean isAttributeQuery() {
+            return attributeLocalName != null;
+        }
+
+        public String getAttributePrefix() {
+            return attributePrefix;
+        }
+
+        public String getAttributeLocalName() {
+            return attributeLocalName;
+        }
+    }
+
+    private final String defaultNamespacePrefix;
+    private final String requiredNamespaceURI;
+    private final List<Query> queries = new ArrayList<Query>();
+
+    /**
+     * @param defaultNamespacePrefix the prefix bound to the namespace of the root element
+     * @param requiredNamespaceURI   if not null, only documents whose root element uses or declares this
+     *                               namespace URI are parsed
+     */
+    public XmlReferenceQueries(String defaultNamespacePrefix, String requiredNamespaceURI) {
+        this.defaultNamespacePrefix = defaultNamespacePrefix;
+        this.requiredNamespaceURI = requiredNamespaceURI;
+    }
+
+    /**
+     * Adds queries of the given reference type. Queries are evaluated, and their references added to the parsing
+     * context, in the order they were added.
+     * @throws IllegalArgumentException if a query uses XPath syntax that cannot be streamed
+     */
+    public XmlReferenceQueries add(ReferenceType referenceType, String... xPathQueries) {
+        for (String xPathQuery : xPathQueries) {
+            queries.add(new Query(xPathQuery, referenceType));
+        }
+        return this;
+    }
+
+    public String getDefaultNamespacePrefix() {
+        return defaultNamespacePrefix;
+    }
+
+    public String getRequiredNamespaceURI() {
+        return requiredNamespaceURI;
+    }
+
+    public List<Query> getQueries() {
+        return Collections.unmodifiableList(queries);
+    }
+}
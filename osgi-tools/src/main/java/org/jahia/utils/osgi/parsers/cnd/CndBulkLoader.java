@@ -0,0 +1,401 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers.cnd;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import javax.jcr.NamespaceException;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a set of CND files into a node type registry, lexing and parsing the files concurrently.
+ * <p/>
+ * The namespace declarations of all the files are read and registered first, so that the files can then be parsed
+ * in any order into unresolved definitions. The supertypes and mixin extensions of these definitions are then sorted
+ * topologically, and the definitions are registered and validated in that order, so that the result does not depend
+ * on the order of the files. All the unresolved references, namespace conflicts, cycles and parse errors are
+ * reported together in a single exception, in which case no node type from the batch is registered and the namespaces
+ * registered for the batch are removed again.
+ * <p/>
+ * If registration is turned off, the definitions are only parsed, as {@link JahiaCndReader} does without registration:
+ * they are returned in file order, and neither registered nor validated, so that the node types they reference don't
+ * need to be known.
+ */
+public class CndBulkLoader {
+
+    private final NodeTypeRegistry registry;
+    private final int threads;
+    private boolean register = true;
+
+    public CndBulkLoader(NodeTypeRegistry registry) {
+        this(registry, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CndBulkLoader(NodeTypeRegistry registry, int threads) {
+        this.registry = registry;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets whether the loaded definitions are registered and validated, which is the default, or only parsed.
+     */
+    public CndBulkLoader setRegister(boolean register) {
+        this.register = register;
+        return this;
+    }
+
+    /**
+     * Loads the definitions read from the given reader, which is left open.
+     *
+     * @param location the location of the definitions, used in error messages
+     * @param reader   the reader of the definitions
+     * @param systemId the system id of the definitions
+     * @return the loaded node types, in registration order
+     * @throws ParseException if the definitions could not be parsed or reference an unknown node type
+     * @throws IOException    if the definitions could not be read
+     */
+    public List<ExtendedNodeType> load(String location, Reader reader, String systemId) throws ParseException, IOException {
+        CndFile cndFile = new CndFile(location, systemId);
+        cndFile.content = IOUtils.toString(reader);
+        return load(Collections.singletonList(cndFile));
+    }
+
+    /**
+     * Loads the definitions of the given CND files.
+     *
+     * @param files the CND files to load, with the system id of each of them, in the order in which the files would
+     *              be loaded sequentially; this order is used to choose between duplicate definitions and to keep the
+     *              registration order stable
+     * @return the loaded node types, in registration order
+     * @throws ParseException if any of the files could not be parsed or references an unknown node type
+     * @throws IOException    if any of the files could not be read
+     */
+    public List<ExtendedNodeType> load(Map<File, String> files) throws ParseException, IOException {
+        List<CndFile> cndFiles = new ArrayList<CndFile>(files.size());
+        for (Map.Entry<File, String> entry : files.entrySet()) {
+            CndFile cndFile = new CndFile(entry.getKey().getPath(), entry.getValue());
+            cndFile.file = entry.getKey();
+            cndFiles.add(cndFile);
+        }
+        return load(cndFiles);
+    }
+
+    private List<ExtendedNodeType> load(List<CndFile> cndFiles) throws ParseException, IOException {
+        List<String> errors = new ArrayList<String>();
+        // a single file is loaded by the calling thread
+        ExecutorService executorService = null;
+        if (threads > 1 && cndFiles.size() > 1) {
+            executorService = Executors.newFixedThreadPool(Math.min(threads, cndFiles.size()), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "jahia-cnd-loader-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        List<String> registeredPrefixes = new ArrayList<String>();
+        boolean loaded = false;
+        try {
+            // read the files and their namespace declarations
+            runAll(executorService, cndFiles, new CndFileTask() {
+                @Override
+                public void run(CndFile cndFile) throws ParseException, IOException {
+                    if (cndFile.file != null) {
+                        cndFile.content = FileUtils.readFileToString(cndFile.file);
+                    }
+                    cndFile.namespaces = new JahiaCndReader(new StringReader(cndFile.content), cndFile.location,
+                            cndFile.systemId, registry).parseNamespaceDeclarations();
+                }
+            }, errors);
+            if (!errors.isEmpty()) {
+                throw newParseException(errors);
+            }
+            for (CndFile cndFile : cndFiles) {
+                for (Map.Entry<String, String> namespace : cndFile.namespaces.entrySet()) {
+                    try {
+                        if (registry.addNamespace(namespace.getKey(), namespace.getValue())) {
+                            registeredPrefixes.add(namespace.getKey());
+                        }
+                    } catch (NamespaceException e) {
+                        errors.add(cndFile.location + ": Invalid namespace declaration <" + namespace.getKey() +
+                                " = '" + namespace.getValue() + "'> : " + e.getMessage());
+                    }
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw newParseException(errors);
+            }
+
+            // parse the definitions, without resolving the node types they reference
+            runAll(executorService, cndFiles, new CndFileTask() {
+                @Override
+                public void run(CndFile cndFile) throws ParseException, IOException {
+                    JahiaCndReader reader = new JahiaCndReader(new StringReader(cndFile.content),
+                            cndFile.location, cndFile.systemId, registry);
+                    reader.setDoRegister(false);
+                    reader.setDeferTypeReferenceChecks(true);
+                    reader.parse();
+                    cndFile.nodeTypes = reader.getNodeTypesList();
+                    cndFile.typeReferences = reader.getDeferredTypeReferences();
+                    cndFile.content = null;
+                }
+            }, errors);
+            if (!errors.isEmpty()) {
+                throw newParseException(errors);
+            }
+
+            if (!register) {
+                List<ExtendedNodeType> nodeTypes = new ArrayList<ExtendedNodeType>();
+                for (CndFile cndFile : cndFiles) {
+                    nodeTypes.addAll(cndFile.nodeTypes);
+                }
+                loaded = true;
+                return nodeTypes;
+            }
+            List<ExtendedNodeType> sortedNodeTypes = sort(cndFiles, errors);
+            // from now on the registered node types may use the namespaces of the batch
+            loaded = true;
+            for (ExtendedNodeType nodeType : sortedNodeTypes) {
+                registry.addNodeType(nodeType.getNameObject(), nodeType);
+                try {
+                    nodeType.validate();
+                } catch (NoSuchNodeTypeException e) {
+                    throw new ParseException("Cannot validate supertypes for : " + nodeType.getName(), e, -1, -1,
+                            getLocation(cndFiles, nodeType));
+                }
+            }
+            return sortedNodeTypes;
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+            if (!loaded) {
+                // the definitions using the namespaces of the batch were not registered
+                for (String prefix : registeredPrefixes) {
+                    registry.unregisterNamespace(prefix);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the definitions so that each of them comes after the types it depends on, checking that all the referenced
+     * node types are known.
+     */
+    private List<ExtendedNodeType> sort(List<CndFile> cndFiles, List<String> errors) throws ParseException {
+        // a definition replaces any previous definition of the same type, as when the files are loaded sequentially
+        Map<Name, ExtendedNodeType> definitions = new LinkedHashMap<Name, ExtendedNodeType>();
+        Map<ExtendedNodeType, CndFile> definitionFiles = new HashMap<ExtendedNodeType, CndFile>();
+        for (CndFile cndFile : cndFiles) {
+            for (ExtendedNodeType nodeType : cndFile.nodeTypes) {
+                definitions.remove(nodeType.getNameObject());
+                definitions.put(nodeType.getNameObject(), nodeType);
+                definitionFiles.put(nodeType, cndFile);
+            }
+        }
+
+        // build the dependency graph between the definitions of the batch
+        List<ExtendedNodeType> nodeTypes = new ArrayList<ExtendedNodeType>(definitions.values());
+        Map<ExtendedNodeType, Integer> indexes = new HashMap<ExtendedNodeType, Integer>();
+        for (int i = 0; i < nodeTypes.size(); i++) {
+            indexes.put(nodeTypes.get(i), i);
+        }
+        int[] dependencyCounts = new int[nodeTypes.size()];
+        List<List<Integer>> dependents = new ArrayList<List<Integer>>(nodeTypes.size());
+        for (int i = 0; i < nodeTypes.size(); i++) {
+            dependents.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < nodeTypes.size(); i++) {
+            ExtendedNodeType nodeType = nodeTypes.get(i);
+            Set<String> dependencies = new LinkedHashSet<String>(Arrays.asList(nodeType.getDeclaredSupertypeNames()));
+            dependencies.addAll(nodeType.getMixinExtendNames());
+            for (String dependency : dependencies) {
+                ExtendedNodeType definition = definitions.get(registry.getName(dependency));
+                if (definition != null) {
+                    if (definition != nodeType) {
+                        dependencyCounts[i]++;
+                        dependents.get(indexes.get(definition)).add(i);
+                    } else {
+                        errors.add(definitionFiles.get(nodeType).location + ": Node type " + nodeType.getName() +
+                                " cannot extend itself");
+                    }
+                } else if (!registry.hasNodeType(dependency)) {
+                    errors.add(definitionFiles.get(nodeType).location + ": Cannot find type " + dependency +
+                            " referenced by " + nodeType.getName());
+                }
+            }
+        }
+        for (CndFile cndFile : cndFiles) {
+            for (String typeReference : cndFile.typeReferences) {
+                if (!definitions.containsKey(registry.getName(typeReference)) &&
+                        !registry.hasNodeType(typeReference)) {
+                    errors.add(cndFile.location + ": Cannot find type " + typeReference +
+                            " referenced by a selector option");
+                }
+            }
+        }
+
+        // sort the definitions so that each of them comes after the types it depends on, keeping the file order
+        // between independent definitions
+        PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+        for (int i = 0; i < nodeTypes.size(); i++) {
+            if (dependencyCounts[i] == 0) {
+                ready.add(i);
+            }
+        }
+        List<ExtendedNodeType> sortedNodeTypes = new ArrayList<ExtendedNodeType>(nodeTypes.size());
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            sortedNodeTypes.add(nodeTypes.get(i));
+            for (int dependent : dependents.get(i)) {
+                if (--dependencyCounts[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        for (int i = 0; i < nodeTypes.size(); i++) {
+            if (dependencyCounts[i] > 0) {
+                errors.add(definitionFiles.get(nodeTypes.get(i)).location + ": Node type " +
+                        nodeTypes.get(i).getName() + " is part of a cycle of supertypes or mixin extensions");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw newParseException(errors);
+        }
+        return sortedNodeTypes;
+    }
+
+    private static String getLocation(List<CndFile> cndFiles, ExtendedNodeType nodeType) {
+        for (CndFile cndFile : cndFiles) {
+            for (ExtendedNodeType fileNodeType : cndFile.nodeTypes) {
+                if (fileNodeType == nodeType) {
+                    return cndFile.location;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void runAll(ExecutorService executorService, List<CndFile> cndFiles, final CndFileTask task,
+                        List<String> errors) throws IOException {
+        if (executorService == null) {
+            for (CndFile cndFile : cndFiles) {
+                try {
+                    task.run(cndFile);
+                } catch (ParseException e) {
+                    errors.add(e.getMessage());
+                }
+            }
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>(cndFiles.size());
+        for (final CndFile cndFile : cndFiles) {
+            futures.add(executorService.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    task.run(cndFile);
+                    return null;
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ParseException) {
+                    errors.add(cause.getMessage());
+                } else if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IOException("Error loading " + cndFiles.get(i).location, cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + cndFiles.get(i).location, e);
+            }
+        }
+    }
+
+    private static ParseException newParseException(List<String> errors) {
+        StringBuilder message = new StringBuilder();
+        message.append(errors.size()).append(errors.size() > 1 ? " errors" : " error").append(" loading definitions :");
+        for (String error : errors) {
+            message.append("\n  ").append(error);
+        }
+        return new ParseException(message.toString(), -1, -1, null);
+    }
+
+    private interface CndFileTask {
+        void run(CndFile cndFile) throws ParseException, IOException;
+    }
+
+    private static class CndFile {
+        private final String location;
+        private final String systemId;
+        private File file;
+        private volatile String content;
+        private volatile Map<String, String> namespaces;
+        private volatile List<ExtendedNodeType> nodeTypes;
+        private volatile Set<String> typeReferences;
+
+        CndFile(String location, String systemId) {
+            this.location = location;
+            this.systemId = systemId;
+        }
+    }
+}
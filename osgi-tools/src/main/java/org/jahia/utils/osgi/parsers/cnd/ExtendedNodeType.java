@@ -52,6 +52,7 @@ import javax.jcr.Value;
 import javax.jcr.nodetype.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Jahia extended JCR node type information.
@@ -94,6 +95,11 @@ public class ExtendedNodeType implements NodeType {
     private List<ExtendedNodeType> mixinExtend = new ArrayList<ExtendedNodeType>();
 //    private boolean liveContent = false;
 
+    private volatile SupertypeClosure supertypeClosure;
+    private volatile SubtypeClosure subtypeClosure;
+    private final AtomicInteger supertypesVersion = new AtomicInteger();
+    private final AtomicInteger subtypesVersion = new AtomicInteger();
+
     private Map<Locale, String> labels = new ConcurrentHashMap<Locale, String>(1);
     private Map<Locale, String> descriptions = new ConcurrentHashMap<Locale, String>(1);
     private boolean systemType;
@@ -193,12 +199,61 @@ public class ExtendedNodeType implements NodeType {
     }
 
 
+    /**
+     * The supertypes of a node type, computed once for a version of its supertypes.
+     */
+    private static class SupertypeClosure {
+        private final int version;
+        private final Set<ExtendedNodeType> supertypeSet;
+        private final ExtendedNodeType[] supertypes;
+        private final BitSet nodeTypeIds;
+
+        SupertypeClosure(int version, Set<ExtendedNodeType> supertypeSet, BitSet nodeTypeIds) {
+            this.version = version;
+            this.supertypeSet = Collections.unmodifiableSet(supertypeSet);
+            this.supertypes = supertypeSet.toArray(new ExtendedNodeType[supertypeSet.size()]);
+            this.nodeTypeIds = nodeTypeIds;
+        }
+    }
+
+    /**
+     * The subtypes of a node type, computed once for a version of its subtypes.
+     */
+    private static class SubtypeClosure {
+        private final int version;
+        private final List<ExtendedNodeType> subtypes;
+
+        SubtypeClosure(int version, List<ExtendedNodeType> subtypes) {
+            this.version = version;
+            this.subtypes = Collections.unmodifiableList(subtypes);
+        }
+    }
+
     public ExtendedNodeType[] getSupertypes() {
-        Set<ExtendedNodeType> l = getSupertypeSet();
-        return l.toArray(new ExtendedNodeType[l.size()]);
+        return getSupertypeClosure().supertypes.clone();
     }
 
     public Set<ExtendedNodeType> getSupertypeSet() {
+        return getSupertypeClosure().supertypeSet;
+    }
+
+    private SupertypeClosure getSupertypeClosure() {
+        int version = supertypesVersion.get();
+        SupertypeClosure closure = supertypeClosure;
+        if (closure == null || closure.version != version) {
+            Set<ExtendedNodeType> supertypeSet = computeSupertypeSet();
+            BitSet nodeTypeIds = new BitSet();
+            nodeTypeIds.set(registry.getNodeTypeId(getName()));
+            for (ExtendedNodeType supertype : supertypeSet) {
+                nodeTypeIds.set(registry.getNodeTypeId(supertype.getName()));
+            }
+            closure = new SupertypeClosure(version, supertypeSet, nodeTypeIds);
+            supertypeClosure = closure;
+        }
+        return closure;
+    }
+
+    private Set<ExtendedNodeType> computeSupertypeSet() {
         Set<ExtendedNodeType> l = new LinkedHashSet<ExtendedNodeType>();
         boolean primaryFound = false;
         ExtendedNodeType[] d = getDeclaredSupertypes();
@@ -270,6 +325,7 @@ public class ExtendedNodeType implements NodeType {
             }
             nodeType.addSubType(this);
         }
+        invalidateSupertypes(newIdentitySet());
         List<ExtendedNodeType> newMixinExtend = new ArrayList<ExtendedNodeType>();
         for (String s : mixinExtendNames) {
             final ExtendedNodeType type = registry.getNodeType(s);
@@ -287,6 +343,51 @@ public class ExtendedNodeType implements NodeType {
     void addSubType(ExtendedNodeType subType) {
         declaredSubtypes.remove(subType);
         declaredSubtypes.add(subType);
+        invalidateSubtypes(newIdentitySet());
+    }
+
+    /**
+     * Invalidates the supertypes computed for this node type and for all its subtypes, as they include the supertypes
+     * of this node type.
+     */
+    private void invalidateSupertypes(Set<ExtendedNodeType> invalidatedTypes) {
+        if (!invalidatedTypes.add(this)) {
+            return;
+        }
+        supertypesVersion.incrementAndGet();
+        for (ExtendedNodeType subtype : declaredSubtypes) {
+            subtype.invalidateSupertypes(invalidatedTypes);
+        }
+    }
+
+    /**
+     * Invalidates the subtypes computed for this node type and for all its supertypes, as they include the subtypes
+     * of this node type.
+     */
+    private void invalidateSubtypes(Set<ExtendedNodeType> invalidatedTypes) {
+        if (!invalidatedTypes.add(this)) {
+            return;
+        }
+        subtypesVersion.incrementAndGet();
+        for (ExtendedNodeType supertype : declaredSupertypes) {
+            if (supertype != null) {
+                supertype.invalidateSubtypes(invalidatedTypes);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the supertypes and subtypes computed for this node type only, used by the registry when the implicit
+     * nt:base supertype is replaced.
+     */
+    void invalidateHierarchy() {
+        supertypesVersion.incrementAndGet();
+        subtypesVersion.incrementAndGet();
+    }
+
+    private static Set<ExtendedNodeType> newIdentitySet() {
+        // node types are equal by name, a replaced node type must still be visited
+        return Collections.newSetFromMap(new IdentityHashMap<ExtendedNodeType, Boolean>());
     }
 
     public NodeTypeIterator getDeclaredSubtypes() {
@@ -299,29 +400,23 @@ public class ExtendedNodeType implements NodeType {
 
 
     public NodeTypeIterator getSubtypes() {
-        List<ExtendedNodeType> l = new ArrayList<ExtendedNodeType>();
-        for (Iterator<ExtendedNodeType> iterator = declaredSubtypes.iterator(); iterator.hasNext();) {
-            ExtendedNodeType s =  iterator.next();
-            l.add(s);
-            NodeTypeIterator subtypes = s.getSubtypes();
-            while (subtypes.hasNext()) {
-                l.add((ExtendedNodeType) subtypes.next());
-            }
-        }
+        List<ExtendedNodeType> l = getSubtypesAsList();
         return new NodeTypeIteratorImpl(l.iterator(), l.size());
     }
 
     public List<ExtendedNodeType> getSubtypesAsList() {
-        List<ExtendedNodeType> l = new ArrayList<ExtendedNodeType>();
-        for (Iterator<ExtendedNodeType> iterator = declaredSubtypes.iterator(); iterator.hasNext();) {
-            ExtendedNodeType s =  iterator.next();
-            l.add(s);
-            NodeTypeIterator subtypes = s.getSubtypes();
-            while (subtypes.hasNext()) {
-                l.add((ExtendedNodeType) subtypes.next());
+        int version = subtypesVersion.get();
+        SubtypeClosure closure = subtypeClosure;
+        if (closure == null || closure.version != version) {
+            List<ExtendedNodeType> l = new ArrayList<ExtendedNodeType>();
+            for (ExtendedNodeType s : declaredSubtypes) {
+                l.add(s);
+                l.addAll(s.getSubtypesAsList());
             }
+            closure = new SubtypeClosure(version, l);
+            subtypeClosure = closure;
         }
-        return l;
+        return closure.subtypes;
     }
 
     public ExtendedNodeType[] getMixinSubtypes() {
@@ -340,14 +435,10 @@ public class ExtendedNodeType implements NodeType {
         if (getName().equals(typeName) || Constants.NT_BASE.equals(typeName)) {
             return true;
         }
-        ExtendedNodeType[] d = getDeclaredSupertypes();
-        for (int i = 0; i < d.length; i++) {
-            ExtendedNodeType s = d[i];
-            if (s.isNodeType(typeName)) {
-                return true;
-            }
-        }
-        return false;
+        // the closure must be computed first, as it assigns the identifiers of the supertype names
+        BitSet nodeTypeIds = getSupertypeClosure().nodeTypeIds;
+        int nodeTypeId = registry.findNodeTypeId(typeName);
+        return nodeTypeId >= 0 && nodeTypeIds.get(nodeTypeId);
     }
 
     public List<ExtendedItemDefinition>  getItems() {
@@ -48,6 +48,7 @@ import org.apache.commons.collections.Transformer;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 
+import javax.jcr.NamespaceException;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
@@ -166,6 +167,12 @@ public class JahiaCndReader {
 
     protected boolean doRegister = true;
 
+    /**
+     * the node type names referenced by the selector options, collected instead of being checked when the type
+     * reference checks are deferred
+     */
+    protected Set<String> deferredTypeReferences;
+
     /**
      * Checks if the provided token is semantically equal to the given
      * argument.
@@ -191,35 +198,7 @@ public class JahiaCndReader {
      * @return the parsed property type or <code>-1</code> if the type is not recognized
      */
     public static int getPropertyType(String token) {
-        if (tokenEquals(token, Lexer.STRING)) {
-            return PropertyType.STRING;
-        } else if (tokenEquals(token, Lexer.BINARY)) {
-            return PropertyType.BINARY;
-        } else if (tokenEquals(token, Lexer.LONG)) {
-            return PropertyType.LONG;
-        } else if (tokenEquals(token, Lexer.DOUBLE)) {
-            return PropertyType.DOUBLE;
-        } else if (tokenEquals(token, Lexer.BOOLEAN)) {
-            return PropertyType.BOOLEAN;
-        } else if (tokenEquals(token, Lexer.DATE)) {
-            return PropertyType.DATE;
-        } else if (tokenEquals(token, Lexer.NAME)) {
-            return PropertyType.NAME;
-        } else if (tokenEquals(token, Lexer.PATH)) {
-            return PropertyType.PATH;
-        } else if (tokenEquals(token, Lexer.REFERENCE)) {
-            return PropertyType.REFERENCE;
-        } else if (tokenEquals(token, Lexer.WEAKREFERENCE)) {
-            return ExtendedPropertyType.WEAKREFERENCE;
-        } else if (tokenEquals(token, Lexer.URI)) {
-            return ExtendedPropertyType.URI;
-        } else if (tokenEquals(token, Lexer.DECIMAL)) {
-            return ExtendedPropertyType.DECIMAL;
-        } else if (tokenEquals(token, Lexer.UNDEFINED)) {
-            return PropertyType.UNDEFINED;
-        } else {
-            return -1;
-        }
+        return Lexer.getPropertyType(token);
     }
 
     /**
@@ -230,35 +209,7 @@ public class JahiaCndReader {
      * @return the parsed selector type or <code>-1</code> if the selector is not recognized
      */
     public static int getSelectorType(String token) {
-        if (tokenEquals(token, Lexer.SMALLTEXT)) {
-            return SelectorType.SMALLTEXT;
-        } else if (tokenEquals(token, Lexer.RICHTEXT)) {
-            return SelectorType.RICHTEXT;
-        } else if (tokenEquals(token, Lexer.TEXTAREA)) {
-            return SelectorType.TEXTAREA;
-        } else if (tokenEquals(token, Lexer.CHOICELIST)) {
-            return SelectorType.CHOICELIST;
-        } else if (tokenEquals(token, Lexer.CRON)) {
-            return SelectorType.CRON;
-        } else if (tokenEquals(token, Lexer.DATEPICKER)) {
-            return SelectorType.DATEPICKER;
-        } else if (tokenEquals(token, Lexer.DATETIMEPICKER)) {
-            return SelectorType.DATETIMEPICKER;
-        } else if (tokenEquals(token, Lexer.CATEGORY)) {
-            return SelectorType.CATEGORY;
-        } else if (tokenEquals(token, Lexer.CONTENTPICKER)) {
-            return SelectorType.CONTENTPICKER;
-        } else if (tokenEquals(token, Lexer.FILEUPLOAD)) {
-            return SelectorType.FILEUPLOAD;
-        } else if (tokenEquals(token, Lexer.COLOR)) {
-            return SelectorType.COLOR;
-        } else if (tokenEquals(token, Lexer.CHECKBOX)) {
-            return SelectorType.CHECKBOX;
-        } else if (tokenEquals(token, Lexer.TAG)) {
-            return SelectorType.TAG;
-        } else {
-            return -1;
-        }
+        return Lexer.getSelectorType(token);
     }
 
     /**
@@ -279,6 +230,21 @@ public class JahiaCndReader {
         this.doRegister = doRegister;
     }
 
+    /**
+     * If activated, the node types referenced by the selector options are not looked up in the registry while
+     * parsing, but collected so that they can be checked once all the definitions they may come from are registered.
+     */
+    public void setDeferTypeReferenceChecks(boolean deferTypeReferenceChecks) {
+        this.deferredTypeReferences = deferTypeReferenceChecks ? new LinkedHashSet<String>() : null;
+    }
+
+    /**
+     * Returns the node types referenced by the selector options, if the type reference checks are deferred.
+     */
+    public Set<String> getDeferredTypeReferences() {
+        return deferredTypeReferences != null ? deferredTypeReferences : Collections.<String>emptySet();
+    }
+
     /**
      * Returns the list of parsed nodetype definitions.
      *
@@ -331,6 +297,25 @@ public class JahiaCndReader {
         */
     }
 
+    /**
+     * Parses the namespace declarations at the beginning of the definitions, without registering them.
+     *
+     * @return the declared namespace URIs by prefix
+     */
+    public Map<String, String> parseNamespaceDeclarations() throws ParseException, IOException {
+        Map<String, String> namespaces = new LinkedHashMap<String, String>();
+        nextToken();
+        while (!currentTokenEquals(Lexer.EOF)) {
+            String[] namespace = readNameSpace();
+            if (namespace == null) {
+                break;
+            }
+            namespaces.put(namespace[0], namespace[1]);
+            nextToken();
+        }
+        return namespaces;
+    }
+
     /**
      * processes the namespace declaration
      *
@@ -338,9 +323,24 @@ public class JahiaCndReader {
      * @throws ParseException
      */
     private boolean doNameSpace() throws ParseException, IOException {
-        if (!currentTokenEquals('<')) {
+        String[] namespace = readNameSpace();
+        if (namespace == null) {
             return false;
         }
+        try {
+            registry.registerNamespace(namespace[0], namespace[1]);
+        } catch (NamespaceException e) {
+            lexer.fail("Invalid namespace declaration : " + e.getMessage());
+        }
+
+        nextToken();
+        return true;
+    }
+
+    private String[] readNameSpace() throws ParseException, IOException {
+        if (!currentTokenEquals('<')) {
+            return null;
+        }
         nextToken();
         String prefix = currentToken;
 
@@ -355,19 +355,7 @@ public class JahiaCndReader {
         if (!currentTokenEquals('>')) {
             lexer.fail("Missing > in namespace decl.");
         }
-
-        if (registry.getNamespaces().containsKey(prefix) && !registry.getNamespaces().get(prefix).equals(uri)) {
-            lexer.fail("Invalid namespace declaration : prefix already declared");
-        }
-
-        if (!registry.getNamespaces().containsKey(prefix) && registry.getNamespaces().containsValue(uri)) {
-            lexer.fail("Invalid namespace declaration : uri already declared");
-        }
-
-        registry.getNamespaces().put(prefix, uri);
-
-        nextToken();
-        return true;
+        return new String[]{prefix, uri};
     }
 
     /**
@@ -946,6 +934,10 @@ public class JahiaCndReader {
             }
             if (key.equals("addListMixin") || key.equals("addMixin") || key.equals("availableTypes")) {
                 for (String s : Patterns.COMMA.split(value)) {
+                    if (deferredTypeReferences != null) {
+                        deferredTypeReferences.add(s);
+                        continue;
+                    }
                     try {
                         registry.getNodeType(s);
                     } catch (NoSuchNodeTypeException e) {
@@ -984,7 +976,7 @@ public class JahiaCndReader {
      * @return <code>true</code> if equals; <code>false</code> otherwise.
      */
     protected boolean currentTokenEquals(String[] s) {
-        return tokenEquals(currentToken, s);
+        return lexer.currentTokenEquals(s);
     }
 
     /**
@@ -1010,7 +1002,7 @@ public class JahiaCndReader {
     }
 
     protected Name parseName(String name) throws ParseException {
-        Name res = new Name(name, registry.getNamespaces());
+        Name res = registry.getName(name);
         if (!StringUtils.isEmpty(res.getPrefix()) && res.getUri() == null) {
             logger.warn(filename + ": Name " + name + " is missing namespace URI definition !");
             // lexer.fail("Cannot parse name: " + name);
@@ -1018,12 +1010,21 @@ public class JahiaCndReader {
         return res;
     }
 
-    private Logger getLog() {
+    private static Logger getLog() {
         return logger;
     }
 
     public void getDefinitionsAndReferences(Set<String> contentTypeDefinitions, Set<String> contentTypeReferences) throws RepositoryException {
-        for (ExtendedNodeType extendedNodeType : getNodeTypesList()) {
+        getDefinitionsAndReferences(filename, getNodeTypesList(), contentTypeDefinitions, contentTypeReferences);
+    }
+
+    /**
+     * Collects the names of the given node types, parsed from the given file, and the names of the node types they
+     * reference.
+     */
+    public static void getDefinitionsAndReferences(String filename, List<ExtendedNodeType> nodeTypes,
+                                                   Set<String> contentTypeDefinitions, Set<String> contentTypeReferences) throws RepositoryException {
+        for (ExtendedNodeType extendedNodeType : nodeTypes) {
             getLog().debug(filename+ " Nodetype definition " + extendedNodeType.getName());
             contentTypeDefinitions.add(extendedNodeType.getName());
             for (String superTypeName : extendedNodeType.getDeclaredSupertypeNames()) {
@@ -1134,8 +1135,8 @@ public class JahiaCndReader {
                         Set<String> excludeTypes = new TreeSet<String>();
 
                         if (StringUtils.isNotEmpty(param)) {
-                            includeTypes = getNodeTypes(StringUtils.substringBefore(param, ";"));
-                            excludeTypes = getNodeTypes(StringUtils.substringAfter(param, ";"));
+                            includeTypes = getRegisteredNodeTypes(StringUtils.substringBefore(param, ";"));
+                            excludeTypes = getRegisteredNodeTypes(StringUtils.substringAfter(param, ";"));
                         }
 
                         for (String nodeTypeName : includeTypes) {
@@ -1161,6 +1162,10 @@ public class JahiaCndReader {
     }
 
     public Set<String> getNodeTypes(String typesString) {
+        return getRegisteredNodeTypes(typesString);
+    }
+
+    private static Set<String> getRegisteredNodeTypes(String typesString) {
         Set<String> types = new TreeSet<String>();
         if (StringUtils.isNotEmpty(typesString)) {
             for (String value : StringUtils.split(typesString, ", ")) {
@@ -43,15 +43,24 @@
  */
 package org.jahia.utils.osgi.parsers.cnd;
 
+import javax.jcr.PropertyType;
 import javax.jcr.query.qom.QueryObjectModelConstants;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StreamTokenizer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Lexer
+ * <p/>
+ * The input is read through a reusable char buffer and tokenized with the rules of the
+ * {@link java.io.StreamTokenizer} configuration previously used: comments, quoted strings with escapes, numbers
+ * returned as doubles, single character tokens. Keywords are looked up from the token buffer in a static hash table,
+ * which returns the keyword constant itself with the keyword lists it belongs to, so that the tokens can be matched
+ * against the keyword lists without creating strings or comparing them.
  */
 public class Lexer {
     public static final char SINGLE_QUOTE = '\'';
@@ -224,43 +233,116 @@ public class Lexer {
 
     public static final String EOF = "eof";
 
-    private final StreamTokenizer st;
+    private static final int NEED_CHAR = Integer.MAX_VALUE;
+
+    private static final byte CT_WHITESPACE = 1;
+    private static final byte CT_DIGIT = 2;
+    private static final byte CT_ALPHA = 4;
+    private static final byte CT_QUOTE = 8;
+    private static final byte CT_COMMENT = 16;
+
+    private static final byte[] CHARACTER_TYPES = new byte[256];
+
+    private static final String[] CHARACTER_TOKENS = new String[256];
+
+    private static final Keyword[] CHARACTER_KEYWORDS = new Keyword[256];
+
+    private static final int KEYWORD_TABLE_SIZE = 1024;
+
+    private static final Keyword[] KEYWORD_TABLE = new Keyword[KEYWORD_TABLE_SIZE];
+
+    private static final Map<String[], Integer> KEYWORD_LISTS = new IdentityHashMap<String[], Integer>();
+
+    static {
+        Arrays.fill(CHARACTER_TYPES, 0, ' ' + 1, CT_WHITESPACE);
+        Arrays.fill(CHARACTER_TYPES, 'a', 'z' + 1, CT_ALPHA);
+        Arrays.fill(CHARACTER_TYPES, 'A', 'Z' + 1, CT_ALPHA);
+        Arrays.fill(CHARACTER_TYPES, 128 + 32, 256, CT_ALPHA);
+        CHARACTER_TYPES[':'] = CT_ALPHA;
+        CHARACTER_TYPES['_'] = CT_ALPHA;
+        Arrays.fill(CHARACTER_TYPES, '0', '9' + 1, CT_DIGIT);
+        CHARACTER_TYPES['.'] = CT_DIGIT;
+        CHARACTER_TYPES['/'] = CT_COMMENT;
+        CHARACTER_TYPES[SINGLE_QUOTE] = CT_QUOTE;
+        CHARACTER_TYPES[DOUBLE_QUOTE] = CT_QUOTE;
+
+        String[][] keywordLists = new String[][]{ORDERABLE, MIXIN, ABSTRACT, NOQUERY, QUERY, PRIMARYITEM,
+                MIXIN_EXTENDS, VALIDATOR, PRIMARY, AUTOCREATED, MANDATORY, PROTECTED, MULTIPLE, SNS,
+                INTERNATIONALIZED, ITEMTYPE, INDEXED, SCOREBOOST, NO, YES, TOKENIZED, UNTOKENIZED, ANALYZER, FACETABLE,
+                HIERARCHICAL, SORTABLE, FULLTEXTSEARCHABLE, QUERYOPS, NOFULLTEXT, NOQUERYORDER, HIDDEN, ONCONFLICT,
+                USE_LATEST, USE_OLDEST, NUMERIC_USE_MIN, NUMERIC_USE_MAX, NUMERIC_SUM, COPY, VERSION, INITIALIZE,
+                COMPUTE, IGNORE, ABORT, WORKFLOW, PROP_ATTRIBUTE, NODE_ATTRIBUTE, ALL_OPERATORS, STRING, BINARY, LONG,
+                DOUBLE, BOOLEAN, DATE, NAME, PATH, REFERENCE, WEAKREFERENCE, URI, DECIMAL, SMALLTEXT, RICHTEXT,
+                TEXTAREA, CHOICELIST, DATETIMEPICKER, DATEPICKER, CATEGORY, CONTENTPICKER, FILEUPLOAD, PAGE, COLOR,
+                CHECKBOX, CRON, TAG, UNDEFINED};
+        for (int i = 0; i < keywordLists.length; i++) {
+            KEYWORD_LISTS.put(keywordLists[i], i);
+            for (String keyword : keywordLists[i]) {
+                addKeyword(keyword).keywordLists.set(i);
+            }
+        }
+
+        addKeyword(STRING, PropertyType.STRING, -1);
+        addKeyword(BINARY, PropertyType.BINARY, -1);
+        addKeyword(LONG, PropertyType.LONG, -1);
+        addKeyword(DOUBLE, PropertyType.DOUBLE, -1);
+        addKeyword(BOOLEAN, PropertyType.BOOLEAN, -1);
+        addKeyword(DATE, PropertyType.DATE, -1);
+        addKeyword(NAME, PropertyType.NAME, -1);
+        addKeyword(PATH, PropertyType.PATH, -1);
+        addKeyword(REFERENCE, PropertyType.REFERENCE, -1);
+        addKeyword(WEAKREFERENCE, ExtendedPropertyType.WEAKREFERENCE, -1);
+        addKeyword(URI, ExtendedPropertyType.URI, -1);
+        addKeyword(DECIMAL, ExtendedPropertyType.DECIMAL, -1);
+        addKeyword(UNDEFINED, PropertyType.UNDEFINED, -1);
+
+        addKeyword(SMALLTEXT, -1, SelectorType.SMALLTEXT);
+        addKeyword(RICHTEXT, -1, SelectorType.RICHTEXT);
+        addKeyword(TEXTAREA, -1, SelectorType.TEXTAREA);
+        addKeyword(CHOICELIST, -1, SelectorType.CHOICELIST);
+        addKeyword(CRON, -1, SelectorType.CRON);
+        addKeyword(DATEPICKER, -1, SelectorType.DATEPICKER);
+        addKeyword(DATETIMEPICKER, -1, SelectorType.DATETIMEPICKER);
+        addKeyword(CATEGORY, -1, SelectorType.CATEGORY);
+        addKeyword(CONTENTPICKER, -1, SelectorType.CONTENTPICKER);
+        addKeyword(FILEUPLOAD, -1, SelectorType.FILEUPLOAD);
+        addKeyword(COLOR, -1, SelectorType.COLOR);
+        addKeyword(CHECKBOX, -1, SelectorType.CHECKBOX);
+        addKeyword(TAG, -1, SelectorType.TAG);
+
+        for (int c = 0; c < CHARACTER_TOKENS.length; c++) {
+            CHARACTER_KEYWORDS[c] = getKeyword(String.valueOf((char) c));
+            CHARACTER_TOKENS[c] = CHARACTER_KEYWORDS[c] != null ? CHARACTER_KEYWORDS[c].token : String.valueOf((char) c);
+        }
+    }
+
+    private final Reader reader;
 
     private final String filename;
 
-    /**
-     * Constructor
-     * @param r
-     */
-    public Lexer(Reader r, String filename) {
-        this.filename = filename;
-        st = new StreamTokenizer(r);
+    private final char[] buffer = new char[8192];
 
-        st.eolIsSignificant(false);
+    private int position;
 
-        st.lowerCaseMode(false);
+    private int limit;
 
-        st.slashSlashComments(true);
-        st.slashStarComments(true);
+    private char[] tokenBuffer = new char[256];
 
-        st.wordChars('a', 'z');
-        st.wordChars('A', 'Z');
-        st.wordChars(':', ':');
-        st.wordChars('_', '_');
+    private int peekc = NEED_CHAR;
 
-        st.quoteChar(SINGLE_QUOTE);
-        st.quoteChar(DOUBLE_QUOTE);
+    private int lineNumber = 1;
 
-        st.ordinaryChar(BEGIN_NODE_TYPE_NAME);
-        st.ordinaryChar(END_NODE_TYPE_NAME);
-        st.ordinaryChar(EXTENDS);
-        st.ordinaryChar(LIST_DELIMITER);
-        st.ordinaryChar(PROPERTY_DEFINITION);
-        st.ordinaryChar(CHILD_NODE_DEFINITION);
-        st.ordinaryChar(BEGIN_TYPE);
-        st.ordinaryChar(END_TYPE);
-        st.ordinaryChar(DEFAULT);
-        st.ordinaryChar(CONSTRAINT);
+    private String currentToken;
+
+    private Keyword currentKeyword;
+
+    /**
+     * Constructor
+     * @param r
+     */
+    public Lexer(Reader r, String filename) {
+        this.filename = filename;
+        this.reader = r;
     }
 
     /**
@@ -271,31 +353,303 @@ public class Lexer {
      */
     public String getNextToken() throws ParseException {
         try {
-            int tokenType = st.nextToken();
-            if (tokenType == StreamTokenizer.TT_EOF) {
-                return EOF;
-            } else if (tokenType == StreamTokenizer.TT_WORD
-                    || tokenType == SINGLE_QUOTE
-                    || tokenType == DOUBLE_QUOTE) {
-                return st.sval;
-            } else if (tokenType == StreamTokenizer.TT_NUMBER) {
-                return String.valueOf(st.nval);
-            } else {
-                return new String(new char[] {(char) tokenType});
-            }
+            currentKeyword = null;
+            currentToken = readToken();
+            return currentToken;
         } catch (IOException e) {
             fail("IOException while attempting to read input stream", e);
             return null;
         }
     }
 
+    /**
+     * Checks if the last token returned by {@link #getNextToken()} is one of the given keywords.
+     *
+     * @param keywords the keywords, usually one of the keyword lists of this class
+     * @return <code>true</code> if the token is one of the keywords
+     */
+    public boolean currentTokenEquals(String[] keywords) {
+        Integer keywordList = KEYWORD_LISTS.get(keywords);
+        if (keywordList == null) {
+            for (String keyword : keywords) {
+                if (keyword.equals(currentToken)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return currentKeyword != null && currentKeyword.keywordLists.get(keywordList);
+    }
+
+    /**
+     * Returns the property type named by the token, or <code>-1</code> if the type is not recognized.
+     */
+    public static int getPropertyType(String token) {
+        Keyword keyword = getKeyword(token);
+        return keyword != null ? keyword.propertyType : -1;
+    }
+
+    /**
+     * Returns the selector type named by the token, or <code>-1</code> if the selector is not recognized.
+     */
+    public static int getSelectorType(String token) {
+        Keyword keyword = getKeyword(token);
+        return keyword != null ? keyword.selectorType : -1;
+    }
+
+    private String readToken() throws IOException {
+        while (true) {
+            int c = peekc;
+            peekc = NEED_CHAR;
+            if (c == NEED_CHAR || c < 0) {
+                c = read();
+                if (c < 0) {
+                    return EOF;
+                }
+            }
+
+            int ctype = c < 256 ? CHARACTER_TYPES[c] : CT_ALPHA;
+            while ((ctype & CT_WHITESPACE) != 0) {
+                if (c == '\r') {
+                    lineNumber++;
+                    c = read();
+                    if (c == '\n') {
+                        c = read();
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    c = read();
+                }
+                if (c < 0) {
+                    return EOF;
+                }
+                ctype = c < 256 ? CHARACTER_TYPES[c] : CT_ALPHA;
+            }
+
+            if ((ctype & CT_DIGIT) != 0) {
+                return readNumber(c);
+            }
+
+            if ((ctype & CT_ALPHA) != 0) {
+                int length = 0;
+                int hash = 0;
+                do {
+                    if (length == tokenBuffer.length) {
+                        tokenBuffer = Arrays.copyOf(tokenBuffer, length * 2);
+                    }
+                    tokenBuffer[length++] = (char) c;
+                    hash = 31 * hash + c;
+                    c = read();
+                    ctype = c < 0 ? CT_WHITESPACE : c < 256 ? CHARACTER_TYPES[c] : CT_ALPHA;
+                } while ((ctype & (CT_ALPHA | CT_DIGIT)) != 0);
+                peekc = c;
+                return toToken(length, hash);
+            }
+
+            if ((ctype & CT_QUOTE) != 0) {
+                return readQuotedString(c);
+            }
+
+            if (c == '/') {
+                c = read();
+                if (c == '*') {
+                    int prevc = 0;
+                    while ((c = read()) != '/' || prevc != '*') {
+                        if (c == '\r') {
+                            lineNumber++;
+                            c = read();
+                            if (c == '\n') {
+                                c = read();
+                            }
+                        } else if (c == '\n') {
+                            lineNumber++;
+                            c = read();
+                        }
+                        if (c < 0) {
+                            return EOF;
+                        }
+                        prevc = c;
+                    }
+                } else {
+                    // a single slash also starts a comment, the character following it being skipped
+                    do {
+                        c = read();
+                    } while (c != '\n' && c != '\r' && c >= 0);
+                    peekc = c;
+                }
+                continue;
+            }
+
+            if (c < 256) {
+                currentKeyword = CHARACTER_KEYWORDS[c];
+                return CHARACTER_TOKENS[c];
+            }
+            return String.valueOf((char) c);
+        }
+    }
+
+    private String readNumber(int c) throws IOException {
+        double v = 0;
+        int decexp = 0;
+        int seendot = 0;
+        while (true) {
+            if (c == '.' && seendot == 0) {
+                seendot = 1;
+            } else if ('0' <= c && c <= '9') {
+                v = v * 10 + (c - '0');
+                decexp += seendot;
+            } else {
+                break;
+            }
+            c = read();
+        }
+        peekc = c;
+        if (decexp != 0) {
+            double denom = 10;
+            decexp--;
+            while (decexp > 0) {
+                denom *= 10;
+                decexp--;
+            }
+            v = v / denom;
+        }
+        return String.valueOf(v);
+    }
+
+    private String readQuotedString(int quote) throws IOException {
+        int length = 0;
+        int hash = 0;
+        int c;
+        int d = read();
+        while (d >= 0 && d != quote && d != '\n' && d != '\r') {
+            if (d == '\\') {
+                c = read();
+                int first = c;
+                if (c >= '0' && c <= '7') {
+                    c = c - '0';
+                    int c2 = read();
+                    if ('0' <= c2 && c2 <= '7') {
+                        c = (c << 3) + (c2 - '0');
+                        c2 = read();
+                        if ('0' <= c2 && c2 <= '7' && first <= '3') {
+                            c = (c << 3) + (c2 - '0');
+                            d = read();
+                        } else {
+                            d = c2;
+                        }
+                    } else {
+                        d = c2;
+                    }
+                } else {
+                    switch (c) {
+                        case 'a':
+                            c = 0x7;
+                            break;
+                        case 'b':
+                            c = '\b';
+                            break;
+                        case 'f':
+                            c = 0xC;
+                            break;
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'v':
+                            c = 0xB;
+                            break;
+                    }
+                    d = read();
+                }
+            } else {
+                c = d;
+                d = read();
+            }
+            if (length == tokenBuffer.length) {
+                tokenBuffer = Arrays.copyOf(tokenBuffer, length * 2);
+            }
+            tokenBuffer[length++] = (char) c;
+            hash = 31 * hash + (char) c;
+        }
+        peekc = (d == quote) ? NEED_CHAR : d;
+        return toToken(length, hash);
+    }
+
+    /**
+     * Returns the token in the token buffer, as the keyword constant if it is a keyword.
+     */
+    private String toToken(int length, int hash) {
+        for (int i = hash & (KEYWORD_TABLE_SIZE - 1); KEYWORD_TABLE[i] != null; i = (i + 1) & (KEYWORD_TABLE_SIZE - 1)) {
+            Keyword keyword = KEYWORD_TABLE[i];
+            if (keyword.hash == hash && keyword.matches(tokenBuffer, length)) {
+                currentKeyword = keyword;
+                return keyword.token;
+            }
+        }
+        return new String(tokenBuffer, 0, length);
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private static Keyword getKeyword(String token) {
+        int hash = token.hashCode();
+        for (int i = hash & (KEYWORD_TABLE_SIZE - 1); KEYWORD_TABLE[i] != null; i = (i + 1) & (KEYWORD_TABLE_SIZE - 1)) {
+            if (KEYWORD_TABLE[i].hash == hash && KEYWORD_TABLE[i].token.equals(token)) {
+                return KEYWORD_TABLE[i];
+            }
+        }
+        return null;
+    }
+
+    private static Keyword addKeyword(String token) {
+        Keyword keyword = getKeyword(token);
+        if (keyword == null) {
+            keyword = new Keyword(token);
+            int i = keyword.hash & (KEYWORD_TABLE_SIZE - 1);
+            while (KEYWORD_TABLE[i] != null) {
+                i = (i + 1) & (KEYWORD_TABLE_SIZE - 1);
+            }
+            KEYWORD_TABLE[i] = keyword;
+        }
+        return keyword;
+    }
+
+    private static void addKeyword(String[] tokens, int propertyType, int selectorType) {
+        for (String token : tokens) {
+            Keyword keyword = addKeyword(token);
+            if (keyword.propertyType < 0) {
+                keyword.propertyType = propertyType;
+            }
+            if (keyword.selectorType < 0) {
+                keyword.selectorType = selectorType;
+            }
+        }
+    }
+
     /**
      * Creates a failure exception including the current line number and systemid.
      * @param message message
      * @throws ParseException the created exception
      */
     public void fail(String message) throws ParseException {
-        throw new ParseException(message, st.lineno(), -1, filename);
+        throw new ParseException(message, lineNumber, -1, filename);
     }
 
     /**
@@ -305,7 +659,7 @@ public class Lexer {
      * @throws ParseException the created exception
      */
     public void fail(String message, Throwable e) throws ParseException {
-        throw new ParseException(message, e, st.lineno(), -1, filename);
+        throw new ParseException(message, e, lineNumber, -1, filename);
     }
 
      /**
@@ -314,6 +668,31 @@ public class Lexer {
      * @throws ParseException the created exception
      */
      public void fail(Throwable e) throws ParseException {
-        throw new ParseException(e, st.lineno(), -1, filename);
+        throw new ParseException(e, lineNumber, -1, filename);
+    }
+
+    private static class Keyword {
+        private final String token;
+        private final int hash;
+        private final BitSet keywordLists = new BitSet();
+        private int propertyType = -1;
+        private int selectorType = -1;
+
+        Keyword(String token) {
+            this.token = token;
+            this.hash = token.hashCode();
+        }
+
+        boolean matches(char[] chars, int length) {
+            if (token.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (token.charAt(i) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
@@ -43,7 +43,6 @@
  */
 package org.jahia.utils.osgi.parsers.cnd;
 
-import org.apache.commons.lang.StringUtils;
 
 import java.util.Map;
 
@@ -69,14 +68,26 @@ public class Name {
     }
 
     public Name(String qualifiedName, Map<String,String> namespaceMapping) {
+        this(qualifiedName, namespaceMapping, null);
+    }
+
+    /**
+     * Parses a qualified name, looking up the prefix of a <code>{uri}localName</code> name in the given URI to prefix
+     * mapping instead of scanning the namespace mapping, if provided.
+     */
+    Name(String qualifiedName, Map<String,String> namespaceMapping, Map<String,String> prefixMapping) {
         if (qualifiedName.startsWith("{")) {
             int endUri = qualifiedName.indexOf("}");
             if (endUri != -1 && qualifiedName.length() > endUri) {
-                uri = StringUtils.substringBetween(qualifiedName, "{", "}");
-                for (Map.Entry<String, String> entry : namespaceMapping.entrySet()) {
-                    if (entry.getValue().equals(uri)) {
-                        prefix = entry.getKey();
-                        break;
+                uri = qualifiedName.substring(1, endUri);
+                if (prefixMapping != null) {
+                    prefix = prefixMapping.get(uri);
+                } else {
+                    for (Map.Entry<String, String> entry : namespaceMapping.entrySet()) {
+                        if (entry.getValue().equals(uri)) {
+                            prefix = entry.getKey();
+                            break;
+                        }
                     }
                 }
                 localName = qualifiedName.substring(endUri + 1);
@@ -87,15 +98,26 @@ public class Name {
             }
         }
         if (localName == null) {
-            String s[] = Patterns.COLON.split(qualifiedName);
-            if (s.length == 2) {
-                prefix = s[0];
-                localName = s[1];
-                uri = namespaceMapping.get(prefix);
-            } else {
+            int colon = qualifiedName.indexOf(':');
+            if (colon == -1) {
                 prefix = "";
-                localName = s[0];
+                localName = qualifiedName;
                 uri = namespaceMapping.get("");
+            } else if (colon < qualifiedName.length() - 1 && qualifiedName.indexOf(':', colon + 1) == -1) {
+                prefix = qualifiedName.substring(0, colon);
+                localName = qualifiedName.substring(colon + 1);
+                uri = namespaceMapping.get(prefix);
+            } else {
+                String s[] = Patterns.COLON.split(qualifiedName);
+                if (s.length == 2) {
+                    prefix = s[0];
+                    localName = s[1];
+                    uri = namespaceMapping.get(prefix);
+                } else {
+                    prefix = "";
+                    localName = s[0];
+                    uri = namespaceMapping.get("");
+                }
             }
         }
     }
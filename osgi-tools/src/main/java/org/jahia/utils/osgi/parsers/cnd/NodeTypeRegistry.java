@@ -43,20 +43,26 @@
  */
 package org.jahia.utils.osgi.parsers.cnd;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 
+import javax.jcr.NamespaceException;
 import javax.jcr.RepositoryException;
 import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.nodetype.*;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Jahia implementation of the {@link NodeTypeManager}.
+ *
+ * The registry may be loaded and read by several threads at once. The node types are stored in a concurrent map, and
+ * the lists returned by the iterating methods come from an immutable snapshot, rebuilt on the first read following a
+ * modification, which indexes the node types by system id and by primary/mixin kind in registration order.
+ *
  * User: toto
  * Date: 4 janv. 2008
  * Time: 15:08:56
@@ -65,13 +71,115 @@ public class NodeTypeRegistry implements NodeTypeManager {
     public static final String SYSTEM = "system";
     private static Logger logger = org.slf4j.LoggerFactory.getLogger(NodeTypeRegistry.class);
 
-    private List<ExtendedNodeType> nodeTypesList = new ArrayList<ExtendedNodeType>();
-    private Map<Name, ExtendedNodeType> nodetypes = new HashMap<Name, ExtendedNodeType>();
+    /**
+     * A registered node type, with its registration sequence number that gives the order of the snapshot lists.
+     */
+    private static class Registration {
+        private final ExtendedNodeType nodeType;
+        private final long sequence;
+
+        Registration(ExtendedNodeType nodeType, long sequence) {
+            this.nodeType = nodeType;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A parsed name, with the version of the namespace mapping it was resolved with.
+     */
+    private static class CachedName {
+        private final Name name;
+        private final int namespacesVersion;
+
+        CachedName(Name name, int namespacesVersion) {
+            this.name = name;
+            this.namespacesVersion = namespacesVersion;
+        }
+    }
 
-    private Map<String,String> namespaces = new HashMap<String,String>();
+    /**
+     * Node types lists, in registration order.
+     */
+    private static class NodeTypeLists {
+        private final List<ExtendedNodeType> all = new ArrayList<ExtendedNodeType>();
+        private final List<ExtendedNodeType> primary = new ArrayList<ExtendedNodeType>();
+        private final List<ExtendedNodeType> mixin = new ArrayList<ExtendedNodeType>();
+
+        void add(ExtendedNodeType nodeType) {
+            all.add(nodeType);
+            if (nodeType.isMixin()) {
+                mixin.add(nodeType);
+            } else {
+                primary.add(nodeType);
+            }
+        }
 
-    private Map<ExtendedNodeType,Set<ExtendedNodeType>> mixinExtensions = new HashMap<ExtendedNodeType,Set<ExtendedNodeType>>();
-    private Map<String,Set<ExtendedItemDefinition>> typedItems = new HashMap<String,Set<ExtendedItemDefinition>>();
+        List<ExtendedNodeType> get(Boolean mixinTypes) {
+            if (mixinTypes == null) {
+                return all;
+            }
+            return mixinTypes ? mixin : primary;
+        }
+    }
+
+    /**
+     * An immutable view of the registered node types.
+     */
+    private static class Snapshot {
+        private final NodeTypeLists nodeTypes = new NodeTypeLists();
+        private final Map<String, NodeTypeLists> nodeTypesBySystemId = new HashMap<String, NodeTypeLists>();
+
+        Snapshot(Collection<Registration> registrations) {
+            List<Registration> sortedRegistrations = new ArrayList<Registration>(registrations);
+            Collections.sort(sortedRegistrations, new Comparator<Registration>() {
+                public int compare(Registration r1, Registration r2) {
+                    return r1.sequence < r2.sequence ? -1 : (r1.sequence == r2.sequence ? 0 : 1);
+                }
+            });
+            for (Registration registration : sortedRegistrations) {
+                ExtendedNodeType nodeType = registration.nodeType;
+                nodeTypes.add(nodeType);
+                NodeTypeLists systemIdNodeTypes = nodeTypesBySystemId.get(nodeType.getSystemId());
+                if (systemIdNodeTypes == null) {
+                    systemIdNodeTypes = new NodeTypeLists();
+                    nodeTypesBySystemId.put(nodeType.getSystemId(), systemIdNodeTypes);
+                }
+                systemIdNodeTypes.add(nodeType);
+            }
+        }
+
+        List<ExtendedNodeType> get(List<String> systemIds, Boolean mixinTypes) {
+            if (systemIds == null) {
+                return Collections.unmodifiableList(nodeTypes.get(mixinTypes));
+            }
+            List<ExtendedNodeType> result = new ArrayList<ExtendedNodeType>();
+            for (String systemId : new LinkedHashSet<String>(systemIds)) {
+                NodeTypeLists systemIdNodeTypes = nodeTypesBySystemId.get(systemId);
+                if (systemIdNodeTypes != null) {
+                    result.addAll(systemIdNodeTypes.get(mixinTypes));
+                }
+            }
+            return result;
+        }
+    }
+
+    private final ConcurrentMap<Name, Registration> nodetypes = new ConcurrentHashMap<Name, Registration>();
+    private final AtomicLong registrationSequence = new AtomicLong();
+    private final Object registrationLock = new Object();
+    private volatile Snapshot snapshot;
+
+    private final Map<String,String> namespaces = new ConcurrentHashMap<String,String>();
+    private final Map<String,String> unmodifiableNamespaces = Collections.unmodifiableMap(namespaces);
+    private final Map<String,String> namespacePrefixes = new ConcurrentHashMap<String,String>();
+    private volatile int namespacesVersion;
+
+    private static final int MAX_CACHED_NAMES = 10000;
+    private final ConcurrentMap<String, CachedName> names = new ConcurrentHashMap<String, CachedName>();
+
+    private final ConcurrentMap<ExtendedNodeType,Set<ExtendedNodeType>> mixinExtensions = new ConcurrentHashMap<ExtendedNodeType,Set<ExtendedNodeType>>();
+    private final ConcurrentMap<String,Set<ExtendedItemDefinition>> typedItems = new ConcurrentHashMap<String,Set<ExtendedItemDefinition>>();
+
+    private final ConcurrentMap<String, Integer> nodeTypeIds = new ConcurrentHashMap<String, Integer>();
 
     private boolean propertiesLoaded = false;
     private final Properties deploymentProperties = new Properties();
@@ -83,8 +191,8 @@ public class NodeTypeRegistry implements NodeTypeManager {
     }
 
     public void flushLabels() {
-        for (ExtendedNodeType nodeType : nodetypes.values()) {
-            nodeType.clearLabels();
+        for (Registration registration : nodetypes.values()) {
+            registration.nodeType.clearLabels();
         }
         for (Set<ExtendedItemDefinition> itemSet : typedItems.values()) {
             for (ExtendedItemDefinition item : itemSet) {
@@ -97,69 +205,109 @@ public class NodeTypeRegistry implements NodeTypeManager {
     public List<ExtendedNodeType> getDefinitionsFromFile(File resource, String systemId) throws ParseException, IOException {
         String ext = resource.getPath().substring(resource.getPath().lastIndexOf('.'));
         if (ext.equalsIgnoreCase(".cnd")) {
-            Reader resourceReader = null;
-            try {
-                resourceReader = new FileReader(resource);
-                JahiaCndReader r = new JahiaCndReader(resourceReader, resource.getPath(), systemId, this);
-                r.setDoRegister(false);
-                r.parse();
-                return r.getNodeTypesList();
-            } finally {
-                IOUtils.closeQuietly(resourceReader);
-            }
+            return new CndBulkLoader(this, 1).setRegister(false).load(Collections.singletonMap(resource, systemId));
         }
         return Collections.emptyList();
     }
 
     public ExtendedNodeType getNodeType(String name) throws NoSuchNodeTypeException {
-        ExtendedNodeType res = nodetypes.get(new Name(name, namespaces));
+        Registration res = nodetypes.get(getName(name));
         if (res == null) {
             throw new NoSuchNodeTypeException(name);
         }
-        return res;
+        return res.nodeType;
     }
 
     public NodeTypeIterator getAllNodeTypes() {
-        return new JahiaNodeTypeIterator(nodeTypesList.iterator(),nodeTypesList.size());
+        return getAllNodeTypes(null);
     }
 
     public NodeTypeIterator getAllNodeTypes(List<String> systemIds) {
-        List<ExtendedNodeType> res = new ArrayList<ExtendedNodeType>();
-        for (Iterator<ExtendedNodeType> iterator = nodetypes.values().iterator(); iterator.hasNext();) {
-            ExtendedNodeType nt = iterator.next();
-            if (systemIds == null || systemIds.contains(nt.getSystemId())) {
-                res.add(nt);
-            }
-        }
-        return new JahiaNodeTypeIterator(res.iterator(), res.size());
+        return createIterator(getSnapshot().get(systemIds, null));
     }
 
     public NodeTypeIterator getNodeTypes(String systemId) {
-        List<ExtendedNodeType> l = new ArrayList<ExtendedNodeType>();
-        for (ExtendedNodeType nt : nodeTypesList) {
-            if (nt.getSystemId().equals(systemId)) {
-                l.add(nt);
+        return createIterator(getSnapshot().get(Collections.singletonList(systemId), null));
+    }
+
+    /**
+     * Returns the registered namespace URIs by prefix. Namespaces are added with
+     * {@link #registerNamespace(String, String)}.
+     */
+    public Map<String, String> getNamespaces() {
+        return unmodifiableNamespaces;
+    }
+
+    /**
+     * Returns the name for a <code>prefix:localName</code> or <code>{uri}localName</code> qualified name, resolved
+     * with the registered namespaces. The names are cached by qualified name until the next namespace registration,
+     * so that repeated lookups neither parse the name nor create a new instance.
+     */
+    public Name getName(String qualifiedName) {
+        int version = namespacesVersion;
+        CachedName cachedName = names.get(qualifiedName);
+        if (cachedName != null && cachedName.namespacesVersion == version) {
+            return cachedName.name;
+        }
+        Name name = new Name(qualifiedName, namespaces, namespacePrefixes);
+        if (names.size() >= MAX_CACHED_NAMES) {
+            names.clear();
+        }
+        names.put(qualifiedName, new CachedName(name, version));
+        return name;
+    }
+
+    /**
+     * Registers a namespace, failing if the prefix is already mapped to another URI or the URI to another prefix.
+     * The check and the registration are atomic, so that concurrently parsed definitions can't register conflicting
+     * namespaces.
+     */
+    public void registerNamespace(String prefix, String uri) throws NamespaceException {
+        addNamespace(prefix, uri);
+    }
+
+    /**
+     * Registers a namespace like {@link #registerNamespace(String, String)}.
+     *
+     * @return true if the namespace was added, false if it was already registered
+     */
+    boolean addNamespace(String prefix, String uri) throws NamespaceException {
+        synchronized (namespaces) {
+            String existingUri = namespaces.get(prefix);
+            if (existingUri != null) {
+                if (!existingUri.equals(uri)) {
+                    throw new NamespaceException("prefix already declared");
+                }
+                return false;
+            }
+            if (namespacePrefixes.containsKey(uri)) {
+                throw new NamespaceException("uri already declared");
             }
+            namespaces.put(prefix, uri);
+            namespacePrefixes.put(uri, prefix);
+            namespacesVersion++;
+            return true;
         }
-        return new JahiaNodeTypeIterator(l.iterator(),l.size());
     }
 
-    public Map<String, String> getNamespaces() {
-        return namespaces;
+    /**
+     * Removes a namespace added by a batch of definitions that could not be loaded.
+     */
+    void unregisterNamespace(String prefix) {
+        synchronized (namespaces) {
+            String uri = namespaces.remove(prefix);
+            if (uri != null) {
+                namespacePrefixes.remove(uri);
+                namespacesVersion++;
+            }
+        }
     }
     public NodeTypeIterator getPrimaryNodeTypes() throws RepositoryException {
         return getPrimaryNodeTypes(null);
     }
 
     public NodeTypeIterator getPrimaryNodeTypes(List<String> systemIds) throws RepositoryException {
-        List<ExtendedNodeType> res = new ArrayList<ExtendedNodeType>();
-        for (Iterator<ExtendedNodeType> iterator = nodetypes.values().iterator(); iterator.hasNext();) {
-            ExtendedNodeType nt = iterator.next();
-            if (!nt.isMixin() && (systemIds == null || systemIds.contains(nt.getSystemId()))) {
-                res.add(nt);
-            }
-        }
-        return new JahiaNodeTypeIterator(res.iterator(), res.size());
+        return createIterator(getSnapshot().get(systemIds, Boolean.FALSE));
     }
 
     public NodeTypeIterator getMixinNodeTypes() throws RepositoryException {
@@ -167,29 +315,87 @@ public class NodeTypeRegistry implements NodeTypeManager {
     }
 
     public NodeTypeIterator getMixinNodeTypes(List<String> systemIds) throws RepositoryException {
-        List<ExtendedNodeType> res = new ArrayList<ExtendedNodeType>();
-        for (Iterator<ExtendedNodeType> iterator = nodetypes.values().iterator(); iterator.hasNext();) {
-            ExtendedNodeType nt = iterator.next();
-            if (nt.isMixin() && (systemIds == null || systemIds.contains(nt.getSystemId()))) {
-                res.add(nt);
+        return createIterator(getSnapshot().get(systemIds, Boolean.TRUE));
+    }
+
+    private NodeTypeIterator createIterator(List<ExtendedNodeType> nodeTypes) {
+        return new JahiaNodeTypeIterator(nodeTypes.iterator(), nodeTypes.size());
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot currentSnapshot = snapshot;
+        if (currentSnapshot == null) {
+            synchronized (registrationLock) {
+                currentSnapshot = snapshot;
+                if (currentSnapshot == null) {
+                    currentSnapshot = new Snapshot(nodetypes.values());
+                    snapshot = currentSnapshot;
+                }
             }
         }
-        return new JahiaNodeTypeIterator(res.iterator(), res.size());
+        return currentSnapshot;
     }
 
     public void addNodeType(Name name, ExtendedNodeType nodeType) {
-        if (nodetypes.containsKey(name)) {
-            nodeTypesList.remove(nodetypes.get(name));
+        synchronized (registrationLock) {
+            // a replaced node type is moved to the end of the registration order
+            nodetypes.put(name, new Registration(nodeType, registrationSequence.incrementAndGet()));
+            snapshot = null;
         }
-        nodeTypesList.add(nodeType);
-        nodetypes.put(name, nodeType);
+        invalidateImplicitSupertype(name);
+    }
+
+    /**
+     * The node types keep their supertypes and subtypes once computed, and invalidate them along the declared type
+     * hierarchy when their declared supertypes are resolved. Only nt:base is looked up by name, as the implicit
+     * supertype of the primary types, so that all the node types must be invalidated when it is added or removed.
+     */
+    private void invalidateImplicitSupertype(Name name) {
+        if (!Constants.NT_BASE.equals(name.toString())) {
+            return;
+        }
+        for (Registration registration : nodetypes.values()) {
+            registration.nodeType.invalidateHierarchy();
+        }
+    }
+
+    /**
+     * Returns the numeric identifier of the given node type name, used to store the names of the supertypes of a
+     * node type as a bit set. Identifiers are never reused, even if the node type is removed.
+     */
+    int getNodeTypeId(String name) {
+        Integer id = nodeTypeIds.get(name);
+        if (id == null) {
+            synchronized (nodeTypeIds) {
+                id = nodeTypeIds.get(name);
+                if (id == null) {
+                    id = nodeTypeIds.size();
+                    nodeTypeIds.put(name, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns the numeric identifier of the given node type name, or -1 if no node type with this name was ever
+     * part of a type hierarchy.
+     */
+    int findNodeTypeId(String name) {
+        Integer id = nodeTypeIds.get(name);
+        return id != null ? id : -1;
     }
 
     public void addMixinExtension(ExtendedNodeType mixin, ExtendedNodeType baseType) {
-        if (!mixinExtensions.containsKey(baseType)) {
-            mixinExtensions.put(baseType, new HashSet<ExtendedNodeType>());
+        Set<ExtendedNodeType> mixins = mixinExtensions.get(baseType);
+        if (mixins == null) {
+            mixins = Collections.newSetFromMap(new ConcurrentHashMap<ExtendedNodeType, Boolean>());
+            Set<ExtendedNodeType> existingMixins = mixinExtensions.putIfAbsent(baseType, mixins);
+            if (existingMixins != null) {
+                mixins = existingMixins;
+            }
         }
-        mixinExtensions.get(baseType).add(mixin);
+        mixins.add(mixin);
     }
 
     public Map<ExtendedNodeType, Set<ExtendedNodeType>> getMixinExtensions() {
@@ -198,10 +404,15 @@ public class NodeTypeRegistry implements NodeTypeManager {
 
     public void addTypedItem(ExtendedItemDefinition itemDef) {
         final String type = itemDef.getItemType();
-        if (!typedItems.containsKey(type)) {
-            typedItems.put(type, new HashSet<ExtendedItemDefinition>());
+        Set<ExtendedItemDefinition> items = typedItems.get(type);
+        if (items == null) {
+            items = Collections.newSetFromMap(new ConcurrentHashMap<ExtendedItemDefinition, Boolean>());
+            Set<ExtendedItemDefinition> existingItems = typedItems.putIfAbsent(type, items);
+            if (existingItems != null) {
+                items = existingItems;
+            }
         }
-        typedItems.get(type).add(itemDef);
+        items.add(itemDef);
     }
 
     public Map<String, Set<ExtendedItemDefinition>> getTypedItems() {
@@ -209,15 +420,17 @@ public class NodeTypeRegistry implements NodeTypeManager {
     }
 
     public void unregisterNodeType(Name name) {
-        ExtendedNodeType nt = nodetypes.remove(name);
-        nodeTypesList.remove(nt);
+        synchronized (registrationLock) {
+            nodetypes.remove(name);
+            snapshot = null;
+        }
+        invalidateImplicitSupertype(name);
     }
 
     public void unregisterNodeTypes(String systemId) {
-        for (Name n : new HashSet<Name>(nodetypes.keySet())) {
-            ExtendedNodeType nt = nodetypes.get(n);
-            if (systemId.equals(nt.getSystemId())) {
-                unregisterNodeType(n);
+        for (Map.Entry<Name, Registration> registration : nodetypes.entrySet()) {
+            if (systemId.equals(registration.getValue().nodeType.getSystemId())) {
+                unregisterNodeType(registration.getKey());
             }
         }
     }
@@ -272,7 +485,7 @@ public class NodeTypeRegistry implements NodeTypeManager {
     }
 
     public boolean hasNodeType(String name) {
-        return nodetypes.get(new Name(name, namespaces)) != null;
+        return nodetypes.containsKey(getName(name));
     }
 
     public NodeTypeTemplate createNodeTypeTemplate() throws UnsupportedRepositoryOperationException, RepositoryException {
@@ -300,9 +513,9 @@ public class NodeTypeRegistry implements NodeTypeManager {
     }
 
     public void unregisterNodeType(String name) throws ConstraintViolationException {
-        Name n = new Name(name, namespaces);
+        Name n = getName(name);
         if (nodetypes.containsKey(n)) {
-            for (ExtendedNodeType type : nodeTypesList) {
+            for (ExtendedNodeType type : getSnapshot().get(null, null)) {
                 if (!type.getName().equals(name)) {
                     for (ExtendedNodeType nt : type.getSupertypes()) {
                         if (nt.getName().equals(name)) {
@@ -321,7 +534,7 @@ public class NodeTypeRegistry implements NodeTypeManager {
                     }
                 }
             }
-            nodeTypesList.remove(nodetypes.remove(n));
+            unregisterNodeType(n);
         }
     }
 
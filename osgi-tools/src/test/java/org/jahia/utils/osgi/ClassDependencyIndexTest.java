@@ -0,0 +1,116 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Unit test for the class dependency index, checking that it finds the same classes as the BND based search
+ */
+public class ClassDependencyIndexTest {
+
+    @Test
+    public void testFindClassesUsingPackage() throws Exception {
+        File classesDirectory = new File(ClassDependencyIndex.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        ClassDependencyIndex classDependencyIndex = ClassDependencyIndex.getIndex(classesDirectory);
+        Assert.assertSame("Index should be cached", classDependencyIndex, ClassDependencyIndex.getIndex(classesDirectory));
+        Assert.assertTrue("Referenced packages are not properly extracted",
+                classDependencyIndex.getReferencedPackages("org.jahia.utils.osgi.ClassDependencyIndex").contains("aQute.bnd.osgi"));
+
+        ClassDependencyIndex.ClassPath classPath = new ClassDependencyIndex.ClassPath(new ArrayList<String>());
+        try {
+            Set<String> classes = classDependencyIndex.findClassesUsingPackage("org.jdom2", classPath);
+            // uses the package through its super class only
+            Assert.assertTrue("Class using package through its super class not found",
+                    classes.contains("org.jahia.utils.osgi.parsers.JCRImportXmlFileParser"));
+            Assert.assertEquals("Index and BND should find the same classes",
+                    ClassDependencyTracker.findDependencyInJarUsingBND(classesDirectory, "org.jdom2", new ArrayList<String>()), classes);
+            Assert.assertTrue("No class should use a missing package",
+                    classDependencyIndex.findClassesUsingPackage("org.jahia.missing", classPath).isEmpty());
+        } finally {
+            classPath.close();
+        }
+    }
+
+    @Test
+    public void testClassDirectoryChanges() throws Exception {
+        File directory = File.createTempFile("class-dependency-index", "");
+        directory.delete();
+        File packageDirectory = new File(directory, "org/jahia/utils/osgi");
+        packageDirectory.mkdirs();
+        try {
+            copyClassFile(PackageUtils.class, packageDirectory);
+            ClassDependencyIndex classDependencyIndex = ClassDependencyIndex.getIndex(directory, ClassDependencyIndex.Engine.CONSTANT_POOL);
+            Assert.assertEquals(Collections.singleton(PackageUtils.class.getName()), classDependencyIndex.getClassNames());
+            Assert.assertSame("Index should be cached", classDependencyIndex,
+                    ClassDependencyIndex.getIndex(directory, ClassDependencyIndex.Engine.CONSTANT_POOL));
+
+            // only the sub-directory changes, the indexed directory itself keeps its modification date and size
+            long directoryLastModified = directory.lastModified();
+            copyClassFile(ClassDependencyIndex.class, packageDirectory);
+            directory.setLastModified(directoryLastModified);
+            ClassDependencyIndex updatedClassDependencyIndex = ClassDependencyIndex.getIndex(directory, ClassDependencyIndex.Engine.CONSTANT_POOL);
+            Assert.assertNotSame("Index of a modified directory should be rebuilt", classDependencyIndex, updatedClassDependencyIndex);
+            Assert.assertEquals(new TreeSet<String>(Arrays.asList(ClassDependencyIndex.class.getName(), PackageUtils.class.getName())),
+                    new TreeSet<String>(updatedClassDependencyIndex.getClassNames()));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    private void copyClassFile(Class<?> clazz, File packageDirectory) throws Exception {
+        String classFileName = clazz.getSimpleName() + ".class";
+        FileUtils.copyURLToFile(clazz.getResource(classFileName), new File(packageDirectory, classFileName));
+    }
+
+}
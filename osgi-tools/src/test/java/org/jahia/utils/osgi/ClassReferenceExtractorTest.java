@@ -0,0 +1,103 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi;
+
+import aQute.bnd.osgi.Analyzer;
+import junit.framework.Assert;
+import org.jdom2.Element;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * Unit test for the class reference extractor, checking that it gives the same results as BND on real JARs
+ */
+public class ClassReferenceExtractorTest {
+
+    @Test
+    public void testExtractorParity() throws Exception {
+        // our own classes must give exactly the same references
+        assertParity(getClassPathElement(ClassDependencyIndex.class), true);
+        // BND 2.4 skips the interface bounds of generic type parameters (<T::Ljava/lang/Comparable;>), that the
+        // extractor references, so only check that nothing referenced by BND is missing
+        assertParity(getClassPathElement(Element.class), false);
+        assertParity(getClassPathElement(Analyzer.class), false);
+    }
+
+    @Test
+    public void testFindClassesUsingPackage() throws Exception {
+        File classesDirectory = getClassPathElement(ClassDependencyIndex.class);
+        for (String packageName : new String[]{"org.jdom2", "java.util", "org.jahia.utils.osgi.parsers.*"}) {
+            Assert.assertEquals("Engines should find the same classes using " + packageName,
+                    ClassDependencyTracker.findDependencyInJar(classesDirectory, packageName, new ArrayList<String>(), ClassDependencyIndex.Engine.BND),
+                    ClassDependencyTracker.findDependencyInJar(classesDirectory, packageName, new ArrayList<String>(), ClassDependencyIndex.Engine.CONSTANT_POOL));
+        }
+    }
+
+    private void assertParity(File jarFile, boolean exactReferences) throws Exception {
+        ClassDependencyIndex bndIndex = ClassDependencyIndex.build(jarFile, ClassDependencyIndex.Engine.BND);
+        ClassDependencyIndex constantPoolIndex = ClassDependencyIndex.build(jarFile, ClassDependencyIndex.Engine.CONSTANT_POOL);
+        Assert.assertFalse("No class found in " + jarFile, bndIndex.getClassNames().isEmpty());
+        Assert.assertEquals("Classes of " + jarFile + " are not the same", bndIndex.getClassNames(), constantPoolIndex.getClassNames());
+        for (String className : bndIndex.getClassNames()) {
+            Assert.assertEquals("Super class of " + className + " is not the same",
+                    bndIndex.getSuperClassName(className), constantPoolIndex.getSuperClassName(className));
+            Set<String> bndReferencedPackages = bndIndex.getReferencedPackages(className);
+            Set<String> referencedPackages = constantPoolIndex.getReferencedPackages(className);
+            if (exactReferences) {
+                Assert.assertEquals("References of " + className + " are not the same", bndReferencedPackages, referencedPackages);
+            } else {
+                Assert.assertTrue("References of " + className + " are missing " + bndReferencedPackages,
+                        referencedPackages.containsAll(bndReferencedPackages));
+            }
+        }
+    }
+
+    private File getClassPathElement(Class<?> clazz) throws Exception {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Differential test checking that the {@link JspDirectiveScanner} extracts exactly the same values as the
+ * {@link JspFileParser} regular expressions.
+ */
+public class JspDirectiveScannerTest {
+
+    private static final String[] CORPUS = new String[] {
+            "<%@ page import=\"org.jahia.services.content.JCRNodeWrapper\" %>",
+            "<%@page import=\"java.util.List,org.jahia.utils.Url\"%>",
+            "<%@ page language=\"java\" contentType=\"text/html;charset=UTF-8\" import=\"org.a.A\" import=\"org.b.B\" %>",
+            "<%@ page import=\"org.a.A\" import=\"org.b.B %>",
+            "<%@ page import=\"org.a.A\" % >",
+            "<%@ page\n\timport=\"org.a.A\"\n%>",
+            "<%@ pageEncoding=\"UTF-8\" import=\"org.a.A\"%>",
+            "<%@ taglib prefix=\"c\" uri=\"http://java.sun.com/jsp/jstl/core\" %>",
+            "<%@taglib uri=\"http://www.jahia.org/tags/jcr\" prefix=\"jcr\"%><%@ taglib uri=\"a\" uri=\"b\"%>",
+            "<%@ taglib tagdir=\"/WEB-INF/tags\" prefix=\"t\" %>",
+            "<%--@elvariable id=\"currentNode\" type=\"org.jahia.services.content.JCRNodeWrapper\"--%>",
+            "<%-- @elvariable id=\"x\" type=\"org.a.A\" --%>",
+            "<% --@elvariable id=\"renderContext\" type=\"org.jahia.services.render.RenderContext\" -- %>",
+            "<%--@elvariable id=\"a\" type=\"org.a.A\" type=\"org.b.B\" --%> trailing \" --%>",
+            "<%--@elvariable id=\"a\" type=\"org.a.A\"\n --%>",
+            "<%--@elvariable id=\"a\"\n type=\"org.a.A\" --%>",
+            "<jsp:useBean id=\"bean\" class=\"org.jahia.Bean\" scope=\"request\"/>",
+            "<jsp:useBean id='bean' type='org.jahia.Type' class=\"org.jahia.Bean\" /> text <br/>",
+            "<jsp:useBean id=\"bean\" class=\"org.jahia.Bean\">\n</jsp:useBean>",
+            "<jsp:useBean a:class=\"org.x.X\" class = 'org.y.Y' type=\"org.z.Z'/>",
+            "<jsp:useBean class=x=\"org.a.A\" type==\"org.b.B\" class=\"\"/>",
+            "<jsp:useBean  =\"org.a.A\" class=\"org.c.C\"/><jsp:useBean type=\"org.d.D\"/>",
+            "<%@ page import=\"org.a.A\" %><%--@elvariable type=\"org.b.B\" --%><jsp:useBean class=\"org.c.C\"/><%@ taglib uri=\"u\" %>",
+            "<%@ page <%@ page import=\"org.a.A\" %>",
+            "<% <%@ taglib uri=\"u\"%>",
+            "<%@ page import=\"org.a.A\"",
+            "<jsp:useBean",
+            "<%--@elvariable",
+            "\u2028<jsp:useBean class=\"org.a.A\"\u2028/>\u0085<jsp:useBean class=\"org.b.B\"/>",
+    };
+
+    private static final String[] FRAGMENTS = new String[] {
+            "<", "<%", "<%@", "%>", "%", ">", "/>", " ", "\n", "\r", "\t", "\"", "'", "=", ":", "-", "--", "--%>",
+            "page", "taglib", " import=\"", " uri=\"", "--@elvariable", "type=\"", "<jsp:useBean", " class=\"",
+            " type='", "org.a.A", "org.b.B", "http://u", "id=\"x\"", "a:", "\u0085", "\u2028"
+    };
+
+    @Test
+    public void testCorpus() throws IOException {
+        for (String jsp : CORPUS) {
+            assertSameResults(jsp);
+        }
+        InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("org/jahia/utils/osgi/parsers/test.jsp");
+        try {
+            assertSameResults(IOUtils.toString(inputStream));
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    @Test
+    public void testRandomContent() {
+        Random random = new Random(20190402L);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder jsp = new StringBuilder();
+            int fragmentCount = random.nextInt(30);
+            for (int j = 0; j < fragmentCount; j++) {
+                jsp.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertSameResults(jsp.toString());
+        }
+    }
+
+    private void assertSameResults(String jsp) {
+        JspDirectiveScanner scanner = new JspDirectiveScanner();
+        scanner.scan(jsp.toCharArray(), jsp.length());
+        Assert.assertEquals("Page imports for " + jsp, find(JspFileParser.JSP_PAGE_IMPORT_PATTERN, jsp), scanner.getPageImports());
+        Assert.assertEquals("Type hints for " + jsp, find(JspFileParser.IDEA_TYPE_HINT_PATTERN, jsp), scanner.getTypeHints());
+        Assert.assertEquals("useBean classes for " + jsp, findUseBeanClasses(jsp), scanner.getUseBeanClasses());
+        Assert.assertEquals("Taglib URIs for " + jsp, find(JspFileParser.JSP_TAGLIB_PATTERN, jsp), scanner.getTaglibUris());
+    }
+
+    private List<String> find(Pattern pattern, String jsp) {
+        List<String> values = new ArrayList<String>();
+        Matcher matcher = pattern.matcher(jsp);
+        while (matcher.find()) {
+            values.add(matcher.group(1));
+        }
+        return values;
+    }
+
+    private List<String> findUseBeanClasses(String jsp) {
+        List<String> values = new ArrayList<String>();
+        for (String useBeanAttributes : find(JspFileParser.JSP_USEBEAN_TAG_PATTERN, jsp)) {
+            Matcher tagAttributesMatcher = JspFileParser.TAG_ATTRIBUTES_PATTERN.matcher(useBeanAttributes);
+            while (tagAttributesMatcher.find()) {
+                String attributeName = tagAttributesMatcher.group(1);
+                if ("class".equals(attributeName) || "type".equals(attributeName)) {
+                    values.add(tagAttributesMatcher.group(2));
+                }
+            }
+        }
+        return values;
+    }
+
+}
@@ -51,6 +51,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * Unit test for parsers.
@@ -122,6 +124,51 @@ public class ParsersTest {
 
     }
 
+    @Test
+    public void testParserDispatch() {
+        Parsers parsers = new Parsers();
+        Assert.assertTrue(parsers.canParseForPhase(1, "test.jsp"));
+        Assert.assertTrue(parsers.canParseForPhase(1, "META-INF/spring/test.XML"));
+        Assert.assertTrue(parsers.canParseForPhase(0, "META-INF/functions.tld"));
+        Assert.assertFalse(parsers.canParseForPhase(1, "org/jahia/Test.class"));
+        Assert.assertFalse(parsers.canParseForPhase(5, "test.jsp"));
+
+        // parser registered in the META-INF/jahia-file-parsers.properties test resource
+        Assert.assertTrue(parsers.canParseForPhase(0, "test.testext"));
+        Assert.assertFalse(parsers.canParseForPhase(1, "test.testext"));
+
+        // parsers that don't declare extensions are asked about all the files
+        parsers.addParserToPhase(1, new AnyFileParser());
+        Assert.assertTrue(parsers.canParseForPhase(1, "org/jahia/Test.class"));
+        Assert.assertTrue(parsers.canParseForPhase(1, "LICENSE"));
+    }
+
+    public static class TestExtensionFileParser extends AbstractFileParser implements ExtensionAwareFileParser {
+
+        public Set<String> getFileExtensions() {
+            return Collections.singleton("testext");
+        }
+
+        public boolean canParse(String fileName) {
+            return true;
+        }
+
+        public boolean parse(String fileName, InputStream inputStream, String fileParent, boolean externalDependency, boolean optionalDependency, String version, ParsingContext parsingContext) {
+            return false;
+        }
+    }
+
+    private static class AnyFileParser extends AbstractFileParser {
+
+        public boolean canParse(String fileName) {
+            return true;
+        }
+
+        public boolean parse(String fileName, InputStream inputStream, String fileParent, boolean externalDependency, boolean optionalDependency, String version, ParsingContext parsingContext) {
+            return false;
+        }
+    }
+
     private void parseFile(String fileName, InputStream inputStream, String fileParent, boolean externalDependency, boolean optionalDependency, String version, Logger logger, ParsingContext parsingContext) throws IOException {
         try {
         Parsers.getInstance().parse(0, fileName, inputStream, fileParent, externalDependency, optionalDependency, version, logger, parsingContext);
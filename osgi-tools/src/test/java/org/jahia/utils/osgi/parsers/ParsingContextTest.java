@@ -0,0 +1,157 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for the package import handling of the parsing context.
+ */
+public class ParsingContextTest {
+
+    @Test
+    public void testPackageImportMerge() {
+        ParsingContext parsingContext = new ParsingContext();
+        PackageInfo firstImport = new PackageInfo("org.a", "1.0", false, "a.jsp", parsingContext);
+        PackageInfo childImport = new PackageInfo("org.c", "1.0", false, "c.jsp", null);
+        parsingContext.addPackageImport(new PackageInfo("org.d", null, false, "d.jsp", parsingContext));
+        parsingContext.addPackageImport(childImport);
+        parsingContext.addPackageImport(firstImport);
+        parsingContext.addPackageImport(new PackageInfo("org.b", "1.0", false, "b.jsp", parsingContext));
+        parsingContext.addPackageImport(new PackageInfo("java.util", "1.0", false, "b.jsp", parsingContext));
+
+        parsingContext.addPackageImport(new PackageInfo("org.c", "1.0", true, "c2.jsp", parsingContext));
+        parsingContext.addPackageImport(new PackageInfo("org.c", "1.0", false, "c3.jsp", parsingContext), true);
+
+        List<String> packageNames = new ArrayList<String>();
+        PackageInfo mergedImport = null;
+        for (PackageInfo packageImport : parsingContext.getPackageImports()) {
+            packageNames.add(packageImport.getName());
+            if (packageImport.getName().equals("org.c")) {
+                mergedImport = packageImport;
+            }
+        }
+        Assert.assertEquals(Arrays.asList("org.a", "org.b", "org.c", "org.d"), packageNames);
+        Assert.assertNotNull(mergedImport);
+        Assert.assertTrue("Merged import should be optional", mergedImport.isOptional());
+        Assert.assertEquals(Arrays.asList("c.jsp", "c2.jsp", "c3.jsp"), new ArrayList<String>(mergedImport.getSourceLocations()));
+        Assert.assertSame(parsingContext, mergedImport.getOrigin());
+
+        // the instances that were added as is must not be modified by the merge
+        Assert.assertEquals(Arrays.asList("c.jsp"), new ArrayList<String>(childImport.getSourceLocations()));
+        Assert.assertFalse(childImport.isOptional());
+        Assert.assertEquals(Arrays.asList("a.jsp"), new ArrayList<String>(firstImport.getSourceLocations()));
+        Assert.assertFalse(firstImport.isOptional());
+
+        Assert.assertTrue(parsingContext.getPackageImports().contains(new PackageInfo("org.b")));
+        Assert.assertTrue(parsingContext.getPackageImports().remove(new PackageInfo("org.b", "1.0", false, "x.jsp", null)));
+        Assert.assertFalse(parsingContext.getPackageImports().contains(new PackageInfo("org.b")));
+        Assert.assertEquals(3, parsingContext.getPackageImports().size());
+    }
+
+    @Test
+    public void testPackageImportMergeWithoutVersion() {
+        ParsingContext parsingContext = new ParsingContext();
+        parsingContext.addPackageImport(new PackageInfo("org.a", "1.0", false, "a.jsp", null));
+        // a package without a version matches the versioned import, so its source locations must be merged into it
+        parsingContext.addPackageImport(new PackageInfo("org.a", null, true, "a2.jsp", parsingContext));
+
+        Assert.assertEquals(1, parsingContext.getPackageImports().size());
+        PackageInfo mergedImport = parsingContext.getPackageImports().iterator().next();
+        Assert.assertEquals("1.0", mergedImport.getVersion());
+        Assert.assertTrue("Merged import should be optional", mergedImport.isOptional());
+        Assert.assertEquals(Arrays.asList("a.jsp", "a2.jsp"), new ArrayList<String>(mergedImport.getSourceLocations()));
+        Assert.assertSame(parsingContext, mergedImport.getOrigin());
+    }
+
+    @Test
+    public void testPackageInfoIndexedSetWithSeveralVersions() {
+        PackageInfoIndexedSet packageInfos = new PackageInfoIndexedSet();
+        PackageInfo firstVersion = new PackageInfo("org.a", "1.0", false, "a1.jsp", null);
+        PackageInfo secondVersion = new PackageInfo("org.a", "2.0", false, "a2.jsp", null);
+        PackageInfo thirdVersion = new PackageInfo("org.a", "3.0", false, "a3.jsp", null);
+        Assert.assertTrue(packageInfos.add(secondVersion));
+        Assert.assertTrue(packageInfos.add(firstVersion));
+        Assert.assertTrue(packageInfos.add(thirdVersion));
+        Assert.assertFalse(packageInfos.add(new PackageInfo("org.a", "2.0", false, "other.jsp", null)));
+        Assert.assertEquals(3, packageInfos.getByName("org.a").size());
+
+        Assert.assertSame(secondVersion, packageInfos.getEqual(new PackageInfo("org.a", "2.0", false, "x.jsp", null)));
+        PackageInfo unversionedPackageInfo = new PackageInfo("org.a");
+        Assert.assertEquals(packageInfos.contains(unversionedPackageInfo), packageInfos.getEqual(unversionedPackageInfo) != null);
+        Assert.assertNull(packageInfos.getEqual(new PackageInfo("org.a", "4.0", false, "x.jsp", null)));
+
+        Assert.assertTrue(packageInfos.remove(new PackageInfo("org.a", "2.0", false, "x.jsp", null)));
+        Assert.assertFalse(packageInfos.contains(new PackageInfo("org.a", "2.0", false, "x.jsp", null)));
+        Assert.assertEquals(Arrays.asList(firstVersion, thirdVersion), new ArrayList<PackageInfo>(packageInfos));
+        Assert.assertEquals(Arrays.asList(firstVersion, thirdVersion), packageInfos.getByName("org.a"));
+
+        Assert.assertTrue(packageInfos.remove(firstVersion));
+        Assert.assertTrue(packageInfos.remove(thirdVersion));
+        Assert.assertTrue(packageInfos.isEmpty());
+        Assert.assertTrue(packageInfos.getByName("org.a").isEmpty());
+    }
+
+    @Test
+    public void testSplitPackageDetection() {
+        ParsingContext parsingContext = new ParsingContext();
+        parsingContext.addPackageImport(new PackageInfo("org.a", "1.0", false, "a.jsp", parsingContext));
+        parsingContext.addPackageImport(new PackageInfo("org.b", "1.0", false, "b.jsp", parsingContext));
+        parsingContext.addLocalPackage(new PackageInfo("org.a", "1.0", false, "org/a/A.class", parsingContext));
+        parsingContext.postProcess();
+
+        Assert.assertEquals(1, parsingContext.getSplitPackages().size());
+        PackageInfo splitPackage = parsingContext.getSplitPackages().iterator().next();
+        Assert.assertEquals("org.a", splitPackage.getName());
+        Assert.assertTrue(splitPackage.getSourceLocations().contains("a.jsp"));
+        Assert.assertEquals(1, parsingContext.getPackageImports().size());
+        Assert.assertEquals("org.b", parsingContext.getPackageImports().iterator().next().getName());
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for the compiled XPath expression cache
+ */
+public class XPathCacheTest {
+
+    private static final String SPRING_BEANS_NAMESPACE_URI = "http://www.springframework.org/schema/beans";
+
+    @Test
+    public void testCompilationsAvoided() throws Exception {
+        XPathCache xPathCache = new XPathCache(10);
+        Document document = new SAXBuilder().build(new StringReader("<beans xmlns=\"" + SPRING_BEANS_NAMESPACE_URI + "\"><bean class=\"a.B\"/><bean class=\"c.D\"/></beans>"));
+        Map<String, String> namespaceBindings = new HashMap<String, String>();
+        namespaceBindings.put("beans", SPRING_BEANS_NAMESPACE_URI);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(2, xPathCache.selectNodes(document.getRootElement(), "//beans:bean/@class", namespaceBindings).size());
+        }
+        Assert.assertEquals(1, xPathCache.getCompilations());
+        Assert.assertEquals(2, xPathCache.getAvoidedCompilations());
+
+        // other namespace bindings need another compiled expression
+        Map<String, String> otherNamespaceBindings = new HashMap<String, String>();
+        otherNamespaceBindings.put("beans", "http://www.example.com/beans");
+        Assert.assertEquals(0, xPathCache.selectNodes(document.getRootElement(), "//beans:bean/@class", otherNamespaceBindings).size());
+        Assert.assertEquals(2, xPathCache.getCompilations());
+        Assert.assertEquals(2, xPathCache.getEntryCount());
+    }
+
+    @Test
+    public void testMissingPrefix() throws Exception {
+        XPathCache xPathCache = new XPathCache(10);
+        Element rootElement = new SAXBuilder().build(new StringReader("<beans><bean class=\"a.B\"/></beans>")).getRootElement();
+        Map<String, String> noNamespaceBindings = Collections.emptyMap();
+        for (int i = 0; i < 2; i++) {
+            try {
+                xPathCache.selectNodes(rootElement, "//beans:bean/@class", noNamespaceBindings);
+                Assert.fail("Expression with an unbound prefix should fail");
+            } catch (JDOMException e) {
+                // expected, as without the cache
+            }
+        }
+        Assert.assertEquals(1, xPathCache.selectNodes(rootElement, "//bean/@class", noNamespaceBindings).size());
+    }
+
+    @Test
+    public void testConcurrentEvaluations() throws Exception {
+        final XPathCache xPathCache = new XPathCache(10);
+        final Map<String, String> namespaceBindings = new HashMap<String, String>();
+        namespaceBindings.put("beans", SPRING_BEANS_NAMESPACE_URI);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            StringBuilder beans = new StringBuilder("<beans xmlns=\"" + SPRING_BEANS_NAMESPACE_URI + "\">");
+            for (int j = 0; j <= i; j++) {
+                beans.append("<bean class=\"a.B").append(j).append("\"/>");
+            }
+            final Document document = new SAXBuilder().build(new StringReader(beans.append("</beans>").toString()));
+            final int expectedCount = i + 1;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int k = 0; k < 500; k++) {
+                            Assert.assertEquals(expectedCount, xPathCache.selectNodes(document.getRootElement(), "//beans:bean/@class", namespaceBindings).size());
+                        }
+                        Assert.assertEquals(1, xPathCache.getEntryCount());
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(Collections.emptyList(), failures);
+        // each thread compiles the expression once
+        Assert.assertEquals(threads.size(), xPathCache.getCompilations());
+        Assert.assertEquals(0, xPathCache.getEntryCount());
+    }
+}
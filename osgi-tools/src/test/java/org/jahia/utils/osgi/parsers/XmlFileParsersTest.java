@@ -0,0 +1,162 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jdom2.Document;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Checks that the streaming reference extraction of the XML file parsers gives the same results as their JDOM
+ * XPath implementation.
+ */
+public class XmlFileParsersTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlFileParsersTest.class);
+
+    @Test
+    public void testSpringContextStreaming() throws Exception {
+        ParsingContext parsingContext = assertSameReferences(new SpringContextXmlFileParser(), "spring-context.xml");
+        Assert.assertTrue("Missing class reference", parsingContext.getPackageImports().contains(new PackageInfo("org.jahia.test.helpers")));
+        Assert.assertTrue("Missing interface reference", parsingContext.getPackageImports().contains(new PackageInfo("org.jahia.test.api")));
+        Assert.assertTrue("Missing package reference", parsingContext.getPackageImports().contains(new PackageInfo("org.jahia.test.scan")));
+        Assert.assertFalse("Commented out reference", parsingContext.getPackageImports().contains(new PackageInfo("org.jahia.test.commented")));
+    }
+
+    @Test
+    public void testJCRImportStreaming() throws Exception {
+        ParsingContext parsingContext = assertSameReferences(new JCRImportXmlFileParser(), "repository.xml");
+        Assert.assertTrue("Missing content type reference", parsingContext.getContentTypeReferences().contains("jnt:pageTemplate"));
+        Assert.assertTrue("Missing content type reference", parsingContext.getContentTypeReferences().contains("jmix:tagged"));
+        Assert.assertTrue("Missing content type reference", parsingContext.getContentTypeReferences().contains("jmix:other"));
+    }
+
+    @Test
+    public void testJpdlStreaming() throws Exception {
+        ParsingContext parsingContext = assertSameReferences(new JpdlXmlFileParser(), "translation.jpdl.xml");
+        Assert.assertTrue("Missing import package", parsingContext.getPackageImports().contains(new PackageInfo("org.jahia.services.workflow.jbpm")));
+    }
+
+    @Test
+    public void testRequiredNamespace() throws Exception {
+        SpringContextXmlFileParser parser = new SpringContextXmlFileParser();
+        parser.setLogger(logger);
+        byte[] fileBytes = getResourceBytes("repository.xml");
+        Assert.assertFalse("Spring parser should not process a JCR import file",
+                parser.parse("repository.xml", new ByteArrayInputStream(fileBytes), "test", false, false, "1.0", new ParsingContext()));
+    }
+
+    @Test
+    public void testFallbackFromUnmarkableStream() throws Exception {
+        SpringContextXmlFileParser parser = new SpringContextXmlFileParser();
+        parser.setLogger(logger);
+        // the streaming reader doesn't load DTDs, so the entity makes it fail after a few buffers have been read
+        String fileContent = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<!DOCTYPE beans [<!ENTITY scan \"org.jahia.test.entity\">]>\n" +
+                "<beans xmlns=\"http://www.springframework.org/schema/beans\"\n" +
+                "       xmlns:context=\"http://www.springframework.org/schema/context\">\n" +
+                "    <!-- " + StringUtils.repeat("padding ", 4096) + "-->\n" +
+                "    <bean class=\"org.jahia.test.helpers.Helper\"/>\n" +
+                "    <context:component-scan base-package=\"&scan;\"/>\n" +
+                "</beans>\n";
+        final boolean[] closed = new boolean[1];
+        InputStream inputStream = new FilterInputStream(new ByteArrayInputStream(fileContent.getBytes("UTF-8"))) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        ParsingContext parsingContext = new ParsingContext();
+        Assert.assertTrue(parser.parse("entity.xml", inputStream, "test", false, false, "1.0", parsingContext));
+        Assert.assertTrue("Missing class reference", parsingContext.getPackageImports().contains(new PackageInfo("org.jahia.test.helpers")));
+        Assert.assertTrue("Missing package reference", parsingContext.getPackageImports().contains(new PackageInfo("org.jahia.test.entity")));
+        Assert.assertFalse("The parser must not close the stream of the caller", closed[0]);
+    }
+
+    private ParsingContext assertSameReferences(AbstractXmlFileParser parser, String resourceName) throws Exception {
+        parser.setLogger(logger);
+        byte[] fileBytes = getResourceBytes(resourceName);
+
+        ParsingContext streamingContext = new ParsingContext();
+        Assert.assertTrue(parser.parse(resourceName, new ByteArrayInputStream(fileBytes), "test", false, false, "1.0", streamingContext));
+
+        ParsingContext jdomContext = new ParsingContext();
+        Document document = new SAXBuilder().build(new ByteArrayInputStream(fileBytes));
+        Assert.assertTrue(parser.canParse(resourceName, document.getRootElement()));
+        parser.parse(resourceName, document.getRootElement(), "test", false, false, "1.0", jdomContext);
+
+        Assert.assertEquals(new ArrayList<PackageInfo>(jdomContext.getPackageImports()).toString(),
+                new ArrayList<PackageInfo>(streamingContext.getPackageImports()).toString());
+        Assert.assertEquals(jdomContext.getContentTypeReferences(), streamingContext.getContentTypeReferences());
+        Assert.assertFalse(streamingContext.getPackageImports().isEmpty() && streamingContext.getContentTypeReferences().isEmpty());
+        return streamingContext;
+    }
+
+    private byte[] getResourceBytes(String resourceName) throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("org/jahia/utils/osgi/parsers/" + resourceName);
+        try {
+            return IOUtils.toByteArray(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers.cnd;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for the concurrent loading of CND files
+ */
+public class CndBulkLoaderTest {
+
+    private static final String NAMESPACES = "<nt = 'http://www.jcp.org/jcr/nt/1.0'>\n" +
+            "<test = 'http://www.apache.org/jackrabbit/test'>\n";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("cnd-bulk-loader", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testLoadInAnyOrder() throws Exception {
+        Map<File, String> files = new LinkedHashMap<File, String>();
+        files.put(write("child.cnd", NAMESPACES +
+                "[test:child] > test:parent, test:mixin\n" +
+                "- test:ref (weakreference, picker[type='file']) < 'test:parent'\n" +
+                "+ * (test:parent)\n"), "child");
+        files.put(write("parent.cnd", NAMESPACES +
+                "[test:parent] > nt:base\n" +
+                "[test:mixin] mixin\n"), "parent");
+        files.put(write("base.cnd", "<nt = 'http://www.jcp.org/jcr/nt/1.0'>\n[nt:base]\n"), "base");
+
+        NodeTypeRegistry registry = new NodeTypeRegistry();
+        List<ExtendedNodeType> nodeTypes = new CndBulkLoader(registry, 3).load(files);
+
+        List<String> names = new ArrayList<String>();
+        for (ExtendedNodeType nodeType : nodeTypes) {
+            names.add(nodeType.getName());
+        }
+        Assert.assertEquals(4, names.size());
+        Assert.assertTrue(names.indexOf("nt:base") < names.indexOf("test:parent"));
+        Assert.assertTrue(names.indexOf("test:parent") < names.indexOf("test:child"));
+        Assert.assertTrue(names.indexOf("test:mixin") < names.indexOf("test:child"));
+        ExtendedNodeType child = registry.getNodeType("test:child");
+        Assert.assertTrue(child.isNodeType("test:parent"));
+        Assert.assertTrue(child.isNodeType("test:mixin"));
+        Assert.assertTrue(child.isNodeType("nt:base"));
+        Assert.assertEquals("child", child.getSystemId());
+    }
+
+    @Test
+    public void testUnresolvedReferencesAreReportedTogether() throws Exception {
+        Map<File, String> files = new LinkedHashMap<File, String>();
+        files.put(write("first.cnd", NAMESPACES + "[test:first] > test:missingSupertype\n"), "first");
+        files.put(write("second.cnd", NAMESPACES + "[test:second] > test:first\n" +
+                "[test:cycle1] > test:cycle2\n[test:cycle2] > test:cycle1\n"), "second");
+        files.put(write("third.cnd", NAMESPACES + "[test:third] mixin\n extends = test:missingExtended\n"), "third");
+
+        NodeTypeRegistry registry = new NodeTypeRegistry();
+        try {
+            new CndBulkLoader(registry, 2).load(files);
+            Assert.fail("The unresolved references should have been reported");
+        } catch (ParseException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("test:missingSupertype"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("test:missingExtended"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("test:cycle1"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("test:cycle2"));
+        }
+        Assert.assertFalse(registry.hasNodeType("test:second"));
+    }
+
+    @Test
+    public void testNamespacesAreRemovedOnFailure() throws Exception {
+        NodeTypeRegistry registry = new NodeTypeRegistry();
+        registry.registerNamespace("test", "http://www.apache.org/jackrabbit/test");
+        Map<File, String> files = new LinkedHashMap<File, String>();
+        files.put(write("valid.cnd", NAMESPACES + "<other = 'http://www.jahia.org/test/other'>\n" +
+                "[other:valid] > nt:base\n"), "valid");
+        files.put(write("invalid.cnd", NAMESPACES + "[test:invalid] > test:missingSupertype\n"), "invalid");
+        try {
+            new CndBulkLoader(registry, 2).load(files);
+            Assert.fail("The unresolved reference should have been reported");
+        } catch (ParseException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("test:missingSupertype"));
+        }
+        Assert.assertFalse(registry.getNamespaces().containsKey("other"));
+        Assert.assertFalse(registry.getNamespaces().containsKey("nt"));
+        Assert.assertEquals("http://www.apache.org/jackrabbit/test", registry.getNamespaces().get("test"));
+
+        // a single definition file failing to parse doesn't keep its namespaces either
+        File brokenFile = write("broken.cnd", "<broken = 'http://www.jahia.org/test/broken'>\n[broken:type] > nt:base\n- broken:property (notAType)\n");
+        try {
+            registry.getDefinitionsFromFile(brokenFile, "broken");
+            Assert.fail("The definitions should not have been parsed");
+        } catch (ParseException e) {
+            // expected
+        }
+        Assert.assertFalse(registry.getNamespaces().containsKey("broken"));
+    }
+
+    @Test
+    public void testParseWithoutRegistering() throws Exception {
+        Map<File, String> files = new LinkedHashMap<File, String>();
+        files.put(write("child.cnd", NAMESPACES + "[test:child] > test:parent\n"), "child");
+        files.put(write("other.cnd", NAMESPACES + "[test:other] > test:unknown\n"), "other");
+
+        NodeTypeRegistry registry = new NodeTypeRegistry();
+        List<ExtendedNodeType> nodeTypes = new CndBulkLoader(registry, 2).setRegister(false).load(files);
+        Assert.assertEquals(2, nodeTypes.size());
+        Assert.assertEquals("test:child", nodeTypes.get(0).getName());
+        Assert.assertEquals("test:other", nodeTypes.get(1).getName());
+        Assert.assertFalse(registry.hasNodeType("test:child"));
+        Assert.assertEquals("http://www.apache.org/jackrabbit/test", registry.getNamespaces().get("test"));
+
+        List<ExtendedNodeType> fileNodeTypes = registry.getDefinitionsFromFile(new File(directory, "other.cnd"), "other");
+        Assert.assertEquals(1, fileNodeTypes.size());
+        Assert.assertEquals("test:other", fileNodeTypes.get(0).getName());
+        Assert.assertEquals("test:unknown", fileNodeTypes.get(0).getDeclaredSupertypeNames()[0]);
+        Assert.assertFalse(registry.hasNodeType("test:other"));
+    }
+
+    @Test
+    public void testCompareWithSequentialLoading() throws Exception {
+        // a module-like set of definitions, each file depending on the types of the previous ones
+        Map<File, String> files = new LinkedHashMap<File, String>();
+        files.put(write("base.cnd", "<nt = 'http://www.jcp.org/jcr/nt/1.0'>\n[nt:base]\n"), "base");
+        for (int i = 0; i < 200; i++) {
+            StringBuilder cnd = new StringBuilder(NAMESPACES);
+            for (int j = 0; j < 20; j++) {
+                cnd.append("[test:type").append(i).append('_').append(j).append("] > ")
+                        .append(i > 0 ? "test:type" + (i - 1) + "_" + j : "nt:base").append('\n');
+                for (int k = 0; k < 10; k++) {
+                    cnd.append("- test:property").append(k).append(" (string) i18n < 'a', 'b', 'c'\n");
+                }
+                cnd.append("+ * (nt:base) = nt:base\n");
+            }
+            files.put(write("module" + i + ".cnd", cnd.toString()), "module" + i);
+        }
+
+        NodeTypeRegistry sequentialRegistry = new NodeTypeRegistry();
+        List<ExtendedNodeType> sequentialNodeTypes = new ArrayList<ExtendedNodeType>();
+        for (Map.Entry<File, String> file : files.entrySet()) {
+            Reader reader = new StringReader(FileUtils.readFileToString(file.getKey()));
+            JahiaCndReader cndReader = new JahiaCndReader(reader, file.getKey().getPath(), file.getValue(), sequentialRegistry);
+            cndReader.parse();
+            for (ExtendedNodeType nodeType : cndReader.getNodeTypesList()) {
+                nodeType.validate();
+            }
+            sequentialNodeTypes.addAll(cndReader.getNodeTypesList());
+        }
+
+        NodeTypeRegistry bulkRegistry = new NodeTypeRegistry();
+        List<ExtendedNodeType> bulkNodeTypes = new CndBulkLoader(bulkRegistry).load(files);
+
+        Assert.assertEquals(sequentialNodeTypes.size(), bulkNodeTypes.size());
+        for (ExtendedNodeType nodeType : sequentialNodeTypes) {
+            ExtendedNodeType bulkNodeType = bulkRegistry.getNodeType(nodeType.getName());
+            Assert.assertEquals(nodeType.getSupertypeSet().size(), bulkNodeType.getSupertypeSet().size());
+            Assert.assertEquals(nodeType.getPropertyDefinitions().length, bulkNodeType.getPropertyDefinitions().length);
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        FileUtils.writeStringToFile(file, content);
+        return file;
+    }
+
+}
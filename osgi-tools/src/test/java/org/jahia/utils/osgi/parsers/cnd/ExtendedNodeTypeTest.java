@@ -0,0 +1,180 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers.cnd;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import javax.jcr.nodetype.NodeTypeIterator;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit test for the supertypes and subtypes computed by the node types
+ */
+public class ExtendedNodeTypeTest {
+
+    private static final String NAMESPACES = "<nt = 'http://www.jcp.org/jcr/nt/1.0'>\n" +
+            "<test = 'http://www.apache.org/jackrabbit/test'>\n";
+
+    @Test
+    public void testTypeHierarchy() throws Exception {
+        NodeTypeRegistry registry = new NodeTypeRegistry();
+        parse(registry, "base", NAMESPACES +
+                "[nt:base]\n" +
+                "[test:a] > nt:base\n" +
+                "[test:mixin] mixin\n" +
+                "[test:b] > test:a, test:mixin\n" +
+                "[test:c] > test:b\n" +
+                "[test:unrelated] > nt:base\n");
+        assertSameAsTraversal(registry);
+        Set<ExtendedNodeType> unrelatedSupertypes = registry.getNodeType("test:unrelated").getSupertypeSet();
+        List<ExtendedNodeType> unrelatedSubtypes = registry.getNodeType("test:unrelated").getSubtypesAsList();
+
+        // new types extending the existing ones, after their supertypes and subtypes were computed
+        parse(registry, "extension", NAMESPACES +
+                "[test:mixin2] mixin\n" +
+                "[test:d] > test:c, test:mixin2\n" +
+                "[test:e] > test:a\n" +
+                "[test:f] > test:mixin2 mixin\n");
+        assertSameAsTraversal(registry);
+        Assert.assertTrue(registry.getNodeType("test:d").isNodeType("test:a"));
+        Assert.assertTrue(registry.getNodeType("test:a").getSubtypesAsList().contains(registry.getNodeType("test:d")));
+        Assert.assertTrue(registry.getNodeType("test:mixin2").getSubtypesAsList().contains(registry.getNodeType("test:f")));
+
+        // the supertypes of an existing type changed in place, its subtypes must see them
+        ExtendedNodeType e = registry.getNodeType("test:e");
+        Assert.assertFalse(e.isNodeType("test:mixin2"));
+        parse(registry, "subtype", NAMESPACES + "[test:g] > test:e\n");
+        Assert.assertFalse(registry.getNodeType("test:g").isNodeType("test:mixin2"));
+        e.setDeclaredSupertypes(new String[] {"test:a", "test:mixin2"});
+        e.validate();
+        assertSameAsTraversal(registry);
+        Assert.assertTrue(registry.getNodeType("test:g").isNodeType("test:mixin2"));
+
+        // a redefined type with other supertypes
+        parse(registry, "redefinition", NAMESPACES + "[test:b] > test:a, test:mixin2\n");
+        assertSameAsTraversal(registry);
+        Assert.assertTrue(registry.getNodeType("test:b").isNodeType("test:mixin2"));
+        Assert.assertFalse(registry.getNodeType("test:b").isNodeType("test:mixin"));
+
+        // the types outside of the modified hierarchy kept what they computed
+        Assert.assertSame(unrelatedSupertypes, registry.getNodeType("test:unrelated").getSupertypeSet());
+        Assert.assertSame(unrelatedSubtypes, registry.getNodeType("test:unrelated").getSubtypesAsList());
+    }
+
+    private void parse(NodeTypeRegistry registry, String systemId, String cnd) throws Exception {
+        JahiaCndReader reader = new JahiaCndReader(new StringReader(cnd), systemId + ".cnd", systemId, registry);
+        reader.parse();
+        for (ExtendedNodeType nodeType : reader.getNodeTypesList()) {
+            nodeType.validate();
+        }
+    }
+
+    /**
+     * Compares the computed supertypes, subtypes and isNodeType results of all the registered node types with the
+     * ones found by walking the declared type hierarchy.
+     */
+    private void assertSameAsTraversal(NodeTypeRegistry registry) throws NoSuchNodeTypeException {
+        List<ExtendedNodeType> nodeTypes = new ArrayList<ExtendedNodeType>();
+        for (NodeTypeIterator iterator = registry.getAllNodeTypes(); iterator.hasNext(); ) {
+            nodeTypes.add((ExtendedNodeType) iterator.nextNodeType());
+        }
+        for (ExtendedNodeType nodeType : nodeTypes) {
+            Assert.assertEquals("Supertypes of " + nodeType.getName(), new ArrayList<ExtendedNodeType>(getSupertypesByTraversal(registry, nodeType)),
+                    new ArrayList<ExtendedNodeType>(nodeType.getSupertypeSet()));
+            Assert.assertEquals("Subtypes of " + nodeType.getName(), getSubtypesByTraversal(nodeType), nodeType.getSubtypesAsList());
+            for (ExtendedNodeType otherNodeType : nodeTypes) {
+                Assert.assertEquals(nodeType.getName() + " is " + otherNodeType.getName(),
+                        isNodeTypeByTraversal(nodeType, otherNodeType.getName()), nodeType.isNodeType(otherNodeType.getName()));
+            }
+            Assert.assertFalse(nodeType.isNodeType("test:missing"));
+        }
+    }
+
+    private Set<ExtendedNodeType> getSupertypesByTraversal(NodeTypeRegistry registry, ExtendedNodeType nodeType) throws NoSuchNodeTypeException {
+        Set<ExtendedNodeType> supertypes = new LinkedHashSet<ExtendedNodeType>();
+        boolean primaryFound = false;
+        for (ExtendedNodeType supertype : nodeType.getDeclaredSupertypes()) {
+            if (supertype != null && !supertype.getNameObject().equals(nodeType.getNameObject())) {
+                supertypes.add(supertype);
+                supertypes.addAll(getSupertypesByTraversal(registry, supertype));
+                if (!supertype.isMixin()) {
+                    primaryFound = true;
+                }
+            }
+        }
+        if (!primaryFound && !Constants.NT_BASE.equals(nodeType.getName()) && !nodeType.isMixin()) {
+            supertypes.add(registry.getNodeType(Constants.NT_BASE));
+        }
+        return supertypes;
+    }
+
+    private List<ExtendedNodeType> getSubtypesByTraversal(ExtendedNodeType nodeType) {
+        List<ExtendedNodeType> subtypes = new ArrayList<ExtendedNodeType>();
+        for (Iterator<?> iterator = nodeType.getDeclaredSubtypes(); iterator.hasNext(); ) {
+            ExtendedNodeType subtype = (ExtendedNodeType) iterator.next();
+            subtypes.add(subtype);
+            subtypes.addAll(getSubtypesByTraversal(subtype));
+        }
+        return subtypes;
+    }
+
+    private boolean isNodeTypeByTraversal(ExtendedNodeType nodeType, String typeName) {
+        if (nodeType.getName().equals(typeName) || Constants.NT_BASE.equals(typeName)) {
+            return true;
+        }
+        for (ExtendedNodeType supertype : nodeType.getDeclaredSupertypes()) {
+            if (isNodeTypeByTraversal(supertype, typeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers.cnd;
+
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.Test;
+
+import javax.jcr.PropertyType;
+import java.io.StreamTokenizer;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Unit test for the CND lexer
+ */
+public class LexerTest {
+
+    @Test
+    public void testTokens() throws Exception {
+        String cnd = "<jnt = 'http://www.jahia.org/jahia/nt/1.0'>\n" +
+                "// line comment\n" +
+                "/* block\n comment */\n" +
+                "[jnt:text] > jmix:basicContent, jmix:editorialContent\n" +
+                " - text (string, richtext[ckeditor.toolbar='Mini']) i18n mandatory < 'a\\tb'\n" +
+                " - count (long) = 25 indexed=no\n" +
+                " + * (jnt:content)";
+        List<String> tokens = tokenize(cnd);
+        Assert.assertEquals(
+                "[<, jnt, =, http://www.jahia.org/jahia/nt/1.0, >, [, jnt:text, ], >, jmix:basicContent, ,, " +
+                        "jmix:editorialContent, -, text, (, string, ,, richtext, [, ckeditor.toolbar, =, Mini, ], ), " +
+                        "i18n, mandatory, <, a\tb, -, count, (, long, ), =, 25.0, indexed, =, no, +, *, (, " +
+                        "jnt:content, ), eof]",
+                tokens.toString());
+    }
+
+    @Test
+    public void testKeywords() throws Exception {
+        Lexer lexer = new Lexer(new StringReader("mandatory man m * 'string' mandatoryx"), "test");
+        Assert.assertSame(Lexer.MANDATORY[0], lexer.getNextToken());
+        Assert.assertTrue(lexer.currentTokenEquals(Lexer.MANDATORY));
+        Assert.assertTrue(lexer.currentTokenEquals(Lexer.PROP_ATTRIBUTE));
+        Assert.assertFalse(lexer.currentTokenEquals(Lexer.MIXIN));
+        lexer.getNextToken();
+        Assert.assertTrue(lexer.currentTokenEquals(Lexer.MANDATORY));
+        lexer.getNextToken();
+        Assert.assertTrue(lexer.currentTokenEquals(Lexer.MANDATORY));
+        Assert.assertTrue(lexer.currentTokenEquals(Lexer.MIXIN));
+        lexer.getNextToken();
+        Assert.assertTrue(lexer.currentTokenEquals(Lexer.MULTIPLE));
+        Assert.assertTrue(lexer.currentTokenEquals(Lexer.UNDEFINED));
+        Assert.assertEquals(PropertyType.STRING, Lexer.getPropertyType(lexer.getNextToken()));
+        lexer.getNextToken();
+        Assert.assertFalse(lexer.currentTokenEquals(Lexer.MANDATORY));
+        Assert.assertTrue(lexer.currentTokenEquals(new String[]{"mandatoryx"}));
+
+        Assert.assertEquals(ExtendedPropertyType.WEAKREFERENCE, Lexer.getPropertyType("WeakReference"));
+        Assert.assertEquals(-1, Lexer.getPropertyType("richtext"));
+        Assert.assertEquals(SelectorType.RICHTEXT, Lexer.getSelectorType("richtext"));
+        Assert.assertEquals(-1, Lexer.getSelectorType("page"));
+    }
+
+    @Test
+    public void testLineNumbers() throws Exception {
+        Lexer lexer = new Lexer(new StringReader("a\r\nb\n/* c\n */ d\r e"), "test");
+        int[] lines = new int[]{1, 2, 4, 5};
+        for (int line : lines) {
+            lexer.getNextToken();
+            try {
+                lexer.fail("test");
+            } catch (ParseException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().endsWith("line " + line + ")"));
+            }
+        }
+    }
+
+    @Test
+    public void testStreamTokenizerParity() throws Exception {
+        String cnd = IOUtils.toString(this.getClass().getClassLoader().getResourceAsStream("org/jahia/utils/osgi/parsers/cnd/definitions.cnd"));
+        assertSameTokens(cnd);
+        String[] edgeCases = new String[]{
+                "/x\na", "a/b", "a /* b\r\nc */ d", "a // b\r\nc", "/* unterminated\n", "/**/a/***/b",
+                "'\\377'", "'\\4'", "'\\48'", "'\\400'", "'\\n\\t\\r\\b\\f\\v\\a\\x\\''", "\"a\\\"b\"",
+                "'unterminated", "'line\nbreak'", "'carriage\rreturn'", "'\\\n'",
+                ".5", "1.2.3", "-12.5", "1-2", "..", "0", "12a", "a12",
+                "a\r\n\r\nb\n\rc\r\rd", "\u0085a\u00a0b\u00e9c\u4e2d\u0080", "\u00ff\u0100",
+                "[a:b] > c, d\n - e (string) = 'f' < 'g'\n + * (h)", "", "   ", "\t\f\u000b"
+        };
+        for (String edgeCase : edgeCases) {
+            assertSameTokens(edgeCase);
+        }
+        // random inputs built from the characters with a special meaning for the tokenizer
+        Random random = new Random(20240521L);
+        String alphabet = "ab:_1.9-+/*'\"\\\r\n \t[]<>=,()\u0085\u00e9\u4e2d";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSameTokens(input.toString());
+        }
+    }
+
+    /**
+     * Checks that the lexer returns the same tokens, at the same line numbers, as the StreamTokenizer configuration
+     * it replaced.
+     */
+    private void assertSameTokens(String cnd) throws Exception {
+        StreamTokenizer st = new StreamTokenizer(new StringReader(cnd));
+        st.eolIsSignificant(false);
+        st.lowerCaseMode(false);
+        st.slashSlashComments(true);
+        st.slashStarComments(true);
+        st.wordChars('a', 'z');
+        st.wordChars('A', 'Z');
+        st.wordChars(':', ':');
+        st.wordChars('_', '_');
+        st.quoteChar(Lexer.SINGLE_QUOTE);
+        st.quoteChar(Lexer.DOUBLE_QUOTE);
+        for (char c : new char[]{Lexer.BEGIN_NODE_TYPE_NAME, Lexer.END_NODE_TYPE_NAME, Lexer.EXTENDS,
+                Lexer.LIST_DELIMITER, Lexer.PROPERTY_DEFINITION, Lexer.CHILD_NODE_DEFINITION, Lexer.BEGIN_TYPE,
+                Lexer.END_TYPE, Lexer.DEFAULT, Lexer.CONSTRAINT}) {
+            st.ordinaryChar(c);
+        }
+
+        Lexer lexer = new Lexer(new StringReader(cnd), "test");
+        int tokenType;
+        int tokenIndex = 0;
+        do {
+            tokenType = st.nextToken();
+            String expectedToken;
+            if (tokenType == StreamTokenizer.TT_EOF) {
+                expectedToken = Lexer.EOF;
+            } else if (tokenType == StreamTokenizer.TT_WORD || tokenType == Lexer.SINGLE_QUOTE || tokenType == Lexer.DOUBLE_QUOTE) {
+                expectedToken = st.sval;
+            } else if (tokenType == StreamTokenizer.TT_NUMBER) {
+                expectedToken = String.valueOf(st.nval);
+            } else {
+                expectedToken = new String(new char[]{(char) tokenType});
+            }
+            String token = lexer.getNextToken();
+            String location = "token " + tokenIndex + " of " + StringEscapeUtils.escapeJava(cnd.length() > 200 ? cnd.substring(0, 200) : cnd);
+            Assert.assertEquals(location, expectedToken, token);
+            Assert.assertEquals(location, st.lineno(), getLineNumber(lexer));
+            tokenIndex++;
+        } while (tokenType != StreamTokenizer.TT_EOF);
+    }
+
+    private int getLineNumber(Lexer lexer) {
+        try {
+            lexer.fail("test");
+        } catch (ParseException e) {
+            Matcher matcher = Pattern.compile("line (\\d+)\\)$").matcher(e.getMessage());
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return -1;
+    }
+
+    private List<String> tokenize(String cnd) throws ParseException {
+        List<String> tokens = new ArrayList<String>();
+        Lexer lexer = new Lexer(new StringReader(cnd), "test");
+        String token;
+        do {
+            token = lexer.getNextToken();
+            tokens.add(token);
+        } while (token != Lexer.EOF);
+        return tokens;
+    }
+
+}
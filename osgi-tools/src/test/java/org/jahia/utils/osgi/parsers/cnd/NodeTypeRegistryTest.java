@@ -0,0 +1,78 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2019 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.utils.osgi.parsers.cnd;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the node type registry
+ */
+public class NodeTypeRegistryTest {
+
+    @Test
+    public void testGetName() throws Exception {
+        NodeTypeRegistry registry = new NodeTypeRegistry();
+        registry.registerNamespace("jnt", "http://www.jahia.org/jahia/nt/1.0");
+
+        Name name = registry.getName("jnt:content");
+        Assert.assertSame(name, registry.getName("jnt:content"));
+        Assert.assertEquals("jnt", name.getPrefix());
+        Assert.assertEquals("content", name.getLocalName());
+        Assert.assertEquals("http://www.jahia.org/jahia/nt/1.0", name.getUri());
+
+        Name expandedName = registry.getName("{http://www.jahia.org/jahia/nt/1.0}content");
+        Assert.assertEquals(name, expandedName);
+        Assert.assertEquals("jnt:content", expandedName.toString());
+
+        // the cached names are resolved again once a new namespace is registered
+        Name unresolvedName = registry.getName("jmix:list");
+        Assert.assertNull(unresolvedName.getUri());
+        registry.registerNamespace("jmix", "http://www.jahia.org/jahia/mix/1.0");
+        Name resolvedName = registry.getName("jmix:list");
+        Assert.assertEquals("http://www.jahia.org/jahia/mix/1.0", resolvedName.getUri());
+        Assert.assertSame(resolvedName, registry.getName("jmix:list"));
+    }
+
+}